@@ -0,0 +1,139 @@
+package framework.commons;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+import org.apache.commons.beanutils.PropertyUtils;
+
+import play.Logger;
+
+/**
+ * The accessors to the standard properties of a BizDock object class:
+ * <ul>
+ * <li>id : the unique id of the object</li>
+ * <li>deleted : the "applicative" deletion flag of the object</li>
+ * <li>the {@link DataType} associated with the class</li>
+ * </ul>
+ * The accessors are resolved once per class (see {@link #of(Class)}) as
+ * {@link MethodHandle} so that reading these properties does not require any
+ * reflective lookup.
+ */
+public class BeanAccessor {
+    private static Logger.ALogger log = Logger.of(BeanAccessor.class);
+
+    private static final ClassValue<BeanAccessor> ACCESSORS = new ClassValue<BeanAccessor>() {
+        @Override
+        protected BeanAccessor computeValue(Class<?> type) {
+            return new BeanAccessor(type);
+        }
+    };
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private Class<?> beanClass;
+    private MethodHandle idGetter;
+    private MethodHandle deletedGetter;
+
+    private BeanAccessor(Class<?> beanClass) {
+        this.beanClass = beanClass;
+        this.idGetter = findGetter(beanClass, "id");
+        this.deletedGetter = findGetter(beanClass, "deleted");
+    }
+
+    /**
+     * Return the accessor associated with the specified class
+     *
+     * @param beanClass
+     *            a class
+     * @return an accessor
+     */
+    public static BeanAccessor of(Class<?> beanClass) {
+        return ACCESSORS.get(beanClass);
+    }
+
+    /**
+     * Return the id for the BizDock object or -1 if this one is not found.
+     *
+     * @param bean
+     *            a BizDock object (instance of the class of this accessor)
+     * @return the object id
+     */
+    public long getId(Object bean) {
+        if (idGetter == null) {
+            return -1;
+        }
+        try {
+            Object id = (Object) idGetter.invokeExact(bean);
+            if (id instanceof Long) {
+                return (Long) id;
+            }
+        } catch (Throwable e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to read the id of " + bean, e);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return true if the specified BizDock object has been deleted
+     *
+     * @param bean
+     *            a BizDock object (instance of the class of this accessor)
+     */
+    public boolean isDeleted(Object bean) {
+        if (deletedGetter == null) {
+            return false;
+        }
+        try {
+            Object deleted = (Object) deletedGetter.invokeExact(bean);
+            if (deleted instanceof Boolean) {
+                return (Boolean) deleted;
+            }
+        } catch (Throwable e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to read the deleted flag of " + bean, e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the data type associated with the class of this accessor (null
+     * if the class is not a registered data type)
+     */
+    public DataType getDataType() {
+        return DataType.getDataTypeFromClassName(beanClass.getName());
+    }
+
+    /**
+     * Find the getter of the specified property and convert it into a
+     * {@link MethodHandle} of type (Object)Object
+     *
+     * @param beanClass
+     *            a class
+     * @param propertyName
+     *            the name of a property
+     * @return a method handle or null if the property has no public getter
+     */
+    private static MethodHandle findGetter(Class<?> beanClass, String propertyName) {
+        try {
+            for (PropertyDescriptor propertyDescriptor : PropertyUtils.getPropertyDescriptors(beanClass)) {
+                if (propertyDescriptor.getName().equals(propertyName)) {
+                    Method readMethod = propertyDescriptor.getReadMethod();
+                    if (readMethod == null) {
+                        return null;
+                    }
+                    readMethod.setAccessible(true);
+                    return MethodHandles.lookup().unreflect(readMethod).asType(GETTER_TYPE);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Unable to resolve the property " + propertyName + " of the class " + beanClass.getName(), e);
+        }
+        return null;
+    }
+}
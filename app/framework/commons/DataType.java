@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import play.Logger;
 
@@ -30,6 +31,11 @@ public class DataType {
      */
     private static Map<String, DataType> dataTypes = Collections.synchronizedMap(new HashMap<String, DataType>());
 
+    /**
+     * An index of the registered DataTypes by java class name
+     */
+    private static Map<String, DataType> dataTypesByClassName = new ConcurrentHashMap<String, DataType>();
+
     private String dataName;
     private String dataTypeClassName;
     private boolean isAuditable;
@@ -74,7 +80,16 @@ public class DataType {
             throw new IllegalArgumentException(
                     "WARNING: ambiguous data name attempt to register " + dataName + " while " + dataName.toLowerCase() + " is already registered");
         }
-        dataTypes.put(dataName, new DataType(dataName, dataTypeClassName, isAuditable, isCustomAttribute, conditionalRuleAuthorizedFields));
+        DataType dataType = new DataType(dataName, dataTypeClassName, isAuditable, isCustomAttribute, conditionalRuleAuthorizedFields);
+        synchronized (dataTypes) {
+            DataType previous = dataTypes.put(dataName, dataType);
+            if (previous != null) {
+                dataTypesByClassName.remove(previous.getDataTypeClassName(), previous);
+            }
+            if (dataTypeClassName != null) {
+                dataTypesByClassName.put(dataTypeClassName, dataType);
+            }
+        }
     }
 
     public DataType() {
@@ -165,12 +180,10 @@ public class DataType {
      * @return
      */
     public static DataType getDataTypeFromClassName(String className) {
-        for (DataType dataType : getDataTypes().values()) {
-            if (dataType.getDataTypeClassName().equals(className)) {
-                return dataType;
-            }
+        if (className == null) {
+            return null;
         }
-        return null;
+        return dataTypesByClassName.get(className);
     }
 
     private static Map<String, DataType> getDataTypes() {
@@ -112,6 +112,15 @@ public interface IFrameworkConstants {
     /**
      * Prefix for the preferences cache.
      */
+    String PREFERENCE_CACHE_PREFIX = IFrameworkConstants.MAF_CACHE_PREFIX + "preference.";
+
+    /**
+     * Prefix for the system preferences cache.
+     * 
+     * @deprecated the preference values are cached with
+     *             {@link #PREFERENCE_CACHE_PREFIX}
+     */
+    @Deprecated
     String SYSTEM_PREFERENCE_CACHE_PREFIX = IFrameworkConstants.MAF_CACHE_PREFIX + "systempreference.";
 
     /**
@@ -6,7 +6,11 @@ import com.google.inject.AbstractModule;
 
 import framework.commons.DataType;
 import framework.commons.IFrameworkConstants;
+import framework.services.cache.IInvalidationBus;
+import framework.services.cache.LocalInvalidationBusImpl;
+import framework.utils.FilterConfigCache;
 import framework.utils.Msg;
+import framework.utils.PaginationCache;
 import framework.utils.formats.AnnotationDateTypeFormatter;
 import play.Logger;
 import play.data.format.Formatters;
@@ -41,8 +45,23 @@ public abstract class FrameworkModule extends AbstractModule {
 
     @Override
     protected void configure() {
+        bind(IInvalidationBus.class).to(getInvalidationBusImplementation());
         log.info(">>> Static dependency injected start...");
         requestStaticInjection(Msg.class);
+        requestStaticInjection(PaginationCache.class);
+        requestStaticInjection(FilterConfigCache.class);
         log.info("...Static dependency injected end");
     }
+
+    /**
+     * The implementation of the {@link IInvalidationBus}.<br/>
+     * By default the invalidations are not propagated (single node
+     * deployment). An application deployed on several nodes must override this
+     * method to return
+     * {@link framework.services.cache.DatabaseInvalidationBusImpl} (which
+     * requires the cache_invalidation table).
+     */
+    protected Class<? extends IInvalidationBus> getInvalidationBusImplementation() {
+        return LocalInvalidationBusImpl.class;
+    }
 }
@@ -1,5 +1,7 @@
 package framework.security;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +42,12 @@ import play.mvc.Result;
 @Singleton
 public abstract class AbstractSecurityServiceImpl implements HandlerCache, ISecurityService, ISecurityServiceConfiguration {
     private static Logger.ALogger log = Logger.of(AbstractSecurityServiceImpl.class);
+
+    /**
+     * The prefix of the request context arguments which hold the results of
+     * {@link #dynamicBatch(String, String, Collection)}
+     */
+    private static final String DYNAMIC_BATCH_CONTEXT_PREFIX = "_maf_dynamic_batch.";
     private JavaAnalyzer deadBoltAnalyzer;
     private SubjectCache subjectCache;
     private Configuration configuration;
@@ -132,17 +140,57 @@ public abstract class AbstractSecurityServiceImpl implements HandlerCache, ISecu
     @Override
     public boolean dynamic(String name, String meta, Long id) {
         Context context = Http.Context.current();
+        @SuppressWarnings("unchecked")
+        Map<Long, Boolean> batchResults = (Map<Long, Boolean>) context.args.get(getDynamicBatchKey(name, meta));
+        if (batchResults != null) {
+            Boolean batchResult = batchResults.get(id);
+            if (batchResult != null) {
+                return batchResult;
+            }
+        }
         context.args.put(IFrameworkConstants.ID_NAME_FOR_CONTEXT, id);
         return getDefaultHandler().isAllowed(name, meta, get()).get(DEFAULT_TIMEOUT);
     }
 
+    @Override
+    public Map<Long, Boolean> dynamicBatch(String name, String meta, Collection<Long> ids) {
+        Context context = Http.Context.current();
+        Map<Long, Boolean> results = getDefaultHandler().isAllowed(name, meta, get(), ids).get(DEFAULT_TIMEOUT);
+        getDynamicBatchResults(context, name, meta).putAll(results);
+        return results;
+    }
+
+    /**
+     * Return the results of the batch evaluations of a dynamic permission for
+     * the current request
+     * 
+     * @param context
+     *            the request context
+     * @param name
+     *            the dynamic permission name
+     * @param meta
+     *            the meta
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Long, Boolean> getDynamicBatchResults(Context context, String name, String meta) {
+        return (Map<Long, Boolean>) context.args.computeIfAbsent(getDynamicBatchKey(name, meta), key -> new HashMap<Long, Boolean>());
+    }
+
+    /**
+     * Return the key of the batch results of a dynamic permission in the
+     * request context
+     */
+    private static String getDynamicBatchKey(String name, String meta) {
+        return DYNAMIC_BATCH_CONTEXT_PREFIX + name + "." + meta;
+    }
+
     @Override
     public boolean restrict(final String[] roleNames, final Subject subject) {
         try {
             if (subject == null) {
                 return false;
             }
-            return getDeadBoltAnalyzer().hasAllRoles(Optional.of(subject), roleNames);
+            return hasAllRoles(subject, roleNames);
         } catch (Exception e) {
             log.error("Error while checking restriction for " + ArrayUtils.toString(roleNames), e);
             return false;
@@ -167,7 +215,7 @@ public abstract class AbstractSecurityServiceImpl implements HandlerCache, ISecu
                 if (rolesArray.length != 0) {
                     isNotEmptyArray = true;
                 }
-                if (getDeadBoltAnalyzer().hasAllRoles(Optional.of(subject), rolesArray)) {
+                if (hasAllRoles(subject, rolesArray)) {
                     return true;
                 }
             }
@@ -191,7 +239,7 @@ public abstract class AbstractSecurityServiceImpl implements HandlerCache, ISecu
             if (subject == null) {
                 return false;
             }
-            return getDeadBoltAnalyzer().hasRole(Optional.of(subject), roleName);
+            return hasRole(subject, roleName);
         } catch (Exception e) {
             log.error("Error while checking restriction for " + roleName, e);
             return false;
@@ -256,6 +304,30 @@ public abstract class AbstractSecurityServiceImpl implements HandlerCache, ISecu
         }
     }
 
+    /**
+     * Return true if the subject holds all the specified roles.<br/>
+     * The compiled roles of a user account are used (see
+     * {@link IUserAccount#getPermissionSet()}), the Deadbolt analyzer is used
+     * for the other subjects.
+     */
+    private boolean hasAllRoles(Subject subject, String[] roleNames) {
+        if (subject instanceof IUserAccount) {
+            return ((IUserAccount) subject).getPermissionSet().hasAllRoles(roleNames);
+        }
+        return getDeadBoltAnalyzer().hasAllRoles(Optional.of(subject), roleNames);
+    }
+
+    /**
+     * Return true if the subject holds the specified role (see
+     * {@link #hasAllRoles(Subject, String[])})
+     */
+    private boolean hasRole(Subject subject, String roleName) {
+        if (subject instanceof IUserAccount) {
+            return ((IUserAccount) subject).getPermissionSet().hasRole(roleName);
+        }
+        return getDeadBoltAnalyzer().hasRole(Optional.of(subject), roleName);
+    }
+
     /**
      * Gets the {@link be.objectify.deadbolt.core.models.Subject} from the
      * {@link DeadboltHandler}, and logs an error if it's not present. Note that
@@ -462,6 +534,23 @@ public abstract class AbstractSecurityServiceImpl implements HandlerCache, ISecu
             return getDynamicResourceHandler().isAllowed(name, meta, deadboltHandler, Http.Context.current());
         }
 
+        /**
+         * Check if the dynamic permission is allowed for each of the specified
+         * ids
+         * 
+         * @param name
+         *            a dynamic permission name
+         * @param meta
+         * @param deadboltHandler
+         *            a deadbolt handler
+         * @param ids
+         *            the ids of the objects
+         * @return a promise of the result by id
+         */
+        public Promise<Map<Long, Boolean>> isAllowed(String name, String meta, DeadboltHandler deadboltHandler, Collection<Long> ids) {
+            return getDynamicResourceHandler().isAllowed(name, meta, deadboltHandler, Http.Context.current(), ids);
+        }
+
         private DefaultDynamicResourceHandler getDynamicResourceHandler() {
             return dynamicResourceHandler;
         }
@@ -561,6 +650,51 @@ public abstract class AbstractSecurityServiceImpl implements HandlerCache, ISecu
             return result;
         }
 
+        /**
+         * Check a dynamic permission for several objects.<br/>
+         * A {@link IBatchDynamicResourceHandler} is called once for all the
+         * objects, the other handlers are called (with the cache) for each
+         * object.
+         * 
+         * @param name
+         *            the permission name
+         * @param meta
+         *            the meta
+         * @param deadboltHandler
+         *            the deadbolt handler
+         * @param context
+         *            the request context
+         * @param ids
+         *            the object ids
+         */
+        public Promise<Map<Long, Boolean>> isAllowed(String name, String meta, DeadboltHandler deadboltHandler, Context context, Collection<Long> ids) {
+            DynamicResourceHandler handler = getDynamicAuthenticationHandlers().get(name);
+            if (handler instanceof IBatchDynamicResourceHandler) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Dynamic permission (batch of " + ids.size() + "): " + name);
+                }
+                return ((IBatchDynamicResourceHandler) handler).isAllowed(name, meta, deadboltHandler, context, ids).map(batchResults -> {
+                    Map<Long, Boolean> results = new HashMap<>(batchResults);
+                    for (Long id : ids) {
+                        results.putIfAbsent(id, false);
+                    }
+                    return results;
+                });
+            }
+            Map<Long, Boolean> results = new HashMap<>();
+            Object previousId = context.args.get(IFrameworkConstants.ID_NAME_FOR_CONTEXT);
+            for (Long id : ids) {
+                context.args.put(IFrameworkConstants.ID_NAME_FOR_CONTEXT, id);
+                results.put(id, isAllowed(name, meta, deadboltHandler, context).get(ISecurityService.DEFAULT_TIMEOUT));
+            }
+            if (previousId != null) {
+                context.args.put(IFrameworkConstants.ID_NAME_FOR_CONTEXT, previousId);
+            } else {
+                context.args.remove(IFrameworkConstants.ID_NAME_FOR_CONTEXT);
+            }
+            return Promise.pure(results);
+        }
+
         /**
          * Get the cache key depending of the permission name and the object id.
          * 
@@ -0,0 +1,37 @@
+package framework.security;
+
+import java.util.Collection;
+import java.util.Map;
+
+import be.objectify.deadbolt.java.DeadboltHandler;
+import be.objectify.deadbolt.java.DynamicResourceHandler;
+import play.libs.F.Promise;
+import play.mvc.Http.Context;
+
+/**
+ * A {@link DynamicResourceHandler} which is able to check a dynamic
+ * permission for several objects at once (typically with one query).<br/>
+ * It is used by {@link ISecurityService#dynamicBatch} (the other handlers are
+ * called once per object).
+ */
+public interface IBatchDynamicResourceHandler extends DynamicResourceHandler {
+
+    /**
+     * Define if the current context is allowed for a dynamic permission, for
+     * each of the specified objects.
+     * 
+     * @param name
+     *            the dynamic permission name
+     * @param meta
+     *            the meta, can be empty
+     * @param deadboltHandler
+     *            the deadbolt handler
+     * @param context
+     *            the request context
+     * @param ids
+     *            the ids of the objects
+     * @return a promise of the result by object id (a missing id is not
+     *         allowed)
+     */
+    public Promise<Map<Long, Boolean>> isAllowed(String name, String meta, DeadboltHandler deadboltHandler, Context context, Collection<Long> ids);
+}
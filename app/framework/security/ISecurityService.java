@@ -1,6 +1,9 @@
 package framework.security;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import be.objectify.deadbolt.core.models.Subject;
 import framework.services.account.AccountManagementException;
@@ -92,6 +95,31 @@ public interface ISecurityService {
      */
     public boolean dynamic(String name, String meta, Long id);
 
+    /**
+     * Define if the current context is allowed for a dynamic permission, for
+     * several objects at once (see {@link IBatchDynamicResourceHandler}).<br/>
+     * The results are kept for the current request: a subsequent call to
+     * {@link #dynamic(String, String, Long)} for one of the ids does not
+     * evaluate the permission again.<br/>
+     * The default implementation calls {@link #dynamic(String, String, Long)}
+     * for each id.
+     * 
+     * @param name
+     *            the dynamic permission name
+     * @param meta
+     *            the meta, can be empty
+     * @param ids
+     *            the ids of the objects
+     * @return the result by object id
+     */
+    public default Map<Long, Boolean> dynamicBatch(String name, String meta, Collection<Long> ids) {
+        Map<Long, Boolean> results = new HashMap<Long, Boolean>();
+        for (Long id : ids) {
+            results.put(id, dynamic(name, meta, id));
+        }
+        return results;
+    }
+
     /**
      * Return true if the specified roles are part of the current user profile.
      * 
@@ -42,10 +42,11 @@ public abstract class AbstractDefaultCommonUserAccount implements ICommonUserAcc
     protected boolean isActive;
     protected Date lastLoginDate;
     protected Boolean isDisplayed;
-    protected List<Role> roles = Collections.synchronizedList(new ArrayList<Role>());
+    private List<Role> roles = Collections.synchronizedList(new ArrayList<Role>());
     protected List<Role> selectableRoles = Collections.synchronizedList(new ArrayList<Role>());
     protected List<String> systemLevelRoleTypes = Collections.synchronizedList(new ArrayList<String>());
     protected List<Permission> permissions = Collections.synchronizedList(new ArrayList<Permission>());
+    private transient volatile PermissionSet permissionSet;
 
     public AbstractDefaultCommonUserAccount() {
         addGroup(new DefaultRole(IFrameworkConstants.DEFAULT_PERMISSION_PRIVATE));
@@ -121,11 +122,28 @@ public abstract class AbstractDefaultCommonUserAccount implements ICommonUserAcc
 
     /**
      * This returns a list of {@link Role} which names are actually based on
-     * {@link SystemPermission} names.
+     * {@link SystemPermission} names.<br/>
+     * The list cannot be modified: a role must be added with
+     * {@link #addGroup(Role)} so that the compiled roles are reset.
      */
     @Override
     public List<? extends Role> getRoles() {
-        return this.roles;
+        return Collections.unmodifiableList(this.roles);
+    }
+
+    /**
+     * The roles are compiled on first use (and again after a role is added).
+     */
+    @Override
+    public PermissionSet getPermissionSet() {
+        PermissionSet compiledRoles = this.permissionSet;
+        if (compiledRoles == null) {
+            synchronized (this.roles) {
+                compiledRoles = PermissionSet.of(this.roles);
+                this.permissionSet = compiledRoles;
+            }
+        }
+        return compiledRoles;
     }
 
     /**
@@ -198,7 +216,10 @@ public abstract class AbstractDefaultCommonUserAccount implements ICommonUserAcc
     @Override
     public void addGroup(Role role) {
         if (role != null) {
-            this.roles.add(role);
+            synchronized (this.roles) {
+                this.roles.add(role);
+                this.permissionSet = null;
+            }
         }
     }
 
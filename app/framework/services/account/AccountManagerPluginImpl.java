@@ -23,6 +23,8 @@ import framework.commons.IFrameworkConstants;
 import framework.commons.message.EventMessage;
 import framework.commons.message.UserEventMessage;
 import framework.services.account.IUserAccount.AccountType;
+import framework.services.cache.IInvalidationBus;
+import framework.services.cache.IInvalidationListener;
 import framework.services.plugins.IEventBroadcastingService;
 import framework.utils.DefaultSelectableValueHolder;
 import framework.utils.DefaultSelectableValueHolderCollection;
@@ -47,7 +49,8 @@ import java.util.*;
  * The plugin managing the user accounts.<br/>
  * The plugin is based on a cache.<br/>
  * <b>WARNING</b>: remember to call invalidateUserAccountCache(uid) each time a
- * user account is modified.<br/>
+ * user account is modified (the invalidation is propagated to the other nodes
+ * through the {@link IInvalidationBus}).<br/>
  * <ul>
  * <li>authenticationRepositoryMasterMode : true if the system is configured in
  * "master mode".</li>
@@ -79,10 +82,13 @@ public class AccountManagerPluginImpl implements IAccountManagerPlugin {
     private IAuthenticationAccountWriterPlugin authenticationAccountWriterPlugin;
     private IAuthenticationAccountReaderPlugin authenticationAccountReaderPlugin;
     private CacheApi cacheApi;
+    private IInvalidationBus invalidationBus;
     private int validationKeyValidity;
     private int userAccountCacheDurationInSeconds;
     private Class<?> commonUserAccountClass;
 
+    public static final String INVALIDATION_REGION = "useraccount";
+
     public enum Config {
         SELF_MAIL_UPDATE_ALLOWED("maf.ic_self_mail_update_allowed"), ACCOUNT_CACHE_DURATION("maf.user_account_cache_duration"), VALIDATION_KEY_VALIDITY(
                 "maf.validation.key.validity");
@@ -111,6 +117,8 @@ public class AccountManagerPluginImpl implements IAccountManagerPlugin {
      *            if true the system is in LDAP master mode (LDAP is writable)
      * @param authenticationAccountWriterPlugin the authentication account writer plugin
      * @param authenticationAccountReaderPlugin the authentication account reader plugin
+     * @param cacheApi the play cache API
+     * @param invalidationBus the bus which propagates the cache invalidations to the other nodes
      * @throws ClassNotFoundException
      */
     @Inject
@@ -121,13 +129,15 @@ public class AccountManagerPluginImpl implements IAccountManagerPlugin {
             @Named("AuthenticationRepositoryMasterMode") Boolean authenticationRepositoryMasterMode,
             IAuthenticationAccountWriterPlugin authenticationAccountWriterPlugin,
             IAuthenticationAccountReaderPlugin authenticationAccountReaderPlugin,
-            CacheApi cacheApi) throws ClassNotFoundException {
+            CacheApi cacheApi,
+            IInvalidationBus invalidationBus) throws ClassNotFoundException {
         log.info("SERVICE>>> AccountManagerPluginImpl starting...");
         this.authenticationRepositoryMasterMode = authenticationRepositoryMasterMode;
         this.userAccountCacheDurationInSeconds = configuration.getInt(Config.ACCOUNT_CACHE_DURATION.getConfigurationKey());
         this.selfMailUpdateAllowed = configuration.getBoolean(Config.SELF_MAIL_UPDATE_ALLOWED.getConfigurationKey());
         this.validationKeyValidity = configuration.getInt(Config.VALIDATION_KEY_VALIDITY.getConfigurationKey());
         this.cacheApi = cacheApi;
+        this.invalidationBus = invalidationBus;
 
         log.info("LDAP master mode is " + authenticationRepositoryMasterMode);
         log.info("Loading the user account class " + commonUserAccountClassName);
@@ -138,8 +148,21 @@ public class AccountManagerPluginImpl implements IAccountManagerPlugin {
         }
         this.authenticationAccountWriterPlugin = authenticationAccountWriterPlugin;
         this.authenticationAccountReaderPlugin = authenticationAccountReaderPlugin;
+        IInvalidationListener invalidationListener = uid -> {
+            if (uid == null) {
+                try {
+                    removeAllUserAccountsFromCache();
+                } catch (AccountManagementException e) {
+                    log.error("Unable to invalidate the cache of the user accounts", e);
+                }
+            } else {
+                removeUserAccountFromCache(uid);
+            }
+        };
+        invalidationBus.register(INVALIDATION_REGION, invalidationListener);
         lifecycle.addStopHook(() -> {
             log.info("SERVICE>>> AccountManagerPluginImpl stopping...");
+            invalidationBus.unregister(INVALIDATION_REGION, invalidationListener);
             log.info("SERVICE>>> AccountManagerPluginImpl stopped");
             return Promise.pure(null);
         });
@@ -678,17 +701,36 @@ public class AccountManagerPluginImpl implements IAccountManagerPlugin {
 
     @Override
     public void invalidateUserAccountCache(String uid) {
+        removeUserAccountFromCache(uid);
+        getInvalidationBus().publish(INVALIDATION_REGION, uid);
+    }
+
+    @Override
+    public void invalidateAllUserAccountsCache() throws AccountManagementException {
+        removeAllUserAccountsFromCache();
+        getInvalidationBus().publish(INVALIDATION_REGION, null);
+    }
+
+    /**
+     * Remove a user account from the cache of the current node
+     * 
+     * @param uid
+     *            the uid of the user
+     */
+    private void removeUserAccountFromCache(String uid) {
         getCacheApi().remove(IFrameworkConstants.USER_ACCOUNT_CACHE_PREFIX + uid);
         if (log.isDebugEnabled()) {
             log.debug("Cache invalidated for user " + uid);
         }
     }
 
-    @Override
-    public void invalidateAllUserAccountsCache() throws AccountManagementException {
+    /**
+     * Remove all the user accounts from the cache of the current node
+     */
+    private void removeAllUserAccountsFromCache() throws AccountManagementException {
         List<IUserAccount> userAccounts = getUserAccountsFromName("*");
         for (IUserAccount userAccount : userAccounts) {
-            invalidateUserAccountCache(userAccount.getUid());
+            removeUserAccountFromCache(userAccount.getUid());
         }
     }
 
@@ -922,4 +964,8 @@ public class AccountManagerPluginImpl implements IAccountManagerPlugin {
     private CacheApi getCacheApi() {
         return cacheApi;
     }
+
+    private IInvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
 }
@@ -18,7 +18,9 @@
 package framework.services.account;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -26,12 +28,18 @@ import javax.inject.Singleton;
 
 import framework.services.configuration.II18nMessagesPlugin;
 import framework.services.custom_attribute.ICustomAttributeManagerService;
+import framework.services.account.PreferenceCache.Scope;
+import framework.services.cache.IInvalidationBus;
+import framework.services.cache.IInvalidationListener;
+import framework.services.database.IDatabaseChangeListener;
 import framework.services.database.IDatabaseDependencyService;
+import framework.services.database.ModificationPair;
 import framework.services.session.IUserSessionManagerPlugin;
 import framework.services.storage.IAttachmentManagerPlugin;
 import framework.utils.Msg;
 import models.framework_models.account.Preference;
-import models.framework_models.common.CustomAttributeItemOption;
+import models.framework_models.account.Principal;
+import models.framework_models.common.CustomAttributeDefinition;
 import models.framework_models.common.ICustomAttributeValue;
 import play.Configuration;
 import play.Logger;
@@ -39,9 +47,15 @@ import play.cache.CacheApi;
 import play.data.Form;
 import play.inject.ApplicationLifecycle;
 import play.libs.F.Promise;
+import play.mvc.Controller;
 
 /**
- * The default implementation for the {@link IPreferenceManagerPlugin}.
+ * The default implementation for the {@link IPreferenceManagerPlugin}.<br/>
+ * The preference values are read from a two-level cache (see
+ * {@link PreferenceCache}) as immutable {@link PreferenceSnapshot}. The cached
+ * values of a preference are removed as soon as one of its values is saved
+ * (on all the nodes, see {@link IInvalidationBus}).
+ * The system preferences are loaded into the cache when the service starts.
  * 
  * @author Pierre-Yves Cloux
  */
@@ -50,12 +64,31 @@ public class DefaultPreferenceManagementPlugin implements IPreferenceManagerPlug
     private static Logger.ALogger log = Logger.of(DefaultPreferenceManagementPlugin.class);
 
     private Configuration configuration;
-    private CacheApi cacheApi;
     private IUserSessionManagerPlugin userSessionManagerPlugin;
     private IAccountManagerPlugin accountManagerPlugin;
     private II18nMessagesPlugin i18nMessagesPlugin;
     private ICustomAttributeManagerService customAttributeManagerService;
     private IAttachmentManagerPlugin attachmentManagerPlugin;
+    private PreferenceCache preferenceCache;
+    private IInvalidationBus invalidationBus;
+
+    public static final String INVALIDATION_REGION = "preference";
+
+    private static final int DEFAULT_CACHE_DURATION = 300;
+
+    public enum Config {
+        CACHE_DURATION("maf.preference.cache.duration"), CACHE_PRELOAD("maf.preference.cache.preload");
+
+        private String configurationKey;
+
+        Config(String configurationKey) {
+            this.configurationKey = configurationKey;
+        }
+
+        public String getConfigurationKey() {
+            return configurationKey;
+        }
+    }
 
     /**
      * Creates a new DefaultPreferenceManagementPlugin.
@@ -78,22 +111,43 @@ public class DefaultPreferenceManagementPlugin implements IPreferenceManagerPlug
      *            the custom attribute manager service
      * @param attachmentManagerPlugin
      *            the attachment manager service
+     * @param invalidationBus
+     *            the bus which propagates the cache invalidations to the other
+     *            nodes
      */
     @Inject
     public DefaultPreferenceManagementPlugin(Configuration configuration, ApplicationLifecycle lifecycle, CacheApi cacheApi,
             IUserSessionManagerPlugin userSessionManagerPlugin, IAccountManagerPlugin accountManagerPlugin,
             IDatabaseDependencyService databaseDependencyService, II18nMessagesPlugin i18nMessagesPlugin,
-            ICustomAttributeManagerService customAttributeManagerService, IAttachmentManagerPlugin attachmentManagerPlugin) {
+            ICustomAttributeManagerService customAttributeManagerService, IAttachmentManagerPlugin attachmentManagerPlugin,
+            IInvalidationBus invalidationBus) {
         this.configuration = configuration;
-        this.cacheApi = cacheApi;
         this.userSessionManagerPlugin = userSessionManagerPlugin;
         this.accountManagerPlugin = accountManagerPlugin;
         this.i18nMessagesPlugin = i18nMessagesPlugin;
         this.customAttributeManagerService = customAttributeManagerService;
         this.attachmentManagerPlugin = attachmentManagerPlugin;
+        this.invalidationBus = invalidationBus;
         log.info("SERVICE>>> DefaultPreferenceManagementPlugin starting...");
+        this.preferenceCache = new PreferenceCache(cacheApi,
+                configuration.getInt(Config.CACHE_DURATION.getConfigurationKey(), DEFAULT_CACHE_DURATION));
+        IDatabaseChangeListener invalidationListener = new InvalidationListener();
+        databaseDependencyService.addDatabaseChangeListener(invalidationListener);
+        if (configuration.getBoolean(Config.CACHE_PRELOAD.getConfigurationKey(), true)) {
+            preloadSystemPreferences();
+        }
+        IInvalidationListener remoteInvalidationListener = uuid -> {
+            if (uuid == null) {
+                getPreferenceCache().invalidateAll();
+            } else {
+                getPreferenceCache().invalidate(uuid);
+            }
+        };
+        invalidationBus.register(INVALIDATION_REGION, remoteInvalidationListener);
         lifecycle.addStopHook(() -> {
             log.info("SERVICE>>> DefaultPreferenceManagementPlugin stopping...");
+            databaseDependencyService.removeDatabaseChangeListener(invalidationListener);
+            invalidationBus.unregister(INVALIDATION_REGION, remoteInvalidationListener);
             log.info("SERVICE>>> DefaultPreferenceManagementPlugin stopped");
             return Promise.pure(null);
         });
@@ -174,93 +228,85 @@ public class DefaultPreferenceManagementPlugin implements IPreferenceManagerPlug
 
     @Override
     public String getPreferenceValueAsString(String uuid) throws PreferenceManagementException {
-        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(uuid, getCacheApi(), getUserSessionManagerPlugin(),
-                getAccountManagerPlugin());
-        isAttributeExists(uuid, customAttributeValue);
-        if (customAttributeValue.getAttributeType().equals(ICustomAttributeValue.AttributeType.STRING)
-                || customAttributeValue.getAttributeType().equals(ICustomAttributeValue.AttributeType.IMAGE)) {
-            return (String) customAttributeValue.getValueAsObject();
-        }
-        if (customAttributeValue.getAttributeType().equals(ICustomAttributeValue.AttributeType.SINGLE_ITEM)) {
-            CustomAttributeItemOption customAttributeItemOption = (CustomAttributeItemOption) customAttributeValue.getValueAsObject();
-            return customAttributeItemOption != null ? customAttributeItemOption.getNameAsKey() : null;
+        PreferenceSnapshot snapshot = getPreferenceSnapshot(uuid);
+        isAttributeExists(uuid, snapshot);
+        if (snapshot.getAttributeType().equals(ICustomAttributeValue.AttributeType.STRING)
+                || snapshot.getAttributeType().equals(ICustomAttributeValue.AttributeType.IMAGE)
+                || snapshot.getAttributeType().equals(ICustomAttributeValue.AttributeType.SINGLE_ITEM)) {
+            // The value of a single item is the key of the item name
+            return (String) snapshot.getValue();
         }
         throw new PreferenceManagementException(
-                String.format("Invalid type for %s String requested but %s found", uuid, customAttributeValue.getAttributeType()));
+                String.format("Invalid type for %s String requested but %s found", uuid, snapshot.getAttributeType()));
     }
 
     @Override
     public Integer getPreferenceValueAsInteger(String uuid) throws PreferenceManagementException {
-        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(uuid, getCacheApi(), getUserSessionManagerPlugin(),
-                getAccountManagerPlugin());
-        isAttributeExists(uuid, customAttributeValue);
-        if (!customAttributeValue.getAttributeType().equals(ICustomAttributeValue.AttributeType.INTEGER)) {
+        PreferenceSnapshot snapshot = getPreferenceSnapshot(uuid);
+        isAttributeExists(uuid, snapshot);
+        if (!snapshot.getAttributeType().equals(ICustomAttributeValue.AttributeType.INTEGER)) {
             throw new PreferenceManagementException(
-                    String.format("Invalid type for %s Integer requested but %s found", uuid, customAttributeValue.getAttributeType()));
+                    String.format("Invalid type for %s Integer requested but %s found", uuid, snapshot.getAttributeType()));
         }
-        return (Integer) customAttributeValue.getValueAsObject();
+        return (Integer) snapshot.getValue();
     }
 
     @Override
     public Boolean getPreferenceValueAsBoolean(String uuid) throws PreferenceManagementException {
-        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(uuid, getCacheApi(), getUserSessionManagerPlugin(),
-                getAccountManagerPlugin());
-        isAttributeExists(uuid, customAttributeValue);
-        if (!customAttributeValue.getAttributeType().equals(ICustomAttributeValue.AttributeType.BOOLEAN)) {
+        PreferenceSnapshot snapshot = getPreferenceSnapshot(uuid);
+        isAttributeExists(uuid, snapshot);
+        if (!snapshot.getAttributeType().equals(ICustomAttributeValue.AttributeType.BOOLEAN)) {
             throw new PreferenceManagementException(
-                    String.format("Invalid type for %s Boolean requested but %s found", uuid, customAttributeValue.getAttributeType()));
+                    String.format("Invalid type for %s Boolean requested but %s found", uuid, snapshot.getAttributeType()));
         }
-        return (Boolean) customAttributeValue.getValueAsObject();
+        return (Boolean) snapshot.getValue();
     }
 
     @Override
     public BigDecimal getPreferenceValueAsDecimal(String uuid) throws PreferenceManagementException {
-        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(uuid, getCacheApi(), getUserSessionManagerPlugin(),
-                getAccountManagerPlugin());
-        isAttributeExists(uuid, customAttributeValue);
-        if (!customAttributeValue.getAttributeType().equals(ICustomAttributeValue.AttributeType.DECIMAL)) {
+        PreferenceSnapshot snapshot = getPreferenceSnapshot(uuid);
+        isAttributeExists(uuid, snapshot);
+        if (!snapshot.getAttributeType().equals(ICustomAttributeValue.AttributeType.DECIMAL)) {
             throw new PreferenceManagementException(
-                    String.format("Invalid type for %s Decimal requested but %s found", uuid, customAttributeValue.getAttributeType()));
+                    String.format("Invalid type for %s Decimal requested but %s found", uuid, snapshot.getAttributeType()));
         }
-        return (BigDecimal) customAttributeValue.getValueAsObject();
+        return (BigDecimal) snapshot.getValue();
     }
 
     @Override
     public Date getPreferenceValueAsDate(String uuid) throws PreferenceManagementException {
-        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(uuid, getCacheApi(), getUserSessionManagerPlugin(),
-                getAccountManagerPlugin());
-        isAttributeExists(uuid, customAttributeValue);
-        if (!customAttributeValue.getAttributeType().equals(ICustomAttributeValue.AttributeType.DATE)) {
+        PreferenceSnapshot snapshot = getPreferenceSnapshot(uuid);
+        isAttributeExists(uuid, snapshot);
+        if (!snapshot.getAttributeType().equals(ICustomAttributeValue.AttributeType.DATE)) {
             throw new PreferenceManagementException(
-                    String.format("Invalid type for %s Date requested but %s found", uuid, customAttributeValue.getAttributeType()));
+                    String.format("Invalid type for %s Date requested but %s found", uuid, snapshot.getAttributeType()));
         }
-        return (Date) customAttributeValue.getValueAsObject();
+        return (Date) snapshot.getValue();
     }
 
     @Override
     public void updatePreferenceValue(String uuid, Object value) throws PreferenceManagementException {
-        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(uuid, getCacheApi(), getUserSessionManagerPlugin(),
-                getAccountManagerPlugin());
+        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(uuid, getUserSessionManagerPlugin(), getAccountManagerPlugin());
         isAttributeExists(uuid, customAttributeValue);
         customAttributeValue.setValueAsObject(value);
         Preference.savePreferenceValue(this.getCustomAttributeManagerService(), this.getUserSessionManagerPlugin(), this.getAttachmentManagerPlugin(),
-                customAttributeValue, getCacheApi());
+                customAttributeValue);
+        // The other nodes are notified by the database change listener
+        getPreferenceCache().invalidate(uuid);
     }
 
     @Override
     public String getPropertyAsString(String uuid, String propertyKey) throws PreferenceManagementException {
-        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(uuid, getCacheApi(), getUserSessionManagerPlugin(),
-                getAccountManagerPlugin());
-        isAttributeExists(uuid, customAttributeValue);
-        return customAttributeValue.getDefinition().getProperties().getProperty(propertyKey);
+        PreferenceSnapshot snapshot = getPreferenceSnapshot(uuid);
+        isAttributeExists(uuid, snapshot);
+        return snapshot.getProperty(propertyKey);
     }
 
     @Override
     public Boolean getPropertyAsBoolean(String uuid, String propertyKey) throws PreferenceManagementException {
-        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(uuid, getCacheApi(), getUserSessionManagerPlugin(),
-                getAccountManagerPlugin());
-        isAttributeExists(uuid, customAttributeValue);
-        String s = customAttributeValue.getDefinition().getProperties().getProperty(propertyKey);
+        PreferenceSnapshot snapshot = getPreferenceSnapshot(uuid);
+        isAttributeExists(uuid, snapshot);
+        String s = snapshot.getProperty(propertyKey);
         if (s != null) {
             if (s.equals("true")) {
                 return true;
@@ -273,13 +319,18 @@ public class DefaultPreferenceManagementPlugin implements IPreferenceManagerPlug
 
     @Override
     public boolean isPreferenceSystem(String uuid) {
-        return Preference.getPreferenceFromUuid(uuid).systemPreference;
+        return isSystemPreference(uuid);
+    }
+
+    @Override
+    public ICustomAttributeValue getPreferenceValueForDisplay(String uuid) {
+        return Preference.getPreferenceValueFromUuid(uuid, getUserSessionManagerPlugin(), getAccountManagerPlugin());
     }
 
     @Override
     public <T> void fillWithPreference(Form<T> form, String preferenceUuid) {
-        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(preferenceUuid, this.getCacheApi(),
-                this.getUserSessionManagerPlugin(), this.getAccountManagerPlugin());
+        ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(preferenceUuid, this.getUserSessionManagerPlugin(),
+                this.getAccountManagerPlugin());
         if (log.isDebugEnabled()) {
             log.debug("Preference with uuid " + preferenceUuid + " is " + (customAttributeValue != null ? "not null" : "null"));
         }
@@ -329,8 +380,8 @@ public class DefaultPreferenceManagementPlugin implements IPreferenceManagerPlug
         boolean hasErrors = false;
         Map<String, String> data = form.data();
         if (data != null) {
-            ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(preferenceUuid, this.getCacheApi(),
-                    this.getUserSessionManagerPlugin(), this.getAccountManagerPlugin());
+            ICustomAttributeValue customAttributeValue = Preference.getPreferenceValueFromUuid(preferenceUuid, this.getUserSessionManagerPlugin(),
+                    this.getAccountManagerPlugin());
             String fieldName = this.getCustomAttributeManagerService().getFieldNameFromDefinitionUuid(customAttributeValue.getDefinition().uuid);
             if (log.isDebugEnabled()) {
                 log.debug("Readring preference with uuid " + preferenceUuid + " from form with field name " + fieldName);
@@ -360,7 +411,10 @@ public class DefaultPreferenceManagementPlugin implements IPreferenceManagerPlug
                             log.debug("Readring preference with uuid " + preferenceUuid + " saved to database");
                         }
                         Preference.savePreferenceValue(this.getCustomAttributeManagerService(), this.getUserSessionManagerPlugin(),
-                                this.getAttachmentManagerPlugin(), customAttributeValue, this.getCacheApi());
+                                this.getAttachmentManagerPlugin(), customAttributeValue);
+                        // The other nodes are notified by the database change
+                        // listener
+                        getPreferenceCache().invalidate(preferenceUuid);
                     }
                 }
             }
@@ -369,24 +423,127 @@ public class DefaultPreferenceManagementPlugin implements IPreferenceManagerPlug
     }
 
     /**
-     * Throw an exception is the customAttribute is null.
+     * Return the cached value of a preference (for the system or for the
+     * current user).
+     * 
+     * @param uuid
+     *            the uuid of the preference
+     * @return a snapshot of the value or null if the preference does not exist
+     */
+    private PreferenceSnapshot getPreferenceSnapshot(String uuid) {
+        Boolean systemPreference = isSystemPreference(uuid);
+        if (systemPreference == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Preference with uuid " + uuid + " not found");
+            }
+            return null;
+        }
+        if (systemPreference) {
+            return getPreferenceCache().get(uuid, Scope.SYSTEM, null, () -> PreferenceSnapshot.of(Preference.getSystemPreferenceValue(uuid)));
+        }
+        String userSessionUid = getUserSessionManagerPlugin().getUserSessionId(Controller.ctx());
+        return getPreferenceCache().get(uuid, Scope.USER, userSessionUid, () -> {
+            try {
+                IUserAccount userAccount = getAccountManagerPlugin().getUserAccountFromUid(userSessionUid);
+                if (userAccount == null) {
+                    log.error("Unable to find the preference " + uuid + " for the user " + userSessionUid);
+                    return null;
+                }
+                return PreferenceSnapshot.of(Preference.getUserPreferenceValue(uuid, userAccount.getMafUid()));
+            } catch (AccountManagementException e) {
+                log.error("Error while finding the preference " + uuid, e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Remove the cached values of a preference on the current node and on the
+     * other nodes.
+     * 
+     * @param uuid
+     *            the uuid of the preference
+     */
+    private void invalidatePreference(String uuid) {
+        getPreferenceCache().invalidate(uuid);
+        getInvalidationBus().publish(INVALIDATION_REGION, uuid);
+    }
+
+    /**
+     * Return true if the specified preference is a system one (the scope of
+     * the preferences is cached).
+     * 
+     * @param uuid
+     *            the uuid of the preference
+     * @return a boolean or null if the preference does not exist
+     */
+    private Boolean isSystemPreference(String uuid) {
+        return getPreferenceCache().isSystemPreference(uuid, () -> {
+            Preference preference = Preference.getPreferenceFromUuid(uuid);
+            return preference != null ? preference.systemPreference : null;
+        });
+    }
+
+    /**
+     * Load the scope of all the preferences and the values of the system
+     * preferences into the cache.<br/>
+     * The values are loaded with one query per attribute type.
+     */
+    private void preloadSystemPreferences() {
+        try {
+            List<Preference> preferences = Preference.getAllPreferences();
+            List<CustomAttributeDefinition> customAttributeDefinitions = CustomAttributeDefinition.getOrderedCustomAttributeDefinitions(Object.class);
+            Map<Long, Map<Long, ICustomAttributeValue>> values = CustomAttributeDefinition.getCustomAttributeValues(Object.class, null,
+                    customAttributeDefinitions, Collections.singletonList(1L));
+            int count = 0;
+            for (Preference preference : preferences) {
+                getPreferenceCache().putSystemPreference(preference.uuid, preference.systemPreference);
+                if (!preference.systemPreference) {
+                    continue;
+                }
+                for (CustomAttributeDefinition customAttributeDefinition : customAttributeDefinitions) {
+                    if (customAttributeDefinition.uuid.equals(preference.uuid) && values.containsKey(customAttributeDefinition.id)) {
+                        ICustomAttributeValue customAttributeValue = values.get(customAttributeDefinition.id).get(1L);
+                        if (customAttributeValue.isNotReadFromDb()) {
+                            customAttributeValue.defaults();
+                        }
+                        getPreferenceCache().put(Scope.SYSTEM, null, PreferenceSnapshot.of(customAttributeValue));
+                        count++;
+                    }
+                }
+            }
+            log.info(count + " system preferences loaded into the cache");
+        } catch (Exception e) {
+            log.error("Unable to preload the system preferences, they will be loaded on demand", e);
+        }
+    }
+
+    /**
+     * Throw an exception is the preference value is null.
      * 
      * @param uuid
      *            the uuid of the preference
-     * @param customAttributeValue
-     *            a custom attribute value
+     * @param value
+     *            a preference value (custom attribute value or snapshot)
      */
-    private void isAttributeExists(String uuid, ICustomAttributeValue customAttributeValue) {
-        if (customAttributeValue == null) {
+    private void isAttributeExists(String uuid, Object value) {
+        if (value == null) {
             throw new PreferenceManagementException(String.format("Preference %s found", uuid));
         }
     }
 
     /**
-     * Get the play cache API.
+     * Get the preference cache.
+     */
+    private PreferenceCache getPreferenceCache() {
+        return preferenceCache;
+    }
+
+    /**
+     * Get the invalidation bus.
      */
-    private CacheApi getCacheApi() {
-        return cacheApi;
+    private IInvalidationBus getInvalidationBus() {
+        return invalidationBus;
     }
 
     /**
@@ -431,4 +588,42 @@ public class DefaultPreferenceManagementPlugin implements IPreferenceManagerPlug
         return this.attachmentManagerPlugin;
     }
 
+    /**
+     * Remove the cached values of a preference when one of its values, its
+     * definition or the preference itself is modified (for instance by
+     * another component).
+     */
+    private class InvalidationListener implements IDatabaseChangeListener {
+        @Override
+        public void postInsert(Object bean) {
+            invalidateBean(bean);
+        }
+
+        @Override
+        public void postDelete(Object bean) {
+            invalidateBean(bean);
+        }
+
+        @Override
+        public void postUpdate(Object bean, Map<String, ModificationPair> modifiedAttributes) {
+            invalidateBean(bean);
+        }
+
+        private void invalidateBean(Object bean) {
+            if (bean instanceof Preference) {
+                invalidatePreference(((Preference) bean).uuid);
+            } else if (bean instanceof CustomAttributeDefinition) {
+                invalidateDefinition((CustomAttributeDefinition) bean);
+            } else if (bean instanceof ICustomAttributeValue) {
+                invalidateDefinition(((ICustomAttributeValue) bean).getDefinition());
+            }
+        }
+
+        private void invalidateDefinition(CustomAttributeDefinition customAttributeDefinition) {
+            if (customAttributeDefinition != null && (Object.class.getName().equals(customAttributeDefinition.objectType)
+                    || Principal.class.getName().equals(customAttributeDefinition.objectType))) {
+                invalidatePreference(customAttributeDefinition.uuid);
+            }
+        }
+    }
 }
@@ -20,6 +20,10 @@ package framework.services.account;
 import java.math.BigDecimal;
 import java.util.Date;
 
+import framework.services.session.IUserSessionManagerPlugin;
+import models.framework_models.account.Preference;
+import models.framework_models.common.ICustomAttributeValue;
+import play.Play;
 import play.data.Form;
 
 /**
@@ -217,4 +221,20 @@ public interface IPreferenceManagerPlugin {
      */
     public boolean isPreferenceSystem(String uuid);
 
+    /**
+     * Return the value of a preference (for the system or for the current
+     * user) to be displayed or edited.<br/>
+     * The value is read from the database for each call (it is not cached
+     * since the forms bind and modify it).
+     * 
+     * @param uuid
+     *            the preference uuid
+     * @return a custom attribute value or null if the preference does not
+     *         exist
+     */
+    public default ICustomAttributeValue getPreferenceValueForDisplay(String uuid) {
+        return Preference.getPreferenceValueFromUuid(uuid, Play.application().injector().instanceOf(IUserSessionManagerPlugin.class),
+                Play.application().injector().instanceOf(IAccountManagerPlugin.class));
+    }
+
 }
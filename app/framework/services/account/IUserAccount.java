@@ -162,4 +162,14 @@ public interface IUserAccount extends Subject, IUserAuthenticationAccount {
      * Get the selectable roles.
      */
     public List<? extends Role> getSelectableRoles();
+
+    /**
+     * Return the compiled form of the roles of the user (see
+     * {@link PermissionSet}).<br/>
+     * The default implementation compiles the roles on every call, an
+     * implementation should cache it until its roles are modified.
+     */
+    public default PermissionSet getPermissionSet() {
+        return PermissionSet.of(getRoles());
+    }
 }
@@ -0,0 +1,176 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.account;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import be.objectify.deadbolt.core.models.Role;
+import play.Logger;
+
+/**
+ * The compiled roles (see {@link Role}, actually the system permissions) of a
+ * user account.<br/>
+ * Each role name is associated with an index by a global registry (the
+ * indexes are assigned on first use and never change) and a set of roles is
+ * an immutable bitset. The role checks are thus bitwise operations:
+ * <ul>
+ * <li>{@link #hasRole(String)} : the bit of the role is set</li>
+ * <li>{@link #hasAllRoles(String[])} : same semantic as the Deadbolt analyzer
+ * (a role prefixed by "!" must not be held, an empty array is never
+ * satisfied). The arrays of role names are compiled once into a pair of
+ * required / forbidden bitsets.</li>
+ * </ul>
+ * The indexes are local to the JVM: a set must not be serialized.
+ */
+public class PermissionSet {
+    private static Logger.ALogger log = Logger.of(PermissionSet.class);
+
+    private static final int MAX_REQUIREMENTS = 10000;
+
+    private static Map<String, Integer> indexes = new ConcurrentHashMap<>();
+    private static AtomicInteger nextIndex = new AtomicInteger();
+    private static Map<List<String>, Requirement> requirements = new ConcurrentHashMap<>();
+
+    private long[] words;
+
+    private PermissionSet(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * Compile the specified roles
+     * 
+     * @param roles
+     *            a collection of roles
+     */
+    public static PermissionSet of(Collection<? extends Role> roles) {
+        long[] words = new long[0];
+        for (Role role : roles) {
+            words = set(words, getIndex(role.getName()));
+        }
+        return new PermissionSet(words);
+    }
+
+    /**
+     * Return true if the specified role is held
+     * 
+     * @param roleName
+     *            a role name
+     */
+    public boolean hasRole(String roleName) {
+        return isSet(words, getIndex(roleName));
+    }
+
+    /**
+     * Return true if all the specified roles are held (and none of the roles
+     * prefixed by "!")
+     * 
+     * @param roleNames
+     *            an array of role names
+     */
+    public boolean hasAllRoles(String[] roleNames) {
+        return getRequirement(roleNames).isSatisfiedBy(words);
+    }
+
+    /**
+     * Return the index of a role name (a new index is assigned to an unknown
+     * name)
+     */
+    private static int getIndex(String roleName) {
+        Integer index = indexes.get(roleName);
+        if (index == null) {
+            index = indexes.computeIfAbsent(roleName, name -> nextIndex.getAndIncrement());
+        }
+        return index;
+    }
+
+    /**
+     * Return the compiled form of an array of role names
+     */
+    private static Requirement getRequirement(String[] roleNames) {
+        List<String> key = Arrays.asList(roleNames);
+        Requirement requirement = requirements.get(key);
+        if (requirement == null) {
+            if (requirements.size() > MAX_REQUIREMENTS) {
+                log.warn("The compiled role requirements cache is full, it is flushed");
+                requirements.clear();
+            }
+            requirement = new Requirement(roleNames);
+            requirements.put(Arrays.asList(roleNames.clone()), requirement);
+        }
+        return requirement;
+    }
+
+    private static long[] set(long[] words, int index) {
+        int wordIndex = index >>> 6;
+        if (wordIndex >= words.length) {
+            words = Arrays.copyOf(words, wordIndex + 1);
+        }
+        words[wordIndex] |= 1L << index;
+        return words;
+    }
+
+    private static boolean isSet(long[] words, int index) {
+        int wordIndex = index >>> 6;
+        return wordIndex < words.length && (words[wordIndex] & (1L << index)) != 0;
+    }
+
+    /**
+     * An array of role names compiled into the bitsets of the roles which
+     * must be held and of the roles which must not be held
+     */
+    private static class Requirement {
+        private boolean empty;
+        private long[] required = new long[0];
+        private long[] forbidden = new long[0];
+
+        public Requirement(String[] roleNames) {
+            this.empty = roleNames.length == 0;
+            for (String roleName : roleNames) {
+                if (roleName.startsWith("!")) {
+                    forbidden = set(forbidden, getIndex(roleName.substring(1)));
+                } else {
+                    required = set(required, getIndex(roleName));
+                }
+            }
+        }
+
+        boolean isSatisfiedBy(long[] words) {
+            if (empty) {
+                return false;
+            }
+            for (int i = 0; i < required.length; i++) {
+                long word = i < words.length ? words[i] : 0;
+                if ((word & required[i]) != required[i]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < forbidden.length && i < words.length; i++) {
+                if ((words[i] & forbidden[i]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.account;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import framework.commons.IFrameworkConstants;
+import play.Logger;
+import play.cache.CacheApi;
+
+/**
+ * The two-level cache of the preference values used by the
+ * {@link DefaultPreferenceManagementPlugin}.<br/>
+ * The values are stored as immutable {@link PreferenceSnapshot} keyed by
+ * (uuid, scope, user uid):
+ * <ul>
+ * <li>in a local near-cache (no lookup in the play cache for the values read
+ * on each request)</li>
+ * <li>in the play {@link CacheApi} (shared with the other application
+ * instances if the play cache is distributed)</li>
+ * </ul>
+ * Both levels expire after the configured duration. The cache also stores the
+ * scope (system or user) of each preference so that the preference itself is
+ * not read from the database each time one of its values is requested.<br/>
+ * Only the immutable snapshots are cached: the custom attribute values (used
+ * by the templates and the forms) are loaded for each request.
+ */
+class PreferenceCache {
+    private static Logger.ALogger log = Logger.of(PreferenceCache.class);
+
+    private static final int MAX_ENTRIES = 10000;
+
+    /**
+     * The scope of a preference value
+     */
+    enum Scope {
+        SYSTEM, USER;
+    }
+
+    private CacheApi cacheApi;
+    private int cacheDurationInSeconds;
+    private Map<String, CachedEntry<PreferenceSnapshot>> nearCache = new ConcurrentHashMap<>();
+    private Map<String, Set<String>> keysByUuid = new ConcurrentHashMap<>();
+    private Map<String, Boolean> systemPreferences = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new preference cache
+     * 
+     * @param cacheApi
+     *            the play cache API
+     * @param cacheDurationInSeconds
+     *            the duration of the cached values
+     */
+    PreferenceCache(CacheApi cacheApi, int cacheDurationInSeconds) {
+        this.cacheApi = cacheApi;
+        this.cacheDurationInSeconds = cacheDurationInSeconds;
+    }
+
+    /**
+     * Return the scope of a preference (true if system).<br/>
+     * If unknown, the scope is loaded with the specified loader.
+     * 
+     * @param uuid
+     *            a preference uuid
+     * @param loader
+     *            the loader of the scope (returns null if the preference does
+     *            not exist)
+     * @return true if the preference is a system one or null if it does not
+     *         exist
+     */
+    Boolean isSystemPreference(String uuid, Supplier<Boolean> loader) {
+        Boolean systemPreference = systemPreferences.get(uuid);
+        if (systemPreference == null) {
+            systemPreference = loader.get();
+            if (systemPreference != null) {
+                systemPreferences.put(uuid, systemPreference);
+            }
+        }
+        return systemPreference;
+    }
+
+    /**
+     * Store the scope of a preference
+     * 
+     * @param uuid
+     *            a preference uuid
+     * @param systemPreference
+     *            true if the preference is a system one
+     */
+    void putSystemPreference(String uuid, boolean systemPreference) {
+        systemPreferences.put(uuid, systemPreference);
+    }
+
+    /**
+     * Return the value of a preference.<br/>
+     * The near-cache is looked up first, then the play cache. If not found,
+     * the value is loaded with the specified loader and stored in both
+     * levels.
+     * 
+     * @param uuid
+     *            a preference uuid
+     * @param scope
+     *            the scope of the preference
+     * @param userUid
+     *            the uid of the user (null for a system preference)
+     * @param loader
+     *            the loader of the value (returns null if not found)
+     * @return the value or null
+     */
+    PreferenceSnapshot get(String uuid, Scope scope, String userUid, Supplier<PreferenceSnapshot> loader) {
+        String key = getKey(uuid, scope, userUid);
+        CachedEntry<PreferenceSnapshot> cachedSnapshot = nearCache.get(key);
+        if (cachedSnapshot != null && !cachedSnapshot.isExpired()) {
+            return cachedSnapshot.value;
+        }
+        PreferenceSnapshot snapshot = cacheApi.get(IFrameworkConstants.PREFERENCE_CACHE_PREFIX + key);
+        if (snapshot == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Preference with uuid " + uuid + " not found in cache for scope " + scope + " and user " + userUid);
+            }
+            snapshot = loader.get();
+            if (snapshot == null) {
+                return null;
+            }
+            cacheApi.set(IFrameworkConstants.PREFERENCE_CACHE_PREFIX + key, snapshot, getCacheDurationInSeconds());
+        }
+        nearCache.put(registerKey(uuid, key), new CachedEntry<>(snapshot, getCacheDurationInSeconds()));
+        return snapshot;
+    }
+
+    /**
+     * Store the value of a preference in both levels
+     * 
+     * @param scope
+     *            the scope of the preference
+     * @param userUid
+     *            the uid of the user (null for a system preference)
+     * @param snapshot
+     *            the value
+     */
+    void put(Scope scope, String userUid, PreferenceSnapshot snapshot) {
+        String key = getKey(snapshot.getUuid(), scope, userUid);
+        cacheApi.set(IFrameworkConstants.PREFERENCE_CACHE_PREFIX + key, snapshot, getCacheDurationInSeconds());
+        nearCache.put(registerKey(snapshot.getUuid(), key), new CachedEntry<>(snapshot, getCacheDurationInSeconds()));
+    }
+
+    /**
+     * Remove all the cached values (system and users) and the scope of a
+     * preference
+     * 
+     * @param uuid
+     *            a preference uuid
+     */
+    void invalidate(String uuid) {
+        if (log.isDebugEnabled()) {
+            log.debug("Preference with uuid " + uuid + " removed from the cache");
+        }
+        systemPreferences.remove(uuid);
+        Set<String> keys = keysByUuid.remove(uuid);
+        if (keys != null) {
+            for (String key : keys) {
+                nearCache.remove(key);
+                cacheApi.remove(IFrameworkConstants.PREFERENCE_CACHE_PREFIX + key);
+            }
+        }
+    }
+
+    /**
+     * Remove all the cached values and scopes
+     */
+    void invalidateAll() {
+        for (String uuid : keysByUuid.keySet()) {
+            invalidate(uuid);
+        }
+        systemPreferences.clear();
+        nearCache.clear();
+    }
+
+    /**
+     * Register a key for the specified preference.<br/>
+     * If the near-cache is full, all the values are removed from both levels
+     * (the keys of the values are flushed with the near-cache, the values
+     * left in the play cache could not be invalidated anymore).
+     */
+    private String registerKey(String uuid, String key) {
+        if (keysByUuid.size() > MAX_ENTRIES || nearCache.size() > MAX_ENTRIES) {
+            log.warn("The preference near-cache is full, it is flushed");
+            for (String registeredUuid : keysByUuid.keySet()) {
+                Set<String> keys = keysByUuid.remove(registeredUuid);
+                if (keys != null) {
+                    for (String registeredKey : keys) {
+                        cacheApi.remove(IFrameworkConstants.PREFERENCE_CACHE_PREFIX + registeredKey);
+                    }
+                }
+            }
+            nearCache.clear();
+        }
+        keysByUuid.computeIfAbsent(uuid, k -> ConcurrentHashMap.newKeySet()).add(key);
+        return key;
+    }
+
+    private static String getKey(String uuid, Scope scope, String userUid) {
+        return uuid + "#" + scope.name() + (userUid != null ? "#" + userUid : "");
+    }
+
+    private int getCacheDurationInSeconds() {
+        return cacheDurationInSeconds;
+    }
+
+    /**
+     * A value in the near-cache and its expiration time
+     */
+    private static class CachedEntry<T> {
+        private T value;
+        private long expiration;
+
+        public CachedEntry(T value, int durationInSeconds) {
+            this.value = value;
+            this.expiration = System.currentTimeMillis() + durationInSeconds * 1000L;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() > expiration;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.account;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import models.framework_models.common.CustomAttributeItemOption;
+import models.framework_models.common.ICustomAttributeValue;
+import models.framework_models.common.ICustomAttributeValue.AttributeType;
+
+/**
+ * An immutable copy of the value of a preference (for the system or for a
+ * user) as cached by the {@link DefaultPreferenceManagementPlugin}.<br/>
+ * Only the values which can be read through the {@link IPreferenceManagerPlugin}
+ * are copied: string, image, integer, boolean, decimal, date and single item
+ * (as the key of the item name). The value of another type is null.
+ */
+public class PreferenceSnapshot implements Serializable {
+    private static final long serialVersionUID = 4715032879516498271L;
+
+    private String uuid;
+    private AttributeType attributeType;
+    private Object value;
+    private Map<String, String> properties;
+
+    private PreferenceSnapshot(String uuid, AttributeType attributeType, Object value, Map<String, String> properties) {
+        this.uuid = uuid;
+        this.attributeType = attributeType;
+        this.value = value;
+        this.properties = properties;
+    }
+
+    /**
+     * Create a snapshot of the value of a preference
+     * 
+     * @param customAttributeValue
+     *            the value of a preference
+     */
+    public static PreferenceSnapshot of(ICustomAttributeValue customAttributeValue) {
+        AttributeType attributeType = customAttributeValue.getAttributeType();
+        Object value = customAttributeValue.getValueAsObject();
+        switch (attributeType) {
+        case STRING:
+        case IMAGE:
+        case INTEGER:
+        case BOOLEAN:
+        case DECIMAL:
+            break;
+        case DATE:
+            value = value != null ? new Date(((Date) value).getTime()) : null;
+            break;
+        case SINGLE_ITEM:
+            value = value != null ? ((CustomAttributeItemOption) value).getNameAsKey() : null;
+            break;
+        default:
+            value = null;
+        }
+        Properties definitionProperties = customAttributeValue.getDefinition().getProperties();
+        Map<String, String> properties = new HashMap<>();
+        for (String key : definitionProperties.stringPropertyNames()) {
+            properties.put(key, definitionProperties.getProperty(key));
+        }
+        return new PreferenceSnapshot(customAttributeValue.getDefinition().uuid, attributeType, value, Collections.unmodifiableMap(properties));
+    }
+
+    /**
+     * The uuid of the preference
+     */
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * The type of the preference
+     */
+    public AttributeType getAttributeType() {
+        return attributeType;
+    }
+
+    /**
+     * The value of the preference (a date is returned as a copy)
+     */
+    public Object getValue() {
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        }
+        return value;
+    }
+
+    /**
+     * Return a property of the definition of the preference
+     * 
+     * @param propertyKey
+     *            the property key
+     * @return the property value or null
+     */
+    public String getProperty(String propertyKey) {
+        return properties.get(propertyKey);
+    }
+}
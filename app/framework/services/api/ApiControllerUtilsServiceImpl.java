@@ -24,15 +24,17 @@ import java.io.StringWriter;
 import java.lang.reflect.Field;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.eclipse.jdt.core.dom.Modifier;
@@ -46,6 +48,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.wordnik.swagger.core.util.JsonUtil;
@@ -56,6 +59,8 @@ import framework.services.api.commons.IApiConstants;
 import framework.services.api.commons.IApiObject;
 import framework.services.api.commons.JsonPropertyLink;
 import framework.services.api.server.ApiLog;
+import framework.utils.ChunksOutputStream;
+import framework.utils.PropertyAccessor;
 import play.Logger;
 import play.inject.ApplicationLifecycle;
 import play.libs.F.Promise;
@@ -64,10 +69,16 @@ import play.mvc.Http.RawBuffer;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
 import play.mvc.Result;
+import play.mvc.Results;
 
 /**
  * An utility class which gathers some methods used by the API management
- * features
+ * features.<br/>
+ * The properties to be serialized for a class (see
+ * {@link #getSerializationEntries(Class, Object)}) are analyzed once and
+ * cached. The base URL of the links is resolved once per response.<br/>
+ * A collection of more than {@link #STREAMING_THRESHOLD} elements is written
+ * to a chunked response while being serialized (instead of being buffered).
  * 
  * @author Pierre-Yves Cloux
  */
@@ -89,6 +100,38 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
     private static final String authorizedHeaders = "Content-Type," + IApiConstants.APPLICATION_KEY_HEADER + "," + IApiConstants.SIGNATURE_HEADER + ","
             + IApiConstants.TIMESTAMP_HEADER;
 
+    /**
+     * The number of elements of a collection above which the response is
+     * streamed
+     */
+    public static final int STREAMING_THRESHOLD = 1000;
+
+    /**
+     * The serialization attribute which holds the base URL of the links
+     */
+    private static final String API_BASE_PATH_ATTRIBUTE = "apiBasePath";
+
+    private static final ClassValue<List<SerializationProperty>> SERIALIZATION_PROPERTIES = new ClassValue<List<SerializationProperty>>() {
+        @Override
+        protected List<SerializationProperty> computeValue(Class<?> beanClass) {
+            return analyzeSerializationProperties(beanClass);
+        }
+    };
+
+    private static final ClassValue<Map<String, Field>> LINK_ID_FIELDS = new ClassValue<Map<String, Field>>() {
+        @Override
+        protected Map<String, Field> computeValue(Class<?> beanClass) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private static final ClassValue<String> URL_PATHS = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> objectClass) {
+            return STANDARD_API_ROOT_URI + "/" + objectClass.getSimpleName().replaceAll("(.)(\\p{Upper})", "$1_$2").toLowerCase() + "/";
+        }
+    };
+
     private ObjectMapper mapper;
     private IPreferenceManagerPlugin preferenceManagerPlugin;
 
@@ -127,12 +170,12 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
 
     @Override
     public Result getJsonSuccessCreatedResponse(Object obj, Response response) throws Exception {
-        return getJsonResponse(getIdFromLinkObject(obj, JsonPropertyLink.DEFAULT_ID_NAME), SUCCESS_API_CREATED_RESPONSE_CODE, response);
+        return getJsonResponse(getIdFromLinkObject(obj, JsonPropertyLink.DEFAULT_ID_NAME, getApiBasePath()), SUCCESS_API_CREATED_RESPONSE_CODE, response);
     }
 
     @Override
     public Result getJsonSuccessCreatedResponse(Object obj, String objId, Response response) throws Exception {
-        return getJsonResponse(getIdFromLinkObject(obj, objId), SUCCESS_API_CREATED_RESPONSE_CODE, response);
+        return getJsonResponse(getIdFromLinkObject(obj, objId, getApiBasePath()), SUCCESS_API_CREATED_RESPONSE_CODE, response);
     }
 
     @Override
@@ -142,12 +185,33 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
 
     @Override
     public Result getJsonResponse(Object obj, int code, Response response) {
+        ObjectWriter writer = getWriter();
+        response.setContentType("application/json");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        response.setHeader("Access-Control-Allow-Headers", authorizedHeaders);
+        if (obj instanceof Collection && ((Collection<?>) obj).size() > STREAMING_THRESHOLD) {
+            return Controller.status(code, new Results.ByteChunks() {
+                @Override
+                public void onReady(Results.Chunks.Out<byte[]> out) {
+                    try (ChunksOutputStream stream = new ChunksOutputStream(out)) {
+                        JsonGenerator generator = getMapper().getFactory().createGenerator(stream);
+                        writer.writeValue(generator, obj);
+                        generator.flush();
+                    } catch (Exception e) {
+                        // The status is already sent: the response is
+                        // truncated
+                        ApiLog.log.error("Error while streaming the application response", e);
+                    }
+                }
+            });
+        }
         StringWriter w = new StringWriter();
         try {
-            getMapper().writeValue(w, obj);
+            writer.writeValue(w, obj);
         } catch (Exception e) {
             String message = "Error while marshalling the application response";
             ApiLog.log.error(message, e);
+            w = new StringWriter();
             try {
                 getMapper().writeValue(w, new ApiError(message));
             } catch (Exception exp) {
@@ -155,9 +219,6 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
             }
             code = ERROR_API_RESPONSE_CODE;
         }
-        response.setContentType("application/json");
-        response.setHeader("Access-Control-Allow-Origin", "*");
-        response.setHeader("Access-Control-Allow-Headers", authorizedHeaders);
         return Controller.status(code, w.toString());
     }
 
@@ -165,13 +226,21 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
     public String convertAsJsonString(Object obj) {
         StringWriter w = new StringWriter();
         try {
-            getMapper().writeValue(w, obj);
+            getWriter().writeValue(w, obj);
         } catch (Exception e) {
             log.error("Cannot serialize the specified object", e);
         }
         return w.toString();
     }
 
+    /**
+     * Return a writer for a response: the base URL of the links is resolved
+     * once for the whole response
+     */
+    private ObjectWriter getWriter() {
+        return getMapper().writer().withAttribute(API_BASE_PATH_ATTRIBUTE, getApiBasePath());
+    }
+
     /**
      * Return the mapper to be used for JSON serialization/deserialization
      *
@@ -187,17 +256,21 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
                 @Override
                 public void serialize(Model model, JsonGenerator jsonGen, SerializerProvider serProv) throws IOException, JsonProcessingException {
                     if (model != null) {
+                        String apiBasePath = (String) serProv.getAttribute(API_BASE_PATH_ATTRIBUTE);
                         jsonGen.writeStartObject();
-                        Map<String, ApiControllerUtilsServiceImpl.SerializationEntry> entries = getSerializationEntries(model.getClass(), model);
-                        for (ApiControllerUtilsServiceImpl.SerializationEntry entry : entries.values()) {
-                            if (entry.isLink) {
+                        for (SerializationProperty property : SERIALIZATION_PROPERTIES.get(model.getClass())) {
+                            Object propertyValue = property.getValue(model);
+                            if (property.isLink) {
                                 try {
-                                    jsonGen.writeObjectField(entry.propertyName, getIdFromLinkObject(entry.propertyValue, entry.linkfield));
+                                    if (apiBasePath == null) {
+                                        apiBasePath = getApiBasePath();
+                                    }
+                                    jsonGen.writeObjectField(property.propertyName, getIdFromLinkObject(propertyValue, property.linkfield, apiBasePath));
                                 } catch (Exception e) {
-                                    throw new IOException("Unable to serialize the Linked property " + entry.propertyName, e);
+                                    throw new IOException("Unable to serialize the Linked property " + property.propertyName, e);
                                 }
                             } else {
-                                jsonGen.writeObjectField(entry.propertyName, entry.propertyValue);
+                                jsonGen.writeObjectField(property.propertyName, propertyValue);
                             }
                         }
                         jsonGen.writeEndObject();
@@ -218,10 +291,12 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
      *            the bean
      * @param idFieldName
      *            the name of field annoted with {@link JsonPropertyLink}
+     * @param apiBasePath
+     *            the base URL of the links (see {@link #getApiBasePath()})
      * @return an object to be serialized (either a String or a list of String)
      * @throws Exception
      */
-    private Object getIdFromLinkObject(Object bean, String idFieldName) throws Exception {
+    private Object getIdFromLinkObject(Object bean, String idFieldName, String apiBasePath) throws Exception {
         if (bean != null) {
             if (bean instanceof List) {
                 List<ApiLink> apiLinks = new ArrayList<ApiLink>(); // new object
@@ -235,7 +310,7 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
                         ApiLink apiLink = new ApiLink();
                         // Get the id field from bean
                         try {
-                            apiLink.id = FieldUtils.readField(o, idFieldName);
+                            apiLink.id = readLinkId(o, idFieldName);
                         } catch (Exception e) {
                             throw new IllegalArgumentException(
                                     "No field " + idFieldName + " on an element of a List of of type " + (o != null ? o.getClass() : o), e);
@@ -244,8 +319,7 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
                         apiLink.name = model.getApiName();
                         // Generate URL link if id is not null
                         if (apiLink.id != null) {
-                            apiLink.link = String.format(getUrlPatternFromObjectClass(o.getClass(), getPreferenceManagerPlugin()), apiLink.id);
-                            apiLink.link = apiLink.link.replace('_', '-');
+                            apiLink.link = getLink(o.getClass(), apiLink.id, apiBasePath);
                         }
 
                         apiLinks.add(apiLink); // add the occurence to the list
@@ -262,7 +336,7 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
                 ApiLink apiLink = new ApiLink();
                 // Get the id field from bean
                 try {
-                    apiLink.id = FieldUtils.readField(bean, idFieldName);
+                    apiLink.id = readLinkId(bean, idFieldName);
                 } catch (Exception e) {
                     throw new IllegalArgumentException("No field " + idFieldName + " on object of type " + bean.getClass(), e);
                 }
@@ -272,8 +346,7 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
 
                 // Generate URL link if id is not null
                 if (apiLink.id != null) {
-                    apiLink.link = String.format(getUrlPatternFromObjectClass(bean.getClass(), getPreferenceManagerPlugin()), apiLink.id);
-                    apiLink.link = apiLink.link.replace('_', '-');
+                    apiLink.link = getLink(bean.getClass(), apiLink.id, apiBasePath);
                 }
                 return apiLink;
             } else {
@@ -283,6 +356,23 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
         return null;
     }
 
+    /**
+     * Read the public id field of a linked object (the fields are looked up
+     * once per class)
+     * 
+     * @param bean
+     *            a linked object
+     * @param idFieldName
+     *            the name of the id field
+     */
+    private static Object readLinkId(Object bean, String idFieldName) throws IllegalAccessException {
+        Field field = LINK_ID_FIELDS.get(bean.getClass()).computeIfAbsent(idFieldName, name -> FieldUtils.getField(bean.getClass(), name, false));
+        if (field == null) {
+            throw new IllegalArgumentException("Cannot locate field " + idFieldName + " on " + bean.getClass());
+        }
+        return field.get(bean);
+    }
+
     /**
      * Analyze the structure of an object to identify the values which can be
      * serialized
@@ -295,76 +385,108 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
      * @return a map of description objects
      */
     public static Map<String, SerializationEntry> getSerializationEntries(Class<?> beanClass, Object bean) {
-        Map<String, SerializationEntry> entries = new HashMap<String, SerializationEntry>();
+        Map<String, SerializationEntry> entries = new LinkedHashMap<String, SerializationEntry>();
+        for (SerializationProperty property : SERIALIZATION_PROPERTIES.get(beanClass)) {
+            SerializationEntry entry = new SerializationEntry();
+            entry.propertyName = property.propertyName;
+            entry.propertyType = property.propertyType;
+            entry.isLink = property.isLink;
+            entry.linkfield = property.linkfield;
+            if (bean != null) {
+                entry.propertyValue = property.getValue(bean);
+            }
+            entries.put(entry.propertyName, entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Analyze the structure of a class to identify the properties which can
+     * be serialized (annotated getters and public fields)
+     * 
+     * @param beanClass
+     *            a class
+     */
+    private static List<SerializationProperty> analyzeSerializationProperties(Class<?> beanClass) {
+        Map<String, SerializationProperty> properties = new HashMap<String, SerializationProperty>();
         try {
             // Look for annotated getters
             for (PropertyDescriptor propertyDescriptor : Introspector.getBeanInfo(beanClass).getPropertyDescriptors()) {
                 if (propertyDescriptor.getReadMethod() != null && (propertyDescriptor.getReadMethod().isAnnotationPresent(JsonProperty.class)
                         || propertyDescriptor.getReadMethod().isAnnotationPresent(JsonPropertyLink.class))) {
-                    SerializationEntry entry = new SerializationEntry();
-                    entry.propertyName = propertyDescriptor.getReadMethod().getName();
+                    SerializationProperty property = new SerializationProperty();
+                    property.propertyName = propertyDescriptor.getReadMethod().getName();
                     if (propertyDescriptor.getReadMethod().isAnnotationPresent(JsonProperty.class)
                             && !StringUtils.isBlank(propertyDescriptor.getReadMethod().getAnnotation(JsonProperty.class).value())) {
-                        entry.propertyName = propertyDescriptor.getReadMethod().getAnnotation(JsonProperty.class).value();
+                        property.propertyName = propertyDescriptor.getReadMethod().getAnnotation(JsonProperty.class).value();
                     }
                     if (propertyDescriptor.getReadMethod().isAnnotationPresent(JsonPropertyLink.class)) {
                         if (!StringUtils.isBlank(propertyDescriptor.getReadMethod().getAnnotation(JsonPropertyLink.class).value())) {
-                            entry.propertyName = propertyDescriptor.getReadMethod().getAnnotation(JsonPropertyLink.class).value();
+                            property.propertyName = propertyDescriptor.getReadMethod().getAnnotation(JsonPropertyLink.class).value();
                         }
-                        entry.isLink = true;
-                        entry.linkfield = propertyDescriptor.getReadMethod().getAnnotation(JsonPropertyLink.class).linkField();
-                    }
-                    entry.propertyType = propertyDescriptor.getPropertyType();
-                    if (bean != null) {
-                        entry.propertyValue = PropertyUtils.getProperty(bean, propertyDescriptor.getName());
+                        property.isLink = true;
+                        property.linkfield = propertyDescriptor.getReadMethod().getAnnotation(JsonPropertyLink.class).linkField();
                     }
-                    entries.put(entry.propertyName, entry);
+                    property.propertyType = propertyDescriptor.getPropertyType();
+                    property.accessor = PropertyAccessor.of(beanClass, propertyDescriptor.getName());
+                    properties.put(property.propertyName, property);
                 }
             }
             // Look for annotated public properties
             for (final Field field : beanClass.getDeclaredFields()) {
                 if (Modifier.isPublic(field.getModifiers())
                         && (field.isAnnotationPresent(JsonProperty.class) || field.isAnnotationPresent(JsonPropertyLink.class))) {
-                    SerializationEntry entry = new SerializationEntry();
-                    entry.propertyName = field.getName();
+                    SerializationProperty property = new SerializationProperty();
+                    property.propertyName = field.getName();
                     if (field.isAnnotationPresent(JsonProperty.class) && !StringUtils.isBlank(field.getAnnotation(JsonProperty.class).value())) {
-                        entry.propertyName = field.getAnnotation(JsonProperty.class).value();
+                        property.propertyName = field.getAnnotation(JsonProperty.class).value();
                     }
                     if (field.isAnnotationPresent(JsonPropertyLink.class)) {
                         if (!StringUtils.isBlank(field.getAnnotation(JsonPropertyLink.class).value())) {
-                            entry.propertyName = field.getAnnotation(JsonPropertyLink.class).value();
+                            property.propertyName = field.getAnnotation(JsonPropertyLink.class).value();
                         }
-                        entry.isLink = true;
-                        entry.linkfield = field.getAnnotation(JsonPropertyLink.class).linkField();
+                        property.isLink = true;
+                        property.linkfield = field.getAnnotation(JsonPropertyLink.class).linkField();
                     }
-                    entry.propertyType = field.getType();
-                    if (bean != null) {
-                        entry.propertyValue = field.get(bean);
-                    }
-                    entries.put(entry.propertyName, entry);
+                    property.propertyType = field.getType();
+                    property.field = field;
+                    properties.put(property.propertyName, property);
                 }
             }
         } catch (Exception e) {
             throw new RuntimeException("Unable to parse the object " + beanClass, e);
         }
-        return entries;
+        return Collections.unmodifiableList(new ArrayList<SerializationProperty>(properties.values()));
     }
 
     /**
-     * Return the URL pattern to be applied to the specified class.<br/>
+     * Return the link to an object.<br/>
      * By default a standard pattern is applied based on the name of the class.
      * <br/>
      * The method checks if an exception to the standard pattern is not declared
-     * before returning the URL pattern.
+     * before returning the link.
      * 
-     * @return
+     * @param objectClass
+     *            the class of the object
+     * @param id
+     *            the id of the object
+     * @param apiBasePath
+     *            the base URL of the links
      */
-    private String getUrlPatternFromObjectClass(Class<?> objectClass, IPreferenceManagerPlugin preferenceManagerPlugin) {
-        if (!urlFormatsExceptions.containsKey(objectClass)) {
-            return preferenceManagerPlugin.getPreferenceElseConfigurationValue(IFrameworkConstants.SWAGGER_API_BASEPATH_PREFERENCE, "swagger.api.basepath")
-                    + STANDARD_API_ROOT_URI + "/" + objectClass.getSimpleName().replaceAll("(.)(\\p{Upper})", "$1_$2").toLowerCase() + "/%s";
+    private String getLink(Class<?> objectClass, Object id, String apiBasePath) {
+        String urlFormatException = urlFormatsExceptions.get(objectClass);
+        if (urlFormatException != null) {
+            return String.format(urlFormatException, id).replace('_', '-');
         }
-        return urlFormatsExceptions.get(objectClass);
+        return (apiBasePath + URL_PATHS.get(objectClass) + id).replace('_', '-');
+    }
+
+    /**
+     * Return the base URL of the links to the API objects
+     */
+    private String getApiBasePath() {
+        return getPreferenceManagerPlugin().getPreferenceElseConfigurationValue(IFrameworkConstants.SWAGGER_API_BASEPATH_PREFERENCE,
+                "swagger.api.basepath");
     }
 
     private IPreferenceManagerPlugin getPreferenceManagerPlugin() {
@@ -389,4 +511,30 @@ public class ApiControllerUtilsServiceImpl implements IApiControllerUtilsService
             return "SerializationEntry [propertyName=" + propertyName + ", propertyType=" + propertyType + "]";
         }
     }
+
+    /**
+     * A property to be serialized for a class (immutable once analyzed)
+     */
+    private static class SerializationProperty {
+        private String propertyName;
+        private Class<?> propertyType;
+        private boolean isLink;
+        private String linkfield;
+        private PropertyAccessor accessor;
+        private Field field;
+
+        /**
+         * Read the value of the property
+         * 
+         * @param bean
+         *            an instance of the analyzed class
+         */
+        Object getValue(Object bean) {
+            try {
+                return accessor != null ? accessor.get(bean) : field.get(bean);
+            } catch (Exception e) {
+                throw new RuntimeException("Unable to parse the object " + bean.getClass(), e);
+            }
+        }
+    }
 }
@@ -17,8 +17,11 @@
  */
 package framework.services.api.client;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import framework.services.api.commons.ApiMethod;
@@ -47,6 +50,30 @@ public interface ISignatureGenerator {
      */
     public abstract byte[] getRequestSignature(ApiMethod method, String url, byte[] body, long timeStamp) throws ApiSignatureException;
 
+    /**
+     * Create a signature for a request which body is read from a stream (the
+     * body is hashed incrementally).<br/>
+     * The default implementation reads the whole body and calls
+     * {@link #getRequestSignature(ApiMethod, String, byte[], long)}.
+     * 
+     * @param method
+     *            the API method
+     * @param url
+     *            the URL called
+     * @param body
+     *            the request body (not closed)
+     * @param timeStamp
+     *            a timestamp
+     * @return the signature
+     */
+    public default byte[] getRequestSignature(ApiMethod method, String url, InputStream body, long timeStamp) throws ApiSignatureException {
+        try {
+            return getRequestSignature(method, url, body != null ? IOUtils.toByteArray(body) : null, timeStamp);
+        } catch (IOException e) {
+            throw new ApiSignatureException(e);
+        }
+    }
+
     /**
      * Create a signature for a request.<br/>
      * The timestamp is automatically computed applying any specified time
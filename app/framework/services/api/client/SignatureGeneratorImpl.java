@@ -17,10 +17,12 @@
  */
 package framework.services.api.client;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.tuple.Pair;
@@ -65,10 +67,19 @@ import framework.services.api.commons.ApiSignatureException;
  * BizDock time API. This is the only API for which a timestamp not aligned with
  * the BizDock time will be accepted.
  * 
+ * <p>
+ * The digest is computed incrementally (the body is never converted into a
+ * String) with a {@link MessageDigest} reused by each thread.
+ * </p>
+ * 
  * @author Pierre-Yves Cloux
  *
  */
 public class SignatureGeneratorImpl implements ISignatureGenerator {
+    private static final int BUFFER_SIZE = 8192;
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
     private long timeCorrection = 0;
     private String sharedSecret;
     private String applicationKey;
@@ -113,26 +124,42 @@ public class SignatureGeneratorImpl implements ISignatureGenerator {
      * .commons.ApiMethod, java.lang.String, byte[], long)
      */
     public byte[] getRequestSignature(ApiMethod method, String url, byte[] body, long timeStamp) throws ApiSignatureException {
-        StringBuffer cipheredPart = new StringBuffer();
-        cipheredPart.append(getSharedSecret()).append('+');
-        cipheredPart.append(method.name()).append('+');
-        cipheredPart.append(url).append('+');
+        MessageDigest md = getMessageDigest();
+        updateWithHeader(md, method, url);
         if (method.equals(ApiMethod.POST) || method.equals(ApiMethod.PUT)) {
-            cipheredPart.append(new String(body)).append('+');
+            if (body != null) {
+                md.update(body);
+            }
+            md.update((byte) '+');
         }
-        cipheredPart.append(timeStamp);
-        try {
-            MessageDigest md = MessageDigest.getInstance(getHashAlgorithm());
-            byte[] digest = md.digest(cipheredPart.toString().getBytes());
-            ByteArrayOutputStream signature = new ByteArrayOutputStream();
-            signature.write(("#" + getProtocolVersion() + "#").getBytes());
-            signature.write(Base64.encodeBase64(digest, false, true));
-            return signature.toByteArray();
-        } catch (NoSuchAlgorithmException e) {
-            throw new ApiSignatureException(e);
-        } catch (IOException e) {
-            throw new ApiSignatureException(e);
+        return getSignature(md, timeStamp);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * signature.client.ISignatureGeneratorImpl#getRequestSignature(signature
+     * .commons.ApiMethod, java.lang.String, java.io.InputStream, long)
+     */
+    public byte[] getRequestSignature(ApiMethod method, String url, InputStream body, long timeStamp) throws ApiSignatureException {
+        MessageDigest md = getMessageDigest();
+        updateWithHeader(md, method, url);
+        if (method.equals(ApiMethod.POST) || method.equals(ApiMethod.PUT)) {
+            if (body != null) {
+                byte[] buffer = BUFFERS.get();
+                try {
+                    int length;
+                    while ((length = body.read(buffer)) != -1) {
+                        md.update(buffer, 0, length);
+                    }
+                } catch (IOException e) {
+                    throw new ApiSignatureException(e);
+                }
+            }
+            md.update((byte) '+');
         }
+        return getSignature(md, timeStamp);
     }
 
     /*
@@ -147,6 +174,46 @@ public class SignatureGeneratorImpl implements ISignatureGenerator {
         return Pair.of(getRequestSignature(method, url, body, timeStamp), timeStamp);
     }
 
+    /**
+     * Return the digest of the current thread for the hash algorithm (reset)
+     */
+    private MessageDigest getMessageDigest() throws ApiSignatureException {
+        Map<String, MessageDigest> digests = DIGESTS.get();
+        MessageDigest md = digests.get(getHashAlgorithm());
+        if (md == null) {
+            try {
+                md = MessageDigest.getInstance(getHashAlgorithm());
+            } catch (NoSuchAlgorithmException e) {
+                throw new ApiSignatureException(e);
+            }
+            digests.put(getHashAlgorithm(), md);
+        }
+        md.reset();
+        return md;
+    }
+
+    /**
+     * Add the part of the signed content which precedes the body:
+     * SHARED_SECRET+REQUEST_METHOD+REQUEST_URL+
+     */
+    private void updateWithHeader(MessageDigest md, ApiMethod method, String url) {
+        md.update((getSharedSecret() + '+' + method.name() + '+' + url + '+').getBytes());
+    }
+
+    /**
+     * Add the timestamp and return the signature (#PROTOCOL_VERSION# followed
+     * by the base64 encoded digest)
+     */
+    private byte[] getSignature(MessageDigest md, long timeStamp) {
+        md.update(String.valueOf(timeStamp).getBytes());
+        byte[] digest = Base64.encodeBase64(md.digest(), false, true);
+        byte[] version = ("#" + getProtocolVersion() + "#").getBytes();
+        byte[] signature = new byte[version.length + digest.length];
+        System.arraycopy(version, 0, signature, 0, version.length);
+        System.arraycopy(digest, 0, signature, version.length, digest.length);
+        return signature;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -0,0 +1,48 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.api.commons;
+
+/**
+ * The exception thrown when an API call exceeds a rate limit or a daily quota
+ * of the calling application
+ */
+public class ApiRateLimitException extends ApiSignatureException {
+    private static final long serialVersionUID = 4385326081916523340L;
+
+    private long retryAfter;
+
+    /**
+     * Create a new exception
+     * 
+     * @param message
+     *            the message
+     * @param retryAfter
+     *            the number of seconds after which the call can be retried
+     */
+    public ApiRateLimitException(String message, long retryAfter) {
+        super(message, Reason.RATE_LIMITED);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * The number of seconds after which the call can be retried
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -25,9 +25,23 @@ package framework.services.api.commons;
 public class ApiSignatureException extends Exception {
     private static final long serialVersionUID = -1045038905575563074L;
 
+    /**
+     * The reason why a signature is rejected
+     */
+    public enum Reason {
+        UNKNOWN_APPLICATION, TIME_DIFFERENCE, INVALID_SIGNATURE, REPLAY, RATE_LIMITED, OTHER;
+    }
+
+    private Reason reason = Reason.OTHER;
+
     public ApiSignatureException() {
     }
 
+    public ApiSignatureException(String message, Reason reason) {
+        super(message);
+        this.reason = reason;
+    }
+
     public ApiSignatureException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
         super(message, cause, enableSuppression, writableStackTrace);
     }
@@ -43,4 +57,11 @@ public class ApiSignatureException extends Exception {
     public ApiSignatureException(Throwable cause) {
         super(cause);
     }
+
+    /**
+     * The reason why the signature is rejected
+     */
+    public Reason getReason() {
+        return reason;
+    }
 }
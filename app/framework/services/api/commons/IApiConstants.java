@@ -30,6 +30,7 @@ public interface IApiConstants {
     public static final String ERROR_API_RESPONSE_NAME = "error";
     public static final int SUCCESS_API_RESPONSE_CODE = HttpURLConnection.HTTP_OK; // HTTP200
     public static final int SUCCESS_API_CREATED_RESPONSE_CODE = HttpURLConnection.HTTP_CREATED; // HTTP201
+    public static final int TOO_MANY_REQUESTS_API_RESPONSE_CODE = 429;
     public static final String SUCCESS_API_RESPONSE_NAME = "success";
     public static final String STANDARD_API_ROOT_URI = "/api/core";
 
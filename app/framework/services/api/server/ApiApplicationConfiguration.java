@@ -21,6 +21,7 @@ import java.io.BufferedReader;
 import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -33,11 +34,15 @@ import framework.services.api.commons.ApiSignatureException;
 
 /**
  * The configuration of an application.<br/>
+ * The API authorizations may also define some rate limits (see
+ * {@link ApiRateLimit}). The state of a limit is kept when the authorizations
+ * are modified as long as its definition is unchanged.
  * 
  * @author Pierre-Yves Cloux
  */
 public class ApiApplicationConfiguration implements IApiApplicationConfiguration {
     private static Pattern pattern = Pattern.compile(ApiSignatureServiceImpl.AUTHORIZATION_PARSING_REGEXPR);
+    private static Pattern rateLimitPattern = Pattern.compile(ApiSignatureServiceImpl.RATE_LIMIT_PARSING_REGEXPR);
 
     private String applicationName;
     private String description;
@@ -45,7 +50,8 @@ public class ApiApplicationConfiguration implements IApiApplicationConfiguration
     private boolean isDisplayed;
     private String apiAuthorizationsAsString;
     private ISignatureGenerator signatureGenerator;
-    private List<Pair<ApiMethod, Pattern>> allowedApiPatterns;
+    private volatile ApiAuthorizationMatcher authorizationMatcher;
+    private volatile List<ApiRateLimit> rateLimits = Collections.emptyList();
 
     public ApiApplicationConfiguration(String applicationName, String description, boolean testable, boolean isDisplayed,
             ISignatureGenerator signatureGenerator, String apiAuthorizationsAsString) throws ApiSignatureException {
@@ -69,14 +75,8 @@ public class ApiApplicationConfiguration implements IApiApplicationConfiguration
     public void checkUrl(ApiMethod method, String url) throws ApiSignatureException {
         try {
             URL urlStructure = new URL(url);
-            String path = urlStructure.getPath();
-            for (Pair<ApiMethod, Pattern> allowedApiPattern : allowedApiPatterns) {
-                if (allowedApiPattern.getLeft().equals(method)) {
-                    Matcher matcher = allowedApiPattern.getRight().matcher(path);
-                    if (matcher.matches()) {
-                        return;
-                    }
-                }
+            if (authorizationMatcher.matches(method, urlStructure.getPath())) {
+                return;
             }
         } catch (Exception e) {
             throw new ApiSignatureException("Unauthorized URL", e);
@@ -139,6 +139,13 @@ public class ApiApplicationConfiguration implements IApiApplicationConfiguration
         return apiAuthorizationsAsString;
     }
 
+    /**
+     * Return the rate limits of the application
+     */
+    List<ApiRateLimit> getRateLimits() {
+        return rateLimits;
+    }
+
     void setApiAuthorizations(String apiAuthorizationsAsString) throws ApiSignatureException {
         this.apiAuthorizationsAsString = apiAuthorizationsAsString;
         fillAllowedApiPatterns(true);
@@ -146,18 +153,29 @@ public class ApiApplicationConfiguration implements IApiApplicationConfiguration
 
     /**
      * Set the api authorizations by parsing the String representation of the
-     * authorizations
+     * authorizations.<br/>
+     * The authorizations are compiled into a new
+     * {@link ApiAuthorizationMatcher} which replaces the previous one.
      * 
      * @param throwException
      *            true if an exception must be thrown in case of error
      * @throws ApiSignatureException
      */
     private void fillAllowedApiPatterns(boolean throwException) throws ApiSignatureException {
-        allowedApiPatterns = new ArrayList<Pair<ApiMethod, Pattern>>();
-        for (Pair<ApiMethod, String> apiAuthorization : parseAuthorization(getApplicationName(), getApiAuthorizationsAsString(), pattern, throwException)) {
-            Pattern pattern = Pattern.compile(apiAuthorization.getRight());
-            allowedApiPatterns.add(Pair.of(apiAuthorization.getLeft(), pattern));
+        List<ApiRateLimit> parsedRateLimits = new ArrayList<ApiRateLimit>();
+        authorizationMatcher = new ApiAuthorizationMatcher(
+                parseAuthorization(getApplicationName(), getApiAuthorizationsAsString(), pattern, parsedRateLimits, throwException));
+        List<ApiRateLimit> newRateLimits = new ArrayList<ApiRateLimit>();
+        for (ApiRateLimit parsedRateLimit : parsedRateLimits) {
+            ApiRateLimit rateLimit = parsedRateLimit;
+            for (ApiRateLimit previousRateLimit : getRateLimits()) {
+                if (previousRateLimit.isSameDefinition(parsedRateLimit)) {
+                    rateLimit = previousRateLimit;
+                }
+            }
+            newRateLimits.add(rateLimit);
         }
+        rateLimits = Collections.unmodifiableList(newRateLimits);
     }
 
     /**
@@ -169,12 +187,14 @@ public class ApiApplicationConfiguration implements IApiApplicationConfiguration
      *            the API authorization statements
      * @param pattern
      *            a parsing regexpr pattern
+     * @param rateLimits
+     *            the list to which the parsed rate limits are added
      * @param throwException
      *            true if an exception must be thrown in case of error
      * @return
      */
-    private List<Pair<ApiMethod, String>> parseAuthorization(String applicationName, String apiAuthorization, Pattern pattern, boolean throwException)
-            throws ApiSignatureException {
+    private List<Pair<ApiMethod, String>> parseAuthorization(String applicationName, String apiAuthorization, Pattern pattern,
+            List<ApiRateLimit> rateLimits, boolean throwException) throws ApiSignatureException {
         List<Pair<ApiMethod, String>> parsedApiAuthorization = new ArrayList<Pair<ApiMethod, String>>();
         try {
             BufferedReader reader = new BufferedReader(new StringReader(apiAuthorization));
@@ -182,10 +202,14 @@ public class ApiApplicationConfiguration implements IApiApplicationConfiguration
             while ((lineRead = reader.readLine()) != null) {
                 if (!lineRead.startsWith(ApiSignatureServiceImpl.IGNORE_LINE_CHARACTER)) {
                     Matcher m = pattern.matcher(lineRead);
+                    Matcher rateLimitMatcher = rateLimitPattern.matcher(lineRead);
                     if (m.matches()) {
                         String method = m.group(1);
                         String apiAuthorizationRegExpr = m.group(3);
                         parsedApiAuthorization.add(Pair.of(ApiMethod.valueOf(method), apiAuthorizationRegExpr));
+                    } else if (rateLimitMatcher.matches() && Integer.parseInt(rateLimitMatcher.group(2)) > 0) {
+                        rateLimits.add(new ApiRateLimit(rateLimitMatcher.group(1), Integer.parseInt(rateLimitMatcher.group(2)),
+                                Long.parseLong(rateLimitMatcher.group(3)), rateLimitMatcher.group(4)));
                     } else {
                         String message = "Error while parsing the authorization statement " + lineRead + " from the API registration " + applicationName;
                         ApiSignatureServiceImpl.log.info(message);
@@ -65,7 +65,11 @@ public @interface ApiAuthentication {
     public boolean allowTimeDifference() default false;
 
     /**
-     * Additional checks.
+     * Additional checks.<br/>
+     * If the class is annotated with @Singleton (javax.inject or Guice), the
+     * check is created once by the injector and shared by all the concurrent
+     * calls: it must then be thread-safe. Otherwise a new instance is created
+     * (with the default constructor) for each call.
      */
     Class<? extends IApiAuthenticationAdditionalCheck> additionalCheck() default IApiAuthenticationAdditionalCheck.class;
 }
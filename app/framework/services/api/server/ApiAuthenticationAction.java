@@ -17,13 +17,13 @@
  */
 package framework.services.api.server;
 
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.Arrays;
 
 import javax.inject.Inject;
 
-import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import framework.commons.IFrameworkConstants;
@@ -35,8 +35,11 @@ import framework.services.account.IUserAccount;
 import framework.services.api.ApiError;
 import framework.services.api.IApiControllerUtilsService;
 import framework.services.api.commons.ApiMethod;
+import framework.services.api.commons.ApiRateLimitException;
+import framework.services.api.commons.ApiSignatureException;
+import framework.services.api.commons.ApiSignatureException.Reason;
 import framework.services.api.commons.IApiConstants;
-import play.Configuration;
+import framework.services.api.server.ApiAuthenticationPlanCache.AuthenticationPlan;
 import play.libs.F.Function0;
 import play.libs.F.Promise;
 import play.mvc.Action;
@@ -77,6 +80,16 @@ import play.mvc.Result;
  * <u>NB</u>: The each API can be configured with additional permissions using
  * the {@link ApiAuthentication} annotation.
  * </p>
+ * <p>
+ * The calls authenticated with an application key are finally checked against
+ * the rate limits of the application: a call which exceeds a limit is
+ * rejected with a 429 status and a "Retry-After" header.
+ * </p>
+ * <p>
+ * The content of each {@link ApiAuthentication} annotation (flags, required
+ * permissions and additional check) is resolved the first time it is used and
+ * cached (see {@link ApiAuthenticationPlanCache}).
+ * </p>
  * 
  * @author Pierre-Yves Cloux
  */
@@ -86,20 +99,22 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
     @Inject
     private IApiSignatureService apiSignatureService;
     @Inject
-    private Configuration applicationConfiguration;
-    @Inject
     private IApiControllerUtilsService apiControllerUtilsService;
     @Inject
     private ISecurityService securityService;
+    @Inject
+    private ApiAuthenticationPlanCache planCache;
 
     public ApiAuthenticationAction() {
     }
 
     @Override
     public Promise<Result> call(Context context) throws Throwable {
+        AuthenticationPlan plan = getPlanCache().get(configuration);
+        IApiAuthenticationAdditionalCheck additionalCheckInstance = plan.getAdditionalCheck();
 
-        if (!this.configuration.additionalCheck().isInterface()) {
-            Pair<Boolean, String> additionalCheck = this.configuration.additionalCheck().newInstance().before();
+        if (additionalCheckInstance != null) {
+            Pair<Boolean, String> additionalCheck = additionalCheckInstance.before();
             if (!additionalCheck.getLeft()) {
                 return returnUnauthorized(additionalCheck.getRight(), context.response());
             }
@@ -127,7 +142,7 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
             }
 
             // Authentication by signature
-            Pair<Boolean, String> result = authenticationBySignature(context, signatureHeader, timeStampHeader, applicationKeyHeader);
+            Pair<Boolean, String> result = authenticationBySignature(context, plan, signatureHeader, timeStampHeader, applicationKeyHeader);
             if (!result.getLeft()) {
                 return returnUnauthorized(result.getRight(), context.response());
             }
@@ -167,7 +182,7 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
                     }
                     return returnUnauthorized("Not a testable application", context.response());
                 }
-                Pair<Boolean, String> result = authenticateByAuthorizations(context, false);
+                Pair<Boolean, String> result = authenticateByAuthorizations(context, plan, false);
                 if (!result.getLeft()) {
                     ApiLog.log.debug("Application is testable but [" + result.getRight() + "] (please remember that test mode is"
                             + " ONLY allowed from the API browser)");
@@ -192,7 +207,7 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
 
             // Test if the user has the default permission but also the API
             // required permissions
-            Pair<Boolean, String> result = authenticateByAuthorizations(context, true);
+            Pair<Boolean, String> result = authenticateByAuthorizations(context, plan, true);
             if (!result.getLeft()) {
                 ApiLog.log.debug(result.getRight());
                 return returnUnauthorized(result.getRight(), context.response());
@@ -200,7 +215,7 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
         }
 
         // if the action is for the root key only
-        if (this.configuration.onlyRootKey()) {
+        if (plan.isOnlyRootKey()) {
 
             // if the authentication headers are given
             if (isAllAuthenticationHeaderPresent(signatureHeader, timeStampHeader, applicationKeyHeader)
@@ -217,13 +232,22 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
             }
         }
 
-        if (!this.configuration.additionalCheck().isInterface()) {
-            Pair<Boolean, String> additionalCheck = this.configuration.additionalCheck().newInstance().after();
+        if (additionalCheckInstance != null) {
+            Pair<Boolean, String> additionalCheck = additionalCheckInstance.after();
             if (!additionalCheck.getLeft()) {
                 return returnUnauthorized(additionalCheck.getRight(), context.response());
             }
         }
 
+        if (applicationKeyHeader != null) {
+            try {
+                getApiSignatureService().checkApiRateLimits(applicationKeyHeader, context.request().path());
+            } catch (ApiRateLimitException e) {
+                ApiLog.log.warn("API call " + context.request().uri() + " from [" + applicationKeyHeader + "] rejected : " + e.getMessage());
+                return returnTooManyRequests(e.getMessage(), e.getRetryAfter(), context.response());
+            }
+        }
+
         return delegate.call(context);
     }
 
@@ -268,12 +292,15 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
      * badRequest must be returned
      * 
      * @param context
+     * @param plan
+     *            the authentication plan of the called action
      * @param signatureHeader
      * @param timeStampHeader
      * @param applicationKeyHeader
      * @return true if everything went well
      */
-    private Pair<Boolean, String> authenticationBySignature(Context context, String signatureHeader, String timeStampHeader, String applicationKeyHeader) {
+    private Pair<Boolean, String> authenticationBySignature(Context context, AuthenticationPlan plan, String signatureHeader, String timeStampHeader,
+            String applicationKeyHeader) {
         long timeStampAsLong;
         try {
             timeStampAsLong = Long.valueOf(timeStampHeader);
@@ -293,9 +320,24 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
                     return Pair.of(false, message);
                 }
                 body = rawBuffer.asBytes();
+                if (body == null) {
+                    // Large body buffered on disk: the signature is computed
+                    // while streaming the file
+                    try (InputStream bodyStream = new FileInputStream(rawBuffer.asFile())) {
+                        getApiSignatureService().checkApiSignature(applicationKeyHeader, signatureHeader.getBytes(), method, context.request().uri(),
+                                bodyStream, timeStampAsLong, plan.isAllowTimeDifference());
+                    }
+                    logCall(context.request().method().toUpperCase(), context.request().uri(), applicationKeyHeader);
+                    return Pair.of(true, null);
+                }
             }
             getApiSignatureService().checkApiSignature(applicationKeyHeader, signatureHeader.getBytes(), method, context.request().uri(), body, timeStampAsLong,
-                    configuration.allowTimeDifference());
+                    plan.isAllowTimeDifference());
+        } catch (ApiSignatureException e) {
+            String message = e.getReason().equals(Reason.REPLAY) ? "Unauthorized API call : the request has already been received (replay)"
+                    : "Unauthorized API call : invalid signature or not enough rights";
+            ApiLog.log.error(message, e);
+            return Pair.of(false, message);
         } catch (Exception e) {
             String message = "Unauthorized API call : invalid signature or not enough rights";
             ApiLog.log.error(message, e);
@@ -310,6 +352,8 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
      * its authorizations)
      * 
      * @param context
+     * @param plan
+     *            the authentication plan of the called action
      * @param addApiRequiredAuthorizations
      *            if true the authorizations associated to the API (using the
      *            {@link ApiAuthentication} annotations are required (and
@@ -318,22 +362,23 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
      *         issued
      * @throws AccountManagementException
      */
-    private Pair<Boolean, String> authenticateByAuthorizations(Context context, boolean addApiRequiredAuthorizations) throws AccountManagementException {
+    private Pair<Boolean, String> authenticateByAuthorizations(Context context, AuthenticationPlan plan, boolean addApiRequiredAuthorizations)
+            throws AccountManagementException {
         IUserAccount userAccount = getSecurityService().getCurrentUser();
         if (userAccount == null) {
             return Pair.of(false, "No valid user session");
         }
 
         // If the default permission is null this is not normal
-        if (StringUtils.isBlank(getDefaultPermission())) {
+        if (plan.getDefaultRoles() == null) {
             String message = "Unauthorized API call : no default permission set, please contact your administrator";
             ApiLog.log.error(message);
             return Pair.of(false, message);
         }
 
-        String[] roles = new String[] { getDefaultPermission() };
-        if (addApiRequiredAuthorizations && configuration.permissions() != null && configuration.permissions().length != 0) {
-            roles = ArrayUtils.add(configuration.permissions(), getDefaultPermission());
+        String[] roles = plan.getDefaultRoles();
+        if (addApiRequiredAuthorizations && plan.getApiRoles() != null) {
+            roles = plan.getApiRoles();
             if (ApiLog.log.isDebugEnabled()) {
                 ApiLog.log.debug("Adding permissions to default : " + Arrays.toString(roles));
             }
@@ -397,7 +442,9 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
      *            the application which is calling (or the user name)
      */
     private void logCall(String method, String request, String application) {
-        ApiLog.log.info(String.format("API call for [%s %s] from [%s]", method, request, application));
+        if (ApiLog.log.isInfoEnabled()) {
+            ApiLog.log.info("API call for [" + method + " " + request + "] from [" + application + "]");
+        }
     }
 
     private Promise<Result> returnUnauthorized(final String message, final Response response) {
@@ -409,8 +456,15 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
         });
     }
 
-    private String getDefaultPermission() {
-        return getApplicationConfiguration().getString("maf.api.default.permission");
+    private Promise<Result> returnTooManyRequests(final String message, final long retryAfter, final Response response) {
+        return Promise.promise(new Function0<Result>() {
+            @Override
+            public Result apply() throws Throwable {
+                response.setHeader("Retry-After", String.valueOf(retryAfter));
+                return getApiControllerUtilsService().getJsonErrorResponse(new ApiError(IApiConstants.TOO_MANY_REQUESTS_API_RESPONSE_CODE, message),
+                        response);
+            }
+        });
     }
 
     private IPreferenceManagerPlugin getPreferenceManagerPlugin() {
@@ -421,10 +475,6 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
         return apiSignatureService;
     }
 
-    private Configuration getApplicationConfiguration() {
-        return applicationConfiguration;
-    }
-
     private IApiControllerUtilsService getApiControllerUtilsService() {
         return apiControllerUtilsService;
     }
@@ -432,4 +482,8 @@ public class ApiAuthenticationAction extends Action<ApiAuthentication> {
     private ISecurityService getSecurityService() {
         return securityService;
     }
+
+    private ApiAuthenticationPlanCache getPlanCache() {
+        return planCache;
+    }
 }
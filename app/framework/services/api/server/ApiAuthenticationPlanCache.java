@@ -0,0 +1,154 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.api.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import play.Configuration;
+import play.inject.Injector;
+
+/**
+ * The resolved content of the {@link ApiAuthentication} annotations used by
+ * the {@link ApiAuthenticationAction}.<br/>
+ * The content of an annotation (flags, required permissions and additional
+ * check) is resolved the first time it is used. The cache is a singleton of
+ * the application injector: it is dropped with the application (for instance
+ * on a reload in development mode).
+ */
+@Singleton
+public class ApiAuthenticationPlanCache {
+    private Map<ApiAuthentication, AuthenticationPlan> plans = new ConcurrentHashMap<>();
+    private Injector injector;
+    private Configuration configuration;
+
+    /**
+     * Create a new ApiAuthenticationPlanCache
+     * 
+     * @param injector
+     *            the application injector
+     * @param configuration
+     *            the play application configuration
+     */
+    @Inject
+    public ApiAuthenticationPlanCache(Injector injector, Configuration configuration) {
+        this.injector = injector;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Return the resolved content of an annotation
+     * 
+     * @param annotation
+     *            the annotation of the called action
+     */
+    AuthenticationPlan get(ApiAuthentication annotation) {
+        return plans.computeIfAbsent(annotation, this::resolve);
+    }
+
+    /**
+     * Resolve an annotation.<br/>
+     * An additional check class annotated with {@link Singleton} is provided
+     * by the injector once and shared by all the calls. Another one is
+     * instantiated for each call.
+     * 
+     * @param annotation
+     *            the annotation
+     */
+    private AuthenticationPlan resolve(ApiAuthentication annotation) {
+        AuthenticationPlan plan = new AuthenticationPlan();
+        plan.onlyRootKey = annotation.onlyRootKey();
+        plan.allowTimeDifference = annotation.allowTimeDifference();
+        Class<? extends IApiAuthenticationAdditionalCheck> additionalCheckClass = annotation.additionalCheck();
+        if (!additionalCheckClass.isInterface()) {
+            plan.additionalCheckClass = additionalCheckClass;
+            if (additionalCheckClass.isAnnotationPresent(Singleton.class)
+                    || additionalCheckClass.isAnnotationPresent(com.google.inject.Singleton.class)) {
+                plan.sharedAdditionalCheck = getInjector().instanceOf(additionalCheckClass);
+            }
+        }
+        String defaultPermission = getConfiguration().getString("maf.api.default.permission");
+        if (!StringUtils.isBlank(defaultPermission)) {
+            plan.defaultRoles = new String[] { defaultPermission };
+            if (annotation.permissions() != null && annotation.permissions().length != 0) {
+                plan.apiRoles = ArrayUtils.add(annotation.permissions(), defaultPermission);
+            }
+        }
+        return plan;
+    }
+
+    private Injector getInjector() {
+        return injector;
+    }
+
+    private Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * The resolved content of an {@link ApiAuthentication} annotation
+     */
+    static class AuthenticationPlan {
+        private boolean onlyRootKey;
+        private boolean allowTimeDifference;
+        private Class<? extends IApiAuthenticationAdditionalCheck> additionalCheckClass;
+        private IApiAuthenticationAdditionalCheck sharedAdditionalCheck;
+        private String[] defaultRoles;
+        private String[] apiRoles;
+
+        boolean isOnlyRootKey() {
+            return onlyRootKey;
+        }
+
+        boolean isAllowTimeDifference() {
+            return allowTimeDifference;
+        }
+
+        /**
+         * Return the additional check to be used for a call (null if none)
+         */
+        IApiAuthenticationAdditionalCheck getAdditionalCheck() throws ReflectiveOperationException {
+            if (sharedAdditionalCheck != null || additionalCheckClass == null) {
+                return sharedAdditionalCheck;
+            }
+            return additionalCheckClass.newInstance();
+        }
+
+        /**
+         * The permissions required for any API (null if the default
+         * permission is not configured)
+         */
+        String[] getDefaultRoles() {
+            return defaultRoles;
+        }
+
+        /**
+         * The permissions required for the API including the default one
+         * (null if the API does not require any other permission)
+         */
+        String[] getApiRoles() {
+            return apiRoles;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.api.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import framework.services.api.commons.ApiMethod;
+
+/**
+ * The compiled API authorizations of an application (see
+ * {@link ApiApplicationConfiguration#checkUrl(ApiMethod, String)}).<br/>
+ * The authorizations are indexed by HTTP method:
+ * <ul>
+ * <li>an authorization without any regular expression character (example:
+ * "/api/ping") is stored in a set of exact paths</li>
+ * <li>the other ones are stored in a trie of the path segments: an
+ * authorization is attached to the node of the longest literal prefix of its
+ * regular expression (example: "/api/core/" for "/api/core/portfolio/.*") and
+ * its {@link Pattern} is evaluated only if the path starts with this
+ * prefix</li>
+ * </ul>
+ * An authorization with an alternative ("|") or without any literal prefix is
+ * attached to the root of the trie (and thus always evaluated).<br/>
+ * An instance is immutable: it is rebuilt when the authorizations of the
+ * application are modified.
+ */
+class ApiAuthorizationMatcher {
+    private Map<ApiMethod, MethodIndex> indexes = new EnumMap<>(ApiMethod.class);
+
+    /**
+     * Compile the specified authorizations
+     * 
+     * @param apiAuthorizations
+     *            a list of HTTP method and path regular expression
+     */
+    ApiAuthorizationMatcher(List<Pair<ApiMethod, String>> apiAuthorizations) {
+        for (Pair<ApiMethod, String> apiAuthorization : apiAuthorizations) {
+            MethodIndex index = indexes.get(apiAuthorization.getLeft());
+            if (index == null) {
+                index = new MethodIndex();
+                indexes.put(apiAuthorization.getLeft(), index);
+            }
+            index.add(apiAuthorization.getRight());
+        }
+    }
+
+    /**
+     * Return true if the specified path is authorized for the specified HTTP
+     * method
+     * 
+     * @param method
+     *            an HTTP method
+     * @param path
+     *            the path of an URL
+     */
+    boolean matches(ApiMethod method, String path) {
+        MethodIndex index = indexes.get(method);
+        return index != null && index.matches(path);
+    }
+
+    /**
+     * Return true if the character can be part of a literal path segment
+     */
+    private static boolean isLiteral(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-' || c == '~' || c == '%';
+    }
+
+    /**
+     * Return true if the character is a regular expression quantifier
+     */
+    private static boolean isQuantifier(char c) {
+        return c == '?' || c == '*' || c == '+' || c == '{';
+    }
+
+    /**
+     * The authorizations of an HTTP method
+     */
+    private static class MethodIndex {
+        private Set<String> exactPaths = new HashSet<>();
+        private Node root = new Node();
+
+        /**
+         * Add an authorization
+         * 
+         * @param regExpr
+         *            a path regular expression
+         */
+        void add(String regExpr) {
+            if (regExpr.indexOf('|') != -1) {
+                root.add(regExpr);
+                return;
+            }
+            boolean literal = true;
+            Node node = root;
+            int segmentStart = 0;
+            for (int i = 0; i < regExpr.length(); i++) {
+                char c = regExpr.charAt(i);
+                if (c == '/') {
+                    if (i + 1 < regExpr.length() && isQuantifier(regExpr.charAt(i + 1))) {
+                        literal = false;
+                        break;
+                    }
+                    node = node.getOrCreateChild(regExpr.substring(segmentStart, i));
+                    segmentStart = i + 1;
+                } else if (!isLiteral(c)) {
+                    literal = false;
+                    break;
+                }
+            }
+            if (literal) {
+                exactPaths.add(regExpr);
+            } else {
+                node.add(regExpr);
+            }
+        }
+
+        /**
+         * Return true if the path matches one of the authorizations
+         * 
+         * @param path
+         *            the path of an URL
+         */
+        boolean matches(String path) {
+            if (exactPaths.contains(path)) {
+                return true;
+            }
+            Node node = root;
+            int segmentStart = 0;
+            while (node != null) {
+                if (node.matches(path)) {
+                    return true;
+                }
+                int segmentEnd = path.indexOf('/', segmentStart);
+                if (segmentEnd == -1) {
+                    return false;
+                }
+                node = node.getChild(path.substring(segmentStart, segmentEnd));
+                segmentStart = segmentEnd + 1;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A node of the trie of the path segments.<br/>
+     * The patterns of a node are the authorizations whose literal prefix is
+     * the path of the node.
+     */
+    private static class Node {
+        private Map<String, Node> children = Collections.emptyMap();
+        private List<Pattern> patterns = Collections.emptyList();
+
+        Node getChild(String segment) {
+            return children.get(segment);
+        }
+
+        Node getOrCreateChild(String segment) {
+            if (children.isEmpty()) {
+                children = new HashMap<>();
+            }
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        void add(String regExpr) {
+            if (patterns.isEmpty()) {
+                patterns = new ArrayList<>();
+            }
+            patterns.add(Pattern.compile(regExpr));
+        }
+
+        boolean matches(String path) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(path).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.api.server;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * A rate limit of an application for a group of endpoints.<br/>
+ * It is defined in the API authorizations of the application by a line:
+ * 
+ * <pre>
+ * LIMIT &lt;group&gt; &lt;requests per minute&gt; &lt;daily quota&gt; &lt;path regular expression&gt;
+ * </pre>
+ * 
+ * Example: "LIMIT core 600 100000 /api/core/.*" (a daily quota of 0 means no
+ * quota).<br/>
+ * The rate is enforced by a token bucket of one minute of requests, refilled
+ * continuously. The bucket is implemented as a "theoretical arrival time"
+ * updated by compare-and-set (no lock). The daily quota is a counter packed
+ * with its day in a single atomic value.<br/>
+ * A request is consumed from the bucket and from the daily quota only if both
+ * accept it, and from all the limits of a path only if all of them accept it
+ * (see {@link #tryAcquireAll(List)}).
+ */
+class ApiRateLimit {
+    private static final int COUNT_BITS = 40;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private String group;
+    private int requestsPerMinute;
+    private long dailyQuota;
+    private Pattern pathPattern;
+    private long emissionInterval;
+    private long burstTolerance;
+    private LongSupplier nanoClock;
+    private AtomicLong theoreticalArrivalTime;
+    private AtomicLong dailyCount = new AtomicLong();
+
+    /**
+     * Create a new rate limit
+     * 
+     * @param group
+     *            the name of the group of endpoints
+     * @param requestsPerMinute
+     *            the number of requests allowed per minute (must be positive)
+     * @param dailyQuota
+     *            the number of requests allowed per day (0 for no quota)
+     * @param pathRegExpr
+     *            the regular expression of the paths of the group
+     */
+    ApiRateLimit(String group, int requestsPerMinute, long dailyQuota, String pathRegExpr) {
+        this(group, requestsPerMinute, dailyQuota, pathRegExpr, System::nanoTime);
+    }
+
+    /**
+     * Create a new rate limit with the specified clock (for the tests)
+     * 
+     * @param group
+     *            the name of the group of endpoints
+     * @param requestsPerMinute
+     *            the number of requests allowed per minute (must be positive)
+     * @param dailyQuota
+     *            the number of requests allowed per day (0 for no quota)
+     * @param pathRegExpr
+     *            the regular expression of the paths of the group
+     * @param nanoClock
+     *            the clock of the bucket (as {@link System#nanoTime()})
+     */
+    ApiRateLimit(String group, int requestsPerMinute, long dailyQuota, String pathRegExpr, LongSupplier nanoClock) {
+        this.group = group;
+        this.requestsPerMinute = requestsPerMinute;
+        this.dailyQuota = dailyQuota;
+        this.pathPattern = Pattern.compile(pathRegExpr);
+        this.emissionInterval = TimeUnit.MINUTES.toNanos(1) / requestsPerMinute;
+        this.burstTolerance = this.emissionInterval * (requestsPerMinute - 1);
+        this.nanoClock = nanoClock;
+        this.theoreticalArrivalTime = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Consume a request from all the specified limits, or from none of them
+     * if one of them rejects it.<br/>
+     * All the limits are checked first. The request is then consumed from
+     * each limit: if a limit has been exhausted by a concurrent request in the
+     * meantime, the request is given back to the limits from which it has
+     * already been consumed.
+     * 
+     * @param rateLimits
+     *            the limits of the requested path
+     * @return null if the request is accepted, else the limit which rejects
+     *         the request and the number of seconds after which it can be
+     *         retried
+     */
+    static Pair<ApiRateLimit, Long> tryAcquireAll(List<ApiRateLimit> rateLimits) {
+        for (ApiRateLimit rateLimit : rateLimits) {
+            long retryAfter = rateLimit.check();
+            if (retryAfter != 0) {
+                return Pair.of(rateLimit, retryAfter);
+            }
+        }
+        List<ApiRateLimit> acquiredRateLimits = new ArrayList<>();
+        for (ApiRateLimit rateLimit : rateLimits) {
+            long retryAfter = rateLimit.tryAcquire();
+            if (retryAfter != 0) {
+                for (ApiRateLimit acquiredRateLimit : acquiredRateLimits) {
+                    acquiredRateLimit.release();
+                }
+                return Pair.of(rateLimit, retryAfter);
+            }
+            acquiredRateLimits.add(rateLimit);
+        }
+        return null;
+    }
+
+    /**
+     * Return true if the path belongs to the group of this limit
+     * 
+     * @param path
+     *            the path of an URL
+     */
+    boolean matches(String path) {
+        return pathPattern.matcher(path).matches();
+    }
+
+    /**
+     * Check if a request would be accepted (nothing is consumed)
+     * 
+     * @return 0 if the request would be accepted, else the number of seconds
+     *         after which the request can be retried
+     */
+    long check() {
+        long now = nanoClock.getAsLong();
+        long tat = theoreticalArrivalTime.get();
+        long wait = (tat - now < 0 ? now : tat) - now - burstTolerance;
+        if (wait > 0) {
+            return toRetryAfter(wait);
+        }
+        return checkDailyQuota();
+    }
+
+    /**
+     * Try to consume a request from the bucket and the daily quota (nothing
+     * is consumed if the request is rejected)
+     * 
+     * @return 0 if the request is accepted, else the number of seconds after
+     *         which the request can be retried
+     */
+    long tryAcquire() {
+        long quotaRetryAfter = checkDailyQuota();
+        if (quotaRetryAfter != 0) {
+            return quotaRetryAfter;
+        }
+        long now = nanoClock.getAsLong();
+        while (true) {
+            long tat = theoreticalArrivalTime.get();
+            long start = tat - now < 0 ? now : tat;
+            long wait = start - now - burstTolerance;
+            if (wait > 0) {
+                return toRetryAfter(wait);
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, start + emissionInterval)) {
+                break;
+            }
+        }
+        if (dailyQuota == 0) {
+            return 0;
+        }
+        long day = LocalDate.now().toEpochDay();
+        while (true) {
+            long state = dailyCount.get();
+            long count = (state >>> COUNT_BITS) == day ? state & COUNT_MASK : 0;
+            if (count >= dailyQuota) {
+                // Exhausted by a concurrent request since the check
+                theoreticalArrivalTime.addAndGet(-emissionInterval);
+                return Math.max(1, checkDailyQuota());
+            }
+            if (dailyCount.compareAndSet(state, (day << COUNT_BITS) | (count + 1))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Give back a request consumed by {@link #tryAcquire()} (the request has
+     * been rejected by another limit)
+     */
+    void release() {
+        theoreticalArrivalTime.addAndGet(-emissionInterval);
+        if (dailyQuota == 0) {
+            return;
+        }
+        long day = LocalDate.now().toEpochDay();
+        while (true) {
+            long state = dailyCount.get();
+            if ((state >>> COUNT_BITS) != day || (state & COUNT_MASK) == 0 || dailyCount.compareAndSet(state, state - 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Return true if the specified limit has the same definition as this one
+     */
+    boolean isSameDefinition(ApiRateLimit other) {
+        return getGroup().equals(other.getGroup()) && requestsPerMinute == other.requestsPerMinute && dailyQuota == other.dailyQuota
+                && pathPattern.pattern().equals(other.pathPattern.pattern());
+    }
+
+    String getGroup() {
+        return group;
+    }
+
+    /**
+     * Return 0 if the daily quota is not exhausted, else the number of
+     * seconds until the next day
+     */
+    private long checkDailyQuota() {
+        if (dailyQuota == 0) {
+            return 0;
+        }
+        LocalDate today = LocalDate.now();
+        long state = dailyCount.get();
+        long count = (state >>> COUNT_BITS) == today.toEpochDay() ? state & COUNT_MASK : 0;
+        if (count < dailyQuota) {
+            return 0;
+        }
+        long tomorrow = today.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        return Math.max(1, tomorrow - System.currentTimeMillis() / 1000);
+    }
+
+    private static long toRetryAfter(long waitInNanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitInNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+}
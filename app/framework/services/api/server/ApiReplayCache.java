@@ -0,0 +1,123 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.api.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import framework.services.api.commons.ApiSignatureException;
+import framework.services.api.commons.ApiSignatureException.Reason;
+
+/**
+ * The signed API requests already received during their validity window.<br/>
+ * A request is identified by its application key, its timestamp and its
+ * signature: a second request with the same identity is a replay. An entry
+ * expires when its timestamp is no more accepted (the time difference check
+ * then rejects the request).<br/>
+ * The cache is bounded: the expired entries are purged periodically. If the
+ * cache is still full, the new requests are rejected (with a warning) until
+ * some entries expire: forgetting the registered requests would allow them to
+ * be replayed.
+ */
+class ApiReplayCache {
+    private static final int PURGE_PERIOD = 1000;
+
+    private int maxSize;
+    private Map<String, Long> entries = new ConcurrentHashMap<>();
+    private AtomicInteger registrations = new AtomicInteger();
+    private volatile long nextExpiration = 0;
+
+    /**
+     * Create a new cache
+     * 
+     * @param maxSize
+     *            the maximum number of requests in the cache
+     */
+    ApiReplayCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Register a request
+     * 
+     * @param applicationKey
+     *            the application key of the request
+     * @param timeStamp
+     *            the timestamp of the request
+     * @param signature
+     *            the signature of the request
+     * @param expiration
+     *            the time after which the timestamp of the request is no more
+     *            accepted
+     * @return false if the request has already been registered (replay)
+     * @throws ApiSignatureException
+     *             if the cache is full of requests which have not expired
+     */
+    boolean register(String applicationKey, long timeStamp, byte[] signature, long expiration) throws ApiSignatureException {
+        long now = System.currentTimeMillis();
+        boolean full = entries.size() >= getMaxSize();
+        // When full, the cache is not scanned again before an entry expires
+        if ((full && now >= nextExpiration) || registrations.incrementAndGet() % PURGE_PERIOD == 0) {
+            purge(now);
+            full = entries.size() >= getMaxSize();
+        }
+        if (full) {
+            ApiLog.log.warn("The API replay cache is full (" + getMaxSize() + " requests), the request is rejected");
+            throw new ApiSignatureException("The API replay cache is full, the request is rejected", Reason.OTHER);
+        }
+        String key = applicationKey + "#" + timeStamp + "#" + new String(signature, StandardCharsets.US_ASCII);
+        Long previousExpiration = entries.putIfAbsent(key, expiration);
+        if (previousExpiration == null) {
+            return true;
+        }
+        return previousExpiration < now && entries.replace(key, previousExpiration, expiration);
+    }
+
+    /**
+     * Remove the expired entries and compute the next expiration time
+     * 
+     * @param now
+     *            the current time
+     */
+    private synchronized void purge(long now) {
+        long next = Long.MAX_VALUE;
+        for (Iterator<Long> iterator = entries.values().iterator(); iterator.hasNext();) {
+            long entryExpiration = iterator.next();
+            if (entryExpiration < now) {
+                iterator.remove();
+            } else if (entryExpiration < next) {
+                next = entryExpiration;
+            }
+        }
+        nextExpiration = next;
+    }
+
+    /**
+     * Return the number of requests in the cache (for the tests)
+     */
+    int size() {
+        return entries.size();
+    }
+
+    private int getMaxSize() {
+        return maxSize;
+    }
+}
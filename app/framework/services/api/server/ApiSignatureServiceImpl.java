@@ -17,12 +17,16 @@
  */
 package framework.services.api.server;
 
+import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -30,10 +34,13 @@ import javax.inject.Singleton;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 
 import framework.services.api.client.SignatureGeneratorImpl;
 import framework.services.api.commons.ApiMethod;
+import framework.services.api.commons.ApiRateLimitException;
 import framework.services.api.commons.ApiSignatureException;
+import framework.services.api.commons.ApiSignatureException.Reason;
 import framework.services.database.IDatabaseDependencyService;
 import models.framework_models.api.ApiRegistration;
 import play.Configuration;
@@ -53,6 +60,10 @@ import play.libs.F.Promise;
  * SHA-512)</li>
  * <li>protocolVersion : the version of the signature protocol</li>
  * <li>publicUrl : the URL through which the APIs are exposed</li>
+ * <li>replayCacheSize : the maximum number of signed requests remembered to
+ * detect the replays (see {@link ApiReplayCache})</li>
+ * <li>usageFlushInterval : how often (in s) the usage counters of the rate
+ * limited calls are written to the database (see {@link ApiUsageRecorder})</li>
  * </ul>
  * 
  * <p>
@@ -67,18 +78,23 @@ public class ApiSignatureServiceImpl implements IApiSignatureService {
     static Logger.ALogger log = Logger.of(ApiSignatureServiceImpl.class);
     static final String AUTHORIZATION_PARSING_REGEXPR = "(" + ApiMethod.DELETE.name() + "|" + ApiMethod.POST.name() + "|" + ApiMethod.PUT.name() + "|"
             + ApiMethod.GET.name() + ")(\\s*)(.*)";
+    static final String RATE_LIMIT_PARSING_REGEXPR = "LIMIT\\s+(\\S+)\\s+(\\d{1,9})\\s+(\\d{1,18})\\s+(.*)";
 
     private int keyLength;
     private long allowedTimeDifference;
     private String hashAlgorithm;
     private int protocolVersion;
     private String publicUrl;
+    private ApiReplayCache replayCache;
+    private volatile ApiUsageRecorder usageRecorder;
+    private ScheduledExecutorService usageFlusher;
     private Map<String, ApiApplicationConfiguration> applicationConfigRegistry = Collections
             .synchronizedMap(new HashMap<String, ApiApplicationConfiguration>());
 
     public enum Config {
         KEYS_LENGTH("maf.api.keys.length"), ALLOWED_TIME_DIFF("maf.api.allowed.timediff"), HASH_ALGORITHM("maf.api.hash.algoritm"), PROTOCOL_VERSION(
-                "maf.api.protocol.version"), PUBLIC_URL("maf.public.url");
+                "maf.api.protocol.version"), PUBLIC_URL("maf.public.url"), REPLAY_CACHE_SIZE("maf.api.replay.cache.size"), USAGE_FLUSH_INTERVAL(
+                        "maf.api.usage.flush.interval");
         private String configurationKey;
 
         private Config(String configurationKey) {
@@ -90,6 +106,9 @@ public class ApiSignatureServiceImpl implements IApiSignatureService {
         }
     }
 
+    private static final int DEFAULT_REPLAY_CACHE_SIZE = 100000;
+    private static final int DEFAULT_USAGE_FLUSH_INTERVAL = 60;
+
     /**
      * Create a new ApiSignatureServiceImpl
      * 
@@ -109,9 +128,19 @@ public class ApiSignatureServiceImpl implements IApiSignatureService {
         this.hashAlgorithm = configuration.getString(Config.HASH_ALGORITHM.getConfigurationKey());
         this.protocolVersion = configuration.getInt(Config.PROTOCOL_VERSION.getConfigurationKey());
         this.publicUrl = configuration.getString(Config.PUBLIC_URL.getConfigurationKey());
+        this.replayCache = new ApiReplayCache(configuration.getInt(Config.REPLAY_CACHE_SIZE.getConfigurationKey(), DEFAULT_REPLAY_CACHE_SIZE));
         init();
+        int usageFlushInterval = configuration.getInt(Config.USAGE_FLUSH_INTERVAL.getConfigurationKey(), DEFAULT_USAGE_FLUSH_INTERVAL);
+        this.usageFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "api-usage-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.usageFlusher.scheduleWithFixedDelay(this::flushUsages, usageFlushInterval, usageFlushInterval, TimeUnit.SECONDS);
         lifecycle.addStopHook(() -> {
             log.info("SERVICE>>> ApiSignatureServiceImpl stopping...");
+            this.usageFlusher.shutdownNow();
+            flushUsages();
             log.info("SERVICE>>> ApiSignatureServiceImpl stopped");
             return Promise.pure(null);
         });
@@ -306,31 +335,67 @@ public class ApiSignatureServiceImpl implements IApiSignatureService {
     @Override
     public void checkApiSignature(String applicationKey, byte[] signature, ApiMethod method, String path, byte[] body, long timeStamp,
             boolean allowTimeDifference) throws ApiSignatureException {
-        IApiApplicationConfiguration apiAppConfig = getApplicationConfigRegistry().get(applicationKey);
         if (ApiLog.log.isDebugEnabled()) {
             ApiLog.log.debug("Checking signature for application key [" + applicationKey + "]" + " with method [" + method + "] and path [" + path
                     + "] and timestamp [" + timeStamp + "] " + "and time difference is " + (allowTimeDifference ? "Allowed" : "Not allowed")
                     + (body == null ? "" : ((new String(body)) + "=" + ArrayUtils.toString(body))));
         }
+        IApiApplicationConfiguration apiAppConfig = checkApplicationAndTimeStamp(applicationKey, method, path, timeStamp, allowTimeDifference);
+        byte[] comparisonSignature = apiAppConfig.getSignatureGenerator().getRequestSignature(method, getPublicUrl() + path, body, timeStamp);
+        checkSignature(applicationKey, signature, comparisonSignature, timeStamp, allowTimeDifference);
+    }
+
+    @Override
+    public void checkApiSignature(String applicationKey, byte[] signature, ApiMethod method, String path, InputStream body, long timeStamp,
+            boolean allowTimeDifference) throws ApiSignatureException {
+        if (ApiLog.log.isDebugEnabled()) {
+            ApiLog.log.debug("Checking signature for application key [" + applicationKey + "]" + " with method [" + method + "] and path [" + path
+                    + "] and timestamp [" + timeStamp + "] " + "and time difference is " + (allowTimeDifference ? "Allowed" : "Not allowed")
+                    + " (streamed body)");
+        }
+        IApiApplicationConfiguration apiAppConfig = checkApplicationAndTimeStamp(applicationKey, method, path, timeStamp, allowTimeDifference);
+        byte[] comparisonSignature = apiAppConfig.getSignatureGenerator().getRequestSignature(method, getPublicUrl() + path, body, timeStamp);
+        checkSignature(applicationKey, signature, comparisonSignature, timeStamp, allowTimeDifference);
+    }
+
+    /**
+     * Check the part of the request which does not depend on the body: the
+     * application key, the timestamp and the URL authorization.
+     * 
+     * @return the configuration of the application
+     */
+    private IApiApplicationConfiguration checkApplicationAndTimeStamp(String applicationKey, ApiMethod method, String path, long timeStamp,
+            boolean allowTimeDifference) throws ApiSignatureException {
+        IApiApplicationConfiguration apiAppConfig = getApplicationConfigRegistry().get(applicationKey);
         if (apiAppConfig == null) {
-            throw new ApiSignatureException("Unknown application key");
+            throw new ApiSignatureException("Unknown application key", Reason.UNKNOWN_APPLICATION);
         }
         if (!allowTimeDifference) {
             if (Math.abs(System.currentTimeMillis() - timeStamp) > getAllowedTimeDifference()) {
-                throw new ApiSignatureException("Time difference is exceeding the allowance, this may be a replay");
+                throw new ApiSignatureException("Time difference is exceeding the allowance, this may be a replay", Reason.TIME_DIFFERENCE);
             }
         }
-        String url = getPublicUrl() + path;
-        apiAppConfig.checkUrl(method, url);
-        byte[] comparisonSignature = apiAppConfig.getSignatureGenerator().getRequestSignature(method, url, body, timeStamp);
+        apiAppConfig.checkUrl(method, getPublicUrl() + path);
+        return apiAppConfig;
+    }
 
+    /**
+     * Compare the received signature with the expected one (in constant
+     * time) and check that the request is not a replay (only if the time
+     * difference is checked, the replay cache is bounded by the time window).
+     */
+    private void checkSignature(String applicationKey, byte[] signature, byte[] comparisonSignature, long timeStamp, boolean allowTimeDifference)
+            throws ApiSignatureException {
         if (ApiLog.log.isDebugEnabled()) {
             ApiLog.log.debug("Received signature is : " + new String(signature));
             ApiLog.log.debug("Expected signature is : " + new String(comparisonSignature));
         }
 
-        if (!Arrays.equals(comparisonSignature, signature)) {
-            throw new ApiSignatureException("Invalid signature");
+        if (!MessageDigest.isEqual(comparisonSignature, signature)) {
+            throw new ApiSignatureException("Invalid signature", Reason.INVALID_SIGNATURE);
+        }
+        if (!allowTimeDifference && !getReplayCache().register(applicationKey, timeStamp, signature, timeStamp + getAllowedTimeDifference())) {
+            throw new ApiSignatureException("The request has already been received, this is a replay", Reason.REPLAY);
         }
     }
 
@@ -344,6 +409,65 @@ public class ApiSignatureServiceImpl implements IApiSignatureService {
         apiAppConfig.checkUrl(method, url);
     }
 
+    @Override
+    public void checkApiRateLimits(String applicationKey, String path) throws ApiRateLimitException {
+        ApiApplicationConfiguration apiAppConfig = getApplicationConfigRegistry().get(applicationKey);
+        if (apiAppConfig == null) {
+            return;
+        }
+        List<ApiRateLimit> rateLimits = new ArrayList<>();
+        for (ApiRateLimit rateLimit : apiAppConfig.getRateLimits()) {
+            if (rateLimit.matches(path)) {
+                rateLimits.add(rateLimit);
+            }
+        }
+        if (rateLimits.isEmpty()) {
+            return;
+        }
+        Pair<ApiRateLimit, Long> rejection = ApiRateLimit.tryAcquireAll(rateLimits);
+        if (rejection != null) {
+            String group = rejection.getLeft().getGroup();
+            getUsageRecorder().record(apiAppConfig.getApplicationName(), group, false);
+            throw new ApiRateLimitException("Rate limit or daily quota exceeded for the group " + group, rejection.getRight());
+        }
+        for (ApiRateLimit rateLimit : rateLimits) {
+            getUsageRecorder().record(apiAppConfig.getApplicationName(), rateLimit.getGroup(), true);
+        }
+    }
+
+    @Override
+    public List<ApiUsage> getApiUsages(String applicationName) {
+        if (usageRecorder == null && !hasRateLimits()) {
+            return new ArrayList<ApiUsage>();
+        }
+        return getUsageRecorder().getUsages(applicationName);
+    }
+
+    /**
+     * Return true if a rate limit is configured for at least one application
+     */
+    private boolean hasRateLimits() {
+        synchronized (getApplicationConfigRegistry()) {
+            for (ApiApplicationConfiguration apiAppConfig : getApplicationConfigRegistry().values()) {
+                if (!apiAppConfig.getRateLimits().isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write the usage counters to the database (nothing to do if no rate
+     * limited call has been received)
+     */
+    private void flushUsages() {
+        ApiUsageRecorder recorder = usageRecorder;
+        if (recorder != null) {
+            recorder.flush();
+        }
+    }
+
     /**
      * Generate an application key.<br/>
      * This method checks if the application key is not already existing since
@@ -390,4 +514,27 @@ public class ApiSignatureServiceImpl implements IApiSignatureService {
     private String getPublicUrl() {
         return publicUrl;
     }
+
+    private ApiReplayCache getReplayCache() {
+        return replayCache;
+    }
+
+    /**
+     * Return the usage recorder, created on the first use (i.e. when a rate
+     * limit is configured) so that the api_usage table is not required
+     * otherwise
+     */
+    private ApiUsageRecorder getUsageRecorder() {
+        ApiUsageRecorder recorder = usageRecorder;
+        if (recorder == null) {
+            synchronized (this) {
+                recorder = usageRecorder;
+                if (recorder == null) {
+                    recorder = new ApiUsageRecorder();
+                    usageRecorder = recorder;
+                }
+            }
+        }
+        return recorder;
+    }
 }
@@ -0,0 +1,67 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.api.server;
+
+import java.util.Date;
+
+/**
+ * The usage of a group of endpoints by an application for a day (see
+ * {@link ApiRateLimit}).
+ */
+public class ApiUsage {
+    private String applicationName;
+    private String endpointGroup;
+    private Date usageDate;
+    private long acceptedCount;
+    private long rejectedCount;
+
+    public ApiUsage(String applicationName, String endpointGroup, Date usageDate, long acceptedCount, long rejectedCount) {
+        this.applicationName = applicationName;
+        this.endpointGroup = endpointGroup;
+        this.usageDate = usageDate;
+        this.acceptedCount = acceptedCount;
+        this.rejectedCount = rejectedCount;
+    }
+
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    public String getEndpointGroup() {
+        return endpointGroup;
+    }
+
+    public Date getUsageDate() {
+        return usageDate;
+    }
+
+    /**
+     * The number of calls accepted
+     */
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    /**
+     * The number of calls rejected because of the rate limit or the daily
+     * quota
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+}
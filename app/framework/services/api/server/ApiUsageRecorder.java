@@ -0,0 +1,198 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.api.server;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.PersistenceException;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlQuery;
+import com.avaje.ebean.SqlRow;
+import com.avaje.ebean.SqlUpdate;
+
+import models.framework_models.api.ApiUsageCount;
+
+/**
+ * The usage counters of the rate limited API calls (see
+ * {@link ApiRateLimit}).<br/>
+ * The calls are counted in memory per application, endpoint group and day.
+ * The counters are periodically added to the table api_usage (see
+ * {@link #flush()}) from which the usages are read.<br/>
+ * The table is defined by the {@link ApiUsageCount} entity and must be created
+ * by the database schema, the usages are not recorded if it does not exist.
+ */
+class ApiUsageRecorder {
+    private static final String CHECK_TABLE_SQL = "SELECT COUNT(*) AS nb FROM api_usage WHERE 1 = 0";
+    private static final String UPDATE_SQL = "UPDATE api_usage SET accepted_count = accepted_count + :acceptedCount, "
+            + "rejected_count = rejected_count + :rejectedCount "
+            + "WHERE application_name = :applicationName AND endpoint_group = :endpointGroup AND usage_date = :usageDate";
+    private static final String INSERT_SQL = "INSERT INTO api_usage (application_name, endpoint_group, usage_date, accepted_count, rejected_count) "
+            + "VALUES (:applicationName, :endpointGroup, :usageDate, :acceptedCount, :rejectedCount)";
+    private static final String SELECT_SQL = "SELECT endpoint_group, usage_date, accepted_count, rejected_count FROM api_usage "
+            + "WHERE application_name = :applicationName ORDER BY usage_date DESC, endpoint_group";
+
+    private final boolean persistent;
+    private Map<String, UsageCounter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new recorder.<br/>
+     * If the table does not exist, a warning is logged and the usages are not
+     * recorded.
+     */
+    ApiUsageRecorder() {
+        boolean tableExists;
+        try {
+            Ebean.createSqlQuery(CHECK_TABLE_SQL).findUnique();
+            tableExists = true;
+        } catch (PersistenceException e) {
+            ApiLog.log.warn("The api_usage table does not exist, the usages of the rate limited API calls are not recorded (see "
+                    + ApiUsageCount.class.getName() + ")", e);
+            tableExists = false;
+        }
+        this.persistent = tableExists;
+    }
+
+    /**
+     * Count a call
+     * 
+     * @param applicationName
+     *            the name of the calling application
+     * @param endpointGroup
+     *            the group of the called endpoint
+     * @param accepted
+     *            true if the call has been accepted
+     */
+    void record(String applicationName, String endpointGroup, boolean accepted) {
+        if (!persistent) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        UsageCounter counter = counters.computeIfAbsent(applicationName + "#" + endpointGroup + "#" + today,
+                key -> new UsageCounter(applicationName, endpointGroup, today));
+        if (accepted) {
+            counter.acceptedCount.incrementAndGet();
+        } else {
+            counter.rejectedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Add the counters to the table (the counters are kept in memory if the
+     * update fails)
+     */
+    synchronized void flush() {
+        LocalDate today = LocalDate.now();
+        for (Map.Entry<String, UsageCounter> entry : counters.entrySet()) {
+            UsageCounter counter = entry.getValue();
+            long acceptedCount = counter.acceptedCount.getAndSet(0);
+            long rejectedCount = counter.rejectedCount.getAndSet(0);
+            if (acceptedCount == 0 && rejectedCount == 0) {
+                if (counter.usageDate.isBefore(today)) {
+                    counters.remove(entry.getKey());
+                }
+                continue;
+            }
+            try {
+                if (execute(UPDATE_SQL, counter, acceptedCount, rejectedCount) == 0) {
+                    try {
+                        execute(INSERT_SQL, counter, acceptedCount, rejectedCount);
+                    } catch (PersistenceException e) {
+                        // The row has been inserted by another node in the
+                        // meantime
+                        if (execute(UPDATE_SQL, counter, acceptedCount, rejectedCount) == 0) {
+                            throw e;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                ApiLog.log.error("Unable to write the API usage of the application " + counter.applicationName, e);
+                counter.acceptedCount.addAndGet(acceptedCount);
+                counter.rejectedCount.addAndGet(rejectedCount);
+            }
+        }
+    }
+
+    /**
+     * Execute an update of the counts of a day
+     * 
+     * @param sql
+     *            the update or insert statement
+     * @param counter
+     *            the counter of the application, group and day
+     * @param acceptedCount
+     *            the number of calls accepted since the last flush
+     * @param rejectedCount
+     *            the number of calls rejected since the last flush
+     * @return the number of rows updated
+     */
+    private static int execute(String sql, UsageCounter counter, long acceptedCount, long rejectedCount) {
+        SqlUpdate update = Ebean.createSqlUpdate(sql);
+        update.setParameter("applicationName", counter.applicationName);
+        update.setParameter("endpointGroup", counter.endpointGroup);
+        update.setParameter("usageDate", Date.valueOf(counter.usageDate));
+        update.setParameter("acceptedCount", acceptedCount);
+        update.setParameter("rejectedCount", rejectedCount);
+        return update.execute();
+    }
+
+    /**
+     * Return the usages of an application (as of the last flush), the most
+     * recent first
+     * 
+     * @param applicationName
+     *            the name of an application
+     */
+    List<ApiUsage> getUsages(String applicationName) {
+        if (!persistent) {
+            return new ArrayList<ApiUsage>();
+        }
+        SqlQuery query = Ebean.createSqlQuery(SELECT_SQL);
+        query.setParameter("applicationName", applicationName);
+        List<ApiUsage> usages = new ArrayList<ApiUsage>();
+        for (SqlRow row : query.findList()) {
+            usages.add(new ApiUsage(applicationName, row.getString("endpoint_group"), row.getDate("usage_date"), row.getLong("accepted_count"),
+                    row.getLong("rejected_count")));
+        }
+        return usages;
+    }
+
+    /**
+     * The calls of an application to a group of endpoints for a day (not yet
+     * flushed)
+     */
+    private static class UsageCounter {
+        private String applicationName;
+        private String endpointGroup;
+        private LocalDate usageDate;
+        private AtomicLong acceptedCount = new AtomicLong();
+        private AtomicLong rejectedCount = new AtomicLong();
+
+        public UsageCounter(String applicationName, String endpointGroup, LocalDate usageDate) {
+            this.applicationName = applicationName;
+            this.endpointGroup = endpointGroup;
+            this.usageDate = usageDate;
+        }
+    }
+}
@@ -17,9 +17,15 @@
  */
 package framework.services.api.server;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
+
 import framework.services.api.commons.ApiMethod;
+import framework.services.api.commons.ApiRateLimitException;
 import framework.services.api.commons.ApiSignatureException;
 
 /**
@@ -160,6 +166,38 @@ public interface IApiSignatureService {
     public void checkApiSignature(String applicationKey, byte[] signature, ApiMethod method, String path, byte[] body, long timeStamp,
             boolean allowTimeDifference) throws ApiSignatureException;
 
+    /**
+     * Check the API signature of a request which body is read from a stream
+     * (see {@link #checkApiSignature(String, byte[], ApiMethod, String, byte[], long, boolean)}).<br/>
+     * The default implementation reads the whole body and calls this method.
+     * 
+     * @param applicationKey
+     *            the application key provided along with the request
+     * @param signature
+     *            the API signature
+     * @param method
+     *            the method of the API call
+     * @param path
+     *            the called URL path (example: /api/shmock)
+     * @param body
+     *            the body of the request (not closed)
+     * @param timeStamp
+     *            the timestamp provided as part of the request
+     * @param allowTimeDifference
+     *            if true the time difference is not checked (WARNING : this
+     *            removes the replay protection.
+     * @throws ApiSignatureException
+     *             an exception is thrown if the signature is not valid
+     */
+    public default void checkApiSignature(String applicationKey, byte[] signature, ApiMethod method, String path, InputStream body, long timeStamp,
+            boolean allowTimeDifference) throws ApiSignatureException {
+        try {
+            checkApiSignature(applicationKey, signature, method, path, body != null ? IOUtils.toByteArray(body) : null, timeStamp, allowTimeDifference);
+        } catch (IOException e) {
+            throw new ApiSignatureException(e);
+        }
+    }
+
     /**
      * Check if this API is authorized without using a signature (only the
      * application key).<br/>
@@ -176,4 +214,35 @@ public interface IApiSignatureService {
      */
     public void checkApiAuthorizations(String applicationKey, ApiMethod method, String path) throws ApiSignatureException;
 
+    /**
+     * Count the API call in the rate limits of the calling application which
+     * apply to the called path (see the "LIMIT" lines of the API
+     * authorizations). The call is counted only if all these limits accept
+     * it.<br/>
+     * The default implementation does not limit the calls.
+     * 
+     * @param applicationKey
+     *            the application key provided along with the request
+     * @param path
+     *            the called URL path (example: /api/shmock)
+     * @throws ApiRateLimitException
+     *             an exception is thrown if a rate limit or a daily quota is
+     *             exceeded
+     */
+    public default void checkApiRateLimits(String applicationKey, String path) throws ApiRateLimitException {
+    }
+
+    /**
+     * Return the usages of the rate limited endpoints by an application (the
+     * counters are written to the database periodically).<br/>
+     * The default implementation returns an empty list.
+     * 
+     * @param applicationName
+     *            the name of an application
+     * @return a list of usages (the most recent first)
+     */
+    public default List<ApiUsage> getApiUsages(String applicationName) {
+        return Collections.emptyList();
+    }
+
 }
\ No newline at end of file
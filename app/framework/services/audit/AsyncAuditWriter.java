@@ -0,0 +1,162 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.audit;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import play.Logger;
+
+/**
+ * An asynchronous writer for the {@link AuditRecord}.<br/>
+ * The records are stored into a bounded buffer and written by batches, as
+ * JSON lines, to the audit log by a dedicated thread. If the buffer is full,
+ * the thread which is submitting a record waits (the audit records are never
+ * discarded).
+ */
+public class AsyncAuditWriter {
+    private static Logger.ALogger log = Logger.of(AsyncAuditWriter.class);
+
+    private Logger.ALogger auditLog;
+    private int batchSize;
+    private BlockingQueue<AuditRecord> buffer;
+    private JsonFactory jsonFactory = new JsonFactory();
+    private volatile boolean running;
+    private Thread writer;
+    private AtomicLong written = new AtomicLong(0);
+
+    /**
+     * Create and start a new writer
+     *
+     * @param auditLog
+     *            the logger to which the records are written
+     * @param bufferSize
+     *            the maximum number of records waiting to be written
+     * @param batchSize
+     *            the maximum number of records written in one batch
+     */
+    public AsyncAuditWriter(Logger.ALogger auditLog, int bufferSize, int batchSize) {
+        this.auditLog = auditLog;
+        this.batchSize = batchSize;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.running = true;
+        this.writer = new Thread(() -> write(), "audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Submit a record to be written
+     *
+     * @param auditRecord
+     *            an audit record
+     */
+    public void submit(AuditRecord auditRecord) {
+        try {
+            buffer.put(auditRecord);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while submitting an audit record, writing it synchronously");
+            writeBatch(Collections.singletonList(auditRecord));
+        }
+    }
+
+    /**
+     * Stop the writer once all the pending records are written (or the
+     * specified delay expired)
+     *
+     * @param timeoutInSeconds
+     *            the maximum time to wait for the pending records
+     */
+    public void shutdown(int timeoutInSeconds) {
+        running = false;
+        try {
+            writer.join(timeoutInSeconds * 1000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            writer.interrupt();
+            log.warn("The audit writer has been stopped with " + buffer.size() + " records not written");
+        }
+    }
+
+    /**
+     * Return the number of records waiting to be written
+     */
+    public int getPendingCount() {
+        return buffer.size();
+    }
+
+    /**
+     * Return the number of records written since the writer was started
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * The loop run by the writer thread
+     */
+    private void write() {
+        List<AuditRecord> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                AuditRecord first = buffer.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write a batch of records, one JSON object per line
+     */
+    private void writeBatch(List<AuditRecord> batch) {
+        StringWriter stringWriter = new StringWriter(256);
+        for (AuditRecord auditRecord : batch) {
+            try {
+                stringWriter.getBuffer().setLength(0);
+                JsonGenerator generator = jsonFactory.createGenerator(stringWriter);
+                auditRecord.writeJson(generator);
+                generator.close();
+                auditLog.info(stringWriter.toString());
+                written.incrementAndGet();
+            } catch (Exception e) {
+                log.error("Unable to write an audit record for " + auditRecord.getEntityClass() + " " + auditRecord.getEntityId(), e);
+            }
+        }
+    }
+}
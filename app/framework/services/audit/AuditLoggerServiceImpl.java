@@ -36,6 +36,7 @@ import org.apache.commons.io.FileUtils;
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.Level;
+import framework.commons.BeanAccessor;
 import framework.services.database.IDatabaseChangeListener;
 import framework.services.database.IDatabaseDependencyService;
 import framework.services.database.ModificationPair;
@@ -65,7 +66,11 @@ import scala.concurrent.duration.FiniteDuration;
 public class AuditLoggerServiceImpl implements IAuditLoggerService, IDatabaseChangeListener {
 
     private static final String SYSTEM = "_SYSTEM";
+    private static final int DEFAULT_AUDIT_BUFFER_SIZE = 10000;
+    private static final int DEFAULT_AUDIT_BATCH_SIZE = 500;
+    private static final int AUDIT_WRITER_SHUTDOWN_DELAY = 30;
     private String auditableEntitiesFilePath;
+    private AsyncAuditWriter auditWriter;
     private IUserSessionManagerPlugin userSessionManager;
     private Configuration configuration;
     private ISysAdminUtils sysAdminUtils;
@@ -80,7 +85,7 @@ public class AuditLoggerServiceImpl implements IAuditLoggerService, IDatabaseCha
     }
 
     public enum Config {
-        AUDITABLE_ENTITIES_FILE("maf.auditable.entities.file");
+        AUDITABLE_ENTITIES_FILE("maf.auditable.entities.file"), AUDIT_BUFFER_SIZE("maf.audit.buffer.size"), AUDIT_BATCH_SIZE("maf.audit.batch.size");
 
         private String configurationKey;
 
@@ -115,6 +120,8 @@ public class AuditLoggerServiceImpl implements IAuditLoggerService, IDatabaseCha
         this.configuration = configuration;
         this.userSessionManager = userSessionManager;
         this.sysAdminUtils = sysAdminUtils;
+        this.auditWriter = new AsyncAuditWriter(auditLog, configuration.getInt(Config.AUDIT_BUFFER_SIZE.getConfigurationKey(), DEFAULT_AUDIT_BUFFER_SIZE),
+                configuration.getInt(Config.AUDIT_BATCH_SIZE.getConfigurationKey(), DEFAULT_AUDIT_BATCH_SIZE));
         databaseService.addDatabaseChangeListener(this);
         this.auditableEntitiesFilePath = configuration.getString(Config.AUDITABLE_ENTITIES_FILE.getConfigurationKey());
         log.info("Activating audit log with audit log file " + this.auditableEntitiesFilePath);
@@ -122,6 +129,7 @@ public class AuditLoggerServiceImpl implements IAuditLoggerService, IDatabaseCha
         lifecycle.addStopHook(() -> {
             log.info("SERVICE>>> AuditLoggerServiceImpl stopping...");
             databaseService.removeDatabaseChangeListener(this);
+            auditWriter.shutdown(AUDIT_WRITER_SHUTDOWN_DELAY);
             log.info("SERVICE>>> AuditLoggerServiceImpl stopped");
             return Promise.pure(null);
         });
@@ -144,7 +152,8 @@ public class AuditLoggerServiceImpl implements IAuditLoggerService, IDatabaseCha
     }
 
     /**
-     * Log a message to the audit log.
+     * Submit a record to the audit log.<br/>
+     * The record is written asynchronously (see {@link AsyncAuditWriter}).
      * 
      * @param action
      *            an auditable action
@@ -153,27 +162,28 @@ public class AuditLoggerServiceImpl implements IAuditLoggerService, IDatabaseCha
      */
     private void log(AuditedAction action, Object entity, Map<String, ModificationPair> modifiedAttributes) {
         if (entity != null && IModel.class.isAssignableFrom(entity.getClass()) && getUserSessionManager() != null) {
-            Boolean flag = auditableEntities.get(entity.getClass().getName());
+            String entityClass = entity.getClass().getName();
+            Boolean flag = auditableEntities.get(entityClass);
             if (flag != null && flag) {
-                String message = String.format("%s/%s/%s", action.name(), getCurrentUserLogin(), ((IModel) entity).audit());
-                if (modifiedAttributes != null) {
-                    message = message + "/" + modifiedAttributes;
-                }
-                auditLog.info(message);
+                getAuditWriter().submit(new AuditRecord(action, getCurrentUserLogin(), entityClass, BeanAccessor.of(entity.getClass()).getId(entity),
+                        modifiedAttributes));
             }
         }
     }
 
     /**
-     * Return the currently logged user or SYSTEM is an exception is thrown.
-     * Such exception may happens if no user are logged (example scheduled
-     * actions).
+     * Return the currently logged user or SYSTEM if no user is logged
+     * (example: scheduled actions).
      * 
      * @return
      */
     private String getCurrentUserLogin() {
+        Http.Context context = Http.Context.current.get();
+        if (context == null) {
+            return SYSTEM;
+        }
         try {
-            return getUserSessionManager().getUserSessionId(Http.Context.current());
+            return getUserSessionManager().getUserSessionId(context);
         } catch (Exception e) {
             return SYSTEM;
         }
@@ -313,6 +323,10 @@ public class AuditLoggerServiceImpl implements IAuditLoggerService, IDatabaseCha
         }
     }
 
+    private AsyncAuditWriter getAuditWriter() {
+        return auditWriter;
+    }
+
     private IUserSessionManagerPlugin getUserSessionManager() {
         return userSessionManager;
     }
@@ -0,0 +1,124 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.audit;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import framework.services.audit.AuditLoggerServiceImpl.AuditedAction;
+import framework.services.database.ModificationPair;
+
+/**
+ * A compact and immutable record of an audited change.<br/>
+ * The record only holds references to the data (no string formatting) so that
+ * its creation is cheap, the serialization is performed by the
+ * {@link AsyncAuditWriter}. The modified fields are copied since the map of
+ * the database event may be modified after the record is created.
+ */
+public class AuditRecord {
+    private long timestamp;
+    private AuditedAction action;
+    private String user;
+    private String entityClass;
+    private long entityId;
+    private Map<String, ModificationPair> changedFields;
+
+    /**
+     * Create a new audit record
+     *
+     * @param action
+     *            the audited action
+     * @param user
+     *            the login of the user who performed the change
+     * @param entityClass
+     *            the class of the modified entity
+     * @param entityId
+     *            the id of the modified entity (-1 if not found)
+     * @param changedFields
+     *            the modified fields (may be null, the map is copied)
+     */
+    public AuditRecord(AuditedAction action, String user, String entityClass, long entityId, Map<String, ModificationPair> changedFields) {
+        this.timestamp = System.currentTimeMillis();
+        this.action = action;
+        this.user = user;
+        this.entityClass = entityClass;
+        this.entityId = entityId;
+        this.changedFields = changedFields != null ? new LinkedHashMap<>(changedFields) : null;
+    }
+
+    /**
+     * Write the record as a JSON object
+     *
+     * @param generator
+     *            a JSON generator
+     */
+    public void writeJson(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("ts", getTimestamp());
+        generator.writeStringField("action", getAction().name());
+        generator.writeStringField("user", getUser());
+        generator.writeStringField("entity", getEntityClass());
+        generator.writeNumberField("id", getEntityId());
+        if (getChangedFields() != null && !getChangedFields().isEmpty()) {
+            generator.writeObjectFieldStart("changes");
+            for (Map.Entry<String, ModificationPair> entry : getChangedFields().entrySet()) {
+                generator.writeArrayFieldStart(entry.getKey());
+                writeValue(generator, entry.getValue().getOldValue());
+                writeValue(generator, entry.getValue().getNewValue());
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(String.valueOf(value));
+        }
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public AuditedAction getAction() {
+        return action;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getEntityClass() {
+        return entityClass;
+    }
+
+    public long getEntityId() {
+        return entityId;
+    }
+
+    public Map<String, ModificationPair> getChangedFields() {
+        return changedFields;
+    }
+}
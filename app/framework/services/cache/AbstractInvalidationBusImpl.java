@@ -0,0 +1,73 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.cache;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import play.Logger;
+
+/**
+ * The listeners management shared by the {@link IInvalidationBus}
+ * implementations.
+ */
+public abstract class AbstractInvalidationBusImpl implements IInvalidationBus {
+    private static Logger.ALogger log = Logger.of(AbstractInvalidationBusImpl.class);
+
+    private Map<String, Set<IInvalidationListener>> listeners = new ConcurrentHashMap<>();
+
+    @Override
+    public void register(String region, IInvalidationListener listener) {
+        listeners.computeIfAbsent(region, k -> new CopyOnWriteArraySet<>()).add(listener);
+    }
+
+    @Override
+    public void unregister(String region, IInvalidationListener listener) {
+        Set<IInvalidationListener> regionListeners = listeners.get(region);
+        if (regionListeners != null) {
+            regionListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Call the listeners of a region of the current node
+     * 
+     * @param region
+     *            the name of the region
+     * @param key
+     *            the invalidated key (null for the whole region)
+     */
+    protected void deliver(String region, String key) {
+        Set<IInvalidationListener> regionListeners = listeners.get(region);
+        if (regionListeners == null) {
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidation of the key " + key + " of the region " + region);
+        }
+        for (IInvalidationListener listener : regionListeners) {
+            try {
+                listener.invalidate(key);
+            } catch (Exception e) {
+                log.error("Error while invalidating the key " + key + " of the region " + region, e);
+            }
+        }
+    }
+}
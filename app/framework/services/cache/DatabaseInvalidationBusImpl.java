@@ -0,0 +1,215 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.cache;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.persistence.PersistenceException;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlQuery;
+import com.avaje.ebean.SqlRow;
+import com.avaje.ebean.SqlUpdate;
+
+import framework.services.database.IDatabaseDependencyService;
+import models.framework_models.common.CacheInvalidation;
+import play.Configuration;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+import play.libs.F.Promise;
+
+/**
+ * An {@link IInvalidationBus} which uses a changelog table
+ * (cache_invalidation) shared by all the nodes.<br/>
+ * A published invalidation is inserted into the table with the id of the
+ * current node. Each node polls the table for the invalidations which id
+ * (monotonic sequence) is greater than the last processed one and calls its
+ * listeners for the invalidations published by the other nodes.<br/>
+ * Since the ids of concurrent transactions may be committed out of order, a
+ * gap in the sequence is waited for up to {@link #GAP_TIMEOUT} milliseconds
+ * before being skipped. The invalidations older than the retention duration
+ * are deleted.<br/>
+ * The table is defined by the {@link CacheInvalidation} entity and must be
+ * created by the database schema: the service fails to start if it does not
+ * exist.<br/>
+ * This implementation is not the default one: an application deployed on
+ * several nodes must bind it in its module (see
+ * {@link framework.modules.FrameworkModule#getInvalidationBusImplementation()}).
+ */
+@Singleton
+public class DatabaseInvalidationBusImpl extends AbstractInvalidationBusImpl {
+    private static Logger.ALogger log = Logger.of(DatabaseInvalidationBusImpl.class);
+
+    private static final long GAP_TIMEOUT = 60000;
+    private static final int DEFAULT_POLL_INTERVAL = 5;
+    private static final int DEFAULT_RETENTION = 3600;
+
+    private static final String INSERT_SQL = "INSERT INTO cache_invalidation (node_id, region, cache_key, creation_date) "
+            + "VALUES (:nodeId, :region, :key, :creationDate)";
+    private static final String SELECT_SQL = "SELECT id, node_id, region, cache_key FROM cache_invalidation WHERE id > :lastId ORDER BY id";
+    private static final String SELECT_LAST_ID_SQL = "SELECT MAX(id) AS last_id FROM cache_invalidation";
+    private static final String PURGE_SQL = "DELETE FROM cache_invalidation WHERE creation_date < :limit";
+
+    private String nodeId = UUID.randomUUID().toString();
+    private long lastId;
+    private TreeSet<Long> processedIds = new TreeSet<>();
+    private long gapDetectionTime = 0;
+    private int retention;
+    private ScheduledExecutorService poller;
+
+    public enum Config {
+        POLL_INTERVAL("maf.cache.invalidation.poll.interval"), RETENTION("maf.cache.invalidation.retention");
+
+        private String configurationKey;
+
+        private Config(String configurationKey) {
+            this.configurationKey = configurationKey;
+        }
+
+        public String getConfigurationKey() {
+            return configurationKey;
+        }
+    }
+
+    /**
+     * Create a new DatabaseInvalidationBusImpl
+     * 
+     * @param lifecycle
+     *            the play application lifecycle listener
+     * @param configuration
+     *            the play application configuration
+     * @param databaseDependencyService
+     *            the service which secure the availability of the database
+     */
+    @Inject
+    public DatabaseInvalidationBusImpl(ApplicationLifecycle lifecycle, Configuration configuration,
+            IDatabaseDependencyService databaseDependencyService) {
+        log.info("SERVICE>>> DatabaseInvalidationBusImpl starting...");
+        int pollInterval = configuration.getInt(Config.POLL_INTERVAL.getConfigurationKey(), DEFAULT_POLL_INTERVAL);
+        this.retention = configuration.getInt(Config.RETENTION.getConfigurationKey(), DEFAULT_RETENTION);
+        SqlRow row;
+        try {
+            row = Ebean.createSqlQuery(SELECT_LAST_ID_SQL).findUnique();
+        } catch (PersistenceException e) {
+            throw new IllegalStateException("Unable to read the cache_invalidation table: it must be created by the database schema (see "
+                    + CacheInvalidation.class.getName() + ")", e);
+        }
+        Long lastIdInTable = row != null ? row.getLong("last_id") : null;
+        this.lastId = lastIdInTable != null ? lastIdInTable : 0;
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-invalidation-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.poller.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.SECONDS);
+        this.poller.scheduleWithFixedDelay(this::purge, getRetention(), getRetention(), TimeUnit.SECONDS);
+        lifecycle.addStopHook(() -> {
+            log.info("SERVICE>>> DatabaseInvalidationBusImpl stopping...");
+            this.poller.shutdownNow();
+            log.info("SERVICE>>> DatabaseInvalidationBusImpl stopped");
+            return Promise.pure(null);
+        });
+        log.info("SERVICE>>> DatabaseInvalidationBusImpl started (node " + getNodeId() + ")");
+    }
+
+    @Override
+    public void publish(String region, String key) {
+        try {
+            SqlUpdate insert = Ebean.createSqlUpdate(INSERT_SQL);
+            insert.setParameter("nodeId", getNodeId());
+            insert.setParameter("region", region);
+            insert.setParameter("key", key);
+            insert.setParameter("creationDate", new Timestamp(System.currentTimeMillis()));
+            insert.execute();
+        } catch (Exception e) {
+            log.error("Unable to publish the invalidation of the key " + key + " of the region " + region, e);
+        }
+    }
+
+    /**
+     * Process the invalidations inserted since the last poll
+     */
+    private synchronized void poll() {
+        try {
+            SqlQuery query = Ebean.createSqlQuery(SELECT_SQL);
+            query.setParameter("lastId", lastId);
+            List<SqlRow> rows = query.findList();
+            for (SqlRow row : rows) {
+                Long id = row.getLong("id");
+                if (!processedIds.add(id)) {
+                    continue;
+                }
+                if (!getNodeId().equals(row.getString("node_id"))) {
+                    deliver(row.getString("region"), row.getString("cache_key"));
+                }
+            }
+            advanceLastId();
+        } catch (Exception e) {
+            log.error("Error while polling the cache invalidations", e);
+        }
+    }
+
+    /**
+     * Move the last processed id to the end of the contiguous sequence of
+     * processed ids (a gap is skipped after {@link #GAP_TIMEOUT})
+     */
+    private void advanceLastId() {
+        while (processedIds.remove(lastId + 1)) {
+            lastId++;
+        }
+        if (processedIds.isEmpty()) {
+            gapDetectionTime = 0;
+        } else if (gapDetectionTime == 0) {
+            gapDetectionTime = System.currentTimeMillis();
+        } else if (System.currentTimeMillis() - gapDetectionTime > GAP_TIMEOUT) {
+            log.warn("The cache invalidations " + (lastId + 1) + " to " + (processedIds.first() - 1) + " are missing, they are skipped");
+            lastId = processedIds.first() - 1;
+            gapDetectionTime = 0;
+            advanceLastId();
+        }
+    }
+
+    /**
+     * Delete the invalidations older than the retention duration
+     */
+    private void purge() {
+        try {
+            SqlUpdate delete = Ebean.createSqlUpdate(PURGE_SQL);
+            delete.setParameter("limit", new Timestamp(System.currentTimeMillis() - getRetention() * 1000L));
+            delete.execute();
+        } catch (Exception e) {
+            log.error("Error while purging the cache invalidations", e);
+        }
+    }
+
+    private String getNodeId() {
+        return nodeId;
+    }
+
+    private int getRetention() {
+        return retention;
+    }
+}
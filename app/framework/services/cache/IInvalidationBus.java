@@ -0,0 +1,62 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.cache;
+
+/**
+ * A bus which propagates the invalidations of the in memory caches to the
+ * other nodes of the cluster.<br/>
+ * Each cache registers a listener for its region (example: "i18n"). When an
+ * entry is modified on a node, this node updates its own cache and publishes
+ * the invalidated key: the listeners of the region are called on all the
+ * other nodes.<br/>
+ * The implementation is bound by the FrameworkModule (by default
+ * {@link LocalInvalidationBusImpl} which does not propagate anything).
+ */
+public interface IInvalidationBus {
+
+    /**
+     * Register a listener for a region
+     * 
+     * @param region
+     *            the name of the region
+     * @param listener
+     *            a listener
+     */
+    public void register(String region, IInvalidationListener listener);
+
+    /**
+     * Unregister a listener of a region
+     * 
+     * @param region
+     *            the name of the region
+     * @param listener
+     *            a listener
+     */
+    public void unregister(String region, IInvalidationListener listener);
+
+    /**
+     * Notify the other nodes that a key of a region has been modified.<br/>
+     * The listeners of the current node are not called.
+     * 
+     * @param region
+     *            the name of the region
+     * @param key
+     *            the invalidated key (null to invalidate the whole region)
+     */
+    public void publish(String region, String key);
+}
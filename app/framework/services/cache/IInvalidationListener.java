@@ -0,0 +1,35 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.cache;
+
+/**
+ * A listener of the invalidations of a cache region (see
+ * {@link IInvalidationBus}).
+ */
+public interface IInvalidationListener {
+
+    /**
+     * Remove a key from the local cache.<br/>
+     * <b>WARNING</b>: this method must not publish the invalidation again.
+     * 
+     * @param key
+     *            the invalidated key (null if the whole region must be
+     *            invalidated)
+     */
+    public void invalidate(String key);
+}
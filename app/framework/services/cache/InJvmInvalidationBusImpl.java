@@ -0,0 +1,55 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.cache;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * An {@link IInvalidationBus} which propagates the invalidations to the other
+ * instances of this class in the same JVM (each instance plays the role of a
+ * node).<br/>
+ * The invalidations are delivered synchronously. This implementation is
+ * intended for the tests and for the single node deployments.
+ */
+public class InJvmInvalidationBusImpl extends AbstractInvalidationBusImpl {
+    private static Set<InJvmInvalidationBusImpl> nodes = new CopyOnWriteArraySet<>();
+
+    /**
+     * Create a new bus and add it to the nodes of the JVM
+     */
+    public InJvmInvalidationBusImpl() {
+        nodes.add(this);
+    }
+
+    @Override
+    public void publish(String region, String key) {
+        for (InJvmInvalidationBusImpl node : nodes) {
+            if (node != this) {
+                node.deliver(region, key);
+            }
+        }
+    }
+
+    /**
+     * Remove this bus from the nodes of the JVM
+     */
+    public void close() {
+        nodes.remove(this);
+    }
+}
@@ -0,0 +1,35 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.cache;
+
+import javax.inject.Singleton;
+
+/**
+ * The default {@link IInvalidationBus}: a single node deployment, the
+ * published invalidations are not propagated.<br/>
+ * The caches of the current node are updated by their owners, a cluster must
+ * bind {@link DatabaseInvalidationBusImpl} instead (see
+ * {@link framework.modules.FrameworkModule#getInvalidationBusImplementation()}).
+ */
+@Singleton
+public class LocalInvalidationBusImpl extends AbstractInvalidationBusImpl {
+
+    @Override
+    public void publish(String region, String key) {
+    }
+}
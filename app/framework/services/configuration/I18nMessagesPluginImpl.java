@@ -20,10 +20,13 @@ package framework.services.configuration;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -35,6 +38,8 @@ import com.avaje.ebean.SqlQuery;
 import com.avaje.ebean.SqlRow;
 import com.avaje.ebean.SqlUpdate;
 
+import framework.services.cache.IInvalidationBus;
+import framework.services.cache.IInvalidationListener;
 import framework.services.database.IDatabaseDependencyService;
 import framework.utils.DefaultSelectableValueHolderCollection;
 import play.Configuration;
@@ -51,25 +56,37 @@ import play.twirl.api.Html;
 /**
  * The default implementation for the {@link II18nMessagesPlugin} interface.
  * <br/>
- * This implementation is based on a in memory {@link Hashtable} which:
+ * This implementation is based on an immutable in memory {@link MessageStore}
+ * which contains:
  * <ul>
- * <li>key = a language code (lower case)</li>
- * <li>hashtable = a dictionary which key is a i18n key and value is the content
- * </li>
+ * <li>for each language code (lower case), a dictionary which key is a i18n
+ * key and value is the content</li>
+ * <li>for each i18n key, the first valid language in which the key is defined
+ * (used when the key is not defined in the current language)</li>
  * </ul>
+ * The store is never modified: a reload, an add or a delete replaces it by a
+ * new one. Thus a lookup is a simple (lock-free) hash lookup.<br/>
+ * The modifications are propagated to the other nodes through the
+ * {@link IInvalidationBus} (region {@link #INVALIDATION_REGION}).
  * 
  * @author Pierre-Yves Cloux
  */
 @Singleton
 public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
     private static Logger.ALogger log = Logger.of(I18nMessagesPluginImpl.class);
-    private Hashtable<String, Hashtable<Object, Object>> i18nMessagesStore;
+    public static final String INVALIDATION_REGION = "i18n";
+    private static final int MAX_RESOLVED_FALLBACKS = 50000;
+
+    private volatile MessageStore i18nMessagesStore = new MessageStore(Collections.emptyMap(), new ConcurrentHashMap<>());
+    private Object storeLock = new Object();
+    private volatile I18nSearchIndex searchIndex;
     private List<Language> validLanguageList;
     private Map<String, Language> validLanguageMap;
     private Configuration configuration;
     private Environment environment;
     private MessagesApi messagesApi;
     private I18nMessages i18nMessages;
+    private IInvalidationBus invalidationBus;
 
     public enum Config {
         LANGUAGE_LIST("play.i18n.langs");
@@ -96,18 +113,31 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
      *            the play environment
      * @param databaseDependencyService
      *            the service which secure the availability of the database
+     * @param invalidationBus
+     *            the bus which propagates the modifications to the other
+     *            nodes
      */
     @Inject
     public I18nMessagesPluginImpl(ApplicationLifecycle lifecycle, Configuration configuration, Environment environment, MessagesApi messagesApi,
-            I18nMessages i18nMessages, IDatabaseDependencyService databaseDependencyService) {
+            I18nMessages i18nMessages, IDatabaseDependencyService databaseDependencyService, IInvalidationBus invalidationBus) {
         log.info("SERVICE>>> I18nMessagesPluginImpl starting...");
         this.configuration = configuration;
         this.messagesApi = messagesApi;
         this.i18nMessages = i18nMessages;
+        this.invalidationBus = invalidationBus;
         initOnce();
-        reload(true);
+        loadStore(true);
+        IInvalidationListener invalidationListener = key -> {
+            if (key == null) {
+                loadStore(true);
+            } else {
+                refreshMessage(key.substring(key.indexOf('#') + 1), key.substring(0, key.indexOf('#')));
+            }
+        };
+        invalidationBus.register(INVALIDATION_REGION, invalidationListener);
         lifecycle.addStopHook(() -> {
             log.info("SERVICE>>> I18nMessagesPluginImpl stopping...");
+            invalidationBus.unregister(INVALIDATION_REGION, invalidationListener);
             log.info("SERVICE>>> I18nMessagesPluginImpl stopped");
             return Promise.pure(null);
         });
@@ -140,29 +170,62 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
 
     @Override
     public void reload(boolean fullReload) {
-        if (fullReload) {
-            i18nMessagesStore = new Hashtable<String, Hashtable<Object, Object>>();
+        loadStore(fullReload);
+        getInvalidationBus().publish(INVALIDATION_REGION, null);
+    }
+
+    /**
+     * Load the messages from the database into a new store
+     * 
+     * @param fullReload
+     *            if false, the loaded messages are added to the current ones
+     */
+    private void loadStore(boolean fullReload) {
+        synchronized (storeLock) {
+            Map<String, Map<String, Message>> messages = new HashMap<>();
+            if (!fullReload) {
+                messages.putAll(getI18nMessagesStore().messages);
+            }
+            // Load from the table
+            loadFromDb(messages);
+            Map<String, Fallback> fallbacks = new ConcurrentHashMap<>();
+            MessageStore store = new MessageStore(messages, fallbacks);
+            Set<String> keys = new HashSet<>();
+            for (Map<String, Message> languageMessages : store.messages.values()) {
+                keys.addAll(languageMessages.keySet());
+            }
+            for (String key : keys) {
+                fallbacks.put(key, resolveFallback(store, key));
+            }
+            this.i18nMessagesStore = store;
+            // The search index is built again on first use
+            this.searchIndex = null;
         }
-        // Load from the table
-        loadFromDb();
     }
 
     /**
      * Load the keys stored into the database
+     * 
+     * @param messages
+     *            the dictionaries (by language) to which the keys are added
      */
-    private void loadFromDb() {
+    private void loadFromDb(Map<String, Map<String, Message>> messages) {
         try {
-            SqlQuery query = Ebean.createSqlQuery("select * from i18n_messages");
+            SqlQuery query = Ebean.createSqlQuery("select `key`, language, value from i18n_messages");
             List<SqlRow> rows = query.findList();
             if (rows != null) {
+                Map<String, Map<String, Message>> loadedMessages = new HashMap<>();
                 for (SqlRow row : rows) {
                     String language = row.getString("language");
-                    Hashtable<Object, Object> messages = getI18nMessagesStore().get(language);
-                    if (messages == null) {
-                        messages = new Hashtable<Object, Object>();
-                        getI18nMessagesStore().put(language, messages);
+                    Map<String, Message> languageMessages = loadedMessages.get(language);
+                    if (languageMessages == null) {
+                        languageMessages = messages.containsKey(language) ? new HashMap<>(messages.get(language)) : new HashMap<>();
+                        loadedMessages.put(language, languageMessages);
                     }
-                    messages.put(row.getString("key"), row.getString("value"));
+                    languageMessages.put(row.getString("key"), new Message(row.getString("value")));
+                }
+                for (Map.Entry<String, Map<String, Message>> entry : loadedMessages.entrySet()) {
+                    messages.put(entry.getKey(), Collections.unmodifiableMap(entry.getValue()));
                 }
             }
         } catch (Exception e) {
@@ -181,7 +244,7 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
             return getI18nContent(key, lang.code());
         }
 
-        Hashtable<Object, Object> messages = getI18nMessagesStore().get(lang.code());
+        Map<String, Message> messages = getI18nMessagesStore().messages.get(lang.code());
         if (messages == null) {
             if (log.isDebugEnabled()) {
                 log.debug(String.format("Unknown language requested [%s] for key [%s]", lang.code(), key));
@@ -189,12 +252,9 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
             return key;
         }
 
-        if (messages.containsKey(key)) {
-            if (args.length != 0) {
-                return MessageFormat.format((String) messages.get(key), args);
-            } else {
-                return (String) messages.get(key);
-            }
+        Message message = messages.get(key);
+        if (message != null) {
+            return message.format(args);
         }
 
         if (getMessagesApi().isDefinedAt(lang, key)) {
@@ -210,18 +270,43 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
         if (key == null) {
             return null;
         }
-        String value = get(getCurrentLanguage().getLang(), key, args);
+        return get(getCurrentLanguage(), key, args);
+    }
+
+    /**
+     * Return the message of a key for a language.<br/>
+     * If the key is not defined for this language, the message of the first
+     * language in which it is defined is returned (prefixed by the code of
+     * the requested language).
+     * 
+     * @param language
+     *            a language
+     * @param key
+     *            the i18n key
+     * @param args
+     *            the message arguments
+     */
+    private String get(Language language, String key, Object... args) {
+        String value = get(language.getLang(), key, args);
 
         if (!key.equals(value)) {
             return value;
-        } else {
-            for (Language language : getValidLanguageMap().values()) {
-                value = get(language.getLang(), key, args);
+        } else if (key.endsWith("_content")) {
+            for (Language otherLanguage : getValidLanguageMap().values()) {
+                value = get(otherLanguage.getLang(), key, args);
                 if (!key.equals(value)) {
-                    return getCurrentLanguage().getCode().toUpperCase() + " - " + value;
+                    return language.getCode().toUpperCase() + " - " + value;
                 }
             }
             return key;
+        } else {
+            // The key is searched in the other languages
+            Fallback fallback = getFallback(key);
+            if (fallback == Fallback.NOT_FOUND) {
+                return key;
+            }
+            value = fallback.message != null ? fallback.message.format(args) : getMessagesApi().get(fallback.language.getLang(), key, args);
+            return language.getCode().toUpperCase() + " - " + value;
         }
     }
 
@@ -258,14 +343,8 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
                     throw new IllegalArgumentException("Unable to insert the key (no row modified) : " + key);
                 }
             }
-            synchronized (i18nMessagesStore) {
-                Hashtable<Object, Object> i18Messages = getI18nMessagesStore().get(languageCode);
-                if (i18Messages == null) {
-                    i18Messages = new Hashtable<Object, Object>();
-                }
-                i18Messages.put(key, value);
-                i18nMessagesStore.put(languageCode, i18Messages);
-            }
+            replaceMessage(key, value, languageCode);
+            getInvalidationBus().publish(INVALIDATION_REGION, languageCode + "#" + key);
         } catch (Exception e) {
             throw new IllegalArgumentException("Error while adding the i18n key : " + key, e);
         }
@@ -283,14 +362,8 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
             updateKeyQuery.setParameter("language", languageCode);
             updateKeyQuery.execute();
 
-            synchronized (i18nMessagesStore) {
-                Hashtable<Object, Object> i18Messages = getI18nMessagesStore().get(languageCode);
-                if (i18Messages == null) {
-                    i18Messages = new Hashtable<Object, Object>();
-                }
-                i18Messages.remove(key);
-                i18nMessagesStore.put(languageCode, i18Messages);
-            }
+            replaceMessage(key, null, languageCode);
+            getInvalidationBus().publish(INVALIDATION_REGION, languageCode + "#" + key);
 
         } catch (Exception e) {
             throw new IllegalArgumentException("Error while deleting the i18n key : " + key, e);
@@ -357,16 +430,12 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
 
     @Override
     public List<String> findAuthorizedKeys(String keywords) {
+        return getSearchIndex().search(keywords, getCurrentLanguage().getCode(), false, false);
+    }
 
-        List<String> r = new ArrayList<>();
-
-        for (String key : this.i18nMessages.getAuthorizedKeys()) {
-            if (this.get(key).trim().toLowerCase().contains(keywords.trim().toLowerCase())) {
-                r.add(key);
-            }
-        }
-
-        return r;
+    @Override
+    public List<String> findAuthorizedKeys(String keywords, String languageCode, boolean prefix) {
+        return getSearchIndex().search(keywords, languageCode, prefix, true);
     }
 
     @Override
@@ -409,7 +478,7 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
         if (getMessagesApi().isDefinedAt(language.getLang(), key)) {
             return true;
         }
-        Hashtable<Object, Object> messages = getI18nMessagesStore().get(language.getCode());
+        Map<String, Message> messages = getI18nMessagesStore().messages.get(language.getCode());
         if (messages == null) {
             if (log.isDebugEnabled()) {
                 log.debug(String.format("Unknown language requested [%s] for key [%s]", language.getCode(), key));
@@ -444,7 +513,120 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
         return key;
     }
 
-    private Hashtable<String, Hashtable<Object, Object>> getI18nMessagesStore() {
+    /**
+     * Replace the store by a new one in which the value of a key is modified
+     * for a language.<br/>
+     * The resolved fallbacks of the other keys are kept.
+     * 
+     * @param key
+     *            the i18n key
+     * @param value
+     *            the new value (null to remove the key)
+     * @param languageCode
+     *            the language code
+     */
+    private void replaceMessage(String key, String value, String languageCode) {
+        synchronized (storeLock) {
+            MessageStore store = getI18nMessagesStore();
+            Map<String, Map<String, Message>> messages = new HashMap<>(store.messages);
+            Map<String, Message> languageMessages = messages.containsKey(languageCode) ? new HashMap<>(messages.get(languageCode)) : new HashMap<>();
+            if (value != null) {
+                languageMessages.put(key, new Message(value));
+            } else {
+                languageMessages.remove(key);
+            }
+            messages.put(languageCode, Collections.unmodifiableMap(languageMessages));
+            Map<String, Fallback> fallbacks = new ConcurrentHashMap<>(store.fallbacks);
+            fallbacks.remove(key);
+            this.i18nMessagesStore = new MessageStore(messages, fallbacks);
+            if (this.searchIndex != null) {
+                this.searchIndex.update(key);
+            }
+        }
+    }
+
+    /**
+     * Read again the value of a key for a language from the database (after
+     * a modification on another node).
+     * 
+     * @param key
+     *            the i18n key
+     * @param languageCode
+     *            the language code
+     */
+    private void refreshMessage(String key, String languageCode) {
+        SqlQuery findKeyQuery = Ebean.createSqlQuery("select value from i18n_messages where `key`=:key and language=:language");
+        findKeyQuery.setParameter("key", key);
+        findKeyQuery.setParameter("language", languageCode);
+        SqlRow row = findKeyQuery.findUnique();
+        replaceMessage(key, row != null && !row.isEmpty() ? row.getString("value") : null, languageCode);
+    }
+
+    /**
+     * Return the search index of the authorized keys (built on first use).
+     */
+    private I18nSearchIndex getSearchIndex() {
+        I18nSearchIndex index = this.searchIndex;
+        if (index == null) {
+            synchronized (storeLock) {
+                index = this.searchIndex;
+                if (index == null) {
+                    index = new I18nSearchIndex(this.i18nMessages.getAuthorizedKeys(), getValidLanguageList(), (language, key) -> get(language, key));
+                    this.searchIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Return the fallback of a key which is not defined in the current
+     * language.<br/>
+     * The fallbacks of the keys stored in the database are resolved when the
+     * store is loaded, the other ones are resolved on first use.
+     * 
+     * @param key
+     *            the i18n key
+     */
+    private Fallback getFallback(String key) {
+        MessageStore store = getI18nMessagesStore();
+        Fallback fallback = store.fallbacks.get(key);
+        if (fallback == null) {
+            fallback = resolveFallback(store, key);
+            if (store.fallbacks.size() < MAX_RESOLVED_FALLBACKS) {
+                store.fallbacks.put(key, fallback);
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Find the first valid language in which the specified key is defined
+     * (in the store or in the play messages).
+     * 
+     * @param store
+     *            the message store
+     * @param key
+     *            the i18n key
+     */
+    private Fallback resolveFallback(MessageStore store, String key) {
+        for (Language language : getValidLanguageMap().values()) {
+            Map<String, Message> messages = store.messages.get(language.getCode());
+            if (messages == null) {
+                continue;
+            }
+            Message message = messages.get(key);
+            if (message != null) {
+                return new Fallback(language, message);
+            }
+            if (getMessagesApi().isDefinedAt(language.getLang(), key)) {
+                return new Fallback(language, null);
+            }
+        }
+        return Fallback.NOT_FOUND;
+    }
+
+    private MessageStore getI18nMessagesStore() {
         return i18nMessagesStore;
     }
 
@@ -459,4 +641,81 @@ public class I18nMessagesPluginImpl implements II18nMessagesPlugin {
     private MessagesApi getMessagesApi() {
         return messagesApi;
     }
+
+    private IInvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    /**
+     * An immutable snapshot of the i18n messages.
+     */
+    private static class MessageStore {
+        private final Map<String, Map<String, Message>> messages;
+        private final Map<String, Fallback> fallbacks;
+
+        /**
+         * Create a new store
+         * 
+         * @param messages
+         *            the dictionaries (unmodifiable) by language code
+         * @param fallbacks
+         *            the fallbacks by key (the only mutable part of the
+         *            store: the fallbacks are added when resolved)
+         */
+        public MessageStore(Map<String, Map<String, Message>> messages, Map<String, Fallback> fallbacks) {
+            this.messages = Collections.unmodifiableMap(new HashMap<>(messages));
+            this.fallbacks = fallbacks;
+        }
+    }
+
+    /**
+     * A i18n message.<br/>
+     * Its {@link MessageFormat} (which is not thread safe) is compiled on
+     * first use by each thread.
+     */
+    private static class Message {
+        private final String pattern;
+        private final ThreadLocal<MessageFormat> messageFormat;
+
+        public Message(String pattern) {
+            this.pattern = pattern;
+            this.messageFormat = ThreadLocal.withInitial(() -> new MessageFormat(pattern));
+        }
+
+        /**
+         * Format the message with the specified arguments (the message is
+         * returned as is if there is no argument)
+         */
+        public String format(Object... args) {
+            if (args.length == 0) {
+                return pattern;
+            }
+            return messageFormat.get().format(args);
+        }
+    }
+
+    /**
+     * The language in which a key (not defined in the current language) is
+     * searched.
+     */
+    private static class Fallback {
+        private static final Fallback NOT_FOUND = new Fallback(null, null);
+
+        private final Language language;
+        private final Message message;
+
+        /**
+         * Create a new fallback
+         * 
+         * @param language
+         *            the language in which the key is defined
+         * @param message
+         *            the message in the store or null if the key is defined
+         *            in the play messages
+         */
+        public Fallback(Language language, Message message) {
+            this.language = language;
+            this.message = message;
+        }
+    }
 }
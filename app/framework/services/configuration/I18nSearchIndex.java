@@ -0,0 +1,270 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+/**
+ * An in memory index of the i18n keys and of their values (one per language)
+ * used to search the keys which can be updated by the administrator.<br/>
+ * Each key and value is indexed by its trigrams (lower case): a query of at
+ * least 3 characters only checks the keys which contain all the trigrams of
+ * the query. A shorter query is checked against all the keys.<br/>
+ * The index is updated key by key (see {@link #update(String)}) when a value
+ * is added, updated or deleted.
+ */
+class I18nSearchIndex {
+    private static final int GRAM_SIZE = 3;
+
+    private String[] keys;
+    private Map<String, Integer> keyIds = new HashMap<>();
+    private Collection<Language> languages;
+    private BiFunction<Language, String, String> valueProvider;
+
+    private String[] normalizedKeys;
+    private Map<String, Postings> keyGrams = new HashMap<>();
+    private Map<String, String[]> normalizedValues = new HashMap<>();
+    private Map<String, Map<String, Postings>> valueGrams = new HashMap<>();
+    private ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Build the index
+     * 
+     * @param keys
+     *            the indexed keys (the search results follow this order)
+     * @param languages
+     *            the indexed languages
+     * @param valueProvider
+     *            return the value of a key for a language (as displayed to
+     *            the user)
+     */
+    I18nSearchIndex(Collection<String> keys, Collection<Language> languages, BiFunction<Language, String, String> valueProvider) {
+        this.keys = keys.toArray(new String[keys.size()]);
+        this.languages = languages;
+        this.valueProvider = valueProvider;
+        this.normalizedKeys = new String[this.keys.length];
+        for (Language language : languages) {
+            normalizedValues.put(language.getCode(), new String[this.keys.length]);
+            valueGrams.put(language.getCode(), new HashMap<>());
+        }
+        for (int id = 0; id < this.keys.length; id++) {
+            keyIds.put(this.keys[id], id);
+            normalizedKeys[id] = normalize(this.keys[id]);
+            addGrams(keyGrams, normalizedKeys[id], id);
+            for (Language language : languages) {
+                String value = normalize(valueProvider.apply(language, this.keys[id]));
+                normalizedValues.get(language.getCode())[id] = value;
+                addGrams(valueGrams.get(language.getCode()), value, id);
+            }
+        }
+    }
+
+    /**
+     * Index again the values of a key (for all the languages).<br/>
+     * Nothing is done if the key is not indexed.
+     * 
+     * @param key
+     *            the i18n key
+     */
+    void update(String key) {
+        Integer id = keyIds.get(key);
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Language language : languages) {
+                String[] values = normalizedValues.get(language.getCode());
+                Map<String, Postings> grams = valueGrams.get(language.getCode());
+                String value = normalize(valueProvider.apply(language, key));
+                if (!value.equals(values[id])) {
+                    removeGrams(grams, values[id], id);
+                    values[id] = value;
+                    addGrams(grams, value, id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the keys matching some keywords
+     * 
+     * @param keywords
+     *            the keywords
+     * @param languageCode
+     *            the language of the searched values (null for all the
+     *            languages)
+     * @param prefix
+     *            true if the key or the value must start with the keywords,
+     *            false if it must contain them
+     * @param searchInKeys
+     *            true if the keys are also searched (not only the values)
+     * @return the matching keys
+     */
+    List<String> search(String keywords, String languageCode, boolean prefix, boolean searchInKeys) {
+        String query = normalize(keywords);
+        List<String> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Set<Integer> candidates = new HashSet<>();
+            if (searchInKeys) {
+                addCandidates(candidates, keyGrams, normalizedKeys, query, prefix);
+            }
+            for (Language language : languages) {
+                if (languageCode == null || languageCode.equals(language.getCode())) {
+                    addCandidates(candidates, valueGrams.get(language.getCode()), normalizedValues.get(language.getCode()), query, prefix);
+                }
+            }
+            int[] ids = new int[candidates.size()];
+            int i = 0;
+            for (Integer id : candidates) {
+                ids[i++] = id;
+            }
+            Arrays.sort(ids);
+            for (int id : ids) {
+                result.add(keys[id]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Add the ids of the texts matching the query to the candidates
+     */
+    private static void addCandidates(Set<Integer> candidates, Map<String, Postings> grams, String[] texts, String query, boolean prefix) {
+        if (query.length() < GRAM_SIZE) {
+            for (int id = 0; id < texts.length; id++) {
+                if (matches(texts[id], query, prefix)) {
+                    candidates.add(id);
+                }
+            }
+            return;
+        }
+        Postings smallest = null;
+        List<Postings> postingsOfQuery = new ArrayList<>();
+        for (String gram : getGrams(query)) {
+            Postings postings = grams.get(gram);
+            if (postings == null) {
+                return;
+            }
+            postingsOfQuery.add(postings);
+            if (smallest == null || postings.size < smallest.size) {
+                smallest = postings;
+            }
+        }
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.ids[i];
+            boolean inAll = true;
+            for (Postings postings : postingsOfQuery) {
+                if (postings != smallest && !postings.contains(id)) {
+                    inAll = false;
+                    break;
+                }
+            }
+            if (inAll && matches(texts[id], query, prefix)) {
+                candidates.add(id);
+            }
+        }
+    }
+
+    private static boolean matches(String text, String query, boolean prefix) {
+        return prefix ? text.startsWith(query) : text.contains(query);
+    }
+
+    private static void addGrams(Map<String, Postings> grams, String text, int id) {
+        for (String gram : getGrams(text)) {
+            grams.computeIfAbsent(gram, k -> new Postings()).add(id);
+        }
+    }
+
+    private static void removeGrams(Map<String, Postings> grams, String text, int id) {
+        for (String gram : getGrams(text)) {
+            Postings postings = grams.get(gram);
+            if (postings != null) {
+                postings.remove(id);
+                if (postings.size == 0) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the distinct trigrams of a text
+     */
+    private static Set<String> getGrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_SIZE));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text != null ? text.trim().toLowerCase() : "";
+    }
+
+    /**
+     * The sorted ids of the texts which contain a trigram
+     */
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        public boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        public void add(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        public void remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+    }
+}
@@ -182,6 +182,25 @@ public interface II18nMessagesPlugin {
      */
     public List<String> findAuthorizedKeys(String keywords);
 
+    /**
+     * Find authorized keys to updated according to keywords (searched in the
+     * keys and in their values).<br/>
+     * The default implementation ignores the language and the prefix and
+     * calls {@link #findAuthorizedKeys(String)}.
+     * 
+     * @param keywords
+     *            the keywords
+     * @param languageCode
+     *            the language of the searched values (null for all the valid
+     *            languages)
+     * @param prefix
+     *            true if the key or the value must start with the keywords,
+     *            false if it must contain them
+     */
+    public default List<String> findAuthorizedKeys(String keywords, String languageCode, boolean prefix) {
+        return findAuthorizedKeys(keywords);
+    }
+
     /**
      * Return true if the key is authorized for an update.
      * 
@@ -266,6 +266,12 @@ public class CustomAttributeManagerServiceImpl implements ICustomAttributeManage
         return customAttributeApiValues;
     }
 
+    @Override
+    public Map<Long, Map<Long, ICustomAttributeValue>> getValues(Class<?> clazz, String filter, List<CustomAttributeDefinition> customAttributeDefinitions,
+            Collection<Long> objectIds) {
+        return CustomAttributeDefinition.getCustomAttributeValues(clazz, filter, customAttributeDefinitions, objectIds);
+    }
+
     /**
      * Get the i18n messages service.
      */
@@ -1,6 +1,8 @@
 package framework.services.custom_attribute;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
@@ -11,6 +13,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.wordnik.swagger.annotations.ApiModelProperty;
 
 import models.framework_models.common.CustomAttributeDefinition;
+import models.framework_models.common.ICustomAttributeValue;
 import play.data.Form;
 
 /**
@@ -178,6 +181,27 @@ public interface ICustomAttributeManagerService {
      */
     List<CustomAttributeValueObject> getSerializableValues(Class<?> clazz, String filter, Long objectId);
 
+    /**
+     * Return the values of the specified custom attribute definitions for a
+     * list of objects.<br/>
+     * The values are loaded with one query per attribute type (instead of one
+     * query per value). A value which is not found is created (but not
+     * saved), as for a single value.
+     * 
+     * @param clazz
+     *            a model class
+     * @param filter
+     *            a filtering condition (may be null)
+     * @param customAttributeDefinitions
+     *            the custom attribute definitions of the class
+     * @param objectIds
+     *            the unique ids of some instances of the specified class
+     * @return the values indexed by custom attribute definition id and object
+     *         id
+     */
+    Map<Long, Map<Long, ICustomAttributeValue>> getValues(Class<?> clazz, String filter, List<CustomAttributeDefinition> customAttributeDefinitions,
+            Collection<Long> objectIds);
+
     /**
      * Class use for representing the serializable values for a custom
      * attribute.
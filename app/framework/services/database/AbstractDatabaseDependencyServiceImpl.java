@@ -1,19 +1,16 @@
 package framework.services.database;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -21,6 +18,8 @@ import javax.inject.Singleton;
 import com.avaje.ebean.Ebean;
 import com.avaje.ebean.EbeanServerFactory;
 import com.avaje.ebean.config.ServerConfig;
+import com.avaje.ebean.event.BeanPersistController;
+import com.avaje.ebean.event.TransactionEventListener;
 import com.avaje.ebeaninternal.server.lib.BizDockEbeanShutdownManager;
 
 import models.framework_models.patcher.Patch;
@@ -44,13 +43,21 @@ public abstract class AbstractDatabaseDependencyServiceImpl implements IDatabase
     private int ebeanCacheShutdownDelay;
     private String ebeanServerDefaultName;
     private int ebeanListenerQueueSize;
+    private int ebeanListenerBatchSize;
+    private ChangeEventDispatcher.OverflowPolicy ebeanListenerOverflowPolicy;
+    private File ebeanListenerSpillFolder;
     private EbeanConfig ebeanConfig;
-    private Map<IDatabaseChangeListener, ExecutorService> listeners;
+    private Map<IDatabaseChangeListener, ChangeEventDispatcher> listeners;
+
+    private static final int DEFAULT_EBEAN_LISTENER_BATCH_SIZE = 100;
 
     public enum Config {
         EBEAN_CACHE_THREAD_POOL_SIZE("maf.ebean.cache.thread.pool.size"), EBEAN_CACHE_SHUTDOWN_DELAY(
                 "maf.ebean.cache.shutdown.delay"), EBEAN_SERVER_DEFAULT_NAME("maf.ebean.default.server.name"), EBEAN_LISTENER_QUEUE_SIZE(
-                        "maf.ebean.change.listener.queue.size");
+                        "maf.ebean.change.listener.queue.size"), EBEAN_LISTENER_BATCH_SIZE(
+                                "maf.ebean.change.listener.batch.size"), EBEAN_LISTENER_OVERFLOW_POLICY(
+                                        "maf.ebean.change.listener.overflow.policy"), EBEAN_LISTENER_SPILL_FOLDER(
+                                                "maf.ebean.change.listener.spill.folder");
 
         private String configurationKey;
 
@@ -89,11 +96,19 @@ public abstract class AbstractDatabaseDependencyServiceImpl implements IDatabase
         this.ebeanCacheShutdownDelay = configuration.getInt(Config.EBEAN_CACHE_SHUTDOWN_DELAY.getConfigurationKey());
         this.ebeanServerDefaultName = configuration.getString(Config.EBEAN_SERVER_DEFAULT_NAME.getConfigurationKey());
         this.ebeanListenerQueueSize = configuration.getInt(Config.EBEAN_LISTENER_QUEUE_SIZE.getConfigurationKey());
+        this.ebeanListenerBatchSize = configuration.getInt(Config.EBEAN_LISTENER_BATCH_SIZE.getConfigurationKey(), DEFAULT_EBEAN_LISTENER_BATCH_SIZE);
+        this.ebeanListenerOverflowPolicy = ChangeEventDispatcher.OverflowPolicy.valueOf(configuration
+                .getString(Config.EBEAN_LISTENER_OVERFLOW_POLICY.getConfigurationKey(), ChangeEventDispatcher.OverflowPolicy.BLOCK.name()));
+        this.ebeanListenerSpillFolder = new File(
+                configuration.getString(Config.EBEAN_LISTENER_SPILL_FOLDER.getConfigurationKey(), System.getProperty("java.io.tmpdir")));
         if (log.isDebugEnabled()) {
             log.debug(Config.EBEAN_CACHE_THREAD_POOL_SIZE.getConfigurationKey() + "=" + this.ebeanCacheThreadPoolSize);
             log.debug(Config.EBEAN_CACHE_SHUTDOWN_DELAY.getConfigurationKey() + "=" + this.ebeanCacheShutdownDelay);
             log.debug(Config.EBEAN_SERVER_DEFAULT_NAME.getConfigurationKey() + "=" + this.ebeanServerDefaultName);
             log.debug(Config.EBEAN_LISTENER_QUEUE_SIZE.getConfigurationKey() + "=" + this.ebeanListenerQueueSize);
+            log.debug(Config.EBEAN_LISTENER_BATCH_SIZE.getConfigurationKey() + "=" + this.ebeanListenerBatchSize);
+            log.debug(Config.EBEAN_LISTENER_OVERFLOW_POLICY.getConfigurationKey() + "=" + this.ebeanListenerOverflowPolicy);
+            log.debug(Config.EBEAN_LISTENER_SPILL_FOLDER.getConfigurationKey() + "=" + this.ebeanListenerSpillFolder);
         }
 
         log.info("SERVICE>>> AbstractDatabaseDependencyServiceImpl starting...");
@@ -113,10 +128,11 @@ public abstract class AbstractDatabaseDependencyServiceImpl implements IDatabase
             log.debug("Adding a new listener " + listener);
         }
         // If a listener is already registered, do nothing
-        if (!getListeners().containsKey(listener)) {
-            BlockingQueue<Runnable> blockingQueue = new LinkedBlockingQueue<>(getEbeanListenerQueueSize());
-            ExecutorService executorService = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, blockingQueue, new ThreadPoolExecutor.DiscardPolicy());
-            listeners.put(listener, executorService);
+        synchronized (getListeners()) {
+            if (!getListeners().containsKey(listener)) {
+                listeners.put(listener, new ChangeEventDispatcher(listener, getEbeanListenerQueueSize(), getEbeanListenerBatchSize(),
+                        getEbeanListenerOverflowPolicy(), getEbeanListenerSpillFolder()));
+            }
         }
         log.info("Added listener for database events " + listener);
     }
@@ -126,19 +142,30 @@ public abstract class AbstractDatabaseDependencyServiceImpl implements IDatabase
         if (log.isDebugEnabled()) {
             log.debug("Removing a new listener " + listener);
         }
-        ExecutorService executorService = getListeners().remove(listener);
-        if (executorService != null) {
+        ChangeEventDispatcher dispatcher = getListeners().remove(listener);
+        if (dispatcher != null) {
             try {
-                executorService.shutdown();
+                dispatcher.shutdown(getEbeanCacheShutdownDelay());
             } catch (Exception e) {
                 if (log.isDebugEnabled()) {
-                    log.debug("Error while shutting down the executor service", e);
+                    log.debug("Error while shutting down the event dispatcher", e);
                 }
             }
         }
         log.info("Removed listener for database events " + listener);
     }
 
+    @Override
+    public List<ChangeEventDispatcher.Statistics> getDatabaseChangeListenerStatistics() {
+        List<ChangeEventDispatcher.Statistics> statistics = new ArrayList<>();
+        synchronized (getListeners()) {
+            for (ChangeEventDispatcher dispatcher : getListeners().values()) {
+                statistics.add(dispatcher.getStatistics());
+            }
+        }
+        return statistics;
+    }
+
     /**
      * Initialize the database (by running patches if required)
      */
@@ -150,7 +177,9 @@ public abstract class AbstractDatabaseDependencyServiceImpl implements IDatabase
         ServerConfig serverConfig = getEbeanConfig().serverConfigs().get(getEbeanServerDefaultName());
         serverConfig.setBackgroundExecutorShutdownSecs(getEbeanCacheShutdownDelay());
         serverConfig.setBackgroundExecutorCorePoolSize(getEbeanCacheThreadPoolSize());
-        serverConfig.add(new CustomBeanPersistController(listeners));
+        CustomBeanPersistController customBeanPersistController = new CustomBeanPersistController(listeners);
+        serverConfig.add((BeanPersistController) customBeanPersistController);
+        serverConfig.add((TransactionEventListener) customBeanPersistController);
         Ebean.register(EbeanServerFactory.create(serverConfig), true);
 
         // Unregister ebean from the Runtime (Shutdown hooks are bad !)
@@ -169,8 +198,13 @@ public abstract class AbstractDatabaseDependencyServiceImpl implements IDatabase
      * Stop the Ebean server
      */
     private void destroy() {
+        synchronized (getListeners()) {
+            for (ChangeEventDispatcher dispatcher : getListeners().values()) {
+                dispatcher.shutdown(getEbeanCacheShutdownDelay());
+            }
+            listeners.clear();
+        }
         Ebean.getServer(getEbeanServerDefaultName()).shutdown(false, true);
-        listeners.clear();
         this.ebeanConfig = null;
     }
 
@@ -266,7 +300,19 @@ public abstract class AbstractDatabaseDependencyServiceImpl implements IDatabase
         return ebeanListenerQueueSize;
     }
 
-    private Map<IDatabaseChangeListener, ExecutorService> getListeners() {
+    private int getEbeanListenerBatchSize() {
+        return ebeanListenerBatchSize;
+    }
+
+    private ChangeEventDispatcher.OverflowPolicy getEbeanListenerOverflowPolicy() {
+        return ebeanListenerOverflowPolicy;
+    }
+
+    private File getEbeanListenerSpillFolder() {
+        return ebeanListenerSpillFolder;
+    }
+
+    private Map<IDatabaseChangeListener, ChangeEventDispatcher> getListeners() {
         return listeners;
     }
 
@@ -0,0 +1,128 @@
+package framework.services.database;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.avaje.ebean.Ebean;
+
+/**
+ * A database change event (INSERT, UPDATE or DELETE of a bean) to be
+ * delivered to an {@link IDatabaseChangeListener}.
+ */
+public class ChangeEvent implements Serializable {
+    private static final long serialVersionUID = 4625417651452038963L;
+
+    public enum Type {
+        INSERT, UPDATE, DELETE;
+    }
+
+    private Type type;
+    private Object bean;
+    private HashMap<String, ModificationPair> modifiedAttributes;
+    private transient String beanKey;
+
+    private ChangeEvent(Type type, Object bean, Map<String, ModificationPair> modifiedAttributes) {
+        this.type = type;
+        this.bean = bean;
+        this.modifiedAttributes = modifiedAttributes != null ? new HashMap<>(modifiedAttributes) : new HashMap<>();
+    }
+
+    /**
+     * Create an INSERT event
+     *
+     * @param bean
+     *            the inserted bean
+     */
+    public static ChangeEvent insert(Object bean) {
+        return new ChangeEvent(Type.INSERT, bean, null);
+    }
+
+    /**
+     * Create an UPDATE event
+     *
+     * @param bean
+     *            the updated bean
+     * @param modifiedAttributes
+     *            the attributes modified by the update
+     */
+    public static ChangeEvent update(Object bean, Map<String, ModificationPair> modifiedAttributes) {
+        return new ChangeEvent(Type.UPDATE, bean, modifiedAttributes);
+    }
+
+    /**
+     * Create a DELETE event
+     *
+     * @param bean
+     *            the deleted bean
+     */
+    public static ChangeEvent delete(Object bean) {
+        return new ChangeEvent(Type.DELETE, bean, null);
+    }
+
+    /**
+     * Return a copy of this event which can be modified independently
+     */
+    ChangeEvent copy() {
+        return new ChangeEvent(getType(), getBean(), modifiedAttributes);
+    }
+
+    /**
+     * Merge the modifications of a more recent UPDATE of the same bean into
+     * this event.<br/>
+     * For an attribute modified by both updates, the old value of this event
+     * is kept and the new value of the more recent one is used.
+     *
+     * @param newerModifiedAttributes
+     *            the attributes modified by the more recent update
+     */
+    public void mergeUpdate(Map<String, ModificationPair> newerModifiedAttributes) {
+        for (Map.Entry<String, ModificationPair> entry : newerModifiedAttributes.entrySet()) {
+            ModificationPair previous = modifiedAttributes.get(entry.getKey());
+            if (previous != null) {
+                modifiedAttributes.put(entry.getKey(), new ModificationPairImpl(previous.getOldValue(), entry.getValue().getNewValue()));
+            } else {
+                modifiedAttributes.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Return a key which identifies the bean (class name and id) or null if
+     * the id of the bean cannot be found
+     */
+    public String getBeanKey() {
+        if (beanKey == null) {
+            try {
+                Object id = Ebean.getBeanId(getBean());
+                if (id != null) {
+                    beanKey = getBean().getClass().getName() + "#" + id;
+                }
+            } catch (Exception e) {
+                // The bean is not an entity, no key
+            }
+        }
+        return beanKey;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Object getBean() {
+        return bean;
+    }
+
+    /**
+     * The attributes modified by the update (empty for an INSERT or a DELETE)
+     */
+    public Map<String, ModificationPair> getModifiedAttributes() {
+        return Collections.unmodifiableMap(modifiedAttributes);
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent [type=" + type + ", bean=" + bean + ", modifiedAttributes=" + modifiedAttributes + "]";
+    }
+}
@@ -0,0 +1,537 @@
+package framework.services.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import play.Logger;
+
+/**
+ * The dispatch engine which delivers the database change events to one
+ * {@link IDatabaseChangeListener}.<br/>
+ * The events are stored into a bounded ring buffer and delivered by batches
+ * (see {@link IDatabaseChangeListener#postBatch(List)}) by a dedicated thread.
+ * <br/>
+ * When the ring buffer is full, the behavior depends on the
+ * {@link OverflowPolicy}:
+ * <ul>
+ * <li>BLOCK : the thread which is notifying the event waits until some space is
+ * available</li>
+ * <li>SPILL_TO_DISK : the events are serialized into some files and delivered
+ * once the buffer has been drained</li>
+ * <li>COALESCE : the UPDATE events for a bean which is already pending in the
+ * buffer are merged into the pending event, the other events are blocking</li>
+ * </ul>
+ * The consumer threads of the dispatchers never wait: an event notified by a
+ * listener (to any dispatcher) is queued beyond the capacity of the ring
+ * buffer instead, so that two listeners notifying each other cannot block
+ * forever. The events of the ring buffer and of this overflow queue are
+ * numbered so that they are delivered in the order in which they have been
+ * submitted.<br/>
+ * No event is discarded unless the dispatcher has been shut down or an event
+ * cannot be serialized to the disk.
+ */
+public class ChangeEventDispatcher {
+    private static Logger.ALogger log = Logger.of(ChangeEventDispatcher.class);
+
+    /**
+     * True for the consumer threads of all the dispatchers
+     */
+    private static ThreadLocal<Boolean> insideConsumer = ThreadLocal.withInitial(() -> false);
+
+    public enum OverflowPolicy {
+        BLOCK, SPILL_TO_DISK, COALESCE;
+    }
+
+    private IDatabaseChangeListener listener;
+    private String name;
+    private int batchSize;
+    private OverflowPolicy overflowPolicy;
+    private File spillFolder;
+
+    private ReentrantLock lock = new ReentrantLock();
+    private Condition notEmpty = lock.newCondition();
+    private Condition notFull = lock.newCondition();
+    private ChangeEvent[] ring;
+    private long[] ringSequences;
+    private int head;
+    private int count;
+    private long nextSequence;
+    private Map<String, ChangeEvent> pendingUpdates = new HashMap<>();
+    private Deque<SequencedEvent> reentrantEvents = new ArrayDeque<>();
+    private volatile boolean running;
+    private Thread consumer;
+
+    private boolean spilling;
+    private int spillSequence;
+    private Deque<File> spillSegments = new ArrayDeque<>();
+    private File currentSpillFile;
+    private DataOutputStream currentSpillWriter;
+    private int currentSpillCount;
+    private int spillPending;
+
+    private AtomicLong delivered = new AtomicLong(0);
+    private AtomicLong dropped = new AtomicLong(0);
+    private AtomicLong coalesced = new AtomicLong(0);
+    private AtomicLong spilled = new AtomicLong(0);
+    private AtomicLong failed = new AtomicLong(0);
+
+    /**
+     * Create and start a new dispatcher
+     *
+     * @param listener
+     *            the listener to which the events are delivered
+     * @param capacity
+     *            the size of the ring buffer
+     * @param batchSize
+     *            the maximum number of events delivered in one call to the
+     *            listener
+     * @param overflowPolicy
+     *            the behavior when the ring buffer is full
+     * @param spillFolder
+     *            the folder in which the events are written for the
+     *            SPILL_TO_DISK policy
+     */
+    public ChangeEventDispatcher(IDatabaseChangeListener listener, int capacity, int batchSize, OverflowPolicy overflowPolicy, File spillFolder) {
+        this.listener = listener;
+        this.name = listener.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(listener));
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.spillFolder = spillFolder;
+        this.ring = new ChangeEvent[capacity];
+        this.ringSequences = new long[capacity];
+        this.running = true;
+        this.consumer = new Thread(() -> consume(), "db-events-" + name);
+        this.consumer.setDaemon(true);
+        this.consumer.setContextClassLoader(Thread.currentThread().getContextClassLoader());
+        this.consumer.start();
+    }
+
+    /**
+     * Submit an event to be delivered to the listener
+     *
+     * @param event
+     *            a database change event
+     */
+    public void dispatch(ChangeEvent event) {
+        lock.lock();
+        try {
+            if (!running) {
+                dropped.incrementAndGet();
+                return;
+            }
+            String beanKey = getOverflowPolicy().equals(OverflowPolicy.COALESCE) ? event.getBeanKey() : null;
+            if (beanKey != null) {
+                if (event.getType().equals(ChangeEvent.Type.UPDATE)) {
+                    ChangeEvent pending = pendingUpdates.get(beanKey);
+                    if (pending != null) {
+                        pending.mergeUpdate(event.getModifiedAttributes());
+                        coalesced.incrementAndGet();
+                        return;
+                    }
+                } else {
+                    // Later updates must not be merged into an update which
+                    // precedes this event
+                    pendingUpdates.remove(beanKey);
+                }
+            }
+            if (spilling) {
+                spill(event);
+                return;
+            }
+            // A listener thread must never wait for a buffer (its own or the
+            // one of another listener which may be waiting for it)
+            boolean reentrant = !getOverflowPolicy().equals(OverflowPolicy.SPILL_TO_DISK) && insideConsumer.get()
+                    && (count == ring.length || !reentrantEvents.isEmpty());
+            while (!reentrant && count == ring.length) {
+                if (getOverflowPolicy().equals(OverflowPolicy.SPILL_TO_DISK)) {
+                    spilling = true;
+                    spill(event);
+                    return;
+                }
+                notFull.await();
+                if (!running) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+            }
+            if (beanKey != null && event.getType().equals(ChangeEvent.Type.UPDATE)) {
+                // The event is shared with the other dispatchers, merge into a
+                // private copy
+                event = event.copy();
+                pendingUpdates.put(beanKey, event);
+            }
+            long sequence = nextSequence++;
+            if (reentrant) {
+                reentrantEvents.add(new SequencedEvent(sequence, event));
+            } else {
+                int tail = (head + count) % ring.length;
+                ring[tail] = event;
+                ringSequences[tail] = sequence;
+                count++;
+            }
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+            log.error("Interrupted while waiting to dispatch an event to " + name + ", the event is lost : " + event);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the dispatcher.<br/>
+     * The events already submitted are delivered within the specified delay.
+     *
+     * @param timeoutInSeconds
+     *            the maximum time to wait for the pending events to be
+     *            delivered
+     */
+    public void shutdown(int timeoutInSeconds) {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            consumer.join(timeoutInSeconds * 1000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (consumer.isAlive()) {
+            consumer.interrupt();
+        }
+        Statistics statistics = getStatistics();
+        if (statistics.getQueueDepth() != 0) {
+            log.warn("The dispatcher for " + name + " has been stopped with " + statistics.getQueueDepth() + " undelivered events");
+        }
+    }
+
+    /**
+     * Return a snapshot of the dispatcher statistics
+     */
+    public Statistics getStatistics() {
+        lock.lock();
+        try {
+            return new Statistics(name, count + reentrantEvents.size() + spillPending, delivered.get(), dropped.get(), coalesced.get(), spilled.get(),
+                    failed.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The loop run by the consumer thread
+     */
+    private void consume() {
+        insideConsumer.set(true);
+        while (true) {
+            List<ChangeEvent> batch = new ArrayList<>(batchSize);
+            File spillSegment = null;
+            lock.lock();
+            try {
+                while (running && count == 0 && reentrantEvents.isEmpty() && !spilling) {
+                    notEmpty.await();
+                }
+                if (count != 0 || !reentrantEvents.isEmpty()) {
+                    // The ring buffer and the reentrant events are merged in
+                    // the order of submission
+                    boolean ringDrained = false;
+                    while ((count != 0 || !reentrantEvents.isEmpty()) && batch.size() < batchSize) {
+                        ChangeEvent event;
+                        if (count != 0 && (reentrantEvents.isEmpty() || ringSequences[head] < reentrantEvents.peek().sequence)) {
+                            event = ring[head];
+                            ring[head] = null;
+                            head = (head + 1) % ring.length;
+                            count--;
+                            ringDrained = true;
+                        } else {
+                            event = reentrantEvents.poll().event;
+                        }
+                        if (!pendingUpdates.isEmpty() && event.getBeanKey() != null && pendingUpdates.get(event.getBeanKey()) == event) {
+                            pendingUpdates.remove(event.getBeanKey());
+                        }
+                        batch.add(event);
+                    }
+                    if (ringDrained) {
+                        notFull.signalAll();
+                    }
+                } else if (spilling) {
+                    spillSegment = nextSpillSegment();
+                } else {
+                    // Not running and nothing left to deliver
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (spillSegment != null) {
+                readSpillSegment(spillSegment);
+            } else {
+                deliver(batch);
+            }
+        }
+    }
+
+    /**
+     * Deliver a batch of events to the listener
+     */
+    private void deliver(List<ChangeEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            listener.postBatch(batch);
+            delivered.addAndGet(batch.size());
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            log.error("Error while delivering " + batch.size() + " database events to " + name, e);
+        }
+    }
+
+    /**
+     * Write an event into the current spill file (to be called with the lock)
+     */
+    private void spill(ChangeEvent event) {
+        byte[] data;
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(event);
+            oos.close();
+            data = baos.toByteArray();
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            log.error("Unable to serialize a database event for " + name + ", the event is lost : " + event, e);
+            return;
+        }
+        try {
+            if (currentSpillWriter == null) {
+                currentSpillFile = new File(getSpillFolder(), "db-events-" + name + "-" + (spillSequence++) + ".spill");
+                currentSpillWriter = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(currentSpillFile)));
+                currentSpillCount = 0;
+            }
+            currentSpillWriter.writeInt(data.length);
+            currentSpillWriter.write(data);
+            currentSpillCount++;
+            spillPending++;
+            spilled.incrementAndGet();
+            notEmpty.signal();
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            log.error("Unable to write a database event to the spill file " + currentSpillFile + ", the event is lost : " + event, e);
+        }
+    }
+
+    /**
+     * Return the next spill file to be read or null if there is nothing
+     * spilled anymore (in which case the spilling mode is stopped). To be
+     * called with the lock.
+     */
+    private File nextSpillSegment() {
+        if (spillSegments.isEmpty() && currentSpillWriter != null && currentSpillCount != 0) {
+            try {
+                currentSpillWriter.close();
+            } catch (IOException e) {
+                log.error("Unable to close the spill file " + currentSpillFile, e);
+            }
+            spillSegments.add(currentSpillFile);
+            currentSpillWriter = null;
+            currentSpillFile = null;
+        }
+        if (spillSegments.isEmpty()) {
+            spilling = false;
+            return null;
+        }
+        return spillSegments.poll();
+    }
+
+    /**
+     * Read the events from a spill file, deliver them by batches and delete
+     * the file
+     */
+    private void readSpillSegment(File spillSegment) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillSegment)))) {
+            List<ChangeEvent> batch = new ArrayList<>(batchSize);
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                decrementSpillPending();
+                try {
+                    batch.add(deserialize(data));
+                } catch (Exception e) {
+                    dropped.incrementAndGet();
+                    log.error("Unable to read a database event from the spill file " + spillSegment + ", the event is lost", e);
+                }
+                if (batch.size() == batchSize) {
+                    deliver(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            deliver(batch);
+        } catch (IOException e) {
+            log.error("Unable to read the spill file " + spillSegment, e);
+        }
+        if (!spillSegment.delete()) {
+            log.warn("Unable to delete the spill file " + spillSegment);
+        }
+    }
+
+    private void decrementSpillPending() {
+        lock.lock();
+        try {
+            spillPending--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ChangeEvent deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        final ClassLoader classLoader = consumer.getContextClassLoader();
+        InputStream bais = new ByteArrayInputStream(data);
+        try (ObjectInputStream ois = new ObjectInputStream(bais) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    return super.resolveClass(desc);
+                }
+            }
+        }) {
+            return (ChangeEvent) ois.readObject();
+        }
+    }
+
+    private OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    private File getSpillFolder() {
+        return spillFolder;
+    }
+
+    /**
+     * The statistics of a dispatcher
+     */
+    public static class Statistics {
+        private String name;
+        private int queueDepth;
+        private long delivered;
+        private long dropped;
+        private long coalesced;
+        private long spilled;
+        private long failed;
+
+        public Statistics(String name, int queueDepth, long delivered, long dropped, long coalesced, long spilled, long failed) {
+            this.name = name;
+            this.queueDepth = queueDepth;
+            this.delivered = delivered;
+            this.dropped = dropped;
+            this.coalesced = coalesced;
+            this.spilled = spilled;
+            this.failed = failed;
+        }
+
+        /**
+         * The name of the listener
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The number of events waiting to be delivered (in memory and on disk)
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * The number of events delivered to the listener
+         */
+        public long getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * The number of events which have been lost
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * The number of UPDATE events merged into a pending one
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * The number of events written to the disk
+         */
+        public long getSpilled() {
+            return spilled;
+        }
+
+        /**
+         * The number of events for which the listener raised an exception
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics [name=" + name + ", queueDepth=" + queueDepth + ", delivered=" + delivered + ", dropped=" + dropped + ", coalesced="
+                    + coalesced + ", spilled=" + spilled + ", failed=" + failed + "]";
+        }
+    }
+
+    /**
+     * An event queued beyond the capacity of the ring buffer and its number
+     */
+    private static class SequencedEvent {
+        private long sequence;
+        private ChangeEvent event;
+
+        public SequencedEvent(long sequence, ChangeEvent event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+    }
+}
@@ -17,33 +17,41 @@
  */
 package framework.services.database;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.function.Consumer;
 
+import com.avaje.ebean.Transaction;
 import com.avaje.ebean.ValuePair;
 import com.avaje.ebean.event.BeanPersistController;
 import com.avaje.ebean.event.BeanPersistRequest;
+import com.avaje.ebean.event.TransactionEventListener;
 import models.framework_models.common.ICustomAttributeValue;
+import play.Logger;
 
 /**
  * Class which acts as a listener of the Ebean server.<br/>
  * Its methods are called when an object is modified (updated, deleted or
- * created).
+ * created).<br/>
+ * The events are recorded with the transaction in which they occur and
+ * dispatched to the listeners only once this transaction is committed (they
+ * are discarded if the transaction is rolled back). The successive updates of
+ * the same bean within a transaction are merged into one event.
  * 
  * @author Pierre-Yves Cloux
  */
-public class CustomBeanPersistController implements BeanPersistController {
-    private Map<IDatabaseChangeListener, ExecutorService> listeners;
+public class CustomBeanPersistController implements BeanPersistController, TransactionEventListener {
+    private static Logger.ALogger log = Logger.of(CustomBeanPersistController.class);
+
+    private Map<IDatabaseChangeListener, ChangeEventDispatcher> listeners;
 
     /**
      * Default constructor.
      */
-    public CustomBeanPersistController(Map<IDatabaseChangeListener, ExecutorService> listeners) {
+    public CustomBeanPersistController(Map<IDatabaseChangeListener, ChangeEventDispatcher> listeners) {
         this.listeners = listeners;
     }
 
@@ -63,60 +71,84 @@ public class CustomBeanPersistController implements BeanPersistController {
 
     @Override
     public void postInsert(final BeanPersistRequest<?> beanPersistRequest) {
-        Set<IDatabaseChangeListener> listenersSet = new HashSet<IDatabaseChangeListener>(getListeners().keySet());
-        listenersSet.forEach(new Consumer<IDatabaseChangeListener>() {
-            @Override
-            public void accept(final IDatabaseChangeListener listener) {
-                ExecutorService executorService = getListeners().get(listener);
-                if (executorService != null) {
-                    executorService.submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            listener.postInsert(beanPersistRequest.getBean());
-                        }
-                    });
-                }
-            }
-        });
+        record(beanPersistRequest.getTransaction(), ChangeEvent.insert(beanPersistRequest.getBean()));
     }
 
     @Override
     public void postDelete(BeanPersistRequest<?> beanPersistRequest) {
-        Set<IDatabaseChangeListener> listenersSet = new HashSet<IDatabaseChangeListener>(getListeners().keySet());
-        listenersSet.forEach(new Consumer<IDatabaseChangeListener>() {
-            @Override
-            public void accept(final IDatabaseChangeListener listener) {
-                ExecutorService executorService = getListeners().get(listener);
-                if (executorService != null) {
-                    executorService.submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            listener.postDelete(beanPersistRequest.getBean());
-                        }
-                    });
-                }
-            }
-        });
+        record(beanPersistRequest.getTransaction(), ChangeEvent.delete(beanPersistRequest.getBean()));
     }
 
     @Override
     public void postUpdate(BeanPersistRequest<?> beanPersistRequest) {
-        final Map<String, ModificationPair> modifiedAttributes = getModifiedAttributes(beanPersistRequest);
-        Set<IDatabaseChangeListener> listenersSet = new HashSet<IDatabaseChangeListener>(getListeners().keySet());
-        listenersSet.forEach(new Consumer<IDatabaseChangeListener>() {
-            @Override
-            public void accept(final IDatabaseChangeListener listener) {
-                ExecutorService executorService = getListeners().get(listener);
-                if (executorService != null) {
-                    executorService.submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            listener.postUpdate(beanPersistRequest.getBean(), Collections.unmodifiableMap(modifiedAttributes));
-                        }
-                    });
-                }
+        record(beanPersistRequest.getTransaction(), ChangeEvent.update(beanPersistRequest.getBean(), getModifiedAttributes(beanPersistRequest)));
+    }
+
+    @Override
+    public void postTransactionCommit(Transaction transaction) {
+        TransactionChangeEvents transactionChangeEvents = (TransactionChangeEvents) transaction
+                .getUserObject(TransactionChangeEvents.TRANSACTION_USER_OBJECT_KEY);
+        if (transactionChangeEvents != null) {
+            transaction.putUserObject(TransactionChangeEvents.TRANSACTION_USER_OBJECT_KEY, null);
+            if (log.isDebugEnabled()) {
+                log.debug("Transaction committed, dispatching " + transactionChangeEvents.getEvents().size() + " events ("
+                        + transactionChangeEvents.getMergedCount() + " merged)");
+            }
+            dispatch(transactionChangeEvents.getEvents());
+        }
+    }
+
+    @Override
+    public void postTransactionRollback(Transaction transaction, Throwable cause) {
+        TransactionChangeEvents transactionChangeEvents = (TransactionChangeEvents) transaction
+                .getUserObject(TransactionChangeEvents.TRANSACTION_USER_OBJECT_KEY);
+        if (transactionChangeEvents != null) {
+            transaction.putUserObject(TransactionChangeEvents.TRANSACTION_USER_OBJECT_KEY, null);
+            if (log.isDebugEnabled()) {
+                log.debug("Transaction rolled back, discarding " + transactionChangeEvents.getEvents().size() + " events");
+            }
+        }
+    }
+
+    /**
+     * Record the event with the transaction in which it occurs (or dispatch it
+     * immediately if there is no transaction)
+     * 
+     * @param transaction
+     *            the transaction
+     * @param event
+     *            a database change event
+     */
+    private void record(Transaction transaction, ChangeEvent event) {
+        if (transaction == null) {
+            dispatch(Collections.singletonList(event));
+            return;
+        }
+        TransactionChangeEvents transactionChangeEvents = (TransactionChangeEvents) transaction
+                .getUserObject(TransactionChangeEvents.TRANSACTION_USER_OBJECT_KEY);
+        if (transactionChangeEvents == null) {
+            transactionChangeEvents = new TransactionChangeEvents();
+            transaction.putUserObject(TransactionChangeEvents.TRANSACTION_USER_OBJECT_KEY, transactionChangeEvents);
+        }
+        transactionChangeEvents.add(event);
+    }
+
+    /**
+     * Submit the events to the dispatcher of each registered listener
+     * 
+     * @param events
+     *            a list of database change events
+     */
+    private void dispatch(List<ChangeEvent> events) {
+        List<ChangeEventDispatcher> dispatchers;
+        synchronized (getListeners()) {
+            dispatchers = new ArrayList<ChangeEventDispatcher>(getListeners().values());
+        }
+        for (ChangeEventDispatcher dispatcher : dispatchers) {
+            for (ChangeEvent event : events) {
+                dispatcher.dispatch(event);
             }
-        });
+        }
     }
 
     /**
@@ -165,7 +197,7 @@ public class CustomBeanPersistController implements BeanPersistController {
         return true;
     }
 
-    private Map<IDatabaseChangeListener, ExecutorService> getListeners() {
+    private Map<IDatabaseChangeListener, ChangeEventDispatcher> getListeners() {
         return listeners;
     }
 }
@@ -1,12 +1,15 @@
 package framework.services.database;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * An interface which can be registered to listen for database changes (INSERT,
  * DELETE, UPDATE).<br/>
- * Warning: please ensure that the events are handled "fast enough" otherwise
- * the events may be discarded to avoid any performance impacts on the system.
+ * The events are delivered by batches through {@link #postBatch(List)} by a
+ * thread dedicated to the listener. Warning: please ensure that the events are
+ * handled "fast enough" otherwise the threads modifying the database may be
+ * slowed down (see {@link ChangeEventDispatcher.OverflowPolicy}).
  * 
  * @author Pierre-Yves Cloux
  */
@@ -36,4 +39,28 @@ public interface IDatabaseChangeListener {
      *            the attributes modified by the update
      */
     public void postUpdate(Object bean, Map<String, ModificationPair> modifiedAttributes);
+
+    /**
+     * Notify a batch of events (in the order in which they occurred).<br/>
+     * By default, each event is notified to the corresponding postInsert,
+     * postUpdate or postDelete method.
+     * 
+     * @param events
+     *            a list of database change events
+     */
+    public default void postBatch(List<ChangeEvent> events) {
+        for (ChangeEvent event : events) {
+            switch (event.getType()) {
+            case INSERT:
+                postInsert(event.getBean());
+                break;
+            case UPDATE:
+                postUpdate(event.getBean(), event.getModifiedAttributes());
+                break;
+            case DELETE:
+                postDelete(event.getBean());
+                break;
+            }
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package framework.services.database;
 
+import java.util.List;
+
 /**
  * The interface to a service which is ensuring that the database is activated
  * before the services are activated
@@ -26,4 +28,12 @@ public interface IDatabaseDependencyService {
      *            a listener
      */
     public void removeDatabaseChangeListener(IDatabaseChangeListener listener);
-}
\ No newline at end of file
+
+    /**
+     * Return the statistics (queue depth, dropped events, etc.) of the
+     * dispatchers associated with the registered listeners
+     * 
+     * @return a list of statistics (one per listener)
+     */
+    public List<ChangeEventDispatcher.Statistics> getDatabaseChangeListenerStatistics();
+}
@@ -1,5 +1,7 @@
 package framework.services.database;
 
+import java.io.Serializable;
+
 import com.avaje.ebean.ValuePair;
 
 /**
@@ -7,7 +9,8 @@ import com.avaje.ebean.ValuePair;
  * 
  * @author Pierre-Yves Cloux
  */
-public class ModificationPairImpl implements ModificationPair {
+public class ModificationPairImpl implements ModificationPair, Serializable {
+    private static final long serialVersionUID = -2817434957305413367L;
     private Object oldValue;
     private Object newValue;
 
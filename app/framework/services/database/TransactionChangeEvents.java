@@ -0,0 +1,79 @@
+package framework.services.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The database change events recorded during an Ebean transaction.<br/>
+ * The events are kept in the order in which they occurred and the successive
+ * updates of the same bean are merged:
+ * <ul>
+ * <li>an UPDATE following an UPDATE of the same bean is merged into the first
+ * one</li>
+ * <li>an UPDATE following an INSERT of the same bean is ignored (the INSERT
+ * event references the bean itself)</li>
+ * </ul>
+ * This object is used by the thread which owns the transaction only.
+ */
+class TransactionChangeEvents {
+    /**
+     * The key of the user object associated with the Ebean transaction
+     */
+    static final String TRANSACTION_USER_OBJECT_KEY = "framework.services.database.TransactionChangeEvents";
+
+    private List<ChangeEvent> events = new ArrayList<>();
+    private Map<String, ChangeEvent> mergeableEvents = new HashMap<>();
+    private int mergedCount;
+
+    /**
+     * Record a new event
+     *
+     * @param event
+     *            a database change event
+     */
+    void add(ChangeEvent event) {
+        String beanKey = event.getBeanKey();
+        if (beanKey == null) {
+            events.add(event);
+            return;
+        }
+        switch (event.getType()) {
+        case INSERT:
+            mergeableEvents.put(beanKey, event);
+            events.add(event);
+            break;
+        case UPDATE:
+            ChangeEvent previous = mergeableEvents.get(beanKey);
+            if (previous == null) {
+                mergeableEvents.put(beanKey, event);
+                events.add(event);
+            } else {
+                if (previous.getType().equals(ChangeEvent.Type.UPDATE)) {
+                    previous.mergeUpdate(event.getModifiedAttributes());
+                }
+                mergedCount++;
+            }
+            break;
+        case DELETE:
+            mergeableEvents.remove(beanKey);
+            events.add(event);
+            break;
+        }
+    }
+
+    /**
+     * The events to be dispatched once the transaction is committed
+     */
+    List<ChangeEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * The number of events which have been merged into a previous one
+     */
+    int getMergedCount() {
+        return mergedCount;
+    }
+}
@@ -9,9 +9,12 @@ import java.util.Map;
 import framework.commons.DataType;
 import framework.services.ext.XmlExtensionDescriptor.PluginConfigurationBlockDescriptor;
 import framework.services.ext.XmlExtensionDescriptor.PluginDescriptor;
+import framework.services.ext.XmlExtensionDescriptor.PluginEventInterfaceConfigurationDescriptor;
 import framework.services.ext.XmlExtensionDescriptor.PluginRegistrationConfiguratorControllerDescriptor;
 import framework.services.ext.XmlExtensionDescriptor.WidgetDescriptor;
 import framework.services.ext.api.IExtensionDescriptor;
+import framework.services.plugins.EventInterfaceConfiguration;
+import scala.concurrent.duration.Duration;
 
 /**
  * A read only representation of the {@link XmlExtensionDescriptor} to prevent
@@ -122,6 +125,36 @@ public class ReadOnlyExtensionDescriptor implements IExtensionDescriptor {
             return getPluginDescriptor().getEventInterface().isOut();
         }
 
+        @Override
+        public EventInterfaceConfiguration getInEventInterfaceConfiguration() {
+            return toEventInterfaceConfiguration(getPluginDescriptor().getEventInterface().getInConfiguration());
+        }
+
+        @Override
+        public EventInterfaceConfiguration getOutEventInterfaceConfiguration() {
+            return toEventInterfaceConfiguration(getPluginDescriptor().getEventInterface().getOutConfiguration());
+        }
+
+        /**
+         * Convert the XML configuration of an event interface into an
+         * {@link EventInterfaceConfiguration} (using the default values for the
+         * missing attributes)
+         * 
+         * @param desc
+         *            an event interface configuration descriptor (may be null)
+         */
+        private static EventInterfaceConfiguration toEventInterfaceConfiguration(PluginEventInterfaceConfigurationDescriptor desc) {
+            if (desc == null) {
+                return new EventInterfaceConfiguration();
+            }
+            int poolSize = desc.getPoolSize() != null ? desc.getPoolSize() : EventInterfaceConfiguration.DEFAULT_POOL_SIZE;
+            int maxPoolSize = desc.getMaxPoolSize() != null ? desc.getMaxPoolSize() : poolSize;
+            int numberOfRetry = desc.getNumberOfRetry() != null ? desc.getNumberOfRetry() : EventInterfaceConfiguration.DEFAULT_NUMBER_OF_RETRY;
+            Duration retryDuration = desc.getRetryDuration() != null ? Duration.create(desc.getRetryDuration(), "seconds")
+                    : EventInterfaceConfiguration.DEFAULT_RETRY_DURATION;
+            return new EventInterfaceConfiguration(poolSize, maxPoolSize, numberOfRetry, retryDuration, desc.getMailbox());
+        }
+
         @Override
         public Map<String, IPluginConfigurationBlockDescriptor> getConfigurationBlockDescriptors() {
             if (configurationBlockDescriptors == null) {
@@ -433,6 +433,8 @@ public class XmlExtensionDescriptor {
     public static class PluginEventInterfaceDescriptor {
         private boolean in;
         private boolean out;
+        private PluginEventInterfaceConfigurationDescriptor inConfiguration;
+        private PluginEventInterfaceConfigurationDescriptor outConfiguration;
 
         public PluginEventInterfaceDescriptor() {
             super();
@@ -455,6 +457,97 @@ public class XmlExtensionDescriptor {
         public void setOut(boolean out) {
             this.out = out;
         }
+
+        @XmlElement(name = "in-configuration", required = false, nillable = false)
+        public PluginEventInterfaceConfigurationDescriptor getInConfiguration() {
+            return inConfiguration;
+        }
+
+        public void setInConfiguration(PluginEventInterfaceConfigurationDescriptor inConfiguration) {
+            this.inConfiguration = inConfiguration;
+        }
+
+        @XmlElement(name = "out-configuration", required = false, nillable = false)
+        public PluginEventInterfaceConfigurationDescriptor getOutConfiguration() {
+            return outConfiguration;
+        }
+
+        public void setOutConfiguration(PluginEventInterfaceConfigurationDescriptor outConfiguration) {
+            this.outConfiguration = outConfiguration;
+        }
+    }
+
+    /**
+     * The data structure which describes the configuration of the actors pool
+     * which is processing the messages of an event interface (IN or OUT) of a
+     * plugin:
+     * <ul>
+     * <li>pool-size : the initial number of actors</li>
+     * <li>max-pool-size : the maximum number of actors (the pool grows with the
+     * depth of the mailboxes)</li>
+     * <li>number-of-retry : the number of retry in case of failure</li>
+     * <li>retry-duration : the time slot (in seconds) during which a retry can
+     * be attempted</li>
+     * <li>mailbox : the id of a mailbox configured in the actor system (for
+     * instance a bounded one)</li>
+     * </ul>
+     * All the attributes are optional.
+     */
+    public static class PluginEventInterfaceConfigurationDescriptor {
+        private Integer poolSize;
+        private Integer maxPoolSize;
+        private Integer numberOfRetry;
+        private Integer retryDuration;
+        private String mailbox;
+
+        public PluginEventInterfaceConfigurationDescriptor() {
+            super();
+        }
+
+        @XmlAttribute(name = "pool-size", required = false)
+        public Integer getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(Integer poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        @XmlAttribute(name = "max-pool-size", required = false)
+        public Integer getMaxPoolSize() {
+            return maxPoolSize;
+        }
+
+        public void setMaxPoolSize(Integer maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+        }
+
+        @XmlAttribute(name = "number-of-retry", required = false)
+        public Integer getNumberOfRetry() {
+            return numberOfRetry;
+        }
+
+        public void setNumberOfRetry(Integer numberOfRetry) {
+            this.numberOfRetry = numberOfRetry;
+        }
+
+        @XmlAttribute(name = "retry-duration", required = false)
+        public Integer getRetryDuration() {
+            return retryDuration;
+        }
+
+        public void setRetryDuration(Integer retryDuration) {
+            this.retryDuration = retryDuration;
+        }
+
+        @XmlAttribute(name = "mailbox", required = false)
+        public String getMailbox() {
+            return mailbox;
+        }
+
+        public void setMailbox(String mailbox) {
+            this.mailbox = mailbox;
+        }
     }
 
     /**
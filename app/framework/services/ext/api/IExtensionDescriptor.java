@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 
 import framework.commons.DataType;
+import framework.services.plugins.EventInterfaceConfiguration;
 
 /**
  * The public interface for the extensions descriptors
@@ -128,6 +129,22 @@ public interface IExtensionDescriptor {
          */
         public boolean hasOutMessageInterface();
 
+        /**
+         * Return the configuration of the actors pool which is processing the
+         * messages of the IN interface
+         * 
+         * @return a configuration (the default one if not specified)
+         */
+        public EventInterfaceConfiguration getInEventInterfaceConfiguration();
+
+        /**
+         * Return the configuration of the actors pool which is processing the
+         * messages of the OUT interface
+         * 
+         * @return a configuration (the default one if not specified)
+         */
+        public EventInterfaceConfiguration getOutEventInterfaceConfiguration();
+
         /**
          * Return a map of configuration blocks required by this plugin indexed
          * by their unique identifier
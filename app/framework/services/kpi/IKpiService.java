@@ -131,6 +131,11 @@ public interface IKpiService {
      */
     public IPreferenceManagerPlugin getPreferenceManagerPlugin();
 
+    /**
+     * Get the engine which computes and stores the values of the KPIs.
+     */
+    public KpiComputationEngine getKpiComputationEngine();
+
     /**
      * 
      * @param uid
@@ -148,4 +153,15 @@ public interface IKpiService {
      */
     public void addData(String uid, Long objectId, Date timestamp, BigDecimal mainValue, BigDecimal additional1Value, BigDecimal additional2Value)
             throws KpiServiceException;
+
+    /**
+     * Notify the other nodes that the last KPI data of a KPI have been
+     * modified (so that they reload them).<br/>
+     * The notifications may be grouped and sent later.
+     * 
+     * @param uid
+     *            the KPI uid
+     */
+    public default void lastValuesChanged(String uid) {
+    }
 }
@@ -19,14 +19,21 @@ package framework.services.kpi;
 
 import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import javax.persistence.PersistenceException;
+
 import javax.script.ScriptContext;
 import javax.script.SimpleScriptContext;
 
@@ -34,6 +41,9 @@ import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Transaction;
+
 import akka.actor.Cancellable;
 import framework.commons.IFrameworkConstants;
 import framework.utils.DefaultSelectableValueHolder;
@@ -42,6 +52,7 @@ import framework.utils.ISelectableValueHolderCollection;
 import framework.utils.Msg;
 import models.framework_models.kpi.KpiColorRule;
 import models.framework_models.kpi.KpiData;
+import models.framework_models.kpi.KpiDataLast;
 import models.framework_models.kpi.KpiDefinition;
 import models.framework_models.kpi.KpiValueDefinition;
 import models.framework_models.kpi.KpiValueDefinition.RenderType;
@@ -65,6 +76,7 @@ public class Kpi {
     private Cancellable scheduler = null;
     private Map<String, Object> parameters = new HashMap<String, Object>();
     private boolean cancelled;
+    private KpiDataLastCache kpiDataLastCache = new KpiDataLastCache();
 
     /**
      * Construct a KPI with a KPI definition.
@@ -233,58 +245,67 @@ public class Kpi {
     }
 
     /**
-     * Store the values in the KPI data table.
+     * Store the values in the KPI data table.<br/>
+     * The computation is performed by the {@link KpiComputationEngine}.
      */
     public void storeValues() {
+        getKpiService().getKpiComputationEngine().storeValues(this);
+    }
+
+    /**
+     * Compute the values of an object and return the KPI data to be stored (an
+     * empty list if the values have not changed since the last computation or
+     * if the current date is not in the trend period).
+     * 
+     * @param objectId
+     *            the object id
+     * @param timestamp
+     *            the timestamp of the computation
+     * @param kpiColorRules
+     *            the color rules of the KPI definition
+     */
+    List<KpiData> computeKpiData(Long objectId, Date timestamp, List<KpiColorRule> kpiColorRules) {
 
-        for (IKpiObjectsContainer kpiObject : kpiObjectsContainer.getAllInstancesForKpi()) {
+        Pair<Date, Date> period = this.kpiRunner.getTrendPeriod(this.getKpiService().getPreferenceManagerPlugin(), this.getKpiService().getScriptService(),
+                this, objectId);
 
-            Pair<Date, Date> period = this.kpiRunner.getTrendPeriod(this.getKpiService().getPreferenceManagerPlugin(),
-                    this.getKpiService().getScriptService(), this, kpiObject.getIdForKpi());
-            Date today = new Date();
-
-            if (period == null || (period.getLeft().before(today) && period.getRight().after(today))) {
-
-                BigDecimal main = computeValue(kpiObject.getIdForKpi(), DataType.MAIN);
-                BigDecimal additional1 = computeValue(kpiObject.getIdForKpi(), DataType.ADDITIONAL1);
-                BigDecimal additional2 = computeValue(kpiObject.getIdForKpi(), DataType.ADDITIONAL2);
-
-                KpiData oldMainData = this.getLastKpiData(kpiObject.getIdForKpi(), DataType.MAIN);
-                KpiData oldAdd1Data = this.getLastKpiData(kpiObject.getIdForKpi(), DataType.ADDITIONAL1);
-                KpiData oldAdd2Data = this.getLastKpiData(kpiObject.getIdForKpi(), DataType.ADDITIONAL2);
-
-                if (oldMainData == null || oldMainData.value == null || main.doubleValue() != oldMainData.value.doubleValue() ||
-                        oldAdd1Data == null || oldAdd1Data.value == null || additional1.doubleValue() != oldAdd1Data.value.doubleValue() ||
-                        oldAdd2Data == null || oldAdd2Data.value == null || additional2.doubleValue() != oldAdd2Data.value.doubleValue()) {
-
-                    KpiColorRule colorRule = computeColorRule(main, additional1, additional2);
-
-                    KpiData mainData = new KpiData();
-                    mainData.kpiColorRule = colorRule;
-                    mainData.kpiValueDefinition = kpiDefinition.mainKpiValueDefinition;
-                    mainData.objectId = kpiObject.getIdForKpi();
-                    mainData.timestamp = new Date();
-                    mainData.value = main;
-                    mainData.save();
-
-                    KpiData additional1Data = new KpiData();
-                    additional1Data.kpiValueDefinition = kpiDefinition.additional1KpiValueDefinition;
-                    additional1Data.objectId = kpiObject.getIdForKpi();
-                    additional1Data.timestamp = new Date();
-                    additional1Data.value = additional1;
-                    additional1Data.save();
-
-                    KpiData additional2Data = new KpiData();
-                    additional2Data.kpiValueDefinition = kpiDefinition.additional2KpiValueDefinition;
-                    additional2Data.objectId = kpiObject.getIdForKpi();
-                    additional2Data.timestamp = new Date();
-                    additional2Data.value = additional2;
-                    additional2Data.save();
+        if (period != null && !(period.getLeft().before(timestamp) && period.getRight().after(timestamp))) {
+            return Collections.emptyList();
+        }
+
+        Map<DataType, BigDecimal> values = new EnumMap<>(DataType.class);
+        boolean changed = false;
+        for (DataType dataType : DataType.values()) {
+            if (getKpiValueDefinition(dataType) != null) {
+                BigDecimal value = computeValue(objectId, dataType);
+                values.put(dataType, value);
+                KpiDataLast oldData = getLastValue(objectId, dataType);
+                if (oldData == null || oldData.value == null || value == null || value.doubleValue() != oldData.value.doubleValue()) {
+                    changed = true;
                 }
             }
+        }
 
+        if (!changed) {
+            return Collections.emptyList();
         }
 
+        KpiColorRule colorRule = computeColorRule(kpiColorRules, values.get(DataType.MAIN), values.get(DataType.ADDITIONAL1),
+                values.get(DataType.ADDITIONAL2));
+
+        List<KpiData> kpiData = new ArrayList<>(values.size());
+        for (Map.Entry<DataType, BigDecimal> entry : values.entrySet()) {
+            KpiData data = new KpiData();
+            if (entry.getKey().equals(DataType.MAIN)) {
+                data.kpiColorRule = colorRule;
+            }
+            data.kpiValueDefinition = getKpiValueDefinition(entry.getKey());
+            data.objectId = objectId;
+            data.timestamp = timestamp;
+            data.value = entry.getValue();
+            kpiData.add(data);
+        }
+        return kpiData;
     }
 
     /*
@@ -552,6 +573,180 @@ public class Kpi {
         return null;
     }
 
+    /**
+     * Get the last KPI data for a value definition (from the in-memory cache
+     * of the kpi_data_last table).<br/>
+     * Return null if there is no data or if the value definition is not
+     * defined.
+     * 
+     * @param objectId
+     *            the object id
+     * @param dataType
+     *            the data type
+     */
+    public KpiDataLast getLastValue(Long objectId, DataType dataType) {
+        KpiValueDefinition kpiValueDefinition = getKpiValueDefinition(dataType);
+        if (kpiValueDefinition == null) {
+            return null;
+        }
+        return getKpiDataLastCache().get(kpiValueDefinition.id, objectId);
+    }
+
+    /**
+     * Load in the cache the last KPI data of all the objects (one query per
+     * value definition).
+     */
+    void loadLastValues() {
+        for (DataType dataType : DataType.values()) {
+            KpiValueDefinition kpiValueDefinition = getKpiValueDefinition(dataType);
+            if (kpiValueDefinition != null) {
+                getKpiDataLastCache().load(kpiValueDefinition.id);
+            }
+        }
+    }
+
+    /**
+     * Save some new KPI data (with a JDBC batch) and then update the last KPI
+     * data accordingly.<br/>
+     * The update of the last KPI data is retried once if it conflicts with
+     * another update (same object updated by another thread or node). If it
+     * fails again, the missing last KPI data are rebuilt and the last KPI data
+     * of the value definitions are reloaded on the next access.<br/>
+     * The other nodes are not notified: the caller must call
+     * {@link IKpiService#lastValuesChanged(String)} once all the KPI data are
+     * saved.
+     * 
+     * @param kpiData
+     *            the KPI data to save
+     */
+    public void saveKpiData(List<KpiData> kpiData) {
+        if (kpiData.isEmpty()) {
+            return;
+        }
+        Transaction transaction = Ebean.beginTransaction();
+        try {
+            transaction.setBatchMode(true);
+            transaction.setBatchSize(kpiData.size());
+            for (KpiData data : kpiData) {
+                Ebean.save(data);
+            }
+            transaction.commit();
+        } finally {
+            transaction.end();
+        }
+
+        Set<Long> kpiValueDefinitionIds = new HashSet<>();
+        for (KpiData data : kpiData) {
+            kpiValueDefinitionIds.add(data.kpiValueDefinition.id);
+        }
+        List<KpiDataLast> lastKpiData = upsertLastKpiData(kpiData);
+        if (lastKpiData == null) {
+            log.error("Unable to update the last KPI data of the KPI " + getUid() + ", they will be reloaded");
+            for (Long kpiValueDefinitionId : kpiValueDefinitionIds) {
+                getKpiDataLastCache().invalidate(kpiValueDefinitionId);
+                getKpiDataLastCache().rebuildMissing(kpiValueDefinitionId);
+            }
+        } else {
+            getKpiDataLastCache().update(lastKpiData);
+        }
+    }
+
+    /**
+     * Rebuild the missing last KPI data of the value definitions from the KPI
+     * data (one scan of the KPI data per value definition).<br/>
+     * This is done at startup and must be called after some KPI data have
+     * been inserted by other means than {@link #saveKpiData(List)}.
+     */
+    public void rebuildMissingLastValues() {
+        for (DataType dataType : DataType.values()) {
+            KpiValueDefinition kpiValueDefinition = getKpiValueDefinition(dataType);
+            if (kpiValueDefinition != null) {
+                getKpiDataLastCache().rebuildMissing(kpiValueDefinition.id);
+            }
+        }
+    }
+
+    /**
+     * Notify the other nodes that the last KPI data have been modified (once
+     * per computation run or group of added data).
+     */
+    void lastValuesChanged() {
+        getKpiService().lastValuesChanged(getUid());
+    }
+
+    /**
+     * Update the last KPI data with some KPI data which have been saved (one
+     * retry in case of conflict).
+     * 
+     * @param kpiData
+     *            the saved KPI data
+     * @return the updated last KPI data or null if the update failed
+     */
+    private List<KpiDataLast> upsertLastKpiData(List<KpiData> kpiData) {
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            Transaction transaction = Ebean.beginTransaction();
+            try {
+                List<KpiDataLast> lastKpiData = KpiDataLast.upsert(kpiData);
+                transaction.commit();
+                return lastKpiData;
+            } catch (PersistenceException e) {
+                log.warn("Conflict while updating the last KPI data of the KPI " + getUid() + " (attempt " + attempt + ")", e);
+            } finally {
+                transaction.end();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove the cached last KPI data (because they have been modified by
+     * another node).
+     */
+    void invalidateLastValues() {
+        getKpiDataLastCache().clear();
+    }
+
+    /**
+     * Get the color rules of the KPI definition (an empty list if the KPI
+     * definition has no color rule).
+     */
+    public List<KpiColorRule> getKpiColorRules() {
+        if (kpiDefinition.kpiColorRules == null) {
+            return Collections.emptyList();
+        }
+        return KpiColorRule.getKpiColorRuleAsListByDefinition(kpiDefinition.id);
+    }
+
+    /**
+     * Get the id of the KPI value definition of a data type (null if not
+     * defined).
+     * 
+     * @param dataType
+     *            the data type
+     */
+    public Long getKpiValueDefinitionId(DataType dataType) {
+        KpiValueDefinition kpiValueDefinition = getKpiValueDefinition(dataType);
+        return kpiValueDefinition != null ? kpiValueDefinition.id : null;
+    }
+
+    /**
+     * Get the KPI value definition of a data type (null if not defined).
+     * 
+     * @param dataType
+     *            the data type
+     */
+    private KpiValueDefinition getKpiValueDefinition(DataType dataType) {
+        switch (dataType) {
+        case ADDITIONAL1:
+            return kpiDefinition.additional1KpiValueDefinition;
+        case ADDITIONAL2:
+            return kpiDefinition.additional2KpiValueDefinition;
+        case MAIN:
+            return kpiDefinition.mainKpiValueDefinition;
+        }
+        return null;
+    }
+
     /**
      * Get the KPI data of the last 3 months for a trend.
      * 
@@ -630,12 +825,29 @@ public class Kpi {
      *            the additional2 value
      */
     public KpiColorRule computeColorRule(BigDecimal main, BigDecimal additional1, BigDecimal additional2) {
+        return computeColorRule(getKpiColorRules(), main, additional1, additional2);
+    }
+
+    /**
+     * Compute and return the color rule to applied using the specified color
+     * rules (see {@link #getKpiColorRules()}).
+     * 
+     * @param kpiColorRules
+     *            the color rules of the KPI definition
+     * @param main
+     *            the main value
+     * @param additional1
+     *            the additional1 value
+     * @param additional2
+     *            the additional2 value
+     */
+    public KpiColorRule computeColorRule(List<KpiColorRule> kpiColorRules, BigDecimal main, BigDecimal additional1, BigDecimal additional2) {
 
         KpiColorRule computedColorRule = null;
 
-        if (kpiDefinition.kpiColorRules != null) {
+        if (kpiColorRules != null) {
 
-            for (KpiColorRule kpiColorRule : KpiColorRule.getKpiColorRuleAsListByDefinition(kpiDefinition.id)) {
+            for (KpiColorRule kpiColorRule : kpiColorRules) {
 
                 try {
                     SimpleScriptContext scriptContext = new SimpleScriptContext();
@@ -760,7 +972,14 @@ public class Kpi {
         return kpiService;
     }
 
-    private synchronized boolean isCancelled() {
+    /**
+     * Get the cache of the last KPI data.
+     */
+    private KpiDataLastCache getKpiDataLastCache() {
+        return kpiDataLastCache;
+    }
+
+    synchronized boolean isCancelled() {
         return cancelled;
     }
 
@@ -0,0 +1,194 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.kpi;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import framework.services.system.ISysAdminUtils;
+import framework.services.system.JobProgress;
+import models.framework_models.kpi.KpiColorRule;
+import models.framework_models.kpi.KpiData;
+import models.framework_models.kpi.KpiDataLast;
+import play.Logger;
+
+/**
+ * The engine which computes and stores the values of the KPIs (see
+ * {@link Kpi#storeValues()}).<br/>
+ * For a KPI run:
+ * <ul>
+ * <li>the last KPI data of all the objects are loaded (see
+ * {@link KpiDataLast}) with one query per value definition</li>
+ * <li>the objects are split into chunks which are computed in parallel by a
+ * bounded pool of threads</li>
+ * <li>the new KPI data of a chunk are inserted with a JDBC batch in one
+ * transaction</li>
+ * <li>the other nodes are notified once at the end of the run if some KPI data
+ * have been inserted</li>
+ * </ul>
+ * The progress of each run is reported to the {@link ISysAdminUtils} (job name
+ * "KPI_" followed by the KPI uid).
+ */
+public class KpiComputationEngine {
+    private static Logger.ALogger log = Logger.of(KpiComputationEngine.class);
+
+    public static final String JOB_NAME_PREFIX = "KPI_";
+
+    private ISysAdminUtils sysAdminUtils;
+    private ExecutorService executor;
+    private int chunkSize;
+    private Set<String> runningKpis = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a new engine
+     *
+     * @param sysAdminUtils
+     *            the system admin utils service (to report the progress)
+     * @param poolSize
+     *            the number of threads computing the values in parallel
+     * @param chunkSize
+     *            the number of objects computed by one task (and inserted in
+     *            one batch)
+     */
+    public KpiComputationEngine(ISysAdminUtils sysAdminUtils, int poolSize, int chunkSize) {
+        this.sysAdminUtils = sysAdminUtils;
+        this.chunkSize = chunkSize;
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        this.executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "kpi-computation-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Compute and store the values of the specified KPI for all its objects.
+     * <br/>
+     * The method returns when the run is completed. If a run is already in
+     * progress for this KPI, nothing is done.
+     *
+     * @param kpi
+     *            a KPI
+     */
+    public void storeValues(Kpi kpi) {
+        if (!runningKpis.add(kpi.getUid())) {
+            log.warn("The computation of the KPI " + kpi.getUid() + " is already running, this run is skipped");
+            return;
+        }
+        try {
+            List<? extends IKpiObjectsContainer> kpiObjects = kpi.getKpiObjectsContainer().getAllInstancesForKpi();
+            JobProgress progress = getSysAdminUtils().startJobProgress(JOB_NAME_PREFIX + kpi.getUid(), kpiObjects.size());
+
+            Date timestamp = new Date();
+            kpi.loadLastValues();
+            List<KpiColorRule> kpiColorRules = kpi.getKpiColorRules();
+
+            AtomicBoolean saved = new AtomicBoolean(false);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < kpiObjects.size(); i += getChunkSize()) {
+                List<Long> objectIds = new ArrayList<>(getChunkSize());
+                for (IKpiObjectsContainer kpiObject : kpiObjects.subList(i, Math.min(i + getChunkSize(), kpiObjects.size()))) {
+                    objectIds.add(kpiObject.getIdForKpi());
+                }
+                futures.add(getExecutor().submit(() -> computeChunk(kpi, objectIds, timestamp, kpiColorRules, progress, saved)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    log.error("A computation task of the KPI " + kpi.getUid() + " failed", e);
+                }
+            }
+
+            if (saved.get()) {
+                kpi.lastValuesChanged();
+            }
+            progress.finish();
+            log.info("KPI " + kpi.getUid() + " computed: " + progress);
+        } finally {
+            runningKpis.remove(kpi.getUid());
+        }
+    }
+
+    /**
+     * Stop the engine (the running computations are interrupted)
+     */
+    public void shutdown() {
+        getExecutor().shutdownNow();
+        try {
+            getExecutor().awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Compute the values of a chunk of objects and insert the new KPI data in
+     * one batch (the saved flag is set if some KPI data have been inserted)
+     */
+    private void computeChunk(Kpi kpi, List<Long> objectIds, Date timestamp, List<KpiColorRule> kpiColorRules, JobProgress progress,
+            AtomicBoolean saved) {
+        List<KpiData> newKpiData = new ArrayList<>();
+        int computed = 0;
+        for (Long objectId : objectIds) {
+            if (kpi.isCancelled() || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            try {
+                newKpiData.addAll(kpi.computeKpiData(objectId, timestamp, kpiColorRules));
+                computed++;
+            } catch (Exception e) {
+                log.error("Error while computing the KPI " + kpi.getUid() + " for the object " + objectId, e);
+                progress.failed(1);
+            }
+        }
+
+        try {
+            kpi.saveKpiData(newKpiData);
+            if (!newKpiData.isEmpty()) {
+                saved.set(true);
+            }
+        } catch (Exception e) {
+            log.error("Error while storing the values of the KPI " + kpi.getUid() + " for the objects " + objectIds, e);
+            progress.failed(computed);
+            return;
+        }
+        progress.processed(computed);
+    }
+
+    private ISysAdminUtils getSysAdminUtils() {
+        return sysAdminUtils;
+    }
+
+    private ExecutorService getExecutor() {
+        return executor;
+    }
+
+    private int getChunkSize() {
+        return chunkSize;
+    }
+}
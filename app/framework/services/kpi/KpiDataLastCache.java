@@ -0,0 +1,194 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.kpi;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.PersistenceException;
+
+import models.framework_models.kpi.KpiData;
+import models.framework_models.kpi.KpiDataLast;
+import play.Logger;
+import play.Play;
+
+/**
+ * An in-memory cache of the last KPI data ({@link KpiDataLast}) of a KPI.<br/>
+ * The last KPI data of a value definition are loaded for all the objects with
+ * one query, the first time one of them is requested. The cache is then
+ * updated each time a new {@link KpiData} is stored through the {@link Kpi}.
+ * <br/>
+ * The last KPI data of a value definition are reloaded after
+ * "maf.kpi.last.cache.ttl" seconds (default 300). The changes made by the
+ * other nodes are notified with the
+ * {@link framework.services.cache.IInvalidationBus} (see
+ * {@link KpiServiceImpl#LAST_VALUES_INVALIDATION_REGION}).<br/>
+ * The missing last KPI data are rebuilt by {@link #rebuildMissing(Long)}
+ * (at startup and when an update of the last KPI data failed), not by the
+ * loads.<br/>
+ * The cached objects must be considered as read-only.
+ */
+public class KpiDataLastCache {
+    private static Logger.ALogger log = Logger.of(KpiDataLastCache.class);
+
+    private static final String TTL_CONFIG = "maf.kpi.last.cache.ttl";
+    private static final int DEFAULT_TTL = 300;
+    private static Long ttl;
+
+    private Map<Long, CachedLastKpiData> lastKpiDataByDefinition = new ConcurrentHashMap<>();
+    private AtomicLong generation = new AtomicLong(0);
+
+    /**
+     * Default constructor.
+     */
+    public KpiDataLastCache() {
+    }
+
+    /**
+     * Get the last KPI data of a value definition for an object (null if
+     * there is no data).
+     *
+     * @param kpiValueDefinitionId
+     *            the KPI value definition id
+     * @param objectId
+     *            the object id
+     */
+    public KpiDataLast get(Long kpiValueDefinitionId, Long objectId) {
+        return load(kpiValueDefinitionId).get(objectId);
+    }
+
+    /**
+     * Load (if not yet loaded or expired) the last KPI data of a value
+     * definition for all the objects.
+     *
+     * @param kpiValueDefinitionId
+     *            the KPI value definition id
+     * @return the last KPI data indexed by object id
+     */
+    public Map<Long, KpiDataLast> load(Long kpiValueDefinitionId) {
+        CachedLastKpiData cached = lastKpiDataByDefinition.get(kpiValueDefinitionId);
+        if (cached != null && !cached.isExpired()) {
+            return cached.lastKpiDataByObjectId;
+        }
+
+        // The queries are run outside of the map (concurrent loads of the same
+        // value definition are possible but harmless)
+        long loadGeneration = generation.get();
+        List<KpiDataLast> lastKpiData = KpiDataLast.getByKpiValueDefinition(kpiValueDefinitionId);
+        Map<Long, KpiDataLast> lastKpiDataByObjectId = new ConcurrentHashMap<>();
+        for (KpiDataLast last : lastKpiData) {
+            lastKpiDataByObjectId.put(last.objectId, last);
+        }
+
+        // Not cached if the cache has been updated or invalidated during the
+        // load (the loaded data could be older)
+        if (generation.get() == loadGeneration) {
+            lastKpiDataByDefinition.put(kpiValueDefinitionId, new CachedLastKpiData(lastKpiDataByObjectId));
+        }
+        return lastKpiDataByObjectId;
+    }
+
+    /**
+     * Rebuild the missing last KPI data of a value definition (the objects
+     * which have some KPI data but no last KPI data) from the KPI data.<br/>
+     * This check scans the KPI data of the value definition: it must not be
+     * run while rendering.
+     *
+     * @param kpiValueDefinitionId
+     *            the KPI value definition id
+     */
+    public void rebuildMissing(Long kpiValueDefinitionId) {
+        int lastKpiData = KpiDataLast.countByKpiValueDefinition(kpiValueDefinitionId);
+        int objectsWithData = KpiDataLast.countObjectsWithKpiData(kpiValueDefinitionId);
+        if (lastKpiData < objectsWithData) {
+            log.info("Some last KPI data of the value definition " + kpiValueDefinitionId + " are missing (" + lastKpiData + " for " + objectsWithData
+                    + " objects), rebuild them from the KPI data");
+            try {
+                KpiDataLast.insertMissing(kpiValueDefinitionId);
+            } catch (PersistenceException e) {
+                // Rebuilt at the same time by another thread or node
+                log.warn("Unable to rebuild the last KPI data of the value definition " + kpiValueDefinitionId, e);
+            }
+            invalidate(kpiValueDefinitionId);
+        }
+    }
+
+    /**
+     * Update the cache with last KPI data which have been saved.
+     *
+     * @param lastKpiData
+     *            a list of last KPI data
+     */
+    public void update(List<KpiDataLast> lastKpiData) {
+        generation.incrementAndGet();
+        for (KpiDataLast last : lastKpiData) {
+            CachedLastKpiData cached = lastKpiDataByDefinition.get(last.kpiValueDefinition.id);
+            if (cached != null) {
+                cached.lastKpiDataByObjectId.put(last.objectId, last);
+            }
+        }
+    }
+
+    /**
+     * Remove the cached data of a value definition (they will be reloaded on
+     * the next access).
+     *
+     * @param kpiValueDefinitionId
+     *            the KPI value definition id
+     */
+    public void invalidate(Long kpiValueDefinitionId) {
+        generation.incrementAndGet();
+        lastKpiDataByDefinition.remove(kpiValueDefinitionId);
+    }
+
+    /**
+     * Remove all the cached data (they will be reloaded on the next access).
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        lastKpiDataByDefinition.clear();
+    }
+
+    private static long getTtl() {
+        if (ttl == null) {
+            Integer configuredTtl = Play.application().configuration().getInt(TTL_CONFIG);
+            ttl = (configuredTtl != null ? configuredTtl : DEFAULT_TTL) * 1000L;
+        }
+        return ttl;
+    }
+
+    /**
+     * The last KPI data of a value definition and the time at which they have
+     * been loaded
+     */
+    private static class CachedLastKpiData {
+        private Map<Long, KpiDataLast> lastKpiDataByObjectId;
+        private long timestamp;
+
+        public CachedLastKpiData(Map<Long, KpiDataLast> lastKpiDataByObjectId) {
+            this.lastKpiDataByObjectId = lastKpiDataByObjectId;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() - timestamp > getTtl();
+        }
+    }
+}
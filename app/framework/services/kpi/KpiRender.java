@@ -22,7 +22,7 @@ import java.util.Date;
 
 import framework.services.kpi.Kpi.DataType;
 import models.framework_models.kpi.KpiColorRule;
-import models.framework_models.kpi.KpiData;
+import models.framework_models.kpi.KpiDataLast;
 
 /**
  * The KPI render is used to display a cell or a box of a KPI.
@@ -59,36 +59,35 @@ public class KpiRender {
         if (kpi.isValueFromKpiData()) {
 
             if (kpi.hasBoxDisplay()) {
-                KpiData kpiAdditional1Data = kpi.getLastKpiData(objectId, DataType.ADDITIONAL1);
+                KpiDataLast kpiAdditional1Data = kpi.getLastValue(objectId, DataType.ADDITIONAL1);
                 if (kpiAdditional1Data != null) {
                     additional1Value = kpiAdditional1Data.value;
                 }
 
-                KpiData kpiAdditional2Data = kpi.getLastKpiData(objectId, DataType.ADDITIONAL2);
+                KpiDataLast kpiAdditional2Data = kpi.getLastValue(objectId, DataType.ADDITIONAL2);
                 if (kpiAdditional2Data != null) {
                     additional2Value = kpiAdditional2Data.value;
                 }
             }
 
-            KpiData kpiMainData = kpi.getLastKpiData(objectId, DataType.MAIN);
+            KpiDataLast kpiMainData = kpi.getLastValue(objectId, DataType.MAIN);
             if (kpiMainData != null) {
 
                 mainValue = kpiMainData.value;
                 valueTimestamp = kpiMainData.timestamp;
 
                 /*
-                 * To improve the performance, the color rule to applied is also
-                 * stored in the KPI data table (this should be done by the
-                 * scheduler or the plugin). If the color is not stored, then we
-                 * compute and store it.
+                 * To improve the performance, the color rule to applied is
+                 * stored with the last KPI data when the KPI data is written
+                 * (by the scheduler or the plugin). If the color is not stored,
+                 * then we compute it (the cached last KPI data is shared and
+                 * never saved here).
                  */
 
                 if (kpiMainData.kpiColorRule != null) {
                     colorRule = kpiMainData.kpiColorRule;
                 } else {
                     colorRule = kpi.computeColorRule(mainValue, additional1Value, additional2Value);
-                    kpiMainData.kpiColorRule = colorRule;
-                    kpiMainData.save();
                 }
 
             }
@@ -101,7 +100,7 @@ public class KpiRender {
             }
             colorRule = kpi.computeColorRule(mainValue, additional1Value, additional2Value);
             if (kpi.hasTrend()) {
-                KpiData kpiMainData = kpi.getLastKpiData(objectId, DataType.MAIN);
+                KpiDataLast kpiMainData = kpi.getLastValue(objectId, DataType.MAIN);
                 if (kpiMainData != null) {
                     valueTimestamp = kpiMainData.timestamp;
                 }
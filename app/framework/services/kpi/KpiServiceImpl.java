@@ -19,11 +19,15 @@ package framework.services.kpi;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -34,10 +38,13 @@ import framework.services.account.AccountManagementException;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 
+import akka.actor.Cancellable;
 import framework.highcharts.HighchartsUtils;
 import framework.highcharts.data.SeriesContainer;
 import framework.highcharts.data.TimeValueItem;
 import framework.services.account.IPreferenceManagerPlugin;
+import framework.services.cache.IInvalidationBus;
+import framework.services.cache.IInvalidationListener;
 import framework.services.configuration.II18nMessagesPlugin;
 import framework.services.configuration.IImplementationDefinedObjectService;
 import framework.services.database.IDatabaseDependencyService;
@@ -45,6 +52,7 @@ import framework.services.kpi.Kpi.DataType;
 import framework.services.script.IScriptService;
 import framework.services.system.ISysAdminUtils;
 import models.framework_models.kpi.KpiData;
+import models.framework_models.kpi.KpiDataLast;
 import models.framework_models.kpi.KpiDefinition;
 import play.Configuration;
 import play.Environment;
@@ -54,6 +62,7 @@ import play.libs.F.Promise;
 import play.mvc.Controller;
 import play.mvc.Http.Context;
 import play.mvc.Result;
+import scala.concurrent.duration.Duration;
 
 /**
  * The KPI service.
@@ -73,6 +82,29 @@ public class KpiServiceImpl implements IKpiService {
     private IScriptService scriptService;
     private Provider<IPreferenceManagerPlugin> preferenceManagerPlugin;
     private ISecurityService securityService;
+    private KpiComputationEngine kpiComputationEngine;
+    private IInvalidationBus invalidationBus;
+    private Set<String> changedLastValues = ConcurrentHashMap.newKeySet();
+
+    public static final String INVALIDATION_REGION = "kpi";
+    public static final String LAST_VALUES_INVALIDATION_REGION = "kpi_data_last";
+
+    public enum Config {
+        COMPUTATION_POOL_SIZE("maf.kpi.computation.pool.size"), COMPUTATION_CHUNK_SIZE("maf.kpi.computation.chunk.size");
+
+        private String configurationKey;
+
+        private Config(String configurationKey) {
+            this.configurationKey = configurationKey;
+        }
+
+        public String getConfigurationKey() {
+            return configurationKey;
+        }
+    }
+
+    private static final int DEFAULT_COMPUTATION_CHUNK_SIZE = 100;
+    private static final int LAST_VALUES_PUBLICATION_INTERVAL = 10;
 
     /**
      * Create a new KpiServiceImpl.
@@ -96,12 +128,17 @@ public class KpiServiceImpl implements IKpiService {
      *            the service which is managing the scripts
      * @param preferenceManagerPlugin
      *            a provider for the preference manager service
+     * @param securityService
+     *            the security service
+     * @param invalidationBus
+     *            the bus which propagates the KPI reloads and the changes of the
+     *            last KPI data to the other nodes
      */
     @Inject
     public KpiServiceImpl(ApplicationLifecycle lifecycle, Environment environment, Configuration configuration,
             IImplementationDefinedObjectService implementationDefinedObjectService, II18nMessagesPlugin messagesPlugin,
             IDatabaseDependencyService databaseDependencyService, ISysAdminUtils sysAdminUtils, IScriptService scriptService,
-            Provider<IPreferenceManagerPlugin> preferenceManagerPlugin, ISecurityService securityService) {
+            Provider<IPreferenceManagerPlugin> preferenceManagerPlugin, ISecurityService securityService, IInvalidationBus invalidationBus) {
         log.info("SERVICE>>> KpiServiceImpl starting...");
         this.messagesPlugin = messagesPlugin;
         this.environment = environment;
@@ -110,10 +147,47 @@ public class KpiServiceImpl implements IKpiService {
         this.preferenceManagerPlugin = preferenceManagerPlugin;
         this.defaultCurrencyCode = implementationDefinedObjectService.getDefaultCurrencyCode();
         this.securityService = securityService;
+        this.invalidationBus = invalidationBus;
+        int computationPoolSize = configuration.getInt(Config.COMPUTATION_POOL_SIZE.getConfigurationKey(), Runtime.getRuntime().availableProcessors());
+        int computationChunkSize = configuration.getInt(Config.COMPUTATION_CHUNK_SIZE.getConfigurationKey(), DEFAULT_COMPUTATION_CHUNK_SIZE);
+        if (log.isDebugEnabled()) {
+            log.debug(Config.COMPUTATION_POOL_SIZE.getConfigurationKey() + "=" + computationPoolSize);
+            log.debug(Config.COMPUTATION_CHUNK_SIZE.getConfigurationKey() + "=" + computationChunkSize);
+        }
+        this.kpiComputationEngine = new KpiComputationEngine(sysAdminUtils, computationPoolSize, computationChunkSize);
         init();
+        IInvalidationListener invalidationListener = uid -> {
+            if (uid == null) {
+                reloadAllKpis();
+            } else {
+                reloadKpiDefinition(uid);
+            }
+        };
+        invalidationBus.register(INVALIDATION_REGION, invalidationListener);
+        IInvalidationListener lastValuesInvalidationListener = uid -> {
+            for (Kpi kpi : getKpis().values()) {
+                if (uid == null || uid.equals(kpi.getUid())) {
+                    kpi.invalidateLastValues();
+                }
+            }
+        };
+        invalidationBus.register(LAST_VALUES_INVALIDATION_REGION, lastValuesInvalidationListener);
+        sysAdminUtils.scheduleOnce(false, "KPI_LAST_VALUES_CHECK", Duration.create(0, TimeUnit.SECONDS), () -> {
+            for (Kpi kpi : getKpis().values()) {
+                kpi.rebuildMissingLastValues();
+            }
+        });
+        Cancellable lastValuesPublisher = sysAdminUtils.scheduleRecurring(false, "KPI_LAST_VALUES_PUBLICATION",
+                Duration.create(LAST_VALUES_PUBLICATION_INTERVAL, TimeUnit.SECONDS), Duration.create(LAST_VALUES_PUBLICATION_INTERVAL, TimeUnit.SECONDS),
+                this::publishLastValuesChanges, true);
         lifecycle.addStopHook(() -> {
             log.info("SERVICE>>> KpiServiceImpl stopping...");
+            lastValuesPublisher.cancel();
+            publishLastValuesChanges();
+            invalidationBus.unregister(INVALIDATION_REGION, invalidationListener);
+            invalidationBus.unregister(LAST_VALUES_INVALIDATION_REGION, lastValuesInvalidationListener);
             cancel();
+            getKpiComputationEngine().shutdown();
             log.info("SERVICE>>> KpiServiceImpl stopped");
             return Promise.pure(null);
         });
@@ -157,12 +231,31 @@ public class KpiServiceImpl implements IKpiService {
 
     @Override
     public void reload() {
-        init();
-        cancel();
+        reloadAllKpis();
+        getInvalidationBus().publish(INVALIDATION_REGION, null);
     }
 
     @Override
     public void reloadKpi(String uid) {
+        reloadKpiDefinition(uid);
+        getInvalidationBus().publish(INVALIDATION_REGION, uid);
+    }
+
+    /**
+     * Reload all the KPIs of the current node.
+     */
+    private void reloadAllKpis() {
+        init();
+        cancel();
+    }
+
+    /**
+     * Reload a KPI of the current node.
+     * 
+     * @param uid
+     *            the KPI uid
+     */
+    private void reloadKpiDefinition(String uid) {
 
         Kpi kpi = getKpi(uid);
 
@@ -373,6 +466,11 @@ public class KpiServiceImpl implements IKpiService {
         return this.preferenceManagerPlugin.get();
     }
 
+    @Override
+    public KpiComputationEngine getKpiComputationEngine() {
+        return this.kpiComputationEngine;
+    }
+
     @Override
     public void addData(String uid, Long objectId, Date timestamp, BigDecimal mainValue, BigDecimal additional1Value, BigDecimal additional2Value)
             throws KpiServiceException {
@@ -414,34 +512,51 @@ public class KpiServiceImpl implements IKpiService {
             timestamp = new Date();
         }
 
-        KpiData oldMainData = kpi.getLastKpiData(objectId, DataType.MAIN);
-        KpiData oldAdd1Data = kpi.getLastKpiData(objectId, DataType.ADDITIONAL1);
-        KpiData oldAdd2Data = kpi.getLastKpiData(objectId, DataType.ADDITIONAL2);
+        KpiDataLast oldMainData = kpi.getLastValue(objectId, DataType.MAIN);
+        KpiDataLast oldAdd1Data = kpi.getLastValue(objectId, DataType.ADDITIONAL1);
+        KpiDataLast oldAdd2Data = kpi.getLastValue(objectId, DataType.ADDITIONAL2);
 
         if (oldMainData == null || oldMainData.value == null || mainValue.doubleValue() != oldMainData.value.doubleValue() ||
                 oldAdd1Data == null || oldAdd1Data.value == null || additional1Value.doubleValue() != oldAdd1Data.value.doubleValue() ||
                 oldAdd2Data == null || oldAdd2Data.value == null || additional2Value.doubleValue() != oldAdd2Data.value.doubleValue()) {
 
             KpiData mainKpiData = new KpiData();
+            mainKpiData.kpiColorRule = kpi.computeColorRule(mainValue, additional1Value, additional2Value);
             mainKpiData.kpiValueDefinition = kpiDefinition.mainKpiValueDefinition;
             mainKpiData.objectId = objectId;
             mainKpiData.timestamp = timestamp;
             mainKpiData.value = mainValue;
-            mainKpiData.save();
 
             KpiData additional1KpiData = new KpiData();
             additional1KpiData.kpiValueDefinition = kpiDefinition.additional1KpiValueDefinition;
             additional1KpiData.objectId = objectId;
             additional1KpiData.timestamp = timestamp;
             additional1KpiData.value = additional1Value;
-            additional1KpiData.save();
 
             KpiData additional2KpiData = new KpiData();
             additional2KpiData.kpiValueDefinition = kpiDefinition.additional2KpiValueDefinition;
             additional2KpiData.objectId = objectId;
             additional2KpiData.timestamp = timestamp;
             additional2KpiData.value = additional2Value;
-            additional2KpiData.save();
+
+            kpi.saveKpiData(Arrays.asList(mainKpiData, additional1KpiData, additional2KpiData));
+            kpi.lastValuesChanged();
+        }
+    }
+
+    @Override
+    public void lastValuesChanged(String uid) {
+        changedLastValues.add(uid);
+    }
+
+    /**
+     * Publish the changes of the last KPI data recorded since the last call
+     * (one invalidation per modified KPI).
+     */
+    private void publishLastValuesChanges() {
+        for (String uid : changedLastValues) {
+            changedLastValues.remove(uid);
+            getInvalidationBus().publish(LAST_VALUES_INVALIDATION_REGION, uid);
         }
     }
 
@@ -452,6 +567,13 @@ public class KpiServiceImpl implements IKpiService {
         return messagesPlugin;
     }
 
+    /**
+     * Get the invalidation bus.
+     */
+    private IInvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
     /**
      * The KPI service exception.
      * 
@@ -19,6 +19,7 @@ package framework.services.plugins;
 
 import scala.concurrent.duration.Duration;
 import akka.actor.OneForOneStrategy;
+import akka.routing.DefaultResizer;
 
 /**
  * The structure to be used to configure the IN or OUT event interface of a
@@ -31,32 +32,64 @@ public class EventInterfaceConfiguration {
     public static final int DEFAULT_NUMBER_OF_RETRY = 0;
     public static final Duration DEFAULT_RETRY_DURATION = Duration.create(0, "seconds");
 
+    /**
+     * For a resizable pool, the number of messages which must be waiting in
+     * the mailbox of an actor for this one to be considered as busy (see
+     * {@link DefaultResizer})
+     */
+    public static final int RESIZER_PRESSURE_THRESHOLD = 5;
+
     private int poolSize;
+    private int maxPoolSize;
     private int numberOfRetry;
     private Duration retryDuration;
+    private String mailbox;
 
     /**
      * Creates an interface with the default configuration, namely:
      * <ul>
-     * <li>poolsize : 2</li>
+     * <li>poolsize : 1 (not resizable)</li>
      * <li>numberOfRetry : 0</li>
      * <li>retryDuration : 0 seconds</li>
+     * <li>mailbox : the default one (unbounded)</li>
      * </ul>
      */
     public EventInterfaceConfiguration() {
-        this.poolSize = DEFAULT_POOL_SIZE;
-        this.numberOfRetry = DEFAULT_NUMBER_OF_RETRY;
-        this.retryDuration = DEFAULT_RETRY_DURATION;
+        this(DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE, DEFAULT_NUMBER_OF_RETRY, DEFAULT_RETRY_DURATION, null);
     }
 
     public EventInterfaceConfiguration(int poolSize, int numberOfRetry, Duration retryDuration) {
+        this(poolSize, poolSize, numberOfRetry, retryDuration, null);
+    }
+
+    /**
+     * Creates an interface configuration
+     * 
+     * @param poolSize
+     *            the initial (and minimal) number of actors in the pool
+     * @param maxPoolSize
+     *            the maximum number of actors in the pool, if greater than the
+     *            pool size, the pool grows with the depth of the actors
+     *            mailboxes
+     * @param numberOfRetry
+     *            the number of retry in case of failure
+     * @param retryDuration
+     *            the time slot during which a retry can be attempted
+     * @param mailbox
+     *            the id of the mailbox configuration (as defined in the actor
+     *            system configuration) to be used by the actors of the pool,
+     *            null for the default one
+     */
+    public EventInterfaceConfiguration(int poolSize, int maxPoolSize, int numberOfRetry, Duration retryDuration, String mailbox) {
         super();
-        if (poolSize <= 0 || numberOfRetry < 0 || !retryDuration.gteq(Duration.Zero())) {
+        if (poolSize <= 0 || maxPoolSize < poolSize || numberOfRetry < 0 || !retryDuration.gteq(Duration.Zero())) {
             throw new IllegalArgumentException("Invalid configuration for the interface");
         }
         this.poolSize = poolSize;
+        this.maxPoolSize = maxPoolSize;
         this.numberOfRetry = numberOfRetry;
         this.retryDuration = retryDuration;
+        this.mailbox = mailbox;
     }
 
     /**
@@ -67,6 +100,28 @@ public class EventInterfaceConfiguration {
         return this.poolSize;
     }
 
+    /**
+     * Return the maximum size of the actors pool
+     */
+    public int getMaxPoolSize() {
+        return this.maxPoolSize;
+    }
+
+    /**
+     * Return true if the pool must be resized according to the load
+     */
+    public boolean isResizable() {
+        return this.maxPoolSize > this.poolSize;
+    }
+
+    /**
+     * Return the id of the mailbox configuration to be used by the actors of
+     * the pool (null if the default mailbox must be used)
+     */
+    public String getMailbox() {
+        return this.mailbox;
+    }
+
     /**
      * Return the number of retry to be attempted in case of failure of a agent
      * managing the OUT messages<br/>
@@ -84,4 +139,23 @@ public class EventInterfaceConfiguration {
         return this.retryDuration;
     }
 
+    /**
+     * Return a copy of this configuration using the specified mailbox if none
+     * is defined
+     * 
+     * @param defaultMailbox
+     *            the id of a mailbox configuration (may be null)
+     */
+    public EventInterfaceConfiguration withDefaultMailbox(String defaultMailbox) {
+        if (getMailbox() != null || defaultMailbox == null) {
+            return this;
+        }
+        return new EventInterfaceConfiguration(getPoolSize(), getMaxPoolSize(), getNumberOfRetry(), getRetryDuration(), defaultMailbox);
+    }
+
+    @Override
+    public String toString() {
+        return "EventInterfaceConfiguration [poolSize=" + poolSize + ", maxPoolSize=" + maxPoolSize + ", numberOfRetry=" + numberOfRetry
+                + ", retryDuration=" + retryDuration + ", mailbox=" + mailbox + "]";
+    }
 }
@@ -23,7 +23,6 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -43,7 +42,6 @@ import javax.xml.bind.annotation.XmlRootElement;
 
 import com.google.common.collect.ImmutableMap;
 import framework.services.database.ModificationPairImpl;
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 
@@ -60,8 +58,10 @@ import akka.actor.UntypedActor;
 import akka.japi.Creator;
 import akka.japi.Function;
 import akka.pattern.AskableActorSelection;
+import akka.routing.DefaultResizer;
 import akka.routing.RoundRobinPool;
 import akka.util.Timeout;
+import framework.commons.BeanAccessor;
 import framework.commons.DataType;
 import framework.commons.IFrameworkConstants;
 import framework.commons.message.EventMessage;
@@ -116,6 +116,7 @@ import scala.concurrent.duration.Duration;
 public class PluginManagerServiceImpl implements IPluginManagerService, IEventBroadcastingService, IDatabaseChangeListener {
     private static Logger.ALogger log = Logger.of(PluginManagerServiceImpl.class);
     private boolean databaseEventBroadcasting;
+    private String eventInterfaceDefaultMailbox;
     private ActorSystem actorSystem;
     private ActorRef pluginStatusCallbackActorRef;
     private II18nMessagesPlugin messagesPlugin;
@@ -131,6 +132,12 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
      */
     private Map<Long, PluginRegistrationEntry> pluginByIds;
 
+    /**
+     * The routing table used to broadcast the event messages to the started
+     * plugins (rebuilt each time the plugin registry is modified).
+     */
+    private PluginEventRoutingTable routingTable;
+
     /**
      * Creates a {@link OneForOneStrategy} using the specified parameters.
      * 
@@ -188,6 +195,7 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
             INotificationManagerPlugin notificationManagerPlugin) {
         log.info("SERVICE>>> PluginManagerServiceImpl starting...");
         this.databaseEventBroadcasting = configuration.getBoolean("maf.plugins.database.event.broadcasting");
+        this.eventInterfaceDefaultMailbox = configuration.getString("maf.plugins.event.interface.mailbox");
         this.messagesPlugin = messagesPlugin;
         this.sharedStorageService = sharedStorageService;
         this.extensionManagerService = extensionManagerService;
@@ -196,6 +204,7 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
         this.topMenuBarService = topMenuBarService;
         this.notificationManagerPlugin = notificationManagerPlugin;
         pluginByIds = Collections.synchronizedMap(new HashMap<Long, PluginRegistrationEntry>());
+        routingTable = new PluginEventRoutingTable();
         init(actorSystemPlugin.getActorSystem(), databaseDependencyService);
         lifecycle.addStopHook(() -> {
             log.info("SERVICE>>> PluginManagerServiceImpl stopping...");
@@ -319,7 +328,7 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
         // Start the actor which will receive the notifications from the actors
         // (I am started, I am stopped)
         this.pluginStatusCallbackActorRef = getActorSystem()
-                .actorOf(Props.create(new PluginStatusCallbackActorCreator(getPluginByIds(), getTopMenuBarService())));
+                .actorOf(Props.create(new PluginStatusCallbackActorCreator(getPluginByIds(), getRoutingTable(), getTopMenuBarService())));
         List<PluginConfiguration> pluginConfigurations = PluginConfiguration.getAllAvailablePlugins();
         if (pluginConfigurations != null) {
             for (PluginConfiguration pluginConfiguration : pluginConfigurations) {
@@ -473,6 +482,7 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
                 PluginRegistrationEntry pluginRegistrationEntry = initializePlugin(pluginConfiguration);
                 if (pluginRegistrationEntry != null) {
                     getPluginByIds().put(pluginConfigurationId, pluginRegistrationEntry);
+                    getRoutingTable().rebuild(getPluginByIds());
                 }
             }
         }
@@ -504,6 +514,7 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
                 if (pluginRegistrationEntry != null && pluginRegistrationEntry.getPluginStatus().equals(PluginStatus.STOPPED)) {
                     unInitializePlugin(pluginRegistrationEntry);
                     getPluginByIds().remove(pluginConfigurationId);
+                    getRoutingTable().rebuild(getPluginByIds());
                 } else {
                     throw new PluginException("Cannot unregister a plugin which is already running");
                 }
@@ -633,6 +644,7 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
                     // Start the IN interface routing actor (if any)
                     inActorRef = startEventMessageProcessingActor(pluginRegistrationEntry, FlowType.IN);
                     pluginRegistrationEntry.setInEventMessageProcessingActorRef(inActorRef);
+                    getRoutingTable().rebuild(getPluginByIds());
 
                     log.info(String.format("The plugin %d is starting", pluginConfigurationId));
                 } catch (Exception e) {
@@ -661,20 +673,32 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
         EventInterfaceConfiguration eventInterfaceConfiguration = null;
 
         if (flowType.equals(FlowType.IN)) {
-            eventInterfaceConfiguration = (pluginRegistrationEntry.getDescriptor().hasInMessageInterface() ? new EventInterfaceConfiguration() : null);
+            eventInterfaceConfiguration = (pluginRegistrationEntry.getDescriptor().hasInMessageInterface()
+                    ? pluginRegistrationEntry.getDescriptor().getInEventInterfaceConfiguration() : null);
         } else {
-            eventInterfaceConfiguration = (pluginRegistrationEntry.getDescriptor().hasOutMessageInterface() ? new EventInterfaceConfiguration() : null);
+            eventInterfaceConfiguration = (pluginRegistrationEntry.getDescriptor().hasOutMessageInterface()
+                    ? pluginRegistrationEntry.getDescriptor().getOutEventInterfaceConfiguration() : null);
         }
         if (eventInterfaceConfiguration != null) {
+            eventInterfaceConfiguration = eventInterfaceConfiguration.withDefaultMailbox(getEventInterfaceDefaultMailbox());
+            RoundRobinPool pool = new RoundRobinPool(eventInterfaceConfiguration.getPoolSize());
+            if (eventInterfaceConfiguration.isResizable()) {
+                // The pool grows when the actors mailboxes are filling up and
+                // shrinks when the actors are idle
+                pool = pool.withResizer(new DefaultResizer(eventInterfaceConfiguration.getPoolSize(), eventInterfaceConfiguration.getMaxPoolSize(),
+                        EventInterfaceConfiguration.RESIZER_PRESSURE_THRESHOLD, 0.2, 0.3, 0.1, 10));
+            }
+            Props routeeProps = Props.create(new EventMessageProcessingActorCreator(pluginRegistrationEntry.getPluginConfigurationId(),
+                    pluginRegistrationEntry.getPluginRunner(), flowType));
+            if (eventInterfaceConfiguration.getMailbox() != null) {
+                routeeProps = routeeProps.withMailbox(eventInterfaceConfiguration.getMailbox());
+            }
             actorRef = getActorSystem().actorOf(
-                    (new RoundRobinPool(eventInterfaceConfiguration.getPoolSize()))
-                            .withSupervisorStrategy(getSupervisorStrategy(eventInterfaceConfiguration.getNumberOfRetry(),
-                                    eventInterfaceConfiguration.getRetryDuration(), pluginRegistrationEntry.getPluginConfigurationId()))
-                    .props(Props.create(new EventMessageProcessingActorCreator(pluginRegistrationEntry.getPluginConfigurationId(),
-                            pluginRegistrationEntry.getPluginRunner(), FlowType.OUT))),
+                    pool.withSupervisorStrategy(getSupervisorStrategy(eventInterfaceConfiguration.getNumberOfRetry(),
+                            eventInterfaceConfiguration.getRetryDuration(), pluginRegistrationEntry.getPluginConfigurationId())).props(routeeProps),
                     flowType.getRouterPrefix() + pluginRegistrationEntry.getPluginConfigurationId() + "-" + UUID.randomUUID().toString());
-            String message = "The %s interface for the plugin %d has been started";
-            log.info(String.format(message, flowType.name(), pluginRegistrationEntry.getPluginConfigurationId()));
+            String message = "The %s interface for the plugin %d has been started with %s";
+            log.info(String.format(message, flowType.name(), pluginRegistrationEntry.getPluginConfigurationId(), eventInterfaceConfiguration));
             return actorRef;
         }
         return null;
@@ -719,6 +743,7 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
                     || pluginRegistrationEntry.getPluginStatus().equals(PluginStatus.START_FAILED)) {
                 try {
                     pluginRegistrationEntry.setPluginStatus(PluginStatus.STOPPING);
+                    getRoutingTable().rebuild(getPluginByIds());
 
                     // Send STOP message to the lifecycle management router
                     pluginRegistrationEntry.getLifeCycleControllingRouter().tell(LifeCycleMessage.STOP, ActorRef.noSender());
@@ -994,10 +1019,11 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
             log.debug("post Insert for " + bean);
         }
         if (bean != null) {
-            DataType dataType = DataType.getDataTypeFromClassName(bean.getClass().getName());
-            long id = getIdFromBean(bean);
+            BeanAccessor beanAccessor = BeanAccessor.of(bean.getClass());
+            DataType dataType = beanAccessor.getDataType();
+            long id = beanAccessor.getId(bean);
             if (dataType != null && id != -1) {
-                postOutMessage(new EventMessage(getIdFromBean(bean), dataType, MessageType.OBJECT_CREATED));
+                postOutMessage(new EventMessage(id, dataType, MessageType.OBJECT_CREATED));
             } else {
                 // Custom attributes
                 if (ICustomAttributeValue.class.isAssignableFrom(bean.getClass())) {
@@ -1026,10 +1052,11 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
             log.debug("post Delete for " + bean);
         }
         if (bean != null) {
-            DataType dataType = DataType.getDataTypeFromClassName(bean.getClass().getName());
-            long id = getIdFromBean(bean);
+            BeanAccessor beanAccessor = BeanAccessor.of(bean.getClass());
+            DataType dataType = beanAccessor.getDataType();
+            long id = beanAccessor.getId(bean);
             if (dataType != null && id != -1) {
-                postOutMessage(new EventMessage(getIdFromBean(bean), dataType, MessageType.OBJECT_DELETED));
+                postOutMessage(new EventMessage(id, dataType, MessageType.OBJECT_DELETED));
             }
         }
     }
@@ -1040,20 +1067,21 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
             log.debug("post Update for " + bean + " for modified attributes " + modifiedAttributes);
         }
         if (bean != null) {
-            DataType dataType = DataType.getDataTypeFromClassName(bean.getClass().getName());
-            long id = getIdFromBean(bean);
-            boolean isDeleted = isBeanDeleted(bean);
+            BeanAccessor beanAccessor = BeanAccessor.of(bean.getClass());
+            DataType dataType = beanAccessor.getDataType();
+            long id = beanAccessor.getId(bean);
+            boolean isDeleted = beanAccessor.isDeleted(bean);
             if (dataType != null && id != -1) {
                 if (isDeleted) {
                     if (log.isDebugEnabled()) {
                         log.debug("Applicative delete for data type " + dataType);
                     }
-                    postOutMessage(new EventMessage(getIdFromBean(bean), dataType, MessageType.OBJECT_DELETED));
+                    postOutMessage(new EventMessage(id, dataType, MessageType.OBJECT_DELETED));
                 } else {
                     if (log.isDebugEnabled()) {
                         log.debug("Standard update for data type " + dataType);
                     }
-                    EventMessage updateEvent = new EventMessage(getIdFromBean(bean), dataType, MessageType.OBJECT_UPDATED);
+                    EventMessage updateEvent = new EventMessage(id, dataType, MessageType.OBJECT_UPDATED);
                     updateEvent.setPayload(modifiedAttributes);
                     postOutMessage(updateEvent);
                 }
@@ -1087,13 +1115,7 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
      * @return the object id
      */
     public long getIdFromBean(Object bean) {
-        try {
-            return (long) PropertyUtils.getProperty(bean, "id");
-        } catch (NoSuchMethodException e) {
-        } catch (IllegalAccessException e) {
-        } catch (InvocationTargetException e) {
-        }
-        return -1;
+        return BeanAccessor.of(bean.getClass()).getId(bean);
     }
 
     /**
@@ -1104,13 +1126,7 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
      * @return the object id
      */
     public boolean isBeanDeleted(Object bean) {
-        try {
-            return (boolean) PropertyUtils.getProperty(bean, "deleted");
-        } catch (NoSuchMethodException e) {
-        } catch (IllegalAccessException e) {
-        } catch (InvocationTargetException e) {
-        }
-        return false;
+        return BeanAccessor.of(bean.getClass()).isDeleted(bean);
     }
 
     /**
@@ -1146,13 +1162,10 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
                     }
                 } else {
                     log.info(String.format("Dispatching the event %s to all the plugins %s interface", eventMessage.getTransactionId(), flowType.name()));
-                    for (PluginRegistrationEntry pluginRegistrationEntry : getPluginByIds().values()) {
-                        // Check if the plugin is compatible with the message
-                        // data type and dispatch
-                        if (pluginRegistrationEntry.getPluginStatus().equals(PluginStatus.STARTED)
-                                && pluginRegistrationEntry.isPluginCompatible(eventMessage.getDataType())) {
-                            dispatchMessage(flowType, eventMessage, pluginRegistrationEntry, pluginRegistrationEntry.getPluginConfigurationId());
-                        }
+                    // The routing table only holds the started plugins which
+                    // are compatible with the message data type
+                    for (ActorRef actorRef : getRoutingTable().getRoutes(flowType, eventMessage.getDataType())) {
+                        actorRef.tell(eventMessage, ActorRef.noSender());
                     }
                 }
             } else {
@@ -1201,6 +1214,10 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
         return pluginByIds;
     }
 
+    private PluginEventRoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
     private ActorRef getPluginStatusCallbackActorRef() {
         return pluginStatusCallbackActorRef;
     }
@@ -1254,6 +1271,10 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
         return topMenuBarService;
     }
 
+    private String getEventInterfaceDefaultMailbox() {
+        return eventInterfaceDefaultMailbox;
+    }
+
     private boolean isDatabaseEventBroadcasting() {
         return databaseEventBroadcasting;
     }
@@ -1498,16 +1519,19 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
     public static class PluginStatusCallbackActorCreator implements Creator<PluginStatusCallbackActor> {
         private static final long serialVersionUID = 4075638451954038626L;
         private Map<Long, PluginRegistrationEntry> pluginByIds;
+        private PluginEventRoutingTable routingTable;
         private ITopMenuBarService topMenuBarService;
 
-        public PluginStatusCallbackActorCreator(Map<Long, PluginRegistrationEntry> pluginByIds, ITopMenuBarService topMenuBarService) {
+        public PluginStatusCallbackActorCreator(Map<Long, PluginRegistrationEntry> pluginByIds, PluginEventRoutingTable routingTable,
+                ITopMenuBarService topMenuBarService) {
             this.pluginByIds = pluginByIds;
+            this.routingTable = routingTable;
             this.topMenuBarService = topMenuBarService;
         }
 
         @Override
         public PluginStatusCallbackActor create() throws Exception {
-            return new PluginStatusCallbackActor(pluginByIds, topMenuBarService);
+            return new PluginStatusCallbackActor(pluginByIds, routingTable, topMenuBarService);
         }
     }
 
@@ -1519,10 +1543,13 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
      */
     public static class PluginStatusCallbackActor extends UntypedActor {
         private Map<Long, PluginRegistrationEntry> pluginByIds;
+        private PluginEventRoutingTable routingTable;
         private ITopMenuBarService topMenuBarService;
 
-        public PluginStatusCallbackActor(Map<Long, PluginRegistrationEntry> pluginByIds, ITopMenuBarService topMenuBarService) {
+        public PluginStatusCallbackActor(Map<Long, PluginRegistrationEntry> pluginByIds, PluginEventRoutingTable routingTable,
+                ITopMenuBarService topMenuBarService) {
             this.pluginByIds = pluginByIds;
+            this.routingTable = routingTable;
             this.topMenuBarService = topMenuBarService;
         }
 
@@ -1548,6 +1575,7 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
                 default:
                     break;
                 }
+                getRoutingTable().rebuild(getPluginByIds());
             } else {
                 unhandled(message);
             }
@@ -1597,11 +1625,98 @@ public class PluginManagerServiceImpl implements IPluginManagerService, IEventBr
             return pluginByIds;
         }
 
+        private PluginEventRoutingTable getRoutingTable() {
+            return routingTable;
+        }
+
         private ITopMenuBarService getTopMenuBarService() {
             return topMenuBarService;
         }
     }
 
+    /**
+     * The routing table which is used to broadcast the non CUSTOM event
+     * messages.<br/>
+     * For each flow type (IN or OUT) and each data type, it holds the actor
+     * refs of the started plugins which are compatible with this data type.
+     * <br/>
+     * The table itself is immutable: it is rebuilt (copy on write) each time a
+     * plugin is registered, unregistered, started or stopped. A broadcast is
+     * thus a lock free lookup.
+     */
+    public static class PluginEventRoutingTable {
+        private volatile Map<FlowType, Map<String, List<ActorRef>>> routes;
+
+        public PluginEventRoutingTable() {
+            Map<FlowType, Map<String, List<ActorRef>>> emptyRoutes = new HashMap<>();
+            for (FlowType flowType : FlowType.values()) {
+                emptyRoutes.put(flowType, Collections.emptyMap());
+            }
+            this.routes = Collections.unmodifiableMap(emptyRoutes);
+        }
+
+        /**
+         * Rebuild the routing table from the plugin registry
+         * 
+         * @param pluginByIds
+         *            the plugin registry
+         */
+        public synchronized void rebuild(Map<Long, PluginRegistrationEntry> pluginByIds) {
+            List<PluginRegistrationEntry> pluginRegistrationEntries;
+            synchronized (pluginByIds) {
+                pluginRegistrationEntries = new ArrayList<>(pluginByIds.values());
+            }
+            Map<FlowType, Map<String, List<ActorRef>>> newRoutes = new HashMap<>();
+            for (FlowType flowType : FlowType.values()) {
+                Map<String, List<ActorRef>> routesForFlow = new HashMap<>();
+                for (PluginRegistrationEntry pluginRegistrationEntry : pluginRegistrationEntries) {
+                    ActorRef actorRef = flowType.equals(FlowType.OUT) ? pluginRegistrationEntry.getOutEventMessageProcessingActorRef()
+                            : pluginRegistrationEntry.getInEventMessageProcessingActorRef();
+                    List<DataType> supportedDataTypes = pluginRegistrationEntry.getDescriptor().getSupportedDataTypes();
+                    if (actorRef != null && supportedDataTypes != null && pluginRegistrationEntry.getPluginStatus().equals(PluginStatus.STARTED)) {
+                        for (DataType dataType : supportedDataTypes) {
+                            if (dataType == null) {
+                                continue;
+                            }
+                            List<ActorRef> actorRefs = routesForFlow.get(dataType.getDataName());
+                            if (actorRefs == null) {
+                                actorRefs = new ArrayList<>();
+                                routesForFlow.put(dataType.getDataName(), actorRefs);
+                            }
+                            actorRefs.add(actorRef);
+                        }
+                    }
+                }
+                for (Map.Entry<String, List<ActorRef>> entry : routesForFlow.entrySet()) {
+                    entry.setValue(Collections.unmodifiableList(entry.getValue()));
+                }
+                newRoutes.put(flowType, Collections.unmodifiableMap(routesForFlow));
+            }
+            this.routes = Collections.unmodifiableMap(newRoutes);
+            if (log.isDebugEnabled()) {
+                log.debug("Plugin routing table rebuilt : " + this.routes);
+            }
+        }
+
+        /**
+         * Return the actor refs to which a message of the specified data type
+         * must be sent
+         * 
+         * @param flowType
+         *            a flow type (IN or OUT)
+         * @param dataType
+         *            a data type
+         * @return a list of actor refs (never null)
+         */
+        public List<ActorRef> getRoutes(FlowType flowType, DataType dataType) {
+            if (dataType == null) {
+                return Collections.emptyList();
+            }
+            List<ActorRef> actorRefs = routes.get(flowType).get(dataType.getDataName());
+            return actorRefs != null ? actorRefs : Collections.emptyList();
+        }
+    }
+
     /**
      * A creator class for a plugin runner lifecycle management actor. This
      * class is used to create some controlling actors.
@@ -55,7 +55,9 @@ public interface IScriptService {
 
     /**
      * Evaluate a script dynamically.<br/>
-     * A script engine will be allocated for thus purpose.
+     * A script engine is borrowed from a pool for this purpose. The script is
+     * compiled once (per pooled engine) and then evaluated with the bindings
+     * of the specified context. This method is thread safe.
      * 
      * @param scriptName
      *            the name of the script (used in logs)
@@ -67,4 +69,12 @@ public interface IScriptService {
      * @throws ScriptException
      */
     public Object evaluateScript(String scriptName, String script, ScriptContext scriptContext) throws ScriptException;
-}
\ No newline at end of file
+
+    /**
+     * Return the statistics of the pool of script engines used by
+     * {@link #evaluateScript(String, String, ScriptContext)}
+     * 
+     * @return a snapshot of the statistics
+     */
+    public ScriptEnginePool.Statistics getEnginePoolStatistics();
+}
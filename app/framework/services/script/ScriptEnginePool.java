@@ -0,0 +1,251 @@
+package framework.services.script;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import play.Logger;
+
+/**
+ * A bounded pool of {@link ScriptEngine} instances.<br/>
+ * Each pooled engine holds a cache of {@link CompiledScript} keyed by the hash
+ * of the script source. An engine is used by one thread at a time (it is
+ * "borrowed" for the duration of an evaluation) so that a script is parsed
+ * once per engine and then evaluated with the bindings provided by the
+ * caller.
+ */
+public class ScriptEnginePool {
+    private static Logger.ALogger log = Logger.of(ScriptEnginePool.class);
+
+    private int maxEngines;
+    private int compiledScriptCacheSize;
+    private long borrowTimeoutInSeconds;
+    private Function<String, ScriptEngine> engineFactory;
+    private BlockingQueue<PooledEngine> idleEngines;
+    private AtomicInteger createdEngines = new AtomicInteger(0);
+
+    private AtomicLong hits = new AtomicLong(0);
+    private AtomicLong misses = new AtomicLong(0);
+    private AtomicLong compileTimeInNanos = new AtomicLong(0);
+    private AtomicLong borrowWaits = new AtomicLong(0);
+
+    /**
+     * Create a new pool
+     *
+     * @param maxEngines
+     *            the maximum number of engines to be created
+     * @param compiledScriptCacheSize
+     *            the maximum number of compiled scripts kept by each engine
+     * @param borrowTimeoutInSeconds
+     *            the maximum time to wait for an engine to be available
+     * @param engineFactory
+     *            a function which creates a new engine from a name
+     */
+    public ScriptEnginePool(int maxEngines, int compiledScriptCacheSize, long borrowTimeoutInSeconds, Function<String, ScriptEngine> engineFactory) {
+        this.maxEngines = maxEngines;
+        this.compiledScriptCacheSize = compiledScriptCacheSize;
+        this.borrowTimeoutInSeconds = borrowTimeoutInSeconds;
+        this.engineFactory = engineFactory;
+        this.idleEngines = new ArrayBlockingQueue<>(maxEngines);
+    }
+
+    /**
+     * Evaluate the specified script using one of the engines of the pool.<br/>
+     * The script is compiled once per engine and then evaluated with the
+     * specified context.
+     *
+     * @param script
+     *            a script to be evaluated
+     * @param scriptContext
+     *            the context which holds the bindings for this evaluation
+     * @return the returned object if any
+     * @throws ScriptException
+     */
+    public Object evaluate(String script, ScriptContext scriptContext) throws ScriptException {
+        String scriptHash = DigestUtils.sha1Hex(script);
+        PooledEngine pooledEngine = borrow();
+        try {
+            CompiledScript compiledScript = pooledEngine.getCompiledScripts().get(scriptHash);
+            if (compiledScript == null) {
+                misses.incrementAndGet();
+                long start = System.nanoTime();
+                compiledScript = ((Compilable) pooledEngine.getEngine()).compile(script);
+                compileTimeInNanos.addAndGet(System.nanoTime() - start);
+                pooledEngine.getCompiledScripts().put(scriptHash, compiledScript);
+            } else {
+                hits.incrementAndGet();
+            }
+            return compiledScript.eval(scriptContext);
+        } finally {
+            release(pooledEngine);
+        }
+    }
+
+    /**
+     * Discard all the engines of the pool
+     */
+    public void clear() {
+        idleEngines.clear();
+        createdEngines.set(0);
+    }
+
+    /**
+     * Return a snapshot of the pool statistics
+     */
+    public Statistics getStatistics() {
+        return new Statistics(createdEngines.get(), idleEngines.size(), hits.get(), misses.get(), compileTimeInNanos.get(), borrowWaits.get());
+    }
+
+    /**
+     * Get an engine from the pool.<br/>
+     * If no engine is available and the pool is not full, a new one is
+     * created. Otherwise wait for an engine to be released.
+     */
+    private PooledEngine borrow() throws ScriptException {
+        PooledEngine pooledEngine = idleEngines.poll();
+        if (pooledEngine != null) {
+            return pooledEngine;
+        }
+        int count = createdEngines.get();
+        while (count < maxEngines) {
+            if (createdEngines.compareAndSet(count, count + 1)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Creating the pooled script engine " + count);
+                }
+                return new PooledEngine(engineFactory.apply("pooledEngine" + count), compiledScriptCacheSize);
+            }
+            count = createdEngines.get();
+        }
+        borrowWaits.incrementAndGet();
+        try {
+            pooledEngine = idleEngines.poll(borrowTimeoutInSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptException("Interrupted while waiting for a script engine");
+        }
+        if (pooledEngine == null) {
+            throw new ScriptException("No script engine available after " + borrowTimeoutInSeconds + " seconds");
+        }
+        return pooledEngine;
+    }
+
+    /**
+     * Return an engine to the pool
+     */
+    private void release(PooledEngine pooledEngine) {
+        if (!idleEngines.offer(pooledEngine)) {
+            log.warn("Unable to return a script engine to the pool, the engine is discarded");
+            createdEngines.decrementAndGet();
+        }
+    }
+
+    /**
+     * An engine of the pool with its compiled scripts.<br/>
+     * This object is used by one thread at a time.
+     */
+    private static class PooledEngine {
+        private ScriptEngine engine;
+        private Map<String, CompiledScript> compiledScripts;
+
+        @SuppressWarnings("serial")
+        public PooledEngine(ScriptEngine engine, int compiledScriptCacheSize) {
+            this.engine = engine;
+            this.compiledScripts = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+                    return size() > compiledScriptCacheSize;
+                }
+            };
+        }
+
+        public ScriptEngine getEngine() {
+            return engine;
+        }
+
+        public Map<String, CompiledScript> getCompiledScripts() {
+            return compiledScripts;
+        }
+    }
+
+    /**
+     * The statistics of the pool
+     */
+    public static class Statistics {
+        private int createdEngines;
+        private int idleEngines;
+        private long hits;
+        private long misses;
+        private long compileTimeInNanos;
+        private long borrowWaits;
+
+        public Statistics(int createdEngines, int idleEngines, long hits, long misses, long compileTimeInNanos, long borrowWaits) {
+            this.createdEngines = createdEngines;
+            this.idleEngines = idleEngines;
+            this.hits = hits;
+            this.misses = misses;
+            this.compileTimeInNanos = compileTimeInNanos;
+            this.borrowWaits = borrowWaits;
+        }
+
+        /**
+         * The number of engines created by the pool
+         */
+        public int getCreatedEngines() {
+            return createdEngines;
+        }
+
+        /**
+         * The number of engines currently available in the pool
+         */
+        public int getIdleEngines() {
+            return idleEngines;
+        }
+
+        /**
+         * The number of evaluations which found an already compiled script
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * The number of evaluations which required a compilation
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * The total time spent compiling scripts (in nanoseconds)
+         */
+        public long getCompileTimeInNanos() {
+            return compileTimeInNanos;
+        }
+
+        /**
+         * The number of times a thread had to wait for an engine
+         */
+        public long getBorrowWaits() {
+            return borrowWaits;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics [createdEngines=" + createdEngines + ", idleEngines=" + idleEngines + ", hits=" + hits + ", misses=" + misses
+                    + ", compileTimeInNanos=" + compileTimeInNanos + ", borrowWaits=" + borrowWaits + "]";
+        }
+    }
+}
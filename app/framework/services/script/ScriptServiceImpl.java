@@ -27,7 +27,26 @@ public class ScriptServiceImpl implements IScriptService {
      * associated with the name of the script engine
      */
     private static final String SCRIPT_ENGINE_NAME = "___scriptEngineName";
+    private static final int DEFAULT_ENGINE_POOL_SIZE = 4;
+    private static final int DEFAULT_COMPILED_SCRIPT_CACHE_SIZE = 500;
+    private static final int DEFAULT_ENGINE_BORROW_TIMEOUT = 30;
     private NashornScriptEngineFactory factory;
+    private ScriptEnginePool enginePool;
+
+    public enum Config {
+        ENGINE_POOL_SIZE("maf.script.engine.pool.size"), COMPILED_SCRIPT_CACHE_SIZE("maf.script.compiled.cache.size"), ENGINE_BORROW_TIMEOUT(
+                "maf.script.engine.borrow.timeout");
+
+        private String configurationKey;
+
+        private Config(String configurationKey) {
+            this.configurationKey = configurationKey;
+        }
+
+        public String getConfigurationKey() {
+            return configurationKey;
+        }
+    }
 
     /**
      * Create a script service
@@ -41,8 +60,19 @@ public class ScriptServiceImpl implements IScriptService {
     public ScriptServiceImpl(ApplicationLifecycle lifecycle, Configuration configuration) {
         log.info("SERVICE>>> ScriptServiceImpl starting...");
         factory = new NashornScriptEngineFactory();
+        int enginePoolSize = configuration.getInt(Config.ENGINE_POOL_SIZE.getConfigurationKey(), DEFAULT_ENGINE_POOL_SIZE);
+        int compiledScriptCacheSize = configuration.getInt(Config.COMPILED_SCRIPT_CACHE_SIZE.getConfigurationKey(), DEFAULT_COMPILED_SCRIPT_CACHE_SIZE);
+        int engineBorrowTimeout = configuration.getInt(Config.ENGINE_BORROW_TIMEOUT.getConfigurationKey(), DEFAULT_ENGINE_BORROW_TIMEOUT);
+        if (log.isDebugEnabled()) {
+            log.debug(Config.ENGINE_POOL_SIZE.getConfigurationKey() + "=" + enginePoolSize);
+            log.debug(Config.COMPILED_SCRIPT_CACHE_SIZE.getConfigurationKey() + "=" + compiledScriptCacheSize);
+            log.debug(Config.ENGINE_BORROW_TIMEOUT.getConfigurationKey() + "=" + engineBorrowTimeout);
+        }
+        enginePool = new ScriptEnginePool(enginePoolSize, compiledScriptCacheSize, engineBorrowTimeout, name -> createEngine(name));
         lifecycle.addStopHook(() -> {
             log.info("SERVICE>>> ScriptServiceImpl stopping...");
+            log.info("Script engine pool statistics: " + enginePool.getStatistics());
+            enginePool.clear();
             factory = null;
             log.info("SERVICE>>> ScriptServiceImpl stopped");
             return Promise.pure(null);
@@ -51,7 +81,23 @@ public class ScriptServiceImpl implements IScriptService {
     }
 
     @Override
-    public synchronized ScriptEngine getEngine(String name) {
+    public ScriptEngine getEngine(String name) {
+        return createEngine(name);
+    }
+
+    @Override
+    public ScriptEnginePool.Statistics getEnginePoolStatistics() {
+        return enginePool.getStatistics();
+    }
+
+    /**
+     * Create a new script engine with the specified name
+     * 
+     * @param name
+     *            the name of the engine
+     * @return a script engine
+     */
+    private ScriptEngine createEngine(String name) {
         if (log.isDebugEnabled()) {
             log.debug("Creating a script engine " + name);
         }
@@ -103,7 +149,7 @@ public class ScriptServiceImpl implements IScriptService {
         if (log.isDebugEnabled()) {
             log.debug("Evaluating script [" + script + "] in ScriptEngine [" + scriptName + "]");
         }
-        Object result = getEngine(scriptName).eval(script, scriptContext);
+        Object result = enginePool.evaluate(script, scriptContext);
         if (log.isDebugEnabled()) {
             log.debug("Evaluating script [" + script + "] in ScriptEngine [" + scriptName + "] result is : " + result);
         }
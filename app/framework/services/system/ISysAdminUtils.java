@@ -1,5 +1,7 @@
 package framework.services.system;
 
+import java.util.List;
+
 import akka.actor.Cancellable;
 import scala.concurrent.duration.FiniteDuration;
 
@@ -113,4 +115,24 @@ public interface ISysAdminUtils {
      */
     public abstract long[] getSystemStatus();
 
+    /**
+     * Register a new execution of a long running job and return the object
+     * to be used by the job to report its progress.<br/>
+     * Only the last execution of a job (identified by its name) is kept.
+     * 
+     * @param jobName
+     *            the name of the job
+     * @param total
+     *            the number of items to be processed by the job
+     * @return
+     */
+    public abstract JobProgress startJobProgress(String jobName, long total);
+
+    /**
+     * Return the progress of the last execution of each job.
+     * 
+     * @return
+     */
+    public abstract List<JobProgress> getJobProgresses();
+
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.system;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of a long running job (example: the computation of the values
+ * of a KPI).<br/>
+ * The counters are thread safe so that the job may be executed by several
+ * threads in parallel.
+ */
+public class JobProgress {
+    private String name;
+    private long total;
+    private AtomicLong processed = new AtomicLong(0);
+    private AtomicLong errors = new AtomicLong(0);
+    private long startTime;
+    private volatile long endTime = -1;
+
+    /**
+     * Create a new job progress (the job is considered as started)
+     *
+     * @param name
+     *            the name of the job
+     * @param total
+     *            the number of items to be processed by the job
+     */
+    public JobProgress(String name, long total) {
+        this.name = name;
+        this.total = total;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Notify the successful processing of some items
+     *
+     * @param count
+     *            the number of items processed
+     */
+    public void processed(long count) {
+        processed.addAndGet(count);
+    }
+
+    /**
+     * Notify the failed processing of some items
+     *
+     * @param count
+     *            the number of items in error
+     */
+    public void failed(long count) {
+        processed.addAndGet(count);
+        errors.addAndGet(count);
+    }
+
+    /**
+     * Notify the end of the job
+     */
+    public void finish() {
+        this.endTime = System.currentTimeMillis();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * The number of items processed (including the ones in error)
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * The number of items for which the processing failed
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public boolean isFinished() {
+        return endTime != -1;
+    }
+
+    /**
+     * The duration of the job in ms (up to now if the job is still running)
+     */
+    public long getDuration() {
+        return (isFinished() ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    /**
+     * The percentage of the items processed
+     */
+    public int getPercentage() {
+        return total == 0 ? 100 : (int) (getProcessed() * 100 / total);
+    }
+
+    @Override
+    public String toString() {
+        return "JobProgress [name=" + name + ", total=" + total + ", processed=" + getProcessed() + ", errors=" + getErrors() + ", duration="
+                + getDuration() + "ms, finished=" + isFinished() + "]";
+    }
+}
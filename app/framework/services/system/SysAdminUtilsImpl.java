@@ -22,7 +22,10 @@ import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryUsage;
 import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -60,6 +63,7 @@ public class SysAdminUtilsImpl implements ISysAdminUtils {
     private static final String PERMGEN_MEMORY_POOL_NAME = "PS Perm Gen";
     private ActorSystem actorSystem;
     private Cancellable automaticSystemStatus;
+    private Map<String, JobProgress> jobProgresses = new ConcurrentHashMap<>();
 
     private Configuration configuration;
 
@@ -266,6 +270,18 @@ public class SysAdminUtilsImpl implements ISysAdminUtils {
         return systemData;
     }
 
+    @Override
+    public JobProgress startJobProgress(String jobName, long total) {
+        JobProgress jobProgress = new JobProgress(jobName, total);
+        getJobProgressesMap().put(jobName, jobProgress);
+        return jobProgress;
+    }
+
+    @Override
+    public List<JobProgress> getJobProgresses() {
+        return new ArrayList<>(getJobProgressesMap().values());
+    }
+
     private void rollbackTransactionSilent() {
         try {
             Ebean.rollbackTransaction();
@@ -318,4 +334,8 @@ public class SysAdminUtilsImpl implements ISysAdminUtils {
     private Configuration getConfiguration() {
         return this.configuration;
     }
+
+    private Map<String, JobProgress> getJobProgressesMap() {
+        return jobProgresses;
+    }
 }
\ No newline at end of file
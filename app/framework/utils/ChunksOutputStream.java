@@ -0,0 +1,93 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.utils;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import play.mvc.Results.Chunks;
+
+/**
+ * An {@link OutputStream} which writes to a chunked HTTP response.<br/>
+ * The bytes are buffered and sent as chunks of {@link #CHUNK_SIZE} bytes.
+ * Closing the stream closes the response.<br/>
+ * Example:
+ *
+ * <pre>
+ * return ok(new Results.ByteChunks() {
+ *     public void onReady(Chunks.Out&lt;byte[]&gt; out) {
+ *         try (ChunksOutputStream stream = new ChunksOutputStream(out)) {
+ *             TableCsvRenderer.render(query, tableFiller, false, stream);
+ *         }
+ *     }
+ * });
+ * </pre>
+ */
+public class ChunksOutputStream extends OutputStream {
+    public static final int CHUNK_SIZE = 8192;
+
+    private Chunks.Out<byte[]> out;
+    private byte[] buffer = new byte[CHUNK_SIZE];
+    private int count = 0;
+
+    /**
+     * Create a new stream
+     *
+     * @param out
+     *            the output of a chunked response
+     */
+    public ChunksOutputStream(Chunks.Out<byte[]> out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) {
+        if (count == buffer.length) {
+            flush();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (count == buffer.length) {
+                flush();
+            }
+            int length = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, length);
+            count += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (count > 0) {
+            out.write(Arrays.copyOf(buffer, count));
+            count = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        out.close();
+    }
+}
@@ -30,6 +30,7 @@ import framework.services.configuration.II18nMessagesPlugin;
 import framework.services.kpi.IKpiService;
 import framework.services.kpi.Kpi;
 import framework.services.kpi.Kpi.DataType;
+import framework.utils.FilterConfigCache.CachedFilter;
 import models.framework_models.account.Principal;
 import models.framework_models.common.CustomAttributeDefinition;
 import models.framework_models.common.FilterConfiguration;
@@ -135,6 +136,22 @@ import java.util.regex.Pattern;
 public class FilterConfig<T> {
     private static Logger.ALogger log = Logger.of(FilterConfig.class);
 
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    /**
+     * The data type of each filter config class (the generic type of the
+     * class).
+     */
+    private static final ClassValue<String> FILTER_DATA_TYPES = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            final Pattern pattern = Pattern.compile("<(.+?)>");
+            final Matcher matcher = pattern.matcher(type.getGenericSuperclass().getTypeName());
+            matcher.find();
+            return matcher.group(1);
+        }
+    };
+
     /*
      * The JSON structure field which contains the static configuration for a
      * column in the filter component
@@ -225,7 +242,7 @@ public class FilterConfig<T> {
      * @param selectedFilterConfiguration
      *            the selected filter configuration
      */
-    protected synchronized FilterConfig<T> parseResponse(JsonNode json, FilterConfiguration selectedFilterConfiguration) throws FilterConfigException {
+    protected FilterConfig<T> parseResponse(JsonNode json, FilterConfiguration selectedFilterConfiguration) throws FilterConfigException {
         FilterConfig<T> temp = new FilterConfig<>(this, selectedFilterConfiguration, false);
         temp.unmarshall(json);
         return temp;
@@ -233,36 +250,17 @@ public class FilterConfig<T> {
 
     /**
      * Get the current filter configuration. This action is called when the page
-     * (with the concerned table) is displayed.
+     * (with the concerned table) is displayed.<br/>
+     * The filters of the user are read from the {@link FilterConfigCache}.
      * 
      * @param principalUid
      *            the principal uid
      * @param request
      *            the original request
      */
-    public synchronized FilterConfig<T> getCurrent(String principalUid, Request request) {
+    public FilterConfig<T> getCurrent(String principalUid, Request request) {
 
-        // get the generic class (data type)
-        final Pattern pattern = Pattern.compile("<(.+?)>");
-        final Matcher matcher = pattern.matcher(getClass().getGenericSuperclass().getTypeName());
-        matcher.find();
-        String dataType = matcher.group(1);
-
-        /*
-         * Get the default filter (it corresponds to the last seen by the user).
-         * It is created with the initial configuration if it doesn't exist.
-         */
-        FilterConfiguration defaultFilter = FilterConfiguration.getDefaultFilterConfiguration(principalUid, dataType);
-        if (defaultFilter == null) {
-            defaultFilter = new FilterConfiguration();
-            defaultFilter.configuration = this.marshall();
-            defaultFilter.dataType = dataType;
-            defaultFilter.isDefault = true;
-            defaultFilter.isSelected = false;
-            defaultFilter.name = "object.filter_configuration.name.default.label";
-            defaultFilter.principal = Principal.getPrincipalFromUid(principalUid);
-            defaultFilter.save();
-        }
+        String dataType = getFilterDataType();
 
         /*
          * If the request includes a "filterSharedKey" query param, then we try
@@ -272,134 +270,175 @@ public class FilterConfig<T> {
          * (deleted or not) then we consider a "share" filter (an error message
          * is displayed if the filter has been deleted).
          */
-        boolean isSharedFilter = false;
-        FilterConfiguration sharedFilter = null;
-        if (request.getQueryString("filterSharedKey") != null && !request.getQueryString("filterSharedKey").equals("")) {
-            sharedFilter = FilterConfiguration.getFilterConfigurationBySharedKey(request.getQueryString("filterSharedKey"), dataType);
+        String sharedKey = request.getQueryString("filterSharedKey");
+        if (sharedKey != null && !sharedKey.equals("")) {
+            FilterConfiguration sharedFilter = FilterConfiguration.getFilterConfigurationBySharedKey(sharedKey, dataType);
             if (sharedFilter != null) {
-                isSharedFilter = true;
+                FilterConfigCache.invalidate(principalUid, dataType);
+                return getCurrentFromSharedFilter(principalUid, dataType, sharedFilter);
             }
         }
 
-        if (isSharedFilter) {
+        // Get the default filter (it corresponds to the last seen by the user)
+        // and the selected filter (it could be the default filter).
+        CachedFilter cachedFilter = FilterConfigCache.get(principalUid, dataType, () -> loadCachedFilter(principalUid, dataType));
+        if (cachedFilter == null) {
+            return null;
+        }
 
-            // if the filter has been deleted then we use the default filter and
-            // display an error message
-            if (sharedFilter.deleted) {
-                defaultFilter.sharedNotExisting = true;
-            } else {
-                defaultFilter.configuration = sharedFilter.configuration;
-                defaultFilter.save();
-                FilterConfiguration selectedFilter = FilterConfiguration.getSelectedFilterConfiguration(principalUid, dataType);
-                if (selectedFilter != null) {
-                    selectedFilter.isSelected = false;
-                    selectedFilter.save();
-                }
-            }
+        // parse the configuration
+        try {
 
-            // convert the JSON string to a JSON node.
-            JsonNode json;
-            try {
+            return parseResponse(cachedFilter.getConfiguration(), cachedFilter.getSelectedFilter());
 
-                ObjectMapper mapper = new ObjectMapper();
-                json = mapper.readTree(defaultFilter.configuration);
+        } catch (Exception e) {
 
-            } catch (Exception e) {
+            /*
+             * the filter is no more compatible with the current table
+             * configuration, then we store the initial configuration in the
+             * default filter and return it (a warning message is
+             * displayed).
+             */
 
-                // should not occurred
-                Logger.error("impossible to get the filter configuration", e);
-                return null;
+            Logger.warn("the filter is no more compatible", e);
 
-            }
+            FilterConfigCache.invalidate(principalUid, dataType);
+            FilterConfiguration defaultFilter = FilterConfiguration.getById(cachedFilter.getDefaultFilterId());
+            defaultFilter.isNotCompatible = true;
+            defaultFilter.configuration = this.marshall();
+            defaultFilter.save();
 
-            // parse the configuration
             try {
 
-                return parseResponse(json, defaultFilter);
-            } catch (Exception e) {
+                return parseResponse(JSON_MAPPER.readTree(defaultFilter.configuration), defaultFilter);
 
-                /*
-                 * the filter is no more compatible with the current table
-                 * configuration, then we display an warning message and get the
-                 * initial configuration.
-                 */
+            } catch (Exception e2) {
 
-                Logger.warn("the filter is no more compatible", e);
-
-                defaultFilter.isNotCompatible = true;
+                // should not occurred
+                Logger.error("impossible to get the filter configuration", e);
+                return null;
 
-                try {
+            }
 
-                    ObjectMapper mapper = new ObjectMapper();
-                    return parseResponse(mapper.readTree(this.marshall()), defaultFilter);
+        }
 
-                } catch (Exception e2) {
+    }
 
-                    // should not occurred
-                    Logger.error("impossible to get the filter configuration", e);
-                    return null;
+    /**
+     * Get the current filter configuration from a shared filter.
+     * 
+     * @param principalUid
+     *            the principal uid
+     * @param dataType
+     *            the data type
+     * @param sharedFilter
+     *            the shared filter
+     */
+    private FilterConfig<T> getCurrentFromSharedFilter(String principalUid, String dataType, FilterConfiguration sharedFilter) {
 
-                }
-            }
+        FilterConfiguration defaultFilter = getOrCreateDefaultFilter(principalUid, dataType);
 
+        // if the filter has been deleted then we use the default filter and
+        // display an error message
+        if (sharedFilter.deleted) {
+            defaultFilter.sharedNotExisting = true;
         } else {
-
-            // Get the selected filter configuration (it could be the default
-            // filter).
+            defaultFilter.configuration = sharedFilter.configuration;
+            defaultFilter.save();
             FilterConfiguration selectedFilter = FilterConfiguration.getSelectedFilterConfiguration(principalUid, dataType);
+            if (selectedFilter != null) {
+                selectedFilter.isSelected = false;
+                selectedFilter.save();
+            }
+        }
 
-            // convert the JSON string to a JSON node.
-            JsonNode json;
-            try {
-
-                ObjectMapper mapper = new ObjectMapper();
-                json = mapper.readTree(defaultFilter.configuration);
-
-            } catch (Exception e) {
+        // convert the JSON string to a JSON node.
+        JsonNode json;
+        try {
 
-                // should not occurred
-                Logger.error("impossible to get the filter configuration", e);
-                return null;
+            json = JSON_MAPPER.readTree(defaultFilter.configuration);
 
-            }
+        } catch (Exception e) {
 
-            // parse the configuration
-            try {
+            // should not occurred
+            Logger.error("impossible to get the filter configuration", e);
+            return null;
 
-                return parseResponse(json, selectedFilter);
+        }
 
-            } catch (Exception e) {
+        // parse the configuration
+        try {
 
-                /*
-                 * the filter is no more compatible with the current table
-                 * configuration, then we store the initial configuration in the
-                 * default filter and return it (a warning message is
-                 * displayed).
-                 */
+            return parseResponse(json, defaultFilter);
+        } catch (Exception e) {
 
-                Logger.warn("the filter is no more compatible", e);
+            /*
+             * the filter is no more compatible with the current table
+             * configuration, then we display an warning message and get the
+             * initial configuration.
+             */
 
-                defaultFilter.isNotCompatible = true;
-                defaultFilter.configuration = this.marshall();
-                defaultFilter.save();
+            Logger.warn("the filter is no more compatible", e);
 
-                try {
+            defaultFilter.isNotCompatible = true;
 
-                    ObjectMapper mapper = new ObjectMapper();
-                    return parseResponse(mapper.readTree(defaultFilter.configuration), defaultFilter);
+            try {
 
-                } catch (Exception e2) {
+                return parseResponse(JSON_MAPPER.readTree(this.marshall()), defaultFilter);
 
-                    // should not occurred
-                    Logger.error("impossible to get the filter configuration", e);
-                    return null;
+            } catch (Exception e2) {
 
-                }
+                // should not occurred
+                Logger.error("impossible to get the filter configuration", e);
+                return null;
 
             }
+        }
+    }
 
+    /**
+     * Load the filters of a user for a data type from the database.<br/>
+     * Return null if the configuration of the default filter cannot be parsed.
+     * 
+     * @param principalUid
+     *            the principal uid
+     * @param dataType
+     *            the data type
+     */
+    private CachedFilter loadCachedFilter(String principalUid, String dataType) {
+        FilterConfiguration defaultFilter = getOrCreateDefaultFilter(principalUid, dataType);
+        FilterConfiguration selectedFilter = FilterConfiguration.getSelectedFilterConfiguration(principalUid, dataType);
+        try {
+            return new CachedFilter(defaultFilter, JSON_MAPPER.readTree(defaultFilter.configuration), selectedFilter);
+        } catch (Exception e) {
+            // should not occurred
+            Logger.error("impossible to get the filter configuration", e);
+            return null;
         }
+    }
 
+    /**
+     * Get the default filter (it corresponds to the last seen by the user). It
+     * is created with the initial configuration if it doesn't exist.
+     * 
+     * @param principalUid
+     *            the principal uid
+     * @param dataType
+     *            the data type
+     */
+    private FilterConfiguration getOrCreateDefaultFilter(String principalUid, String dataType) {
+        FilterConfiguration defaultFilter = FilterConfiguration.getDefaultFilterConfiguration(principalUid, dataType);
+        if (defaultFilter == null) {
+            defaultFilter = new FilterConfiguration();
+            defaultFilter.configuration = this.marshall();
+            defaultFilter.dataType = dataType;
+            defaultFilter.isDefault = true;
+            defaultFilter.isSelected = false;
+            defaultFilter.name = "object.filter_configuration.name.default.label";
+            defaultFilter.principal = Principal.getPrincipalFromUid(principalUid);
+            defaultFilter.save();
+        }
+        return defaultFilter;
     }
 
     /**
@@ -407,6 +446,9 @@ public class FilterConfig<T> {
      * called after each action (edit a filter, change page, add columns...) on
      * a table or when the user change the selected filter.
      * 
+     * The configuration is immediately available in the
+     * {@link FilterConfigCache} and written to the database in the background.
+     * 
      * This method returns null if the selected filter is no more compatible
      * with the table configuration (this case should be treated by the caller).
      * 
@@ -415,23 +457,15 @@ public class FilterConfig<T> {
      * @param request
      *            the original request
      */
-    public synchronized FilterConfig<T> persistCurrentInDefault(String principalUid, Request request) {
+    public FilterConfig<T> persistCurrentInDefault(String principalUid, Request request) {
 
-        // get the generic class (data type)
-        final Pattern pattern = Pattern.compile("<(.+?)>");
-        final Matcher matcher = pattern.matcher(getClass().getGenericSuperclass().getTypeName());
-        matcher.find();
-        String dataType = matcher.group(1);
+        String dataType = getFilterDataType();
 
         // get the json form the request
         JsonNode json = request.body().asJson();
 
         // get the default filter
-        FilterConfiguration defaultFilter = FilterConfiguration.getDefaultFilterConfiguration(principalUid, dataType);
-
-        // store the request configuration in the default filter.
-        defaultFilter.configuration = json.toString();
-        defaultFilter.save();
+        CachedFilter cachedFilter = FilterConfigCache.get(principalUid, dataType, () -> loadCachedFilter(principalUid, dataType));
 
         // parse the configuration
         try {
@@ -439,7 +473,14 @@ public class FilterConfig<T> {
             // the selectedFilterConfiguration is settled to null because it is
             // not
             // used by the answer
-            return parseResponse(json, null);
+            FilterConfig<T> filterConfig = parseResponse(json, null);
+
+            // store the request configuration in the default filter.
+            if (cachedFilter != null) {
+                FilterConfigCache.updateDefaultConfiguration(principalUid, dataType, cachedFilter, json);
+            }
+
+            return filterConfig;
 
         } catch (Exception e) {
 
@@ -453,6 +494,8 @@ public class FilterConfig<T> {
 
             Logger.warn("the filter is no more compatible", e);
 
+            FilterConfigCache.invalidate(principalUid, dataType);
+            FilterConfiguration defaultFilter = FilterConfiguration.getDefaultFilterConfiguration(principalUid, dataType);
             defaultFilter.configuration = this.marshall();
             defaultFilter.save();
 
@@ -461,6 +504,14 @@ public class FilterConfig<T> {
         }
     }
 
+    /**
+     * Get the data type of the filter (the generic type of the class), it is
+     * computed once per class.
+     */
+    private String getFilterDataType() {
+        return FILTER_DATA_TYPES.get(getClass());
+    }
+
     /**
      * Return the selected filter configuration.
      */
@@ -2767,24 +2818,14 @@ public class FilterConfig<T> {
      */
     public static class KpiNumericFilterComponent extends NumericFieldFilterComponent {
 
-        private static final String SEARCH_EXPRESSION_TEMPLATE = "(SELECT count(*) from kpi_data kdata%1$s"
-                + " JOIN kpi_value_definition kvd%1$s ON kdata%1$s.kpi_value_definition_id = kvd%1$s.id"
-                + " JOIN kpi_definition kd%1$s ON kvd%1$s.id = kd%1$s.%4$s"
-                + " WHERE kdata%1$s.deleted = 0 AND kvd%1$s.deleted = 0 AND kd%1$s.deleted = 0 AND"
-                + " kdata%1$s.id = (SELECT MAX(kdata_i%1$s.id) FROM kpi_data kdata_i%1$s"
-                + " WHERE kdata_i%1$s.kpi_value_definition_id = kvd%1$s.id AND kdata_i%1$s.object_id = kdata%1$s.object_id)"
-                + " AND kd%1$s.uid = '%1$s' AND kdata%1$s.object_id = t0.id AND kdata%1$s.value %3$s %2$s)<>0";
-
-        private static final String SORT_EXPRESSION_TEMPLATE = "(SELECT #value# from kpi_data kdatasort%1$s"
-                + " JOIN kpi_value_definition kvdsort%1$s ON kdatasort%1$s.kpi_value_definition_id = kvdsort%1$s.id"
-                + " JOIN kpi_definition kdsort%1$s ON kvdsort%1$s.id = kdsort%1$s.%2$s"
-                + " WHERE kdatasort%1$s.deleted = 0 AND kvdsort%1$s.deleted = 0 AND kdsort%1$s.deleted = 0 AND"
-                + " kdatasort%1$s.id = (SELECT MAX(kdata_isort%1$s.id) FROM kpi_data kdata_isort%1$s"
-                + " WHERE kdata_isort%1$s.kpi_value_definition_id = kvdsort%1$s.id AND kdata_isort%1$s.object_id = kdatasort%1$s.object_id)"
-                + " AND kdsort%1$s.uid = '%1$s' AND kdatasort%1$s.object_id = t0.id)";
-
-        private static final String SORT_EXPRESSION_TEMPLATE_ASC = "kdatasort%1$s.value";
-        private static final String SORT_EXPRESSION_TEMPLATE_DESC = "(1 - kdatasort%1$s.value)";
+        private static final String SEARCH_EXPRESSION_TEMPLATE = "(SELECT count(*) from kpi_data_last klast%1$s"
+                + " WHERE klast%1$s.kpi_value_definition_id = %1$s AND klast%1$s.object_id = t0.id AND klast%1$s.value %3$s %2$s)<>0";
+
+        private static final String SORT_EXPRESSION_TEMPLATE = "(SELECT #value# from kpi_data_last klastsort%1$s"
+                + " WHERE klastsort%1$s.kpi_value_definition_id = %1$s AND klastsort%1$s.object_id = t0.id)";
+
+        private static final String SORT_EXPRESSION_TEMPLATE_ASC = "klastsort%1$s.value";
+        private static final String SORT_EXPRESSION_TEMPLATE_DESC = "(1 - klastsort%1$s.value)";
 
         private DataType dataType;
         private Kpi kpi;
@@ -2818,7 +2859,7 @@ public class FilterConfig<T> {
                 } catch (NumberFormatException e) {
                     Logger.warn("impossible to convert '" + filterValue + "' to a BigDecimal");
                 }
-                String sql = String.format(SEARCH_EXPRESSION_TEMPLATE, getKpi().getUid(), value.toPlainString(), comparator, this.dataType.getIdFieldName());
+                String sql = String.format(SEARCH_EXPRESSION_TEMPLATE, getKpi().getKpiValueDefinitionId(this.dataType), value.toPlainString(), comparator);
                 return Expr.raw(sql);
             }
             return null;
@@ -2833,7 +2874,7 @@ public class FilterConfig<T> {
                 } else {
                     template = SORT_EXPRESSION_TEMPLATE.replace("#value#", SORT_EXPRESSION_TEMPLATE_ASC);
                 }
-                orderby.asc(String.format(template, getKpi().getUid(), this.dataType.getIdFieldName()));
+                orderby.asc(String.format(template, getKpi().getKpiValueDefinitionId(this.dataType)));
             }
 
         }
@@ -2858,24 +2899,14 @@ public class FilterConfig<T> {
      */
     public static class KpiSelectFilterComponent extends SelectFilterComponent {
 
-        private static final String SEARCH_EXPRESSION_TEMPLATE = "(SELECT count(*) from kpi_data kdata%1$s"
-                + " JOIN kpi_value_definition kvd%1$s ON kdata%1$s.kpi_value_definition_id = kvd%1$s.id"
-                + " JOIN kpi_definition kd%1$s ON kvd%1$s.id = kd%1$s.%3$s"
-                + " WHERE kdata%1$s.deleted = 0 AND kvd%1$s.deleted = 0 AND kd%1$s.deleted = 0 AND"
-                + " kdata%1$s.timestamp = (SELECT MAX(kdata_i%1$s.timestamp) FROM kpi_data kdata_i%1$s"
-                + " WHERE kdata_i%1$s.kpi_value_definition_id = kvd%1$s.id AND kdata_i%1$s.object_id = kdata%1$s.object_id)"
-                + " AND kd%1$s.uid = '%1$s' AND kdata%1$s.object_id = t0.id AND kdata%1$s.kpi_color_rule_id IN %2$s)<>0";
-
-        private static final String SORT_EXPRESSION_TEMPLATE = "(SELECT #value# from kpi_data kdatasort%1$s"
-                + " JOIN kpi_value_definition kvdsort%1$s ON kdatasort%1$s.kpi_value_definition_id = kvdsort%1$s.id"
-                + " JOIN kpi_definition kdsort%1$s ON kvdsort%1$s.id = kdsort%1$s.%2$s"
-                + " WHERE kdatasort%1$s.deleted = 0 AND kvdsort%1$s.deleted = 0 AND kdsort%1$s.deleted = 0 AND"
-                + " kdatasort%1$s.timestamp = (SELECT MAX(kdata_isort%1$s.timestamp) FROM kpi_data kdata_isort%1$s"
-                + " WHERE kdata_isort%1$s.kpi_value_definition_id = kvdsort%1$s.id AND kdata_isort%1$s.object_id = kdatasort%1$s.object_id)"
-                + " AND kdsort%1$s.uid = '%1$s' AND kdatasort%1$s.object_id = t0.id)";
-
-        private static final String SORT_EXPRESSION_TEMPLATE_ASC = "kdatasort%1$s.kpi_color_rule_id";
-        private static final String SORT_EXPRESSION_TEMPLATE_DESC = "(1 - kdatasort%1$s.kpi_color_rule_id)";
+        private static final String SEARCH_EXPRESSION_TEMPLATE = "(SELECT count(*) from kpi_data_last klast%1$s"
+                + " WHERE klast%1$s.kpi_value_definition_id = %1$s AND klast%1$s.object_id = t0.id AND klast%1$s.kpi_color_rule_id IN %2$s)<>0";
+
+        private static final String SORT_EXPRESSION_TEMPLATE = "(SELECT #value# from kpi_data_last klastsort%1$s"
+                + " WHERE klastsort%1$s.kpi_value_definition_id = %1$s AND klastsort%1$s.object_id = t0.id)";
+
+        private static final String SORT_EXPRESSION_TEMPLATE_ASC = "klastsort%1$s.kpi_color_rule_id";
+        private static final String SORT_EXPRESSION_TEMPLATE_DESC = "(1 - klastsort%1$s.kpi_color_rule_id)";
 
         private DataType dataType;
         private Kpi kpi;
@@ -2921,7 +2952,7 @@ public class FilterConfig<T> {
 
                 if (finalListValue.size() > 0) {
                     String value = "(" + String.join(",", finalListValue) + ")";
-                    sql = String.format(SEARCH_EXPRESSION_TEMPLATE, getKpi().getUid(), value, this.dataType.getIdFieldName());
+                    sql = String.format(SEARCH_EXPRESSION_TEMPLATE, getKpi().getKpiValueDefinitionId(this.dataType), value);
                 } else {
                     sql = "1=0";
                 }
@@ -2940,7 +2971,7 @@ public class FilterConfig<T> {
                 } else {
                     template = SORT_EXPRESSION_TEMPLATE.replace("#value#", SORT_EXPRESSION_TEMPLATE_ASC);
                 }
-                orderby.asc(String.format(template, getKpi().getUid(), this.dataType.getIdFieldName()));
+                orderby.asc(String.format(template, getKpi().getKpiValueDefinitionId(this.dataType)));
             }
         }
 
@@ -0,0 +1,511 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import framework.services.cache.IInvalidationBus;
+import framework.services.cache.IInvalidationListener;
+import framework.services.database.IDatabaseChangeListener;
+import framework.services.database.IDatabaseDependencyService;
+import framework.services.database.ModificationPair;
+import models.framework_models.account.Principal;
+import models.framework_models.common.FilterConfiguration;
+import play.Logger;
+import play.inject.ApplicationLifecycle;
+import play.libs.F.Promise;
+
+/**
+ * The cache of the filter configurations used by {@link FilterConfig}.<br/>
+ * For each user and data type, the cache holds an immutable
+ * {@link CachedFilter}: the default filter (with its parsed JSON
+ * configuration) and the selected filter. An update replaces the entry by a
+ * new one (copy-on-write).<br/>
+ * The configurations stored by {@link FilterConfig#persistCurrentInDefault}
+ * are written to the database in the background, through the ORM (the writes
+ * of a filter are coalesced and the writes of a same filter are never run
+ * concurrently). The pending write of a filter is flushed:
+ * <ul>
+ * <li>before the filters of the user for the data type are read again from
+ * the database</li>
+ * <li>by {@link #invalidate(String, String)}, which must be called before
+ * modifying the filter configurations of a user for a data type (see
+ * {@link FilterConfigController})</li>
+ * <li>as soon as the filter is modified by another component (see
+ * {@link IDatabaseChangeListener}), the entry of the user and data type being
+ * then removed</li>
+ * </ul>
+ * The change events produced by the background writes of the cache itself
+ * (same filter, same configuration and no other modified attribute) are
+ * ignored: the cached entry is already up to date.<br/>
+ * The other modifications of the filters are published on the
+ * {@link IInvalidationBus} (region {@link #INVALIDATION_REGION}, key
+ * "[data type]#[principal id]") so that the other nodes remove their entries
+ * too. The configurations written by the cache (the last state of a table for
+ * a user) are not published.<br/>
+ * This class must be statically injected (see
+ * {@link framework.modules.FrameworkModule}).
+ */
+@Singleton
+public class FilterConfigCache {
+    private static Logger.ALogger log = Logger.of(FilterConfigCache.class);
+
+    private static final int WRITE_DELAY = 2;
+    private static final int WRITE_LOCKS = 64;
+
+    public static final String INVALIDATION_REGION = "filter_config";
+
+    private static final Set<String> WRITTEN_ATTRIBUTES = new HashSet<>(Arrays.asList("configuration", "lastUpdate"));
+
+    private static Map<String, CachedFilter> cachedFilters = new ConcurrentHashMap<>();
+    private static Map<Long, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private static Map<Long, String> ownWrites = new ConcurrentHashMap<>();
+    private static Object[] writeLocks = new Object[WRITE_LOCKS];
+    private static BiConsumer<Long, String> configurationWriter = FilterConfigCache::writeConfiguration;
+    private static IInvalidationBus invalidationBus;
+    private static ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "filter-config-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        for (int i = 0; i < WRITE_LOCKS; i++) {
+            writeLocks[i] = new Object();
+        }
+    }
+
+    private FilterConfigCache() {
+    }
+
+    /**
+     * Register the cache as a listener of the database changes and of the
+     * invalidations published by the other nodes, and flush the pending
+     * writes when the application stops.
+     *
+     * @param databaseDependencyService
+     *            the database dependency service
+     * @param invalidationBus
+     *            the cache invalidation bus
+     * @param lifecycle
+     *            the play application lifecycle listener
+     */
+    @Inject
+    public static void register(IDatabaseDependencyService databaseDependencyService, IInvalidationBus invalidationBus, ApplicationLifecycle lifecycle) {
+        FilterConfigCache.invalidationBus = invalidationBus;
+        IDatabaseChangeListener listener = new InvalidationListener();
+        databaseDependencyService.addDatabaseChangeListener(listener);
+        IInvalidationListener remoteListener = FilterConfigCache::invalidateRemoteKey;
+        invalidationBus.register(INVALIDATION_REGION, remoteListener);
+        lifecycle.addStopHook(() -> {
+            databaseDependencyService.removeDatabaseChangeListener(listener);
+            invalidationBus.unregister(INVALIDATION_REGION, remoteListener);
+            flushAll();
+            return Promise.pure(null);
+        });
+        log.info("Filter configuration cache registered as a database change listener");
+    }
+
+    /**
+     * Get the cached filter of a user for a data type.<br/>
+     * If not cached, the filter is loaded with the specified loader (the
+     * pending writes of the user for this data type are flushed before).
+     *
+     * @param principalUid
+     *            the principal uid
+     * @param dataType
+     *            the data type
+     * @param loader
+     *            the loader of the filter (returns null if the filter cannot
+     *            be loaded)
+     * @return the cached filter or null
+     */
+    public static CachedFilter get(String principalUid, String dataType, Supplier<CachedFilter> loader) {
+        String key = getKey(principalUid, dataType);
+        CachedFilter cachedFilter = cachedFilters.get(key);
+        if (cachedFilter != null) {
+            return cachedFilter;
+        }
+        flushKey(key);
+        cachedFilter = loader.get();
+        if (cachedFilter != null) {
+            // An update done during the load wins
+            CachedFilter updatedFilter = cachedFilters.putIfAbsent(key, cachedFilter);
+            if (updatedFilter != null) {
+                return updatedFilter;
+            }
+        }
+        return cachedFilter;
+    }
+
+    /**
+     * Update the configuration of the default filter of a user for a data
+     * type.<br/>
+     * The cached entry is replaced and the configuration is written to the
+     * database in the background.
+     *
+     * @param principalUid
+     *            the principal uid
+     * @param dataType
+     *            the data type
+     * @param cachedFilter
+     *            the current cached filter
+     * @param configuration
+     *            the new configuration
+     */
+    public static void updateDefaultConfiguration(String principalUid, String dataType, CachedFilter cachedFilter, JsonNode configuration) {
+        String key = getKey(principalUid, dataType);
+        Long filterId = cachedFilter.getDefaultFilterId();
+        // The entry and the pending write are replaced together so that the
+        // concurrent updates of a user are applied in the same order to both
+        cachedFilters.compute(key, (k, currentFilter) -> {
+            if (pendingWrites.put(filterId, new PendingWrite(key, configuration.toString())) == null) {
+                writer.schedule(() -> flush(filterId), WRITE_DELAY, TimeUnit.SECONDS);
+            }
+            return cachedFilter.withConfiguration(configuration);
+        });
+    }
+
+    /**
+     * Remove the cached filter of a user for a data type (its pending write is
+     * flushed).<br/>
+     * This method must be called before modifying the filter configurations
+     * of the user for the data type.
+     *
+     * @param principalUid
+     *            the principal uid
+     * @param dataType
+     *            the data type
+     */
+    public static void invalidate(String principalUid, String dataType) {
+        String key = getKey(principalUid, dataType);
+        CachedFilter cachedFilter = cachedFilters.remove(key);
+        if (cachedFilter != null) {
+            // Also waits for a write of the filter which would be running
+            flush(cachedFilter.getDefaultFilterId());
+        }
+        flushKey(key);
+    }
+
+    /**
+     * Remove the cached filters of a data type (for a user or for all the
+     * users) and flush their pending writes.
+     *
+     * @param dataType
+     *            the data type
+     * @param principalId
+     *            the principal id (null for all the users)
+     */
+    private static void invalidateFilters(String dataType, Long principalId) {
+        for (Map.Entry<String, CachedFilter> entry : new ArrayList<>(cachedFilters.entrySet())) {
+            CachedFilter cachedFilter = entry.getValue();
+            if (cachedFilter.getDataType().equals(dataType) && (principalId == null || principalId.equals(cachedFilter.getPrincipalId()))
+                    && cachedFilters.remove(entry.getKey(), cachedFilter)) {
+                flush(cachedFilter.getDefaultFilterId());
+            }
+        }
+    }
+
+    /**
+     * Process an invalidation published by another node.
+     *
+     * @param key
+     *            "[data type]#[principal id]" or "[data type]#" for all the
+     *            users (null for all the data types)
+     */
+    private static void invalidateRemoteKey(String key) {
+        if (key == null) {
+            flushAll();
+            cachedFilters.clear();
+            return;
+        }
+        int separator = key.lastIndexOf('#');
+        String principalId = key.substring(separator + 1);
+        invalidateFilters(key.substring(0, separator), principalId.isEmpty() ? null : Long.valueOf(principalId));
+    }
+
+    /**
+     * Write all the pending configurations to the database
+     */
+    public static void flushAll() {
+        for (Long filterId : new ArrayList<>(pendingWrites.keySet())) {
+            flush(filterId);
+        }
+    }
+
+    /**
+     * Write the pending configurations of a user and data type to the
+     * database.
+     *
+     * @param key
+     *            the key of the user and data type
+     */
+    private static void flushKey(String key) {
+        for (Map.Entry<Long, PendingWrite> entry : new ArrayList<>(pendingWrites.entrySet())) {
+            if (entry.getValue().key.equals(key)) {
+                flush(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Write the pending configuration of a filter to the database (if any).
+     * <br/>
+     * The method returns once any write of this filter which was running in
+     * another thread is completed.
+     *
+     * @param filterId
+     *            the filter id
+     */
+    static void flush(Long filterId) {
+        synchronized (writeLocks[(filterId.hashCode() & 0x7fffffff) % WRITE_LOCKS]) {
+            PendingWrite pendingWrite = pendingWrites.remove(filterId);
+            if (pendingWrite != null) {
+                // Recorded before the write since the change listeners may be
+                // called before the writer returns
+                ownWrites.put(filterId, pendingWrite.configuration);
+                try {
+                    configurationWriter.accept(filterId, pendingWrite.configuration);
+                } catch (Exception e) {
+                    log.error("Unable to write the configuration of the filter " + filterId, e);
+                    ownWrites.remove(filterId, pendingWrite.configuration);
+                    cachedFilters.remove(pendingWrite.key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the configuration of a filter through the ORM (a deleted filter is
+     * ignored).
+     *
+     * @param filterId
+     *            the filter id
+     * @param configuration
+     *            the configuration
+     */
+    private static void writeConfiguration(Long filterId, String configuration) {
+        FilterConfiguration filterConfiguration = FilterConfiguration.getById(filterId);
+        if (filterConfiguration != null) {
+            filterConfiguration.configuration = configuration;
+            filterConfiguration.save();
+        }
+    }
+
+    /**
+     * Replace the function which writes a configuration to the database (for
+     * the tests).
+     *
+     * @param writer
+     *            the function called with the filter id and the configuration
+     */
+    static void setConfigurationWriter(BiConsumer<Long, String> writer) {
+        configurationWriter = writer;
+    }
+
+    private static String getKey(String principalUid, String dataType) {
+        return principalUid + "#" + dataType;
+    }
+
+    /**
+     * The filters of a user for a data type (immutable: the selected filter is
+     * kept as a detached copy which is copied again for each caller).
+     */
+    public static class CachedFilter {
+        private Long principalId;
+        private String dataType;
+        private Long defaultFilterId;
+        private JsonNode configuration;
+        private FilterConfiguration selectedFilter;
+
+        /**
+         * Create a new cached filter
+         *
+         * @param defaultFilter
+         *            the default filter
+         * @param configuration
+         *            the parsed configuration of the default filter
+         * @param selectedFilter
+         *            the selected filter (could be the default one)
+         */
+        public CachedFilter(FilterConfiguration defaultFilter, JsonNode configuration, FilterConfiguration selectedFilter) {
+            this(defaultFilter.principal != null ? defaultFilter.principal.id : null, defaultFilter.dataType, defaultFilter.id, configuration,
+                    copy(selectedFilter));
+        }
+
+        CachedFilter(Long principalId, String dataType, Long defaultFilterId, JsonNode configuration, FilterConfiguration selectedFilter) {
+            this.principalId = principalId;
+            this.dataType = dataType;
+            this.defaultFilterId = defaultFilterId;
+            this.configuration = configuration;
+            this.selectedFilter = selectedFilter;
+        }
+
+        /**
+         * Return a copy of this cached filter with another configuration for
+         * the default filter
+         *
+         * @param configuration
+         *            the parsed configuration
+         */
+        public CachedFilter withConfiguration(JsonNode configuration) {
+            return new CachedFilter(getPrincipalId(), getDataType(), getDefaultFilterId(), configuration, getSelectedFilter());
+        }
+
+        /**
+         * The id of the default filter
+         */
+        public Long getDefaultFilterId() {
+            return defaultFilterId;
+        }
+
+        /**
+         * The parsed configuration of the default filter (must not be
+         * modified)
+         */
+        public JsonNode getConfiguration() {
+            return configuration;
+        }
+
+        /**
+         * A copy of the selected filter (null if none).<br/>
+         * The copy is detached from the ORM: it is intended for the display
+         * and must not be saved.
+         */
+        public FilterConfiguration getSelectedFilter() {
+            return copy(selectedFilter);
+        }
+
+        /**
+         * Copy the persistent attributes of a filter (and the id and uid of
+         * its principal) into a new bean
+         *
+         * @param filterConfiguration
+         *            a filter (could be null)
+         */
+        private static FilterConfiguration copy(FilterConfiguration filterConfiguration) {
+            if (filterConfiguration == null) {
+                return null;
+            }
+            FilterConfiguration copy = new FilterConfiguration();
+            copy.id = filterConfiguration.id;
+            copy.deleted = filterConfiguration.deleted;
+            copy.lastUpdate = filterConfiguration.lastUpdate;
+            copy.dataType = filterConfiguration.dataType;
+            copy.name = filterConfiguration.name;
+            copy.configuration = filterConfiguration.configuration;
+            copy.isSelected = filterConfiguration.isSelected;
+            copy.isDefault = filterConfiguration.isDefault;
+            copy.sharedKey = filterConfiguration.sharedKey;
+            if (filterConfiguration.principal != null) {
+                copy.principal = new Principal();
+                copy.principal.id = filterConfiguration.principal.id;
+                copy.principal.uid = filterConfiguration.principal.uid;
+            }
+            return copy;
+        }
+
+        private Long getPrincipalId() {
+            return principalId;
+        }
+
+        private String getDataType() {
+            return dataType;
+        }
+    }
+
+    /**
+     * A configuration to be written to a filter
+     */
+    private static class PendingWrite {
+        private String key;
+        private String configuration;
+
+        public PendingWrite(String key, String configuration) {
+            this.key = key;
+            this.configuration = configuration;
+        }
+    }
+
+    /**
+     * Flush the pending write of the modified filter configurations, remove
+     * the cached filters of their user and data type and publish the
+     * modification to the other nodes (except for the writes of the cache)
+     */
+    static class InvalidationListener implements IDatabaseChangeListener {
+        @Override
+        public void postInsert(Object bean) {
+            invalidateBean(bean);
+        }
+
+        @Override
+        public void postDelete(Object bean) {
+            invalidateBean(bean);
+        }
+
+        @Override
+        public void postUpdate(Object bean, Map<String, ModificationPair> modifiedAttributes) {
+            if (isOwnWrite(bean, modifiedAttributes)) {
+                return;
+            }
+            invalidateBean(bean);
+        }
+
+        /**
+         * Return true if the update has been done by a background write of the
+         * cache (the configuration written and nothing else)
+         */
+        private boolean isOwnWrite(Object bean, Map<String, ModificationPair> modifiedAttributes) {
+            if (!(bean instanceof FilterConfiguration)) {
+                return false;
+            }
+            FilterConfiguration filterConfiguration = (FilterConfiguration) bean;
+            return filterConfiguration.id != null && filterConfiguration.configuration != null
+                    && WRITTEN_ATTRIBUTES.containsAll(modifiedAttributes.keySet())
+                    && ownWrites.remove(filterConfiguration.id, filterConfiguration.configuration);
+        }
+
+        private void invalidateBean(Object bean) {
+            if (!(bean instanceof FilterConfiguration)) {
+                return;
+            }
+            FilterConfiguration filterConfiguration = (FilterConfiguration) bean;
+            Long principalId = filterConfiguration.principal != null ? filterConfiguration.principal.id : null;
+            invalidateFilters(filterConfiguration.dataType, principalId);
+            if (filterConfiguration.id != null) {
+                flush(filterConfiguration.id);
+            }
+            invalidationBus.publish(INVALIDATION_REGION, filterConfiguration.dataType + "#" + (principalId != null ? principalId : ""));
+        }
+    }
+}
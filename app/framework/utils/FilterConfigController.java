@@ -40,7 +40,10 @@ import play.mvc.Controller;
 import play.mvc.Result;
 
 /**
- * The actions for the filter congif.
+ * The actions for the filter congif.<br/>
+ * Each action which modifies the filter configurations of a user first calls
+ * {@link FilterConfigCache#invalidate(String, String)} so that the pending
+ * write of the default filter is not lost or written over the change.
  * 
  * @author Johann Kohler
  *
@@ -76,6 +79,9 @@ public class FilterConfigController extends Controller {
 
         try {
 
+            // write the pending configuration of the default filter
+            FilterConfigCache.invalidate(uid, dataType);
+
             FilterConfiguration selectedFilter = FilterConfiguration.getSelectedFilterConfiguration(uid, dataType);
             if (selectedFilter != null) {
                 selectedFilter.isSelected = false;
@@ -134,6 +140,9 @@ public class FilterConfigController extends Controller {
                 return forbidden();
             }
 
+            // write the pending configuration of the default filter
+            FilterConfigCache.invalidate(uid, selectedFilter.dataType);
+
             FilterConfiguration defaultFilter = FilterConfiguration.getDefaultFilterConfiguration(uid, selectedFilter.dataType);
 
             selectedFilter.configuration = defaultFilter.configuration;
@@ -159,6 +168,10 @@ public class FilterConfigController extends Controller {
         String route = request().body().asJson().get("route").asText();
         String dataType = request().body().asJson().get("dataType").asText();
 
+        // Write the pending configuration of the default filter (before it is
+        // deleted)
+        FilterConfigCache.invalidate(uid, dataType);
+
         // Deselect the currently selected filter configuration
         FilterConfiguration.getSelectedFilterConfiguration(uid, dataType).deselect();
 
@@ -192,6 +205,10 @@ public class FilterConfigController extends Controller {
                 return forbidden();
             }
 
+            // write the pending configuration of the default filter (before
+            // it is replaced)
+            FilterConfigCache.invalidate(uid, selectedFilter.dataType);
+
             // set the isSelected flag
             FilterConfiguration oldSelectedFilter = FilterConfiguration.getSelectedFilterConfiguration(uid, selectedFilter.dataType);
             if (!oldSelectedFilter.isDefault) {
@@ -240,6 +257,8 @@ public class FilterConfigController extends Controller {
                 return forbidden();
             }
 
+            FilterConfigCache.invalidate(uid, selectedFilter.dataType);
+
             selectedFilter.name = name;
             selectedFilter.save();
 
@@ -273,6 +292,8 @@ public class FilterConfigController extends Controller {
                 return forbidden();
             }
 
+            FilterConfigCache.invalidate(uid, selectedFilter.dataType);
+
             FilterConfiguration defaultFilter = FilterConfiguration.getDefaultFilterConfiguration(uid, selectedFilter.dataType);
 
             selectedFilter.doDelete();
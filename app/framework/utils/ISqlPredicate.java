@@ -0,0 +1,42 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.utils;
+
+import java.util.function.Predicate;
+
+import com.avaje.ebean.ExpressionList;
+
+/**
+ * A post query filter of a {@link Pagination} which can also be expressed as
+ * a SQL condition.<br/>
+ * Such filter is added to the query (instead of being applied in memory on
+ * all the objects) so that the database can page the result.
+ *
+ * @param <T>
+ *            the type of the filtered objects
+ */
+public interface ISqlPredicate<T> extends Predicate<T> {
+
+    /**
+     * Add the condition of this filter to the specified query
+     *
+     * @param expressionList
+     *            a query
+     */
+    public void addTo(ExpressionList<T> expressionList);
+}
@@ -25,9 +25,11 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import com.avaje.ebean.ExpressionList;
+import com.avaje.ebeaninternal.api.SpiQuery;
 
 import framework.commons.IFrameworkConstants;
 import framework.services.account.IPreferenceManagerPlugin;
+import play.Logger;
 import play.Play;
 
 /**
@@ -48,14 +50,31 @@ import play.Play;
  * By default the query name for the current page attribute is simply "page"
  * (i.e. ?page=X). If necessary (for example if a render displays 2 tables),
  * it's possible to custom this attribute's name. To do this use the parameter
- * "pageQueryName".
+ * "pageQueryName".<br/>
+ * <br/>
+ * For large tables:
+ * <ul>
+ * <li>a filter key (any string which identifies the filter of the query) can
+ * be provided to the constructor, the row count is then cached (see
+ * {@link PaginationCache})</li>
+ * <li>a seek key (see {@link #setSeekKey(String, boolean)}) can be defined
+ * so that the next pages are read after the last object of the previous page
+ * instead of with an offset</li>
+ * <li>the post query filters which implement {@link ISqlPredicate} are added
+ * to the query instead of being applied in memory</li>
+ * </ul>
  * 
  * @param <T>
  *            the object from the {@link Table} which is paginated
  * @author Pierre-Yves Cloux
  */
 public class Pagination<T> {
+    private static Logger.ALogger log = Logger.of(Pagination.class);
+
     private ExpressionList<T> expressionList;
+    private String filterKey;
+    private String seekKeyProperty;
+    private boolean seekDescending;
     private Integer currentPage;
     private int pageSize;
     private int numberOfPages;
@@ -68,6 +87,7 @@ public class Pagination<T> {
     private String pageQueryName = "page";
     private List<Predicate<T>> postQueryFilters = new ArrayList<>();
     private Comparator<? super T> postQueryOrderBy = null;
+    private boolean postQueryFiltersPushedDown = false;
 
     /**
      * Creates a Pagination object using the specified ExpressionList.<br/>
@@ -82,6 +102,24 @@ public class Pagination<T> {
                 Play.application().configuration().getInt("maf.number_page_links"));
     }
 
+    /**
+     * Creates a Pagination object using the specified ExpressionList.<br/>
+     * The row count is cached for the specified filter key (see
+     * {@link PaginationCache}).
+     * 
+     * @param preferenceManagerPlugin
+     *            the preference manager service
+     * @param expressionList
+     *            an Expression list
+     * @param filterKey
+     *            a key which identifies the filter of the query (for the type
+     *            of object of the query)
+     */
+    public Pagination(IPreferenceManagerPlugin preferenceManagerPlugin, ExpressionList<T> expressionList, String filterKey) {
+        this(expressionList, preferenceManagerPlugin.getPreferenceValueAsInteger(IFrameworkConstants.DISPLAY_LIST_PAGE_SIZE_PREFERENCE),
+                Play.application().configuration().getInt("maf.number_page_links"), filterKey);
+    }
+
     public Pagination(IPreferenceManagerPlugin preferenceManagerPlugin, int rowCount, ExpressionList<T> expressionList, List<Predicate<T>> postQueryFilters, Comparator<? super T> postQueryOrderBy) {
         this(preferenceManagerPlugin, rowCount, expressionList);
         this.postQueryFilters = postQueryFilters;
@@ -130,10 +168,29 @@ public class Pagination<T> {
      *            in the navigation bar
      */
     public Pagination(ExpressionList<T> expressionList, int pageSize, int numberOfLinksInNavigationBar) {
+        this(expressionList, pageSize, numberOfLinksInNavigationBar, null);
+    }
+
+    /**
+     * Creates a Pagination object using the specified {@link ExpressionList}
+     * and a specific page size.
+     * 
+     * @param expressionList
+     * @param pageSize
+     *            the number of records in one page
+     * @param numberOfLinksInNavigationBar
+     *            the number of links (possible pages to navigate to) displayed
+     *            in the navigation bar
+     * @param filterKey
+     *            a key which identifies the filter of the query (if null the
+     *            row count is not cached)
+     */
+    public Pagination(ExpressionList<T> expressionList, int pageSize, int numberOfLinksInNavigationBar, String filterKey) {
         this.pageSize = pageSize;
         this.expressionList = expressionList;
+        this.filterKey = filterKey;
         this.numberOfLinksInNavigationBar = numberOfLinksInNavigationBar;
-        this.rowCount = expressionList.findRowCount();
+        this.rowCount = countRows();
         computeNumberOfPages(pageSize);
     }
 
@@ -156,6 +213,41 @@ public class Pagination<T> {
         computeNumberOfPages(pageSize);
     }
 
+    /**
+     * Count the rows of the query (the cached row count is used if a filter
+     * key is defined)
+     */
+    private int countRows() {
+        if (getFilterKey() == null) {
+            return getExpressionList().findRowCount();
+        }
+        Integer cachedRowCount = PaginationCache.getRowCount(getBeanType(), getFilterKey());
+        if (cachedRowCount != null) {
+            return cachedRowCount;
+        }
+        int count = getExpressionList().findRowCount();
+        PaginationCache.putRowCount(getBeanType(), getFilterKey(), count);
+        return count;
+    }
+
+    /**
+     * Define the seek key of the query.<br/>
+     * If a filter key has been provided to the constructor, the value of this
+     * key for the last object of each page is cached and the next page is
+     * read after this value (instead of using an offset). The seek key must
+     * be unique and indexed (example: "id"). The query is then ordered by this
+     * key only.
+     * 
+     * @param seekKeyProperty
+     *            the name of the property
+     * @param seekDescending
+     *            true if the objects are ordered by descending key values
+     */
+    public void setSeekKey(String seekKeyProperty, boolean seekDescending) {
+        this.seekKeyProperty = seekKeyProperty;
+        this.seekDescending = seekDescending;
+    }
+
     /**
      * Compute the number of pages for the pagination
      * 
@@ -225,35 +317,112 @@ public class Pagination<T> {
         if (getExpressionList() == null || getCurrentPage() == null) {
             throw new IllegalStateException("Invalid use of Pagination, no ExpressionList provided in the constructor or no current page specified");
         }
+        pushDownPostQueryFilters();
         if (getNumberOfPages() == 0) {
-            List<T> list = getExpressionList().findList();
-            listOfObjects = applyPostQueryFilters(list);
+            listOfObjects = findFilteredObjects(-1);
             if (this.postQueryOrderBy != null) {
                 listOfObjects.sort(this.postQueryOrderBy);
             }
         } else {
             int fromIndex = getCurrentPage() * getPageSize();
             if (this.postQueryFilters.isEmpty() && this.postQueryOrderBy == null) {
-                listOfObjects = getExpressionList().setFirstRow(fromIndex).setMaxRows(getPageSize()).findList();
+                listOfObjects = findPage(fromIndex);
             } else {
                 int toIndex = fromIndex + getPageSize();
-                List<T> list = getExpressionList().findList();
-                list = applyPostQueryFilters(list);
+                // Without post query order, the objects after the page are
+                // not needed
+                List<T> list = findFilteredObjects(this.postQueryOrderBy == null ? toIndex : -1);
                 if (this.postQueryOrderBy != null) {
                     list.sort(this.postQueryOrderBy);
                 }
-                listOfObjects = list.subList(fromIndex, toIndex > list.size() ? list.size() : toIndex);
+                listOfObjects = list.subList(Math.min(fromIndex, list.size()), toIndex > list.size() ? list.size() : toIndex);
             }
         }
         return listOfObjects;
     }
 
-    private List<T> applyPostQueryFilters(List<T> list) {
-        Stream<T> stream = list.stream();
+    /**
+     * Add the post query filters which can be expressed in SQL (see
+     * {@link ISqlPredicate}) to the query, the other ones remain applied in
+     * memory.
+     */
+    @SuppressWarnings("unchecked")
+    private void pushDownPostQueryFilters() {
+        if (this.postQueryFiltersPushedDown) {
+            return;
+        }
+        List<Predicate<T>> inMemoryFilters = new ArrayList<>();
         for (Predicate<T> predicate : this.postQueryFilters) {
-            stream = stream.filter(predicate);
+            if (predicate instanceof ISqlPredicate) {
+                ((ISqlPredicate<T>) predicate).addTo(getExpressionList());
+            } else {
+                inMemoryFilters.add(predicate);
+            }
         }
-        return stream.collect(Collectors.toList());
+        this.postQueryFilters = inMemoryFilters;
+        this.postQueryFiltersPushedDown = true;
+    }
+
+    /**
+     * Read the objects of the query (one by one, without loading the whole
+     * result in memory) and keep the ones matching the post query filters.
+     * 
+     * @param maxSize
+     *            the reading stops when this number of objects has been
+     *            selected (-1 for no limit)
+     */
+    private List<T> findFilteredObjects(int maxSize) {
+        List<T> list = new ArrayList<>();
+        getExpressionList().query().findEachWhile(bean -> {
+            for (Predicate<T> predicate : this.postQueryFilters) {
+                if (!predicate.test(bean)) {
+                    return true;
+                }
+            }
+            list.add(bean);
+            return maxSize < 0 || list.size() < maxSize;
+        });
+        return list;
+    }
+
+    /**
+     * Read the objects of a page from the database.<br/>
+     * If a seek key is defined and the boundary of the previous page is known,
+     * the page is read after this boundary, otherwise the offset is used.
+     * 
+     * @param fromIndex
+     *            the index of the first object of the page
+     */
+    private List<T> findPage(int fromIndex) {
+        if (getSeekKeyProperty() == null || getFilterKey() == null) {
+            return getExpressionList().setFirstRow(fromIndex).setMaxRows(getPageSize()).findList();
+        }
+
+        String orderBy = getSeekKeyProperty() + (isSeekDescending() ? " desc" : " asc");
+        // The boundaries depend on the page size (a preference of the user)
+        String boundaryKey = getFilterKey() + "#" + orderBy + "#" + getPageSize();
+        Object previousBoundary = getCurrentPage() > 0 ? PaginationCache.getPageBoundary(getBeanType(), boundaryKey, getCurrentPage() - 1) : null;
+        List<T> list;
+        if (previousBoundary != null) {
+            ExpressionList<T> seekExpressionList = isSeekDescending() ? getExpressionList().lt(getSeekKeyProperty(), previousBoundary)
+                    : getExpressionList().gt(getSeekKeyProperty(), previousBoundary);
+            list = seekExpressionList.orderBy(orderBy).setMaxRows(getPageSize()).findList();
+        } else {
+            list = getExpressionList().orderBy(orderBy).setFirstRow(fromIndex).setMaxRows(getPageSize()).findList();
+        }
+
+        if (!list.isEmpty()) {
+            T last = list.get(list.size() - 1);
+            try {
+                Object boundary = PropertyAccessor.of(last.getClass(), getSeekKeyProperty()).get(last);
+                if (boundary != null) {
+                    PaginationCache.putPageBoundary(getBeanType(), boundaryKey, getCurrentPage(), boundary);
+                }
+            } catch (Exception e) {
+                log.warn("Unable to read the seek key " + getSeekKeyProperty() + " from " + last, e);
+            }
+        }
+        return list;
     }
 
     /**
@@ -305,6 +474,22 @@ public class Pagination<T> {
         return expressionList;
     }
 
+    private Class<T> getBeanType() {
+        return ((SpiQuery<T>) getExpressionList().query()).getBeanType();
+    }
+
+    private String getFilterKey() {
+        return filterKey;
+    }
+
+    private String getSeekKeyProperty() {
+        return seekKeyProperty;
+    }
+
+    private boolean isSeekDescending() {
+        return seekDescending;
+    }
+
     @Override
     public String toString() {
         return "Pagination [expressionList=" + expressionList + ", currentPage=" + currentPage + ", pageSize=" + pageSize + ", numberOfPages=" + numberOfPages
@@ -0,0 +1,328 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import framework.services.cache.IInvalidationBus;
+import framework.services.cache.IInvalidationListener;
+import framework.services.database.ChangeEvent;
+import framework.services.database.IDatabaseChangeListener;
+import framework.services.database.IDatabaseDependencyService;
+import framework.services.database.ModificationPair;
+import play.Logger;
+import play.Play;
+import play.inject.ApplicationLifecycle;
+import play.libs.F.Promise;
+
+/**
+ * The cache used by the {@link Pagination} for the queries identified by a
+ * filter key.<br/>
+ * It stores (both expire after "maf.pagination.count.cache.ttl" seconds,
+ * default 60):
+ * <ul>
+ * <li>the row count of the query (approximate)</li>
+ * <li>the value of the sort key of the last object of each page already
+ * displayed (used to seek the next page instead of using an offset)</li>
+ * </ul>
+ * The entries of an object type are removed as soon as an object of this type
+ * is inserted, updated or deleted (see {@link IDatabaseChangeListener}). If
+ * the current node has some entries for the modified type, the name of the
+ * type is published on the {@link IInvalidationBus} (region
+ * {@link #INVALIDATION_REGION}, once per transaction and modified type) so
+ * that the other nodes remove theirs too. Otherwise the entries of the other
+ * nodes expire with the TTL.<br/>
+ * This class must be statically injected (see
+ * {@link framework.modules.FrameworkModule}).
+ */
+@Singleton
+public class PaginationCache {
+    private static Logger.ALogger log = Logger.of(PaginationCache.class);
+
+    private static final String COUNT_CACHE_TTL_CONFIG = "maf.pagination.count.cache.ttl";
+    private static final int DEFAULT_COUNT_CACHE_TTL = 60;
+    private static final int MAX_ENTRIES = 10000;
+
+    public static final String INVALIDATION_REGION = "pagination";
+
+    private static Map<Class<?>, Set<String>> keysByBeanType = new ConcurrentHashMap<>();
+    private static Map<String, CachedRowCount> rowCounts = new ConcurrentHashMap<>();
+    private static Map<String, CachedPageBoundaries> pageBoundaries = new ConcurrentHashMap<>();
+    private static Long countCacheTtl;
+    private static IInvalidationBus invalidationBus;
+
+    private PaginationCache() {
+    }
+
+    /**
+     * Register the cache as a listener of the database changes and of the
+     * invalidations published by the other nodes.
+     *
+     * @param databaseDependencyService
+     *            the database dependency service
+     * @param invalidationBus
+     *            the cache invalidation bus
+     * @param lifecycle
+     *            the play application lifecycle listener
+     */
+    @Inject
+    public static void register(IDatabaseDependencyService databaseDependencyService, IInvalidationBus invalidationBus, ApplicationLifecycle lifecycle) {
+        PaginationCache.invalidationBus = invalidationBus;
+        IDatabaseChangeListener listener = new InvalidationListener();
+        databaseDependencyService.addDatabaseChangeListener(listener);
+        IInvalidationListener remoteListener = PaginationCache::invalidateModifiedType;
+        invalidationBus.register(INVALIDATION_REGION, remoteListener);
+        lifecycle.addStopHook(() -> {
+            databaseDependencyService.removeDatabaseChangeListener(listener);
+            invalidationBus.unregister(INVALIDATION_REGION, remoteListener);
+            return Promise.pure(null);
+        });
+        log.info("Pagination cache registered as a database change listener");
+    }
+
+    /**
+     * Get the row count of a query (null if not cached or expired).
+     *
+     * @param beanType
+     *            the type of the objects returned by the query
+     * @param filterKey
+     *            the key which identifies the query
+     */
+    public static Integer getRowCount(Class<?> beanType, String filterKey) {
+        CachedRowCount cachedRowCount = rowCounts.get(getKey(beanType, filterKey));
+        if (cachedRowCount == null || System.currentTimeMillis() - cachedRowCount.timestamp > getCountCacheTtl()) {
+            return null;
+        }
+        return cachedRowCount.rowCount;
+    }
+
+    /**
+     * Store the row count of a query.
+     *
+     * @param beanType
+     *            the type of the objects returned by the query
+     * @param filterKey
+     *            the key which identifies the query
+     * @param rowCount
+     *            the row count
+     */
+    public static void putRowCount(Class<?> beanType, String filterKey, int rowCount) {
+        rowCounts.put(registerKey(beanType, filterKey), new CachedRowCount(rowCount));
+    }
+
+    /**
+     * Get the value of the sort key of the last object of a page (null if
+     * unknown).
+     *
+     * @param beanType
+     *            the type of the objects returned by the query
+     * @param filterKey
+     *            the key which identifies the query (including the sort key)
+     * @param page
+     *            the page number
+     */
+    public static Object getPageBoundary(Class<?> beanType, String filterKey, int page) {
+        CachedPageBoundaries cachedPageBoundaries = pageBoundaries.get(getKey(beanType, filterKey));
+        if (cachedPageBoundaries == null || System.currentTimeMillis() - cachedPageBoundaries.timestamp > getCountCacheTtl()) {
+            return null;
+        }
+        return cachedPageBoundaries.boundaries.get(page);
+    }
+
+    /**
+     * Store the value of the sort key of the last object of a page.
+     *
+     * @param beanType
+     *            the type of the objects returned by the query
+     * @param filterKey
+     *            the key which identifies the query (including the sort key)
+     * @param page
+     *            the page number
+     * @param boundary
+     *            the value of the sort key of the last object of the page
+     */
+    public static void putPageBoundary(Class<?> beanType, String filterKey, int page, Object boundary) {
+        String key = registerKey(beanType, filterKey);
+        CachedPageBoundaries cachedPageBoundaries = pageBoundaries.compute(key, (k, current) -> current == null
+                || System.currentTimeMillis() - current.timestamp > getCountCacheTtl() ? new CachedPageBoundaries() : current);
+        cachedPageBoundaries.boundaries.put(page, boundary);
+    }
+
+    /**
+     * Remove all the entries associated with the specified object type
+     *
+     * @param beanType
+     *            a type of object
+     */
+    public static void invalidate(Class<?> beanType) {
+        Set<String> keys = keysByBeanType.remove(beanType);
+        if (keys != null) {
+            for (String key : keys) {
+                rowCounts.remove(key);
+                pageBoundaries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Remove all the entries
+     */
+    public static void invalidateAll() {
+        keysByBeanType.clear();
+        rowCounts.clear();
+        pageBoundaries.clear();
+    }
+
+    /**
+     * Remove the entries of the object types which are assignable from the
+     * modified type (all the entries if the type is null or unknown).
+     *
+     * @param modifiedTypeName
+     *            the name of the class of a modified object
+     */
+    private static void invalidateModifiedType(String modifiedTypeName) {
+        if (modifiedTypeName == null) {
+            invalidateAll();
+            return;
+        }
+        try {
+            invalidateModifiedTypes(Collections.singleton(Class.forName(modifiedTypeName, false, Play.application().classloader())));
+        } catch (ClassNotFoundException e) {
+            log.warn("Unknown modified type " + modifiedTypeName + ", the pagination cache is flushed");
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Remove the entries of the object types which are assignable from one of
+     * the modified types.
+     *
+     * @param modifiedTypes
+     *            the classes of the modified objects
+     * @return the modified types for which some entries have been removed
+     */
+    private static Set<Class<?>> invalidateModifiedTypes(Collection<Class<?>> modifiedTypes) {
+        Set<Class<?>> cachedTypes = new HashSet<>();
+        for (Class<?> beanType : keysByBeanType.keySet()) {
+            boolean invalidated = false;
+            for (Class<?> modifiedType : modifiedTypes) {
+                if (beanType.isAssignableFrom(modifiedType)) {
+                    if (!invalidated) {
+                        invalidate(beanType);
+                        invalidated = true;
+                    }
+                    cachedTypes.add(modifiedType);
+                }
+            }
+        }
+        return cachedTypes;
+    }
+
+    /**
+     * Register a key for the specified object type (the cache is flushed if
+     * it is full)
+     */
+    private static String registerKey(Class<?> beanType, String filterKey) {
+        if (rowCounts.size() + pageBoundaries.size() > MAX_ENTRIES) {
+            log.warn("The pagination cache is full, it is flushed");
+            invalidateAll();
+        }
+        String key = getKey(beanType, filterKey);
+        keysByBeanType.computeIfAbsent(beanType, k -> ConcurrentHashMap.newKeySet()).add(key);
+        return key;
+    }
+
+    private static String getKey(Class<?> beanType, String filterKey) {
+        return beanType.getName() + "#" + filterKey;
+    }
+
+    private static long getCountCacheTtl() {
+        if (countCacheTtl == null) {
+            Integer ttl = Play.application().configuration().getInt(COUNT_CACHE_TTL_CONFIG);
+            countCacheTtl = (ttl != null ? ttl : DEFAULT_COUNT_CACHE_TTL) * 1000L;
+        }
+        return countCacheTtl;
+    }
+
+    /**
+     * Invalidate the entries of the type of the modified objects and publish
+     * to the other nodes the modified types which had some entries
+     */
+    private static class InvalidationListener implements IDatabaseChangeListener {
+        @Override
+        public void postInsert(Object bean) {
+            invalidateTypes(Collections.singleton(bean.getClass()));
+        }
+
+        @Override
+        public void postDelete(Object bean) {
+            invalidateTypes(Collections.singleton(bean.getClass()));
+        }
+
+        @Override
+        public void postUpdate(Object bean, Map<String, ModificationPair> modifiedAttributes) {
+            invalidateTypes(Collections.singleton(bean.getClass()));
+        }
+
+        @Override
+        public void postBatch(List<ChangeEvent> events) {
+            Set<Class<?>> modifiedTypes = new HashSet<>();
+            for (ChangeEvent event : events) {
+                modifiedTypes.add(event.getBean().getClass());
+            }
+            invalidateTypes(modifiedTypes);
+        }
+
+        private void invalidateTypes(Collection<Class<?>> modifiedTypes) {
+            for (Class<?> modifiedType : invalidateModifiedTypes(modifiedTypes)) {
+                invalidationBus.publish(INVALIDATION_REGION, modifiedType.getName());
+            }
+        }
+    }
+
+    /**
+     * The page boundaries of a query and the time at which the first one has
+     * been stored
+     */
+    private static class CachedPageBoundaries {
+        private Map<Integer, Object> boundaries = new ConcurrentHashMap<>();
+        private long timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * A row count and the time at which it has been computed
+     */
+    private static class CachedRowCount {
+        private int rowCount;
+        private long timestamp;
+
+        public CachedRowCount(int rowCount) {
+            this.rowCount = rowCount;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.utils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.beanutils.PropertyUtils;
+
+import play.Logger;
+
+/**
+ * A compiled accessor to a property of a class.<br/>
+ * A simple property (example: "name") is resolved once as a
+ * {@link MethodHandle} on its getter so that reading it does not require any
+ * reflective lookup. The other properties (nested, indexed or mapped, example:
+ * "actor.name") are read with {@link PropertyUtils}.<br/>
+ * The accessors are cached per class and property (see
+ * {@link #of(Class, String)}).
+ */
+public class PropertyAccessor {
+    private static Logger.ALogger log = Logger.of(PropertyAccessor.class);
+
+    private static final ClassValue<Map<String, PropertyAccessor>> ACCESSORS = new ClassValue<Map<String, PropertyAccessor>>() {
+        @Override
+        protected Map<String, PropertyAccessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private Class<?> beanClass;
+    private String propertyName;
+    private MethodHandle getter;
+
+    private PropertyAccessor(Class<?> beanClass, String propertyName) {
+        this.beanClass = beanClass;
+        this.propertyName = propertyName;
+        this.getter = findGetter(beanClass, propertyName);
+    }
+
+    /**
+     * Return the accessor to the specified property of a class
+     *
+     * @param beanClass
+     *            a class
+     * @param propertyName
+     *            the name of a property (as accepted by
+     *            {@link PropertyUtils#getProperty(Object, String)})
+     */
+    public static PropertyAccessor of(Class<?> beanClass, String propertyName) {
+        return ACCESSORS.get(beanClass).computeIfAbsent(propertyName, name -> new PropertyAccessor(beanClass, name));
+    }
+
+    /**
+     * Read the property of the specified object.<br/>
+     * The exceptions are the ones of
+     * {@link PropertyUtils#getProperty(Object, String)}: any exception thrown
+     * by the getter (including a runtime exception) is wrapped in an
+     * {@link InvocationTargetException}.
+     *
+     * @param bean
+     *            an instance of the class of this accessor
+     */
+    public Object get(Object bean) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        if (getter == null) {
+            return PropertyUtils.getProperty(bean, getPropertyName());
+        }
+        try {
+            return (Object) getter.invokeExact(bean);
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    private String getPropertyName() {
+        return propertyName;
+    }
+
+    /**
+     * Find the getter of a simple property and convert it into a
+     * {@link MethodHandle} of type (Object)Object
+     *
+     * @param beanClass
+     *            a class
+     * @param propertyName
+     *            the name of a property
+     * @return a method handle or null if the property is not simple or has no
+     *         getter
+     */
+    private static MethodHandle findGetter(Class<?> beanClass, String propertyName) {
+        if (propertyName.indexOf('.') != -1 || propertyName.indexOf('[') != -1 || propertyName.indexOf('(') != -1) {
+            return null;
+        }
+        try {
+            for (PropertyDescriptor propertyDescriptor : PropertyUtils.getPropertyDescriptors(beanClass)) {
+                if (propertyDescriptor.getName().equals(propertyName)) {
+                    Method readMethod = propertyDescriptor.getReadMethod();
+                    if (readMethod == null) {
+                        return null;
+                    }
+                    readMethod.setAccessible(true);
+                    return MethodHandles.lookup().unreflect(readMethod).asType(GETTER_TYPE);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Unable to resolve the property " + propertyName + " of the class " + beanClass.getName(), e);
+        }
+        return null;
+    }
+}
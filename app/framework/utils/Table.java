@@ -19,11 +19,13 @@ package framework.utils;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
 
 import org.apache.commons.beanutils.MethodUtils;
 import org.apache.commons.beanutils.PropertyUtils;
@@ -33,6 +35,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 
+import framework.security.ISecurityService;
 import framework.services.configuration.II18nMessagesPlugin;
 import framework.services.kpi.IKpiService;
 import framework.services.kpi.Kpi;
@@ -44,6 +47,9 @@ import models.framework_models.common.CustomAttributeDefinition;
 import models.framework_models.common.ICustomAttributeValue;
 import org.apache.commons.lang3.tuple.Pair;
 import play.Logger;
+import play.Play;
+import play.mvc.Http;
+import scala.Function2;
 import scala.Option;
 
 /**
@@ -71,6 +77,14 @@ public class Table<T> {
     private String emptyMessageKey = "table.empty";
     private IColumnFormatter<T> lineAction = null;
     private Set<String> columnsWithTotal;
+    private ColumnDef[] displayedColumnDefs;
+
+    /**
+     * The dynamic permissions (name and meta) checked by the formatters of the
+     * rows. They are evaluated once for all the rows of a filled table.
+     */
+    private List<Pair<String, String>> dynamicPermissions;
+    private boolean dynamicPermissionsEvaluated = false;
 
     /**
      * Attributes to manage the row actions (actions to applied to selected
@@ -80,6 +94,7 @@ public class Table<T> {
      */
     private List<RowAction> rowActions;
     private String allIdsUrl;
+    private Map<Long, Map<Long, ICustomAttributeValue>> customAttributeValues;
 
     private static Logger.ALogger log = Logger.of(Table.class);
 
@@ -92,6 +107,7 @@ public class Table<T> {
         this.columnsWithTotal = new HashSet<>();
         this.rowActions = new ArrayList<>();
         this.allIdsUrl = null;
+        this.dynamicPermissions = new ArrayList<>();
     }
 
     /**
@@ -113,8 +129,69 @@ public class Table<T> {
         this.columnsWithTotal = sourceTable.columnsWithTotal;
         this.emptyMessageKey = sourceTable.getEmptyMessageKey();
         this.lineAction = sourceTable.getLineAction();
+        this.dynamicPermissions = sourceTable.dynamicPermissions;
         this.rowActions = new ArrayList<>();
         this.allIdsUrl = null;
+        this.displayedColumnDefs = getHeaders().toArray(new ColumnDef[0]);
+        this.customAttributeValues = loadCustomAttributeValues();
+    }
+
+    /**
+     * Load, with a few queries, the values of the displayed custom attribute
+     * columns for all the values of the table (instead of one query per cell).
+     * 
+     * @return the values indexed by custom attribute definition id and object
+     *         id
+     */
+    private Map<Long, Map<Long, ICustomAttributeValue>> loadCustomAttributeValues() {
+        Map<Long, Map<Long, ICustomAttributeValue>> loadedValues = new HashMap<>();
+        if (getValues() == null || getValues().isEmpty()) {
+            return loadedValues;
+        }
+
+        Map<Class<?>, Set<Long>> definitionIdsByObjectType = new HashMap<>();
+        Map<Class<?>, Set<Long>> objectIdsByObjectType = new HashMap<>();
+        for (ColumnDef columnDef : getDisplayedColumnDefs()) {
+            if (columnDef.formatter instanceof CustomAttributeColumnFormatter) {
+                CustomAttributeColumnFormatter<?> formatter = (CustomAttributeColumnFormatter<?>) columnDef.formatter;
+                definitionIdsByObjectType.computeIfAbsent(formatter.getObjectType(), k -> new HashSet<>()).add(formatter.getCustomAttributeDefinitionId());
+                Set<Long> objectIds = objectIdsByObjectType.computeIfAbsent(formatter.getObjectType(), k -> new HashSet<>());
+                for (T value : getValues()) {
+                    Object cellValue = getCellValue(columnDef, value);
+                    if (cellValue instanceof Long) {
+                        objectIds.add((Long) cellValue);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<Class<?>, Set<Long>> entry : definitionIdsByObjectType.entrySet()) {
+            Set<Long> objectIds = objectIdsByObjectType.get(entry.getKey());
+            if (!objectIds.isEmpty()) {
+                loadedValues.putAll(CustomAttributeDefinition.getCustomAttributeValues(entry.getKey(), null,
+                        CustomAttributeDefinition.getCustomAttributeDefinitionsFromIds(entry.getKey(), entry.getValue()), objectIds));
+            }
+        }
+        return loadedValues;
+    }
+
+    /**
+     * Return the value of a custom attribute column for an object id, the
+     * value loaded with the table is used if available.
+     * 
+     * @param formatter
+     *            the formatter of the custom attribute column
+     * @param id
+     *            the object id
+     */
+    private ICustomAttributeValue getCustomAttributeValue(CustomAttributeColumnFormatter<?> formatter, Long id) {
+        if (customAttributeValues != null) {
+            Map<Long, ICustomAttributeValue> valuesByObjectId = customAttributeValues.get(formatter.getCustomAttributeDefinitionId());
+            if (valuesByObjectId != null && valuesByObjectId.containsKey(id)) {
+                return valuesByObjectId.get(id);
+            }
+        }
+        return formatter.getCustomAttributeValue(id);
     }
 
     /**
@@ -359,6 +436,23 @@ public class Table<T> {
         this.rowActions.add(new RowAction(label, url, true, confirmationMessage));
     }
 
+    /**
+     * Declare a dynamic permission which is checked by the formatters of the
+     * rows (see {@link ISecurityService#dynamic(String, String, Long)} with
+     * the id of the row).<br/>
+     * When the rows are formatted, the permission is evaluated once for all
+     * the rows of the table (see {@link ISecurityService#dynamicBatch}) so
+     * that the checks of the formatters do not evaluate it again.
+     * 
+     * @param name
+     *            the dynamic permission name
+     * @param meta
+     *            the meta, can be empty
+     */
+    public void addDynamicPermission(String name, String meta) {
+        this.dynamicPermissions.add(Pair.of(name, meta));
+    }
+
     public boolean hasRowActions() {
         return this.rowActions.size() > 0 && this.allIdsUrl != null;
     }
@@ -492,6 +586,7 @@ public class Table<T> {
      * @return a list of Rows (basically a row is a list of String)
      */
     public List<FormattedRow> getFormattedRows() {
+        evaluateDynamicPermissions();
         List<FormattedRow> rows = new ArrayList<FormattedRow>();
         for (T value : getValues()) {
             rows.add(getFormattedRow(value));
@@ -499,6 +594,36 @@ public class Table<T> {
         return rows;
     }
 
+    /**
+     * Evaluate the declared dynamic permissions for the ids of all the rows
+     * (once, and only in the context of a request)
+     */
+    private void evaluateDynamicPermissions() {
+        if (dynamicPermissionsEvaluated || dynamicPermissions.isEmpty() || !hasValues() || getIdColumnDef() == null
+                || Http.Context.current.get() == null) {
+            return;
+        }
+        dynamicPermissionsEvaluated = true;
+        Set<Long> ids = new HashSet<>();
+        for (T value : getValues()) {
+            Object id = getCellValue(getIdColumnDef(), value);
+            if (id instanceof Long) {
+                ids.add((Long) id);
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        ISecurityService securityService = Play.application().injector().instanceOf(ISecurityService.class);
+        for (Pair<String, String> dynamicPermission : dynamicPermissions) {
+            try {
+                securityService.dynamicBatch(dynamicPermission.getLeft(), dynamicPermission.getRight(), ids);
+            } catch (Exception e) {
+                log.error("Unable to evaluate the dynamic permission " + dynamicPermission.getLeft() + " for the rows of the table", e);
+            }
+        }
+    }
+
     /**
      * Return a list of rows using the list of values passed as a parameter.
      * <br/>
@@ -523,13 +648,12 @@ public class Table<T> {
      * @return a Row object
      */
     public FormattedRow getFormattedRow(T value) {
-        List<String> rowValues = new ArrayList<String>(getColumnDefs().size() - getNotDisplayedColumns().size());
-        List<String> cssClasses = new ArrayList<String>(getColumnDefs().size() - getNotDisplayedColumns().size());
-        for (ColumnDef columnDef : getColumnDefs()) {
-            if (!getNotDisplayedColumns().contains(columnDef.getName())) {
-                rowValues.add(getFormattedCellValue(columnDef, value));
-                cssClasses.add(columnDef.getValueCssClass());
-            }
+        ColumnDef[] columnDefs = getDisplayedColumnDefs();
+        List<String> rowValues = new ArrayList<String>(columnDefs.length);
+        List<String> cssClasses = new ArrayList<String>(columnDefs.length);
+        for (ColumnDef columnDef : columnDefs) {
+            rowValues.add(getFormattedCellValue(columnDef, value));
+            cssClasses.add(columnDef.getValueCssClass());
         }
 
         String actionLink = null;
@@ -556,18 +680,17 @@ public class Table<T> {
      * @return a Row object
      */
     public NotFormattedRow getNotFormattedRow(T value) {
-        List<Object> rowValues = new ArrayList<Object>(getColumnDefs().size() - getNotDisplayedColumns().size());
-        for (ColumnDef columnDef : getColumnDefs()) {
-            if (!getNotDisplayedColumns().contains(columnDef.getName())) {
-                if (columnDef.formatter != null && columnDef.formatter.getClass().equals(CustomAttributeColumnFormatter.class)) {
-                    @SuppressWarnings("unchecked")
-                    CustomAttributeColumnFormatter<T> formatter = (CustomAttributeColumnFormatter<T>) columnDef.formatter;
-                    Long id = (Long) getCellValue(columnDef, value);
-                    rowValues.add(formatter.getCustomAttributeValue(id).getValueAsObject());
-
-                } else {
-                    rowValues.add(getCellValue(columnDef, value));
-                }
+        ColumnDef[] columnDefs = getDisplayedColumnDefs();
+        List<Object> rowValues = new ArrayList<Object>(columnDefs.length);
+        for (ColumnDef columnDef : columnDefs) {
+            if (columnDef.formatter != null && columnDef.formatter.getClass().equals(CustomAttributeColumnFormatter.class)) {
+                @SuppressWarnings("unchecked")
+                CustomAttributeColumnFormatter<T> formatter = (CustomAttributeColumnFormatter<T>) columnDef.formatter;
+                Long id = (Long) getCellValue(columnDef, value);
+                rowValues.add(getCustomAttributeValue(formatter, id).getValueAsObject());
+
+            } else {
+                rowValues.add(getCellValue(columnDef, value));
             }
         }
         if (getIdFieldName() == null) {
@@ -582,10 +705,10 @@ public class Table<T> {
     }
 
     public FormattedRow getTotalRow() {
-        List<String> rowValues = new ArrayList<>(getColumnDefs().size() - getNotDisplayedColumns().size());
-        List<String> rowClasses = new ArrayList<>(getColumnDefs().size() - getNotDisplayedColumns().size());
-        getColumnDefs().stream()
-                .filter(def -> !getNotDisplayedColumns().contains(def.getName()))
+        ColumnDef[] columnDefs = getDisplayedColumnDefs();
+        List<String> rowValues = new ArrayList<>(columnDefs.length);
+        List<String> rowClasses = new ArrayList<>(columnDefs.length);
+        Arrays.stream(columnDefs)
                 .forEach(def -> {
                     if (def.summable) {
                         Number total = 0.0;
@@ -631,7 +754,12 @@ public class Table<T> {
         String formattedCellValue = "";
         Object cellValue = getCellValue(columnDef, value);
         if (cellValue != null) {
-            formattedCellValue = columnDef.format(value, cellValue);
+            if (columnDef.formatter instanceof CustomAttributeColumnFormatter && cellValue instanceof Long) {
+                CustomAttributeColumnFormatter<?> formatter = (CustomAttributeColumnFormatter<?>) columnDef.formatter;
+                formattedCellValue = formatter.render(getCustomAttributeValue(formatter, (Long) cellValue));
+            } else {
+                formattedCellValue = columnDef.format(value, cellValue);
+            }
         }
         return formattedCellValue;
     }
@@ -650,7 +778,7 @@ public class Table<T> {
      */
     private Object getCellValue(ColumnDef columnDef, Object value) {
         try {
-            return PropertyUtils.getProperty(value, columnDef.getFieldName());
+            return columnDef.getCellValue(value);
         } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
             log.error("Unable to get property " + columnDef.getFieldName() + " from bean " + value);
         }
@@ -678,6 +806,17 @@ public class Table<T> {
         return notDisplayedColumns;
     }
 
+    /**
+     * Returns the definitions of the displayed columns (computed once when
+     * the table is filled)
+     */
+    private ColumnDef[] getDisplayedColumnDefs() {
+        if (displayedColumnDefs == null) {
+            return getHeaders().toArray(new ColumnDef[0]);
+        }
+        return displayedColumnDefs;
+    }
+
     public String getEmptyMessageKey() {
         return this.emptyMessageKey;
     }
@@ -733,6 +872,8 @@ public class Table<T> {
         private String subLabel;
         private String fieldName;
         private Object formatter;
+        private BiFunction<Object, Object, Object> formatterFunction;
+        private volatile PropertyAccessor propertyAccessor;
         private SorterType sorterType;
         private boolean escape = true;
         private boolean isJavaFormatter = false;
@@ -838,21 +979,9 @@ public class Table<T> {
         private String format(Object value, Object cellValue) {
             if (this.formatter != null) {
                 try {
-                    if (isJavaFormatter()) {
-                        // IColumnFormatter object implemented in java
-                        @SuppressWarnings("rawtypes")
-                        IColumnFormatter columnFormatter = (IColumnFormatter) this.formatter;
-                        @SuppressWarnings("unchecked")
-                        Object returnValue = columnFormatter.apply(value, cellValue);
-                        if (returnValue != null)
-                            return String.valueOf(returnValue);
-                    } else {
-                        // Scala closure
-                        Object[] params = { value, Option.apply(cellValue) };
-                        Object returnValue = MethodUtils.invokeMethod(this.formatter, "apply", params);
-                        if (returnValue != null)
-                            return String.valueOf(returnValue);
-                    }
+                    Object returnValue = this.formatterFunction.apply(value, cellValue);
+                    if (returnValue != null)
+                        return String.valueOf(returnValue);
                 } catch (Exception e) {
                     log.error("Error during the formatting of the column " + name, e);
                     throw new RuntimeException("Error while calling the dynamic column formatter " + name + ", please correct", e);
@@ -902,6 +1031,56 @@ public class Table<T> {
             if (IColumnFormatter.class.isAssignableFrom(formatter.getClass())) {
                 this.isJavaFormatter = true;
             }
+            this.formatterFunction = compileFormatter(formatter);
+        }
+
+        /**
+         * Bind the formatter to a function (value, cellValue) so that no
+         * reflective lookup is required to format a cell.
+         * 
+         * @param formatter
+         *            an {@link IColumnFormatter} or a scala closure
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private static BiFunction<Object, Object, Object> compileFormatter(Object formatter) {
+            if (formatter instanceof IColumnFormatter) {
+                // IColumnFormatter object implemented in java
+                IColumnFormatter columnFormatter = (IColumnFormatter) formatter;
+                return (value, cellValue) -> columnFormatter.apply(value, cellValue);
+            }
+            if (formatter instanceof Function2) {
+                // Scala closure
+                Function2 closure = (Function2) formatter;
+                return (value, cellValue) -> closure.apply(value, Option.apply(cellValue));
+            }
+            return (value, cellValue) -> {
+                try {
+                    Object[] params = { value, Option.apply(cellValue) };
+                    return MethodUtils.invokeMethod(formatter, "apply", params);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            };
+        }
+
+        /**
+         * Get the value of the field of this column from the specified object
+         * (the accessor is compiled for the class of the object and reused
+         * for the next rows).
+         * 
+         * @param value
+         *            an object
+         */
+        private Object getCellValue(Object value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            if (value == null) {
+                return PropertyUtils.getProperty(value, getFieldName());
+            }
+            PropertyAccessor accessor = this.propertyAccessor;
+            if (accessor == null || !accessor.getBeanClass().equals(value.getClass())) {
+                accessor = PropertyAccessor.of(value.getClass(), getFieldName());
+                this.propertyAccessor = accessor;
+            }
+            return accessor.get(value);
         }
 
         public String getName() {
@@ -0,0 +1,224 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import com.avaje.ebean.Query;
+
+import framework.services.configuration.II18nMessagesPlugin;
+import framework.utils.Table.ColumnDef;
+import framework.utils.Table.FormattedRow;
+import framework.utils.Table.NotFormattedRow;
+import play.Logger;
+import play.api.Play;
+
+/**
+ * This class takes a {@link Table} as a parameter and renders a CSV file (UTF-8,
+ * ";" as delimiter).<br/>
+ * As for the {@link TableExcelRenderer} there are two options:
+ * <ul>
+ * <li>formatted : the column formatters are applied and the HTML content is
+ * rendered as text</li>
+ * <li>not formatted : the column formatters are NOT applied</li>
+ * </ul>
+ * The rows are written directly to the stream, nothing is kept in memory.
+ */
+public class TableCsvRenderer {
+    public static final CSVFormat CSV_FORMAT = CSVFormat.EXCEL.withDelimiter(';');
+
+    private static Logger.ALogger log = Logger.of(TableCsvRenderer.class);
+
+    /**
+     * Write a CSV representation of the specified {@link Table} to a stream.
+     *
+     * @param table
+     *            the table view
+     * @param formatted
+     *            true if a formatting must be applied
+     * @param out
+     *            the stream to which the CSV file is written (not closed)
+     */
+    public static void render(Table<?> table, boolean formatted, OutputStream out) {
+        StreamingCsv csv = new StreamingCsv(formatted, out);
+        csv.write(table);
+        csv.flush();
+    }
+
+    /**
+     * Write a CSV representation of the objects returned by a query to a
+     * stream.<br/>
+     * The objects are read from the database and rendered chunk by chunk (see
+     * {@link TableExportUtils#forEachChunk}).
+     *
+     * @param query
+     *            the query which returns the objects to export
+     * @param tableFiller
+     *            a function which returns a table filled with a chunk of
+     *            objects
+     * @param formatted
+     *            true if a formatting must be applied
+     * @param out
+     *            the stream to which the CSV file is written (not closed)
+     */
+    public static <E> void render(Query<E> query, Function<List<E>, Table<?>> tableFiller, boolean formatted, OutputStream out) {
+        StreamingCsv csv = new StreamingCsv(formatted, out);
+        TableExportUtils.forEachChunk(query, tableFiller, table -> csv.write(table));
+        csv.flush();
+    }
+
+    /**
+     * Get the CSV representation of a not formatted cell value.
+     *
+     * @param cellValue
+     *            the cell value
+     * @param dateFormat
+     *            the format for the {@link Date} values
+     */
+    private static String getNotFormattedCellValue(Object cellValue, DateFormat dateFormat) {
+        if (cellValue == null) {
+            return "";
+        }
+        if (cellValue instanceof Date) {
+            return dateFormat.format((Date) cellValue);
+        }
+        if (cellValue instanceof BigDecimal) {
+            return ((BigDecimal) cellValue).toPlainString();
+        }
+        if (cellValue instanceof Iterable<?>) {
+            StringBuilder sb = new StringBuilder();
+            for (Object item : (Iterable<?>) cellValue) {
+                sb.append(item).append(',');
+            }
+            if (sb.length() != 0 && sb.charAt(sb.length() - 1) == ',') {
+                sb.delete(sb.length() - 1, sb.length());
+            }
+            return sb.toString();
+        }
+        return cellValue.toString();
+    }
+
+    /**
+     * Get the CSV representation of a formatted cell value.
+     *
+     * @param cellValue
+     *            the formatted cell value (HTML)
+     */
+    private static String getFormattedCellValue(String cellValue) {
+        if (cellValue == null) {
+            return "";
+        }
+        String stringRepresentation = TableExportUtils.renderHtmlAsText(cellValue);
+        if (TableExportUtils.isRenderedList(stringRepresentation)) {
+            return TableExportUtils.joinRenderedListItems(stringRepresentation);
+        }
+        return stringRepresentation.trim();
+    }
+
+    private static II18nMessagesPlugin getIi18nMessagesPlugin() {
+        return Play.current().injector().instanceOf(II18nMessagesPlugin.class);
+    }
+
+    /**
+     * A CSV printer to which filled tables are appended.<br/>
+     * The header is written with the first table.
+     */
+    private static class StreamingCsv {
+        private boolean formatted;
+        private CSVPrinter printer;
+        private DateFormat dateFormat;
+        private boolean headerWritten = false;
+
+        public StreamingCsv(boolean formatted, OutputStream out) {
+            this.formatted = formatted;
+            this.dateFormat = new SimpleDateFormat(Utilities.getDefaultDatePattern(getIi18nMessagesPlugin().getCurrentLanguage().getLang().toLocale()));
+            try {
+                this.printer = new CSVPrinter(new OutputStreamWriter(out, StandardCharsets.UTF_8), CSV_FORMAT);
+            } catch (IOException e) {
+                throw wrap(e);
+            }
+        }
+
+        /**
+         * Append the rows of a filled table
+         *
+         * @param table
+         *            the table view
+         */
+        public void write(Table<?> table) {
+            try {
+                if (!headerWritten) {
+                    List<String> header = new ArrayList<>();
+                    for (ColumnDef columnDef : table.getHeaders()) {
+                        header.add(Msg.get(columnDef.getLabel()));
+                    }
+                    printer.printRecord(header);
+                    headerWritten = true;
+                }
+                if (formatted) {
+                    for (FormattedRow row : table.getFormattedRows()) {
+                        List<String> record = new ArrayList<>(row.getValues().size());
+                        for (String cellValue : row.getValues()) {
+                            record.add(getFormattedCellValue(cellValue));
+                        }
+                        printer.printRecord(record);
+                    }
+                } else {
+                    for (NotFormattedRow row : table.getNotFormattedRows()) {
+                        List<String> record = new ArrayList<>(row.getValues().size());
+                        for (Object cellValue : row.getValues()) {
+                            record.add(getNotFormattedCellValue(cellValue, dateFormat));
+                        }
+                        printer.printRecord(record);
+                    }
+                }
+            } catch (IOException e) {
+                throw wrap(e);
+            }
+        }
+
+        /**
+         * Flush the printer (the stream is not closed)
+         */
+        public void flush() {
+            try {
+                printer.flush();
+            } catch (IOException e) {
+                throw wrap(e);
+            }
+        }
+
+        private RuntimeException wrap(IOException e) {
+            log.error("Error while generating a CSV file from a Table", e);
+            return new RuntimeException("Error while generating a CSV file from a Table", e);
+        }
+    }
+}
@@ -21,23 +21,23 @@ import framework.services.configuration.II18nMessagesPlugin;
 import framework.utils.Table.ColumnDef;
 import framework.utils.Table.FormattedRow;
 import framework.utils.Table.NotFormattedRow;
-import net.htmlparser.jericho.HTMLElementName;
-import net.htmlparser.jericho.Renderer;
-import net.htmlparser.jericho.Source;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
-import org.apache.poi.xssf.usermodel.XSSFDataFormat;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import play.Logger;
 import play.api.Play;
 
+import com.avaje.ebean.Query;
+
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
 
 /**
  * This class takes a {@link Table} as a parameter and renders an Excel file.
@@ -50,24 +50,25 @@ import java.util.Iterator;
  * be String, Boolean or Date</li>
  * </ul>
  * 
- * <b>WARNING</b>The excel file generation is done "in memory". Be carefull with
- * very large files.
+ * The workbook is streamed (see {@link SXSSFWorkbook}): only the last
+ * {@link #ROW_ACCESS_WINDOW_SIZE} rows are kept in memory, the other ones are
+ * flushed to a temporary file.<br/>
+ * For large exports, the objects should be read from the database with a
+ * {@link Query} (see {@link TableExportUtils#forEachChunk}) and the file
+ * written to an {@link OutputStream}, either a file of the personal storage
+ * (see
+ * {@link framework.services.storage.IPersonalStoragePlugin#createNewFile(String, String)}
+ * ) or a chunked response (see {@link ChunksOutputStream}).
  * 
  * @author Pierre-Yves Cloux
  */
 public class TableExcelRenderer {
     public static final String DEFAULT_EXCEL_DATE_FORMAT = "m/d/yy";
-    private static final char INVISIBLE_BULLET_CHAR = 0xFFFA;
 
-    static {
-        // See Jericho documentation
-        Renderer.setDefaultTopMargin(HTMLElementName.UL, 0);
-        Renderer.setDefaultTopMargin(HTMLElementName.LI, 0);
-        Renderer.setDefaultTopMargin(HTMLElementName.DIV, 0);
-        Renderer.setDefaultBottomMargin(HTMLElementName.UL, 0);
-        Renderer.setDefaultBottomMargin(HTMLElementName.LI, 0);
-        Renderer.setDefaultBottomMargin(HTMLElementName.DIV, 0);
-    }
+    /**
+     * The number of rows kept in memory while writing the workbook.
+     */
+    public static final int ROW_ACCESS_WINDOW_SIZE = 100;
 
     private static Logger.ALogger log = Logger.of(TableExcelRenderer.class);
 
@@ -94,52 +95,64 @@ public class TableExcelRenderer {
     }
 
     /**
-     * Render the specified table
+     * Write an Excel representation of the specified {@link Table} to a
+     * stream.
      * 
-     * @param table the table view
+     * @param table
+     *            the table view
      * @param formatted
      *            true if a formatting must be applied
-     * @return a byte array (Excel file)
+     * @param out
+     *            the stream to which the Excel file is written (not closed)
      */
-    private static byte[] render(Table<?> table, boolean formatted) {
-        XSSFWorkbook wb = new XSSFWorkbook();
-        Sheet sheet = wb.createSheet("export");
-
-        // Default date format
-        XSSFCellStyle dateCellStyle = wb.createCellStyle();
-        XSSFDataFormat df = wb.createDataFormat();
-        dateCellStyle.setDataFormat(df.getFormat(DEFAULT_EXCEL_DATE_FORMAT));
-
-        // Write the header
-        Row headerRow = sheet.createRow(0);
-        int columnIndex = 0;
-        CellStyle headerCellStyle = wb.createCellStyle();
-        Font f = wb.createFont();
-        f.setBoldweight(Font.BOLDWEIGHT_BOLD);
-        headerCellStyle.setFont(f);
-        for (ColumnDef header : table.getHeaders()) {
-            Cell cell = headerRow.createCell(columnIndex);
-            cell.setCellValue(Msg.get(header.getLabel()));
-            cell.setCellStyle(headerCellStyle);
-            columnIndex++;
-        }
-
-        // Write the cells
-        if (formatted) {
-            writeFormattedRows(table, sheet, dateCellStyle);
-        } else {
-            writeNotFormattedRows(table, sheet, dateCellStyle);
+    public static void render(Table<?> table, boolean formatted, OutputStream out) {
+        StreamingWorkbook workbook = new StreamingWorkbook(formatted);
+        try {
+            workbook.write(table);
+            workbook.writeTo(out);
+        } finally {
+            workbook.dispose();
         }
+    }
 
-        ByteArrayOutputStream outBuffer;
+    /**
+     * Write an Excel representation of the objects returned by a query to a
+     * stream.<br/>
+     * The objects are read from the database and rendered chunk by chunk (see
+     * {@link TableExportUtils#forEachChunk}) so that the memory used does not
+     * depend on the number of objects.
+     * 
+     * @param query
+     *            the query which returns the objects to export
+     * @param tableFiller
+     *            a function which returns a table filled with a chunk of
+     *            objects
+     * @param formatted
+     *            true if a formatting must be applied
+     * @param out
+     *            the stream to which the Excel file is written (not closed)
+     */
+    public static <E> void render(Query<E> query, Function<List<E>, Table<?>> tableFiller, boolean formatted, OutputStream out) {
+        StreamingWorkbook workbook = new StreamingWorkbook(formatted);
         try {
-            outBuffer = new ByteArrayOutputStream();
-            wb.write(outBuffer);
-            outBuffer.close();
-        } catch (Exception e) {
-            log.error("Error while generating an Excel file from a Table", e);
-            throw new RuntimeException("Error while generating an Excel file from a Table", e);
+            TableExportUtils.forEachChunk(query, tableFiller, table -> workbook.write(table));
+            workbook.writeTo(out);
+        } finally {
+            workbook.dispose();
         }
+    }
+
+    /**
+     * Render the specified table
+     * 
+     * @param table the table view
+     * @param formatted
+     *            true if a formatting must be applied
+     * @return a byte array (Excel file)
+     */
+    private static byte[] render(Table<?> table, boolean formatted) {
+        ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+        render(table, formatted, outBuffer);
         return outBuffer.toByteArray();
     }
 
@@ -151,9 +164,11 @@ public class TableExcelRenderer {
      * @param sheet the excel sheet
      * @param dateCellStyle
      *            the style to be applied for {@link Date} cell values
+     * @param rowIndex
+     *            the index of the first row to write
+     * @return the index of the next row
      */
-    private static void writeNotFormattedRows(Table<?> table, Sheet sheet, XSSFCellStyle dateCellStyle) {
-        int rowIndex = 1;
+    private static int writeNotFormattedRows(Table<?> table, Sheet sheet, CellStyle dateCellStyle, int rowIndex) {
         int columnIndex;
         for (NotFormattedRow row : table.getNotFormattedRows()) {
             Row dataRow = sheet.createRow(rowIndex);
@@ -195,6 +210,7 @@ public class TableExcelRenderer {
                 columnIndex++;
             }
         }
+        return rowIndex;
     }
 
     /**
@@ -202,9 +218,13 @@ public class TableExcelRenderer {
      * 
      * @param table the table view
      * @param sheet the excel sheet
+     * @param dateCellStyle
+     *            the style to be applied for {@link Date} cell values
+     * @param rowIndex
+     *            the index of the first row to write
+     * @return the index of the next row
      */
-    private static void writeFormattedRows(Table<?> table, Sheet sheet, XSSFCellStyle dateCellStyle) {
-        int rowIndex = 1;
+    private static int writeFormattedRows(Table<?> table, Sheet sheet, CellStyle dateCellStyle, int rowIndex) {
         int columnIndex;
         Iterator<NotFormattedRow> notFormattedRows = table.getNotFormattedRows().iterator();
         for (FormattedRow row : table.getFormattedRows()) {
@@ -233,28 +253,11 @@ public class TableExcelRenderer {
                                 cell.setCellStyle(dateCellStyle);
                             } else {
                                 // Any other type of column is "rendered"
-                                Source htmlSource = new Source(cellValue);
-                                Renderer renderer = htmlSource.getRenderer();
-                                renderer.setListBullets(new char[]{INVISIBLE_BULLET_CHAR, '-', '#', '*'});
-                                renderer.setBlockIndentSize(0);
-                                renderer.setListIndentSize(0);
-                                renderer.setIncludeFirstElementTopMargin(false);
-                                String stringRepresentation = renderer.toString();
-                                if (stringRepresentation.indexOf(INVISIBLE_BULLET_CHAR) != -1) {
+                                String stringRepresentation = TableExportUtils.renderHtmlAsText(cellValue);
+                                if (TableExportUtils.isRenderedList(stringRepresentation)) {
                                     // Special action of the content is a
                                     // <UL></UL>
-                                    StringBuilder sb = new StringBuilder();
-                                    String[] lines = stringRepresentation.split("" + INVISIBLE_BULLET_CHAR);
-                                    for (String line : lines) {
-                                        if (!StringUtils.isBlank(line)) {
-                                            sb.append(line.trim());
-                                            sb.append(';');
-                                        }
-                                    }
-                                    if (sb.length() > 1) {
-                                        sb.deleteCharAt(sb.length() - 1);
-                                    }
-                                    cell.setCellValue(sb.toString());
+                                    cell.setCellValue(TableExportUtils.joinRenderedListItems(stringRepresentation));
                                 } else if (isNumericCellValue(stringRepresentation)) {
                                     cell.setCellType(Cell.CELL_TYPE_NUMERIC);
                                     cell.setCellValue(getNumericCellValue(stringRepresentation));
@@ -268,6 +271,7 @@ public class TableExcelRenderer {
                 columnIndex++;
             }
         }
+        return rowIndex;
     }
 
     private static double getNumericCellValue(String stringRepresentation) {
@@ -293,4 +297,84 @@ public class TableExcelRenderer {
     private static II18nMessagesPlugin getIi18nMessagesPlugin() {
         return Play.current().injector().instanceOf(II18nMessagesPlugin.class);
     }
+
+    /**
+     * A streamed workbook with one sheet to which filled tables are appended.
+     * <br/>
+     * The header is written with the first table.
+     */
+    private static class StreamingWorkbook {
+        private boolean formatted;
+        private SXSSFWorkbook wb;
+        private Sheet sheet;
+        private CellStyle dateCellStyle;
+        private int rowIndex = 0;
+
+        public StreamingWorkbook(boolean formatted) {
+            this.formatted = formatted;
+            this.wb = new SXSSFWorkbook(ROW_ACCESS_WINDOW_SIZE);
+            this.wb.setCompressTempFiles(true);
+            this.sheet = wb.createSheet("export");
+
+            // Default date format
+            this.dateCellStyle = wb.createCellStyle();
+            DataFormat df = wb.createDataFormat();
+            this.dateCellStyle.setDataFormat(df.getFormat(DEFAULT_EXCEL_DATE_FORMAT));
+        }
+
+        /**
+         * Append the rows of a filled table to the sheet
+         * 
+         * @param table
+         *            the table view
+         */
+        public void write(Table<?> table) {
+            if (rowIndex == 0) {
+                writeHeader(table);
+            }
+            if (formatted) {
+                rowIndex = writeFormattedRows(table, sheet, dateCellStyle, rowIndex);
+            } else {
+                rowIndex = writeNotFormattedRows(table, sheet, dateCellStyle, rowIndex);
+            }
+        }
+
+        /**
+         * Write the workbook to a stream
+         * 
+         * @param out
+         *            the stream (not closed)
+         */
+        public void writeTo(OutputStream out) {
+            try {
+                wb.write(out);
+            } catch (IOException e) {
+                log.error("Error while generating an Excel file from a Table", e);
+                throw new RuntimeException("Error while generating an Excel file from a Table", e);
+            }
+        }
+
+        /**
+         * Delete the temporary files of the workbook
+         */
+        public void dispose() {
+            wb.dispose();
+        }
+
+        private void writeHeader(Table<?> table) {
+            Row headerRow = sheet.createRow(0);
+            int columnIndex = 0;
+            CellStyle headerCellStyle = wb.createCellStyle();
+            Font f = wb.createFont();
+            f.setBoldweight(Font.BOLDWEIGHT_BOLD);
+            headerCellStyle.setFont(f);
+            for (ColumnDef header : table.getHeaders()) {
+                Cell cell = headerRow.createCell(columnIndex);
+                cell.setCellValue(Msg.get(header.getLabel()));
+                cell.setCellStyle(headerCellStyle);
+                columnIndex++;
+            }
+            rowIndex = 1;
+        }
+    }
 }
@@ -0,0 +1,144 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.avaje.ebean.Query;
+
+import net.htmlparser.jericho.HTMLElementName;
+import net.htmlparser.jericho.Renderer;
+import net.htmlparser.jericho.Source;
+
+/**
+ * Utilities shared by the {@link Table} export renderers (see
+ * {@link TableExcelRenderer} and {@link TableCsvRenderer}).<br/>
+ * A streamed export reads the objects from the database with
+ * {@link Query#findEach(com.avaje.ebean.QueryEachConsumer)} and renders them
+ * chunk by chunk: each chunk is converted into a filled {@link Table} which is
+ * written and then released.
+ */
+public class TableExportUtils {
+    /**
+     * The number of objects rendered in one filled {@link Table} during a
+     * streamed export.
+     */
+    public static final int EXPORT_CHUNK_SIZE = 500;
+
+    private static final char INVISIBLE_BULLET_CHAR = 0xFFFA;
+
+    static {
+        // See Jericho documentation
+        Renderer.setDefaultTopMargin(HTMLElementName.UL, 0);
+        Renderer.setDefaultTopMargin(HTMLElementName.LI, 0);
+        Renderer.setDefaultTopMargin(HTMLElementName.DIV, 0);
+        Renderer.setDefaultBottomMargin(HTMLElementName.UL, 0);
+        Renderer.setDefaultBottomMargin(HTMLElementName.LI, 0);
+        Renderer.setDefaultBottomMargin(HTMLElementName.DIV, 0);
+    }
+
+    private TableExportUtils() {
+    }
+
+    /**
+     * Iterate over the objects returned by the query (without loading all of
+     * them in memory) and provide them to the consumer as filled tables of
+     * {@link #EXPORT_CHUNK_SIZE} objects.<br/>
+     * The consumer is called at least once (with an empty table if the query
+     * returns nothing) so that the header can always be written.
+     *
+     * @param query
+     *            the query which returns the objects to export
+     * @param tableFiller
+     *            a function which returns a table filled with a chunk of
+     *            objects, example: <code>chunk -&gt;
+     *            table.fill(toListView(chunk))</code>
+     * @param tableConsumer
+     *            the consumer which writes the filled tables
+     */
+    public static <E> void forEachChunk(Query<E> query, Function<List<E>, Table<?>> tableFiller, Consumer<Table<?>> tableConsumer) {
+        List<E> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+        boolean[] consumed = { false };
+        query.findEach(bean -> {
+            chunk.add(bean);
+            if (chunk.size() == EXPORT_CHUNK_SIZE) {
+                tableConsumer.accept(tableFiller.apply(new ArrayList<>(chunk)));
+                consumed[0] = true;
+                chunk.clear();
+            }
+        });
+        if (!chunk.isEmpty() || !consumed[0]) {
+            tableConsumer.accept(tableFiller.apply(chunk.isEmpty() ? Collections.<E> emptyList() : chunk));
+        }
+    }
+
+    /**
+     * Render the HTML content of a formatted cell as text.
+     *
+     * @param html
+     *            the content of a formatted cell
+     */
+    public static String renderHtmlAsText(String html) {
+        Source htmlSource = new Source(html);
+        Renderer renderer = htmlSource.getRenderer();
+        renderer.setListBullets(new char[] { INVISIBLE_BULLET_CHAR, '-', '#', '*' });
+        renderer.setBlockIndentSize(0);
+        renderer.setListIndentSize(0);
+        renderer.setIncludeFirstElementTopMargin(false);
+        return renderer.toString();
+    }
+
+    /**
+     * Return true if the text (rendered with {@link #renderHtmlAsText(String)})
+     * is a list (the HTML content was a &lt;UL&gt;&lt;/UL&gt;).
+     *
+     * @param text
+     *            a rendered text
+     */
+    public static boolean isRenderedList(String text) {
+        return text.indexOf(INVISIBLE_BULLET_CHAR) != -1;
+    }
+
+    /**
+     * Join the items of a rendered list (see {@link #isRenderedList(String)})
+     * with a ";".
+     *
+     * @param text
+     *            a rendered list
+     */
+    public static String joinRenderedListItems(String text) {
+        StringBuilder sb = new StringBuilder();
+        String[] lines = text.split("" + INVISIBLE_BULLET_CHAR);
+        for (String line : lines) {
+            if (!StringUtils.isBlank(line)) {
+                sb.append(line.trim());
+                sb.append(';');
+            }
+        }
+        if (sb.length() > 1) {
+            sb.deleteCharAt(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+}
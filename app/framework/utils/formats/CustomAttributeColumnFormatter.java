@@ -53,7 +53,17 @@ public class CustomAttributeColumnFormatter<T> implements IColumnFormatter<T> {
             return IFrameworkConstants.DEFAULT_VALUE_EMPTY_DATA;
         }
         Long id = (Long) cellValue;
-        ICustomAttributeValue customAttributeValue = getCustomAttributeValue(id);
+        return render(getCustomAttributeValue(id));
+    }
+
+    /**
+     * Render a custom attribute value which has already been loaded (for
+     * instance in bulk for a whole table page).
+     * 
+     * @param customAttributeValue
+     *            the custom attribute value
+     */
+    public String render(ICustomAttributeValue customAttributeValue) {
         return customAttributeValue.renderDisplayNoDescription(this.getI18nMessagesPlugin()).body();
     }
 
@@ -61,11 +71,11 @@ public class CustomAttributeColumnFormatter<T> implements IColumnFormatter<T> {
         return this.i18nMessagesPlugin;
     }
 
-    private Class<?> getObjectType() {
+    public Class<?> getObjectType() {
         return objectType;
     }
 
-    private Long getCustomAttributeDefinitionId() {
+    public Long getCustomAttributeDefinitionId() {
         return customAttributeDefinitionId;
     }
 
@@ -36,6 +36,7 @@ import com.avaje.ebean.Model;
 import framework.commons.IFrameworkConstants;
 import framework.services.account.AccountManagementException;
 import framework.services.account.IAccountManagerPlugin;
+import framework.services.account.IPreferenceManagerPlugin;
 import framework.services.account.IUserAccount;
 import framework.services.custom_attribute.ICustomAttributeManagerService;
 import framework.services.session.IUserSessionManagerPlugin;
@@ -148,7 +149,7 @@ public class Preference extends Model implements IModel {
      * @throws IllegalArgumentException
      */
     public static boolean checkPreferences(Class<?> preferenceClass) throws IllegalArgumentException, IllegalAccessException {
-        List<Preference> preferences = find.where().eq("deleted", false).findList();
+        List<Preference> preferences = getAllPreferences();
         List<String> possibleValuesForPreference = new ArrayList<String>();
         for (Field field : preferenceClass.getFields()) {
             if (Modifier.isStatic(field.getModifiers()) && Modifier.isFinal(field.getModifiers()) && field.getName().endsWith("_PREFERENCE")) {
@@ -176,17 +177,21 @@ public class Preference extends Model implements IModel {
     }
 
     /**
-     * Invalidate the system cache for the specified preference id.<br/>
-     * Warning: this is critical for system preferences which are systematically
-     * cached.
+     * Save the value of a preference.<br/>
+     * Warning: the caller is responsible for invalidating the cached snapshots
+     * of the preference (see {@link IPreferenceManagerPlugin}).
      * 
-     * @param uuid
-     *            a preference uuid
-     * @param cacheApi
-     *            the play cache service
+     * @param customAttributeManagerService
+     *            the custom attribute manager service
+     * @param userSessionManagerPlugin
+     *            the user session service
+     * @param attachmentManagerPlugin
+     *            the attachment manager service
+     * @param customAttributeValue
+     *            the value of a preference
      */
     public static void savePreferenceValue(ICustomAttributeManagerService customAttributeManagerService, IUserSessionManagerPlugin userSessionManagerPlugin,
-            IAttachmentManagerPlugin attachmentManagerPlugin, ICustomAttributeValue customAttributeValue, CacheApi cacheApi) {
+            IAttachmentManagerPlugin attachmentManagerPlugin, ICustomAttributeValue customAttributeValue) {
         String uuid = customAttributeValue.getDefinition().uuid;
         if (log.isDebugEnabled()) {
             log.debug("Saving preference with uuid " + uuid);
@@ -196,18 +201,35 @@ public class Preference extends Model implements IModel {
             log.error("Attempt to save a preference which is not a preference " + uuid);
             return;
         }
-        if (preference.systemPreference) {
-            if (log.isDebugEnabled()) {
-                log.debug("Preference with uuid " + uuid + " is a system preference, flushing the cache");
-            }
-            cacheApi.remove(IFrameworkConstants.SYSTEM_PREFERENCE_CACHE_PREFIX + uuid);
-        }
 
         String fieldName = customAttributeManagerService.getFieldNameFromDefinitionUuid(customAttributeValue.getDefinition().uuid);
 
         customAttributeValue.performSave(userSessionManagerPlugin, attachmentManagerPlugin, fieldName);
     }
 
+    /**
+     * Save the specified preference value.
+     * 
+     * @deprecated the play cache is no longer used for the preferences, use
+     *             {@link #savePreferenceValue(ICustomAttributeManagerService, IUserSessionManagerPlugin, IAttachmentManagerPlugin, ICustomAttributeValue)}
+     * 
+     * @param customAttributeManagerService
+     *            the custom attribute manager service
+     * @param userSessionManagerPlugin
+     *            the user session service
+     * @param attachmentManagerPlugin
+     *            the attachment manager service
+     * @param customAttributeValue
+     *            a preference value
+     * @param cacheApi
+     *            the play cache service (ignored)
+     */
+    @Deprecated
+    public static void savePreferenceValue(ICustomAttributeManagerService customAttributeManagerService, IUserSessionManagerPlugin userSessionManagerPlugin,
+            IAttachmentManagerPlugin attachmentManagerPlugin, ICustomAttributeValue customAttributeValue, CacheApi cacheApi) {
+        savePreferenceValue(customAttributeManagerService, userSessionManagerPlugin, attachmentManagerPlugin, customAttributeValue);
+    }
+
     public static Preference getPreferenceFromUuid(String uuid) {
         if (log.isDebugEnabled()) {
             log.debug("Search for preference " + uuid);
@@ -215,27 +237,33 @@ public class Preference extends Model implements IModel {
         return find.where().eq("uuid", uuid).eq("deleted", false).findUnique();
     }
 
+    /**
+     * Return all the active preferences
+     */
+    public static List<Preference> getAllPreferences() {
+        return find.where().eq("deleted", false).findList();
+    }
+
     /**
      * Return the custom attribute value associated with this preference.<br/>
-     * If the preference is a system preference, its value is taken from the
-     * system {@link CacheApi}
+     * The value is always read from the database: it could be modified (form
+     * parsing, update) and saved by the caller. To read a preference value,
+     * use the {@link IPreferenceManagerPlugin} which caches the values.
      * 
      * @param uuid
      *            a preference uuid
-     * @param cacheApi
-     *            the play cache service
      * @param userSessionManagerPlugin
      *            the user session service
      * @param accountManagerPlugin
      *            the account manager service
      * @return a custom attribute value
      */
-    public static ICustomAttributeValue getPreferenceValueFromUuid(String uuid, CacheApi cacheApi, IUserSessionManagerPlugin userSessionManagerPlugin,
+    public static ICustomAttributeValue getPreferenceValueFromUuid(String uuid, IUserSessionManagerPlugin userSessionManagerPlugin,
             IAccountManagerPlugin accountManagerPlugin) {
         if (log.isDebugEnabled()) {
             log.debug("Getting preference with uuid " + uuid);
         }
-        Preference preference = find.where().eq("uuid", uuid).eq("deleted", false).findUnique();
+        Preference preference = getPreferenceFromUuid(uuid);
         if (preference == null) {
             if (log.isDebugEnabled()) {
                 log.debug("Preference with uuid " + uuid + " not found");
@@ -243,59 +271,95 @@ public class Preference extends Model implements IModel {
             return null;
         }
         if (preference.systemPreference) {
-            if (log.isDebugEnabled()) {
-                log.debug("Preference with uuid " + uuid + " is a system preference");
-            }
-            ICustomAttributeValue attributeValue = (ICustomAttributeValue) cacheApi.get(IFrameworkConstants.SYSTEM_PREFERENCE_CACHE_PREFIX + uuid);
-            if (attributeValue != null) {
-                if (log.isDebugEnabled()) {
-                    CustomAttributeDefinition customAttributeDefinition = attributeValue.getDefinition();
-                    String message = (customAttributeDefinition != null ? customAttributeDefinition.name : attributeValue.getClass().getName());
-                    log.debug("Preference with uuid " + uuid + " found in cache " + message + ", returning : " + attributeValue);
-                }
-                attributeValue.resetError();
-                return attributeValue;
-            }
-            // The preference is attached to the system and unique
-            attributeValue = CustomAttributeDefinition.getCustomAttributeValue(preference.uuid, Object.class, 1L);
-            if (attributeValue.isNotReadFromDb()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Preference with uuid " + uuid + " NOT found in cache and not in DB, using default value");
-                }
-                attributeValue.defaults();
-            }
-            cacheApi.set(IFrameworkConstants.SYSTEM_PREFERENCE_CACHE_PREFIX + uuid, attributeValue);
-            if (log.isDebugEnabled()) {
-                log.debug("Preference with uuid " + uuid + " set in cache returning : " + attributeValue);
-            }
-            return attributeValue;
+            return getSystemPreferenceValue(uuid);
         } else {
-            if (log.isDebugEnabled()) {
-                log.debug("Preference with uuid " + uuid + " is a user preference");
-            }
             try {
-                // The preference is attached to a user and specific
                 String userSessionUid = userSessionManagerPlugin.getUserSessionId(Controller.ctx());
                 IUserAccount userAccount = accountManagerPlugin.getUserAccountFromUid(userSessionUid);
-                ICustomAttributeValue attributeValue = CustomAttributeDefinition.getCustomAttributeValue(preference.uuid, Principal.class,
-                        userAccount.getMafUid());
-                if (log.isDebugEnabled()) {
-                    log.debug("Preference with uuid " + uuid + " looking for value for user " + userAccount.getMafUid());
-                }
-                if (attributeValue.isNotReadFromDb()) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Preference with uuid " + uuid + " no value in DB, using default");
-                    }
-                    attributeValue.defaults();
-                }
-                if (log.isDebugEnabled()) {
-                    log.debug("Preference with uuid " + uuid + " returning : " + attributeValue);
-                }
-                return attributeValue;
+                return getUserPreferenceValue(uuid, userAccount.getMafUid());
             } catch (AccountManagementException e) {
                 log.error("Error while finding the preference " + uuid, e);
             }
             return null;
         }
     }
+
+    /**
+     * Return the custom attribute value associated with this preference.
+     * 
+     * @deprecated the play cache is no longer used for the preferences, use
+     *             {@link #getPreferenceValueFromUuid(String, IUserSessionManagerPlugin, IAccountManagerPlugin)}
+     * 
+     * @param uuid
+     *            a preference uuid
+     * @param cacheApi
+     *            the play cache service (ignored)
+     * @param userSessionManagerPlugin
+     *            the user session service
+     * @param accountManagerPlugin
+     *            the account manager service
+     * @return a custom attribute value
+     */
+    @Deprecated
+    public static ICustomAttributeValue getPreferenceValueFromUuid(String uuid, CacheApi cacheApi, IUserSessionManagerPlugin userSessionManagerPlugin,
+            IAccountManagerPlugin accountManagerPlugin) {
+        return getPreferenceValueFromUuid(uuid, userSessionManagerPlugin, accountManagerPlugin);
+    }
+
+    /**
+     * Return the value of a system preference (read from the database).<br/>
+     * If the preference has no value in the database, the default one is
+     * returned.
+     * 
+     * @param uuid
+     *            a system preference uuid
+     * @return a custom attribute value
+     */
+    public static ICustomAttributeValue getSystemPreferenceValue(String uuid) {
+        if (log.isDebugEnabled()) {
+            log.debug("Preference with uuid " + uuid + " is a system preference");
+        }
+        // The preference is attached to the system and unique
+        ICustomAttributeValue attributeValue = CustomAttributeDefinition.getCustomAttributeValue(uuid, Object.class, 1L);
+        if (attributeValue.isNotReadFromDb()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Preference with uuid " + uuid + " not found in DB, using default value");
+            }
+            attributeValue.defaults();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Preference with uuid " + uuid + " returning : " + attributeValue);
+        }
+        return attributeValue;
+    }
+
+    /**
+     * Return the value of a user preference for the specified user (read from
+     * the database).<br/>
+     * If the preference has no value in the database, the default one is
+     * returned.
+     * 
+     * @param uuid
+     *            a user preference uuid
+     * @param principalId
+     *            the id of the principal of the user (MAF uid)
+     * @return a custom attribute value
+     */
+    public static ICustomAttributeValue getUserPreferenceValue(String uuid, Long principalId) {
+        if (log.isDebugEnabled()) {
+            log.debug("Preference with uuid " + uuid + " is a user preference, looking for value for user " + principalId);
+        }
+        // The preference is attached to a user and specific
+        ICustomAttributeValue attributeValue = CustomAttributeDefinition.getCustomAttributeValue(uuid, Principal.class, principalId);
+        if (attributeValue.isNotReadFromDb()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Preference with uuid " + uuid + " no value in DB, using default");
+            }
+            attributeValue.defaults();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Preference with uuid " + uuid + " returning : " + attributeValue);
+        }
+        return attributeValue;
+    }
 }
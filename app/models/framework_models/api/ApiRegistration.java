@@ -53,6 +53,13 @@ import models.framework_models.parent.IModelConstants;
  * DELETE (.*)
  * </pre>
  * 
+ * The authorizations may also define some rate limits (see
+ * framework.services.api.server.ApiRateLimit):
+ * 
+ * <pre>
+ * LIMIT core 600 100000 /api/core/.*
+ * </pre>
+ * 
  * @author Pierre-Yves Cloux
  */
 @Entity
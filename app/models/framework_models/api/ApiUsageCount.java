@@ -0,0 +1,79 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package models.framework_models.api;
+
+import java.sql.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import com.avaje.ebean.Model;
+
+import models.framework_models.parent.IModelConstants;
+
+/**
+ * The number of rate limited API calls of an application to a group of
+ * endpoints for a day.<br/>
+ * This entity only defines the api_usage table: the counts are written and
+ * read with SQL queries (and not through the ORM) by the API signature
+ * service so that the database change listeners are not notified.
+ */
+@Entity
+@Table(name = "api_usage", uniqueConstraints = @UniqueConstraint(columnNames = { "application_name", "endpoint_group", "usage_date" }) )
+public class ApiUsageCount extends Model {
+
+    @Id
+    public Long id;
+
+    /**
+     * The name of the calling application.
+     */
+    @Column(length = IModelConstants.MEDIUM_STRING, nullable = false)
+    public String applicationName;
+
+    /**
+     * The group of the called endpoints.
+     */
+    @Column(length = IModelConstants.MEDIUM_STRING, nullable = false)
+    public String endpointGroup;
+
+    @Column(nullable = false)
+    public Date usageDate;
+
+    /**
+     * The number of calls accepted.
+     */
+    @Column(nullable = false)
+    public long acceptedCount;
+
+    /**
+     * The number of calls rejected because of the rate limit or the daily
+     * quota.
+     */
+    @Column(nullable = false)
+    public long rejectedCount;
+
+    /**
+     * Default constructor.
+     */
+    public ApiUsageCount() {
+    }
+}
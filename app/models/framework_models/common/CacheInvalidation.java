@@ -0,0 +1,70 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package models.framework_models.common;
+
+import java.sql.Timestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import com.avaje.ebean.Model;
+
+import framework.services.cache.DatabaseInvalidationBusImpl;
+import models.framework_models.parent.IModelConstants;
+
+/**
+ * A cache invalidation published by a node of the application (see
+ * {@link DatabaseInvalidationBusImpl}).<br/>
+ * This entity only defines the cache_invalidation table: the invalidations
+ * are written and read with SQL queries (and not through the ORM) so that the
+ * database change listeners are not notified.
+ */
+@Entity
+public class CacheInvalidation extends Model {
+
+    @Id
+    public Long id;
+
+    /**
+     * The id of the node which published the invalidation.
+     */
+    @Column(length = IModelConstants.MEDIUM_STRING, nullable = false)
+    public String nodeId;
+
+    /**
+     * The invalidated cache region.
+     */
+    @Column(length = IModelConstants.MEDIUM_STRING, nullable = false)
+    public String region;
+
+    /**
+     * The invalidated key (null for the whole region).
+     */
+    @Column(length = IModelConstants.VLARGE_STRING)
+    public String cacheKey;
+
+    @Column(nullable = false)
+    public Timestamp creationDate;
+
+    /**
+     * Default constructor.
+     */
+    public CacheInvalidation() {
+    }
+}
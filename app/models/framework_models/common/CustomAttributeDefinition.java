@@ -39,6 +39,7 @@ import javax.persistence.*;
 import java.io.ByteArrayInputStream;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.function.BiFunction;
 
 /**
  * The definition for a set of {@link BooleanCustomAttributeValue}.<br/>
@@ -60,6 +61,13 @@ import java.util.*;
 @Entity
 public class CustomAttributeDefinition extends Model implements IModel {
 
+    /**
+     * The maximum number of objects for which the custom attribute values are
+     * loaded with one query (see
+     * {@link #getCustomAttributeValues(Class, String, List, Collection)}).
+     */
+    public static final int BULK_LOAD_CHUNK_SIZE = 500;
+
     /*
      * A set of properties fields to be used to retrieve the configuration
      * parameters for the attribute from the "configuration" field.<br/> There
@@ -861,6 +869,19 @@ public class CustomAttributeDefinition extends Model implements IModel {
         return find.where().eq("deleted", false).eq("id", id).findUnique();
     }
 
+    /**
+     * Return the definitions of an object type associated with the specified
+     * ids.
+     *
+     * @param objectType
+     *            an object type
+     * @param ids
+     *            the ids of some definitions
+     */
+    public static List<CustomAttributeDefinition> getCustomAttributeDefinitionsFromIds(Class<?> objectType, Collection<Long> ids) {
+        return find.where().eq("deleted", false).eq("objectType", objectType.getName()).in("id", ids).findList();
+    }
+
     /**
      * Get the custom attribute of an object type with the previous order.
      * 
@@ -1192,6 +1213,167 @@ public class CustomAttributeDefinition extends Model implements IModel {
         }
     }
 
+    /**
+     * Return the values of some custom attribute definitions for a list of
+     * objects.<br/>
+     * The values are loaded with one query per attribute type (and per chunk
+     * of {@link #BULK_LOAD_CHUNK_SIZE} objects). A value which is not found in
+     * the database is created (but not saved).
+     * 
+     * @param objectType
+     *            an object type
+     * @param filter
+     *            a filter which extends the name of the object type (may be
+     *            null)
+     * @param customAttributeDefinitions
+     *            the custom attribute definitions
+     * @param objectIds
+     *            the ids of the objects
+     * @return the values indexed by custom attribute definition id and object
+     *         id
+     */
+    public static Map<Long, Map<Long, ICustomAttributeValue>> getCustomAttributeValues(Class<?> objectType, String filter,
+            List<CustomAttributeDefinition> customAttributeDefinitions, Collection<Long> objectIds) {
+
+        Map<AttributeType, List<CustomAttributeDefinition>> definitionsByType = new EnumMap<>(AttributeType.class);
+        for (CustomAttributeDefinition customAttributeDefinition : customAttributeDefinitions) {
+            definitionsByType.computeIfAbsent(AttributeType.valueOf(customAttributeDefinition.attributeType), k -> new ArrayList<>())
+                    .add(customAttributeDefinition);
+        }
+
+        Map<Long, Map<Long, ICustomAttributeValue>> values = new HashMap<>();
+        List<Long> distinctObjectIds = new ArrayList<>(new LinkedHashSet<>(objectIds));
+        for (int i = 0; i < distinctObjectIds.size(); i += BULK_LOAD_CHUNK_SIZE) {
+            List<Long> chunk = distinctObjectIds.subList(i, Math.min(i + BULK_LOAD_CHUNK_SIZE, distinctObjectIds.size()));
+            for (Map.Entry<AttributeType, List<CustomAttributeDefinition>> entry : definitionsByType.entrySet()) {
+                Map<Long, Map<Long, ICustomAttributeValue>> chunkValues = getOrCreateCustomAttributeValues(objectType, filter, chunk, entry.getKey(),
+                        entry.getValue());
+                for (Map.Entry<Long, Map<Long, ICustomAttributeValue>> chunkEntry : chunkValues.entrySet()) {
+                    values.computeIfAbsent(chunkEntry.getKey(), k -> new HashMap<>()).putAll(chunkEntry.getValue());
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Return the values of some custom attribute definitions of the same type
+     * for a list of objects.
+     * 
+     * @param objectType
+     *            an object type
+     * @param filter
+     *            the filter
+     * @param objectIds
+     *            the ids of the objects
+     * @param attributeType
+     *            the type of the custom attribute definitions
+     * @param customAttributeDefinitions
+     *            the custom attribute definitions
+     * @return the values indexed by custom attribute definition id and object
+     *         id
+     */
+    private static Map<Long, Map<Long, ICustomAttributeValue>> getOrCreateCustomAttributeValues(Class<?> objectType, String filter, List<Long> objectIds,
+            AttributeType attributeType, List<CustomAttributeDefinition> customAttributeDefinitions) {
+        switch (attributeType) {
+        case INTEGER:
+            return IntegerCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds, customAttributeDefinitions);
+        case DECIMAL:
+            return DecimalCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds, customAttributeDefinitions);
+        case BOOLEAN:
+            return BooleanCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds, customAttributeDefinitions);
+        case DATE:
+            return DateCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds, customAttributeDefinitions);
+        case STRING:
+            return StringCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds, customAttributeDefinitions);
+        case TEXT:
+            return TextCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds, customAttributeDefinitions);
+        case URL:
+            return UrlCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds, customAttributeDefinitions);
+        case SINGLE_ITEM:
+            return SingleItemCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds,
+                    customAttributeDefinitions);
+        case DYNAMIC_SINGLE_ITEM:
+            return DynamicSingleItemCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds,
+                    customAttributeDefinitions);
+        case DYNAMIC_MULTI_ITEM:
+            return DynamicMultiItemCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds,
+                    customAttributeDefinitions);
+        case MULTI_ITEM:
+            return MultiItemCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds,
+                    customAttributeDefinitions);
+        case IMAGE:
+            return ImageCustomAttributeValue.getOrCreateCustomAttributeValuesFromObjectReferences(objectType, filter, objectIds, customAttributeDefinitions);
+        case SCRIPT:
+            // The script values are computed (not stored in the database)
+            Map<Long, Map<Long, ICustomAttributeValue>> values = new HashMap<>();
+            for (CustomAttributeDefinition customAttributeDefinition : customAttributeDefinitions) {
+                Map<Long, ICustomAttributeValue> definitionValues = new HashMap<>();
+                for (Long objectId : objectIds) {
+                    definitionValues.put(objectId, getOrCreateCustomAttributeValue(objectType, filter, objectId, customAttributeDefinition));
+                }
+                values.put(customAttributeDefinition.id, definitionValues);
+            }
+            return values;
+        default:
+            throw new IllegalArgumentException("Invalid attribute type : " + attributeType);
+        }
+    }
+
+    /**
+     * Index some custom attribute values by custom attribute definition id and
+     * object id. The missing values are created using the specified creator.
+     * 
+     * @param customAttributeValues
+     *            the values found in the database
+     * @param objectIds
+     *            the ids of the objects
+     * @param customAttributeDefinitions
+     *            the custom attribute definitions
+     * @param creator
+     *            creates a value (not read from the database) for an object id
+     *            and a definition
+     * @return the values indexed by custom attribute definition id and object
+     *         id
+     */
+    static Map<Long, Map<Long, ICustomAttributeValue>> indexCustomAttributeValues(List<? extends ICustomAttributeValue> customAttributeValues,
+            Collection<Long> objectIds, List<CustomAttributeDefinition> customAttributeDefinitions,
+            BiFunction<Long, CustomAttributeDefinition, ICustomAttributeValue> creator) {
+        Map<Long, Map<Long, ICustomAttributeValue>> values = new HashMap<>();
+        for (CustomAttributeDefinition customAttributeDefinition : customAttributeDefinitions) {
+            values.put(customAttributeDefinition.id, new HashMap<>());
+        }
+        for (ICustomAttributeValue customAttributeValue : customAttributeValues) {
+            Map<Long, ICustomAttributeValue> definitionValues = values.get(customAttributeValue.getDefinition().id);
+            if (definitionValues != null) {
+                definitionValues.put(customAttributeValue.getLinkedObjectId(), customAttributeValue);
+            }
+        }
+        for (CustomAttributeDefinition customAttributeDefinition : customAttributeDefinitions) {
+            Map<Long, ICustomAttributeValue> definitionValues = values.get(customAttributeDefinition.id);
+            for (Long objectId : objectIds) {
+                if (!definitionValues.containsKey(objectId)) {
+                    definitionValues.put(objectId, creator.apply(objectId, customAttributeDefinition));
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Return the ids of the specified custom attribute definitions.
+     * 
+     * @param customAttributeDefinitions
+     *            a list of custom attribute definitions
+     */
+    static List<Long> getIds(List<CustomAttributeDefinition> customAttributeDefinitions) {
+        List<Long> ids = new ArrayList<>(customAttributeDefinitions.size());
+        for (CustomAttributeDefinition customAttributeDefinition : customAttributeDefinitions) {
+            ids.add(customAttributeDefinition.id);
+        }
+        return ids;
+    }
+
     /**
      * Clone custom attributes from one object to the other
      * @param objectType
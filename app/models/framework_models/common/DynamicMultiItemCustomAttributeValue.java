@@ -19,7 +19,9 @@ package models.framework_models.common;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
@@ -159,6 +161,44 @@ public class DynamicMultiItemCustomAttributeValue extends Model implements IMode
         return customAttributeValue;
     }
 
+    /**
+     * Return the values of some custom attribute definitions for a list of
+     * objects (with one query).<br/>
+     * A value which is not found in the database is created (but not saved).
+     * 
+     * @param objectType
+     *            an object type
+     * @param filter
+     *            the filter (may be null)
+     * @param objectIds
+     *            the ids of the objects
+     * @param customAttributeDefinitions
+     *            some definitions of custom attributes of type DYNAMIC_MULTI_ITEM
+     * @return the values indexed by custom attribute definition id and object
+     *         id
+     */
+    public static Map<Long, Map<Long, ICustomAttributeValue>> getOrCreateCustomAttributeValuesFromObjectReferences(Class<?> objectType, String filter,
+            Collection<Long> objectIds, List<CustomAttributeDefinition> customAttributeDefinitions) {
+
+        String key = objectType.getName();
+        if (filter != null) {
+            key += ":" + filter;
+        }
+        final String objectTypeKey = key;
+
+        List<DynamicMultiItemCustomAttributeValue> customAttributeValues = find.where().eq("deleted", false).eq("objectType", objectTypeKey).in("objectId", objectIds)
+                .in("customAttributeDefinition.id", CustomAttributeDefinition.getIds(customAttributeDefinitions)).findList();
+        return CustomAttributeDefinition.indexCustomAttributeValues(customAttributeValues, objectIds, customAttributeDefinitions,
+                (objectId, customAttributeDefinition) -> {
+                    DynamicMultiItemCustomAttributeValue customAttributeValue = new DynamicMultiItemCustomAttributeValue();
+                    customAttributeValue.objectType = objectTypeKey;
+                    customAttributeValue.objectId = objectId;
+                    customAttributeValue.customAttributeDefinition = customAttributeDefinition;
+                    customAttributeValue.isNotReadFromDb = true;
+                    return customAttributeValue;
+                });
+    }
+
     @Override
     public Object getValueAsObject() {
         return convertToList(this.values);
@@ -0,0 +1,207 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package models.framework_models.kpi;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Model;
+import com.avaje.ebean.SqlUpdate;
+
+/**
+ * The last KPI data of a KPI value definition for an object.<br/>
+ * This table is a projection of the kpi_data table (one row per value
+ * definition and object) which is maintained when a {@link KpiData} is
+ * written. It is used to render, filter and sort the KPI values without
+ * scanning the kpi_data table.<br/>
+ * Only the KPI data stored with framework.services.kpi.Kpi#saveKpiData are
+ * reflected: the KPI data inserted, modified or (soft) deleted by other means
+ * are not, the missing rows are only rebuilt at startup (see
+ * framework.services.kpi.Kpi#rebuildMissingLastValues).
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = { "kpi_value_definition_id", "object_id" }) )
+public class KpiDataLast extends Model {
+
+    public static Finder<Long, KpiDataLast> find = new Finder<Long, KpiDataLast>(KpiDataLast.class);
+
+    private static final String COUNT_OBJECTS_SQL = "SELECT COUNT(DISTINCT kdata.object_id) AS nb FROM kpi_data kdata"
+            + " WHERE kdata.deleted = 0 AND kdata.kpi_value_definition_id = :kpiValueDefinitionId";
+    private static final String INSERT_MISSING_SQL = "INSERT INTO kpi_data_last"
+            + " (kpi_value_definition_id, object_id, timestamp, value, kpi_color_rule_id, last_update)"
+            + " SELECT kdata.kpi_value_definition_id, kdata.object_id, kdata.timestamp, kdata.value, kdata.kpi_color_rule_id, NOW() FROM kpi_data kdata"
+            + " WHERE kdata.deleted = 0 AND kdata.kpi_value_definition_id = :kpiValueDefinitionId"
+            + " AND kdata.id = (SELECT kdata_i.id FROM kpi_data kdata_i WHERE kdata_i.deleted = 0"
+            + " AND kdata_i.kpi_value_definition_id = kdata.kpi_value_definition_id AND kdata_i.object_id = kdata.object_id"
+            + " ORDER BY kdata_i.timestamp DESC, kdata_i.id DESC LIMIT 1)"
+            + " AND NOT EXISTS (SELECT 1 FROM kpi_data_last klast WHERE klast.kpi_value_definition_id = kdata.kpi_value_definition_id"
+            + " AND klast.object_id = kdata.object_id)";
+
+    @Id
+    public Long id;
+
+    @Version
+    public Timestamp lastUpdate;
+
+    /**
+     * The corresponding ID of the object type.
+     */
+    @Column(nullable = false)
+    public Long objectId;
+
+    /**
+     * The timestamp of the last KPI data.
+     */
+    @Column(nullable = false)
+    public Date timestamp;
+
+    /**
+     * The value of the last KPI data.
+     */
+    public BigDecimal value;
+
+    /**
+     * The color rule of the last KPI data.
+     */
+    @ManyToOne
+    public KpiColorRule kpiColorRule;
+
+    /**
+     * The related KPI value definition.
+     */
+    @ManyToOne
+    public KpiValueDefinition kpiValueDefinition;
+
+    /**
+     * Default constructor.
+     */
+    public KpiDataLast() {
+    }
+
+    /**
+     * Get the last KPI data of all the objects for a KPI value definition.
+     *
+     * @param kpiValueDefinitionId
+     *            the KPI value definition id
+     */
+    public static List<KpiDataLast> getByKpiValueDefinition(Long kpiValueDefinitionId) {
+        return find.fetch("kpiColorRule").where().eq("kpiValueDefinition.id", kpiValueDefinitionId).findList();
+    }
+
+    /**
+     * Get the number of last KPI data of a KPI value definition.
+     *
+     * @param kpiValueDefinitionId
+     *            the KPI value definition id
+     */
+    public static int countByKpiValueDefinition(Long kpiValueDefinitionId) {
+        return find.where().eq("kpiValueDefinition.id", kpiValueDefinitionId).findRowCount();
+    }
+
+    /**
+     * Get the number of objects which have some (not deleted) KPI data for a
+     * KPI value definition.
+     *
+     * @param kpiValueDefinitionId
+     *            the KPI value definition id
+     */
+    public static int countObjectsWithKpiData(Long kpiValueDefinitionId) {
+        return Ebean.createSqlQuery(COUNT_OBJECTS_SQL).setParameter("kpiValueDefinitionId", kpiValueDefinitionId).findUnique().getInteger("nb");
+    }
+
+    /**
+     * Update the last KPI data with the specified (new) KPI data.<br/>
+     * A KPI data which is older than the current last one is ignored.<br/>
+     * This method should be called within a transaction which is committed
+     * after the one which saves the KPI data: the transaction fails if another
+     * thread or node has created or updated one of the same last KPI data in
+     * the meantime (and can then be retried).
+     *
+     * @param kpiData
+     *            a list of KPI data
+     * @return the updated last KPI data
+     */
+    public static List<KpiDataLast> upsert(List<KpiData> kpiData) {
+
+        // Load the existing rows with one query per value definition
+        Map<Long, Set<Long>> objectIdsByDefinition = new HashMap<>();
+        for (KpiData data : kpiData) {
+            objectIdsByDefinition.computeIfAbsent(data.kpiValueDefinition.id, k -> new HashSet<>()).add(data.objectId);
+        }
+        Map<String, KpiDataLast> existing = new HashMap<>();
+        for (Map.Entry<Long, Set<Long>> entry : objectIdsByDefinition.entrySet()) {
+            for (KpiDataLast last : find.where().eq("kpiValueDefinition.id", entry.getKey()).in("objectId", entry.getValue()).findList()) {
+                existing.put(getKey(entry.getKey(), last.objectId), last);
+            }
+        }
+
+        List<KpiDataLast> updated = new ArrayList<>();
+        for (KpiData data : kpiData) {
+            String key = getKey(data.kpiValueDefinition.id, data.objectId);
+            KpiDataLast last = existing.get(key);
+            if (last == null) {
+                last = new KpiDataLast();
+                last.kpiValueDefinition = data.kpiValueDefinition;
+                last.objectId = data.objectId;
+                existing.put(key, last);
+            } else if (data.timestamp.before(last.timestamp)) {
+                continue;
+            }
+            last.timestamp = data.timestamp;
+            last.value = data.value;
+            last.kpiColorRule = data.kpiColorRule;
+            last.save();
+            updated.add(last);
+        }
+        return updated;
+    }
+
+    /**
+     * Create the missing last KPI data of a KPI value definition (the objects
+     * which have some KPI data but no last KPI data) from the kpi_data table.
+     *
+     * @param kpiValueDefinitionId
+     *            the KPI value definition id
+     * @return the number of created last KPI data
+     */
+    public static int insertMissing(Long kpiValueDefinitionId) {
+        SqlUpdate insert = Ebean.createSqlUpdate(INSERT_MISSING_SQL);
+        insert.setParameter("kpiValueDefinitionId", kpiValueDefinitionId);
+        return insert.execute();
+    }
+
+    private static String getKey(Long kpiValueDefinitionId, Long objectId) {
+        return kpiValueDefinitionId + "#" + objectId;
+    }
+}
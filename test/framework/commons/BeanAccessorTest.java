@@ -0,0 +1,91 @@
+package framework.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link BeanAccessor}
+ */
+public class BeanAccessorTest {
+
+    @Test
+    public void readIdAndDeleted() {
+        BeanAccessor accessor = BeanAccessor.of(Bean.class);
+        assertEquals(12L, accessor.getId(new Bean(12L, false)));
+        assertFalse(accessor.isDeleted(new Bean(12L, false)));
+        assertTrue(accessor.isDeleted(new Bean(12L, true)));
+    }
+
+    @Test
+    public void accessorIsResolvedOncePerClass() {
+        assertSame(BeanAccessor.of(Bean.class), BeanAccessor.of(Bean.class));
+    }
+
+    @Test
+    public void nullIdIsNotFound() {
+        assertEquals(-1L, BeanAccessor.of(Bean.class).getId(new Bean(null, false)));
+    }
+
+    @Test
+    public void missingPropertiesAreNotFound() {
+        BeanAccessor accessor = BeanAccessor.of(NoIdBean.class);
+        assertEquals(-1L, accessor.getId(new NoIdBean()));
+        assertFalse(accessor.isDeleted(new NoIdBean()));
+    }
+
+    @Test
+    public void idOfAnotherTypeIsNotFound() {
+        assertEquals(-1L, BeanAccessor.of(IntegerIdBean.class).getId(new IntegerIdBean()));
+    }
+
+    @Test
+    public void exceptionOfTheGetterIsNotPropagated() {
+        BeanAccessor accessor = BeanAccessor.of(FailingBean.class);
+        assertEquals(-1L, accessor.getId(new FailingBean()));
+        assertFalse(accessor.isDeleted(new FailingBean()));
+    }
+
+    public static class Bean {
+        private Long id;
+        private boolean deleted;
+
+        public Bean(Long id, boolean deleted) {
+            this.id = id;
+            this.deleted = deleted;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+    }
+
+    public static class NoIdBean {
+        public String getName() {
+            return "name";
+        }
+    }
+
+    public static class IntegerIdBean {
+        public Integer getId() {
+            return 12;
+        }
+    }
+
+    public static class FailingBean {
+        public Long getId() {
+            throw new IllegalStateException();
+        }
+
+        public Boolean getDeleted() {
+            throw new IllegalStateException();
+        }
+    }
+}
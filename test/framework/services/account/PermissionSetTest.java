@@ -0,0 +1,180 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import be.objectify.deadbolt.core.models.Role;
+
+/**
+ * Tests of {@link PermissionSet}
+ */
+public class PermissionSetTest {
+
+    @Test
+    public void hasRole() {
+        PermissionSet permissionSet = PermissionSet.of(roles("PERMISSION_SET_A", "PERMISSION_SET_B"));
+        assertTrue(permissionSet.hasRole("PERMISSION_SET_A"));
+        assertTrue(permissionSet.hasRole("PERMISSION_SET_B"));
+        assertFalse(permissionSet.hasRole("PERMISSION_SET_C"));
+    }
+
+    @Test
+    public void allTheRequiredRolesMustBeHeld() {
+        PermissionSet permissionSet = PermissionSet.of(roles("PERMISSION_SET_A", "PERMISSION_SET_B"));
+        assertTrue(permissionSet.hasAllRoles(new String[] { "PERMISSION_SET_A" }));
+        assertTrue(permissionSet.hasAllRoles(new String[] { "PERMISSION_SET_A", "PERMISSION_SET_B" }));
+        assertFalse(permissionSet.hasAllRoles(new String[] { "PERMISSION_SET_A", "PERMISSION_SET_C" }));
+    }
+
+    @Test
+    public void negatedRoleMustNotBeHeld() {
+        PermissionSet permissionSet = PermissionSet.of(roles("PERMISSION_SET_A", "PERMISSION_SET_B"));
+        assertFalse(permissionSet.hasAllRoles(new String[] { "!PERMISSION_SET_A" }));
+        assertFalse(permissionSet.hasAllRoles(new String[] { "PERMISSION_SET_A", "!PERMISSION_SET_B" }));
+        assertTrue(permissionSet.hasAllRoles(new String[] { "PERMISSION_SET_A", "!PERMISSION_SET_C" }));
+        assertTrue(permissionSet.hasAllRoles(new String[] { "!PERMISSION_SET_C" }));
+    }
+
+    @Test
+    public void negatedRoleOnAnEmptySet() {
+        PermissionSet permissionSet = PermissionSet.of(roles());
+        assertTrue(permissionSet.hasAllRoles(new String[] { "!PERMISSION_SET_A" }));
+        assertFalse(permissionSet.hasAllRoles(new String[] { "PERMISSION_SET_A" }));
+    }
+
+    @Test
+    public void emptyRequirementIsNeverSatisfied() {
+        assertFalse(PermissionSet.of(roles("PERMISSION_SET_A")).hasAllRoles(new String[0]));
+    }
+
+    @Test
+    public void requirementIsNotAliasedToTheCallerArray() {
+        PermissionSet permissionSet = PermissionSet.of(roles("PERMISSION_SET_A"));
+        String[] roleNames = new String[] { "PERMISSION_SET_A" };
+        assertTrue(permissionSet.hasAllRoles(roleNames));
+        roleNames[0] = "!PERMISSION_SET_A";
+        assertFalse(permissionSet.hasAllRoles(roleNames));
+    }
+
+    @Test
+    public void sameResultAsTheDeadboltAnalyzer() {
+        List<String> names = roleNames("PERMISSION_SET_RANDOM_", 150);
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            List<String> heldNames = new ArrayList<>();
+            for (String name : names) {
+                if (random.nextInt(3) == 0) {
+                    heldNames.add(name);
+                }
+            }
+            PermissionSet permissionSet = PermissionSet.of(roles(heldNames.toArray(new String[heldNames.size()])));
+            for (int j = 0; j < 20; j++) {
+                String[] roleNames = randomRequirement(names, random);
+                assertEquals(Arrays.toString(roleNames), hasAllRoles(heldNames, roleNames), permissionSet.hasAllRoles(roleNames));
+            }
+        }
+    }
+
+    /**
+     * Compare the checks of a menu of 500 entries for a user holding 200
+     * permissions with the compiled roles and with a scan of the role names
+     * (as done by the Deadbolt analyzer).
+     */
+    @Test
+    public void menuRenderingWith200Permissions() {
+        List<String> names = roleNames("PERMISSION_SET_MENU_", 400);
+        Random random = new Random(7);
+        List<String> heldNames = new ArrayList<>(names.subList(0, 200));
+        List<String[]> menu = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            menu.add(randomRequirement(names, random));
+        }
+        PermissionSet permissionSet = PermissionSet.of(roles(heldNames.toArray(new String[heldNames.size()])));
+        int iterations = 200;
+        int authorized = 0;
+        int expectedAuthorized = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (String[] roleNames : menu) {
+                authorized += permissionSet.hasAllRoles(roleNames) ? 1 : 0;
+            }
+        }
+        long compiledTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (String[] roleNames : menu) {
+                expectedAuthorized += hasAllRoles(heldNames, roleNames) ? 1 : 0;
+            }
+        }
+        long scanTime = System.nanoTime() - start;
+        assertEquals(expectedAuthorized, authorized);
+        System.out.println(String.format("Menu of %d entries, 200 permissions: %d us per rendering with the compiled roles, %d us with a scan",
+                menu.size(), compiledTime / iterations / 1000, scanTime / iterations / 1000));
+    }
+
+    /**
+     * The semantic of the Deadbolt analyzer: all the roles must be held, a
+     * role prefixed by "!" must not be held, an empty array is not satisfied
+     */
+    private static boolean hasAllRoles(List<String> heldNames, String[] roleNames) {
+        boolean hasAllRoles = roleNames.length > 0;
+        for (String roleName : roleNames) {
+            if (roleName.startsWith("!")) {
+                hasAllRoles &= !heldNames.contains(roleName.substring(1));
+            } else {
+                hasAllRoles &= heldNames.contains(roleName);
+            }
+        }
+        return hasAllRoles;
+    }
+
+    private static String[] randomRequirement(List<String> names, Random random) {
+        String[] roleNames = new String[random.nextInt(4)];
+        for (int i = 0; i < roleNames.length; i++) {
+            String name = names.get(random.nextInt(names.size()));
+            roleNames[i] = random.nextInt(4) == 0 ? "!" + name : name;
+        }
+        return roleNames;
+    }
+
+    private static List<String> roleNames(String prefix, int count) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add(prefix + i);
+        }
+        return names;
+    }
+
+    private static List<Role> roles(String... names) {
+        List<Role> roles = new ArrayList<>();
+        for (String name : names) {
+            roles.add(() -> name);
+        }
+        return roles;
+    }
+}
@@ -0,0 +1,107 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.api.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import framework.services.api.commons.ApiMethod;
+
+/**
+ * Tests of {@link ApiAuthorizationMatcher}
+ */
+public class ApiAuthorizationMatcherTest {
+
+    @Test
+    public void exactPathIsMatchedForItsMethodOnly() {
+        ApiAuthorizationMatcher matcher = matcher(Pair.of(ApiMethod.GET, "/api/ping"));
+        assertTrue(matcher.matches(ApiMethod.GET, "/api/ping"));
+        assertFalse(matcher.matches(ApiMethod.GET, "/api/ping2"));
+        assertFalse(matcher.matches(ApiMethod.GET, "/api"));
+        assertFalse(matcher.matches(ApiMethod.POST, "/api/ping"));
+    }
+
+    @Test
+    public void expressionIsMatchedBelowItsLiteralPrefix() {
+        ApiAuthorizationMatcher matcher = matcher(Pair.of(ApiMethod.GET, "/api/core/portfolio/.*"));
+        assertTrue(matcher.matches(ApiMethod.GET, "/api/core/portfolio/1"));
+        assertTrue(matcher.matches(ApiMethod.GET, "/api/core/portfolio/1/entries"));
+        assertFalse(matcher.matches(ApiMethod.GET, "/api/core/portfolio"));
+        assertFalse(matcher.matches(ApiMethod.GET, "/api/core/actor/1"));
+    }
+
+    @Test
+    public void expressionInAMiddleSegment() {
+        ApiAuthorizationMatcher matcher = matcher(Pair.of(ApiMethod.PUT, "/api/core/[0-9]+/details"));
+        assertTrue(matcher.matches(ApiMethod.PUT, "/api/core/12/details"));
+        assertFalse(matcher.matches(ApiMethod.PUT, "/api/core/ab/details"));
+        assertFalse(matcher.matches(ApiMethod.PUT, "/api/core/12/details/x"));
+    }
+
+    @Test
+    public void quantifierAfterASlash() {
+        ApiAuthorizationMatcher matcher = matcher(Pair.of(ApiMethod.GET, "/api/core/?"));
+        assertTrue(matcher.matches(ApiMethod.GET, "/api/core"));
+        assertTrue(matcher.matches(ApiMethod.GET, "/api/core/"));
+        assertFalse(matcher.matches(ApiMethod.GET, "/api/cor"));
+    }
+
+    @Test
+    public void alternativeAndExpressionWithoutPrefixAreAlwaysEvaluated() {
+        ApiAuthorizationMatcher matcher = matcher(Pair.of(ApiMethod.GET, "/api/(actor|portfolio)/.*"), Pair.of(ApiMethod.DELETE, ".*"));
+        assertTrue(matcher.matches(ApiMethod.GET, "/api/actor/1"));
+        assertTrue(matcher.matches(ApiMethod.GET, "/api/portfolio/1"));
+        assertFalse(matcher.matches(ApiMethod.GET, "/api/budget/1"));
+        assertTrue(matcher.matches(ApiMethod.DELETE, "/anything/at/all"));
+    }
+
+    @Test
+    public void sameResultAsTheRegularExpressions() {
+        List<String> regExprs = Arrays.asList("/api/ping", "/api/core/portfolio/.*", "/api/core/[0-9]+/details", "/api/core/?",
+                "/api/(actor|portfolio)/.*", "/api/core/portfolio/[a-z]+", "/api/data/.*/list", "/api/custom_attribute/%20");
+        List<String> paths = Arrays.asList("/api/ping", "/api/ping/", "/api/core", "/api/core/", "/api/core/portfolio", "/api/core/portfolio/",
+                "/api/core/portfolio/12", "/api/core/portfolio/abc", "/api/core/12/details", "/api/actor/3", "/api/data/x/list",
+                "/api/data/x/y/list", "/api/data/list", "/api/custom_attribute/%20", "/other", "");
+        List<Pair<ApiMethod, String>> authorizations = new ArrayList<>();
+        for (String regExpr : regExprs) {
+            authorizations.add(Pair.of(ApiMethod.GET, regExpr));
+        }
+        ApiAuthorizationMatcher matcher = new ApiAuthorizationMatcher(authorizations);
+        for (String path : paths) {
+            boolean expected = false;
+            for (String regExpr : regExprs) {
+                expected |= Pattern.matches(regExpr, path);
+            }
+            assertEquals(path, expected, matcher.matches(ApiMethod.GET, path));
+        }
+    }
+
+    @SafeVarargs
+    private static ApiAuthorizationMatcher matcher(Pair<ApiMethod, String>... apiAuthorizations) {
+        return new ApiAuthorizationMatcher(Arrays.asList(apiAuthorizations));
+    }
+}
@@ -0,0 +1,126 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.api.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+/**
+ * Tests of {@link ApiRateLimit}
+ */
+public class ApiRateLimitTest {
+    private AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    @Test
+    public void burstOfOneMinuteIsAccepted() {
+        ApiRateLimit rateLimit = rateLimit(60, 0);
+        for (int i = 0; i < 60; i++) {
+            assertEquals(0, rateLimit.tryAcquire());
+        }
+        assertEquals(1, rateLimit.tryAcquire());
+    }
+
+    @Test
+    public void bucketIsRefilledContinuously() {
+        ApiRateLimit rateLimit = rateLimit(60, 0);
+        for (int i = 0; i < 60; i++) {
+            rateLimit.tryAcquire();
+        }
+        advance(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(1, rateLimit.tryAcquire());
+        advance(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(0, rateLimit.tryAcquire());
+        assertEquals(1, rateLimit.tryAcquire());
+        advance(TimeUnit.MINUTES.toNanos(1));
+        for (int i = 0; i < 60; i++) {
+            assertEquals(0, rateLimit.tryAcquire());
+        }
+    }
+
+    @Test
+    public void retryAfterIsTheWaitInSeconds() {
+        ApiRateLimit rateLimit = rateLimit(2, 0);
+        assertEquals(0, rateLimit.tryAcquire());
+        assertEquals(0, rateLimit.tryAcquire());
+        assertEquals(30, rateLimit.tryAcquire());
+        advance(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(20, rateLimit.tryAcquire());
+    }
+
+    @Test
+    public void checkDoesNotConsume() {
+        ApiRateLimit rateLimit = rateLimit(1, 0);
+        assertEquals(0, rateLimit.check());
+        assertEquals(0, rateLimit.check());
+        assertEquals(0, rateLimit.tryAcquire());
+        assertTrue(rateLimit.check() > 0);
+    }
+
+    @Test
+    public void dailyQuotaIsNotConsumedWhenTheRateRejects() {
+        ApiRateLimit rateLimit = rateLimit(1, 2);
+        assertEquals(0, rateLimit.tryAcquire());
+        assertTrue(rateLimit.tryAcquire() > 0);
+        advance(TimeUnit.MINUTES.toNanos(1));
+        assertEquals(0, rateLimit.tryAcquire());
+        advance(TimeUnit.MINUTES.toNanos(1));
+        assertTrue(rateLimit.tryAcquire() > 0);
+        assertTrue(rateLimit.check() > 0);
+    }
+
+    @Test
+    public void releaseGivesBackTheRequest() {
+        ApiRateLimit rateLimit = rateLimit(1, 1);
+        assertEquals(0, rateLimit.tryAcquire());
+        rateLimit.release();
+        assertEquals(0, rateLimit.tryAcquire());
+        assertTrue(rateLimit.tryAcquire() > 0);
+    }
+
+    @Test
+    public void requestIsConsumedFromAllTheLimitsOrFromNone() {
+        ApiRateLimit large = rateLimit(10, 0);
+        ApiRateLimit small = rateLimit(1, 0);
+        assertNull(ApiRateLimit.tryAcquireAll(Arrays.asList(large, small)));
+        Pair<ApiRateLimit, Long> rejection = ApiRateLimit.tryAcquireAll(Arrays.asList(large, small));
+        assertSame(small, rejection.getLeft());
+        assertEquals(60L, rejection.getRight().longValue());
+        // Only the first request has been consumed from the large limit
+        for (int i = 0; i < 9; i++) {
+            assertEquals(0, large.tryAcquire());
+        }
+        assertTrue(large.tryAcquire() > 0);
+    }
+
+    private ApiRateLimit rateLimit(int requestsPerMinute, long dailyQuota) {
+        return new ApiRateLimit("group", requestsPerMinute, dailyQuota, "/api/.*", clock::get);
+    }
+
+    private void advance(long nanos) {
+        clock.addAndGet(nanos);
+    }
+}
@@ -0,0 +1,104 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.services.api.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import framework.services.api.commons.ApiSignatureException;
+
+/**
+ * Tests of {@link ApiReplayCache}
+ */
+public class ApiReplayCacheTest {
+    private static final long TIMESTAMP = 1444000000000L;
+
+    @Test
+    public void replayedRequestIsRejected() throws Exception {
+        ApiReplayCache cache = new ApiReplayCache(10);
+        assertTrue(cache.register("app", TIMESTAMP, signature("sig"), future()));
+        assertFalse(cache.register("app", TIMESTAMP, signature("sig"), future()));
+    }
+
+    @Test
+    public void requestsWithAnotherIdentityAreAccepted() throws Exception {
+        ApiReplayCache cache = new ApiReplayCache(10);
+        assertTrue(cache.register("app", TIMESTAMP, signature("sig"), future()));
+        assertTrue(cache.register("other", TIMESTAMP, signature("sig"), future()));
+        assertTrue(cache.register("app", TIMESTAMP + 1, signature("sig"), future()));
+        assertTrue(cache.register("app", TIMESTAMP, signature("sig2"), future()));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void expiredRequestCanBeRegisteredAgain() throws Exception {
+        ApiReplayCache cache = new ApiReplayCache(10);
+        assertTrue(cache.register("app", TIMESTAMP, signature("sig"), past()));
+        assertTrue(cache.register("app", TIMESTAMP, signature("sig"), future()));
+        assertFalse(cache.register("app", TIMESTAMP, signature("sig"), future()));
+    }
+
+    @Test
+    public void expiredRequestsArePurgedWhenFull() throws Exception {
+        ApiReplayCache cache = new ApiReplayCache(2);
+        assertTrue(cache.register("app", TIMESTAMP, signature("expired"), past()));
+        assertTrue(cache.register("app", TIMESTAMP, signature("valid"), future()));
+        assertTrue(cache.register("app", TIMESTAMP, signature("new"), future()));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void newRequestIsRejectedWhenStillFull() throws Exception {
+        ApiReplayCache cache = new ApiReplayCache(2);
+        assertTrue(cache.register("app", TIMESTAMP, signature("first"), future()));
+        assertTrue(cache.register("app", TIMESTAMP, signature("second"), future()));
+        try {
+            cache.register("app", TIMESTAMP, signature("third"), future());
+            fail("ApiSignatureException expected");
+        } catch (ApiSignatureException e) {
+            // expected
+        }
+        assertEquals(2, cache.size());
+        // the registered requests are not forgotten
+        try {
+            cache.register("app", TIMESTAMP, signature("first"), future());
+            fail("ApiSignatureException expected");
+        } catch (ApiSignatureException e) {
+            // expected
+        }
+        assertEquals(2, cache.size());
+    }
+
+    private static byte[] signature(String signature) {
+        return signature.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static long future() {
+        return System.currentTimeMillis() + 60000;
+    }
+
+    private static long past() {
+        return System.currentTimeMillis() - 60000;
+    }
+}
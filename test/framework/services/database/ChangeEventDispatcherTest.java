@@ -0,0 +1,106 @@
+package framework.services.database;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import framework.services.database.ChangeEventDispatcher.OverflowPolicy;
+
+/**
+ * Tests of {@link ChangeEventDispatcher}
+ */
+public class ChangeEventDispatcherTest {
+
+    /**
+     * The events notified by the listener beyond the capacity of the ring
+     * buffer are delivered before the events submitted later by the other
+     * threads
+     */
+    @Test
+    public void reentrantEventsKeepTheOrderOfSubmission() throws Exception {
+        List<Object> delivered = new CopyOnWriteArrayList<>();
+        ChangeEventDispatcher[] dispatcher = new ChangeEventDispatcher[1];
+        Thread[] otherThread = new Thread[1];
+        dispatcher[0] = new ChangeEventDispatcher(new RecordingListener(delivered) {
+            @Override
+            public void postInsert(Object bean) {
+                super.postInsert(bean);
+                if (bean.equals(0)) {
+                    // 1 and 2 fill the ring buffer, 3 is queued beyond it
+                    for (int i = 1; i <= 3; i++) {
+                        dispatcher[0].dispatch(ChangeEvent.insert(i));
+                    }
+                    // 4 is submitted by another thread which waits for the
+                    // ring buffer
+                    otherThread[0] = new Thread(() -> dispatcher[0].dispatch(ChangeEvent.insert(4)));
+                    otherThread[0].start();
+                    while (otherThread[0].getState() != Thread.State.WAITING) {
+                        Thread.yield();
+                    }
+                } else if (bean.equals(2)) {
+                    // 4 enters the ring buffer once 1 and 2 are taken
+                    try {
+                        otherThread[0].join(5000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, 2, 10, OverflowPolicy.BLOCK, null);
+        dispatcher[0].dispatch(ChangeEvent.insert(0));
+        waitForDelivery(dispatcher[0], 5);
+        otherThread[0].join(5000);
+        dispatcher[0].shutdown(5);
+        assertEquals(Arrays.<Object> asList(0, 1, 2, 3, 4), delivered);
+    }
+
+    @Test
+    public void eventsAreDeliveredInOrder() throws Exception {
+        List<Object> delivered = new CopyOnWriteArrayList<>();
+        ChangeEventDispatcher dispatcher = new ChangeEventDispatcher(new RecordingListener(delivered), 4, 3, OverflowPolicy.BLOCK, null);
+        for (int i = 0; i < 100; i++) {
+            dispatcher.dispatch(ChangeEvent.insert(i));
+        }
+        waitForDelivery(dispatcher, 100);
+        dispatcher.shutdown(5);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, delivered.get(i));
+        }
+    }
+
+    private static void waitForDelivery(ChangeEventDispatcher dispatcher, int expected) throws InterruptedException {
+        long limit = System.currentTimeMillis() + 5000;
+        while (dispatcher.getStatistics().getDelivered() < expected && System.currentTimeMillis() < limit) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A listener which records the inserted beans
+     */
+    private static class RecordingListener implements IDatabaseChangeListener {
+        private List<Object> delivered;
+
+        public RecordingListener(List<Object> delivered) {
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void postInsert(Object bean) {
+            delivered.add(bean);
+        }
+
+        @Override
+        public void postDelete(Object bean) {
+        }
+
+        @Override
+        public void postUpdate(Object bean, Map<String, ModificationPair> modifiedAttributes) {
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import framework.services.database.ModificationPair;
+import framework.utils.FilterConfigCache.CachedFilter;
+import framework.utils.FilterConfigCache.InvalidationListener;
+import models.framework_models.common.FilterConfiguration;
+
+/**
+ * Tests of {@link FilterConfigCache} (the database is replaced by a map of the
+ * written configurations)
+ */
+public class FilterConfigCacheTest {
+    private static final int USERS = 10;
+    private static final int REQUESTS = 100;
+    private static final String DATA_TYPE = "test";
+
+    private Map<Long, String> database;
+    private AtomicInteger loads;
+
+    @Before
+    public void setUp() {
+        database = new ConcurrentHashMap<>();
+        loads = new AtomicInteger(0);
+        FilterConfigCache.setConfigurationWriter((filterId, configuration) -> database.put(filterId, configuration));
+        for (int user = 0; user < USERS; user++) {
+            FilterConfigCache.invalidate(getUid(user), DATA_TYPE);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        FilterConfigCache.flushAll();
+    }
+
+    @Test
+    public void parallelListRequests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int request = 0; request < REQUESTS; request++) {
+            final int user = request % USERS;
+            final int page = request;
+            results.add(executor.submit(() -> {
+                start.await();
+                // display the list and then change the page
+                CachedFilter cachedFilter = get(user);
+                FilterConfigCache.updateDefaultConfiguration(getUid(user), DATA_TYPE, cachedFilter, configuration(page));
+                return get(user) != null;
+            }));
+        }
+        start.countDown();
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // the filters are loaded at least once per user and never after an
+        // update
+        assertTrue(loads.get() >= USERS && loads.get() <= REQUESTS);
+
+        // the database and the cache agree once the writes are flushed
+        FilterConfigCache.flushAll();
+        for (int user = 0; user < USERS; user++) {
+            assertEquals(get(user).getConfiguration().toString(), database.get(getFilterId(user)));
+        }
+    }
+
+    @Test
+    public void writesAreCoalesced() {
+        CachedFilter cachedFilter = get(0);
+        FilterConfigCache.updateDefaultConfiguration(getUid(0), DATA_TYPE, cachedFilter, configuration(1));
+        FilterConfigCache.updateDefaultConfiguration(getUid(0), DATA_TYPE, get(0), configuration(2));
+        assertFalse(database.containsKey(getFilterId(0)));
+        FilterConfigCache.flushAll();
+        assertEquals(configuration(2).toString(), database.get(getFilterId(0)));
+    }
+
+    @Test
+    public void invalidateWritesThePendingConfiguration() {
+        FilterConfigCache.updateDefaultConfiguration(getUid(0), DATA_TYPE, get(0), configuration(3));
+        FilterConfigCache.invalidate(getUid(0), DATA_TYPE);
+        assertEquals(configuration(3).toString(), database.get(getFilterId(0)));
+    }
+
+    @Test
+    public void failedWriteRemovesTheEntry() {
+        FilterConfigCache.setConfigurationWriter((filterId, configuration) -> {
+            throw new IllegalStateException("optimistic lock");
+        });
+        FilterConfigCache.updateDefaultConfiguration(getUid(0), DATA_TYPE, get(0), configuration(5));
+        FilterConfigCache.flushAll();
+        int loadsBefore = loads.get();
+        assertNotNull(get(0));
+        assertEquals(loadsBefore + 1, loads.get());
+    }
+
+    @Test
+    public void ownWriteDoesNotRemoveTheEntry() {
+        FilterConfigCache.updateDefaultConfiguration(getUid(0), DATA_TYPE, get(0), configuration(6));
+        FilterConfigCache.flushAll();
+        FilterConfiguration written = new FilterConfiguration();
+        written.id = getFilterId(0);
+        written.configuration = configuration(6).toString();
+        new InvalidationListener().postUpdate(written, Collections.<String, ModificationPair> singletonMap("configuration", null));
+        int loadsBefore = loads.get();
+        assertEquals(configuration(6), get(0).getConfiguration());
+        assertEquals(loadsBefore, loads.get());
+    }
+
+    @Test
+    public void selectedFilterIsCopied() {
+        FilterConfiguration selectedFilter = new FilterConfiguration();
+        selectedFilter.id = 1L;
+        selectedFilter.name = "selected";
+        CachedFilter cachedFilter = new CachedFilter(0L, DATA_TYPE, getFilterId(0), configuration(-1), selectedFilter);
+        FilterConfiguration copy = cachedFilter.getSelectedFilter();
+        copy.isNotCompatible = true;
+        copy.name = "modified";
+        assertNotSame(copy, cachedFilter.getSelectedFilter());
+        assertEquals("selected", cachedFilter.getSelectedFilter().name);
+        assertFalse(cachedFilter.getSelectedFilter().isNotCompatible);
+    }
+
+    private CachedFilter get(int user) {
+        return FilterConfigCache.get(getUid(user), DATA_TYPE, () -> {
+            loads.incrementAndGet();
+            return newCachedFilter(user);
+        });
+    }
+
+    private static CachedFilter newCachedFilter(int user) {
+        return new CachedFilter((long) user, DATA_TYPE, getFilterId(user), configuration(-1), null);
+    }
+
+    private static ObjectNode configuration(int page) {
+        ObjectNode configuration = JsonNodeFactory.instance.objectNode();
+        configuration.put("currentPage", page);
+        return configuration;
+    }
+
+    private static String getUid(int user) {
+        return "user" + user;
+    }
+
+    private static Long getFilterId(int user) {
+        return 1000L + user;
+    }
+}
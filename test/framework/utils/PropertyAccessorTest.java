@@ -0,0 +1,108 @@
+/*! LICENSE
+ *
+ * Copyright (c) 2015, The Agile Factory SA and/or its affiliates. All rights
+ * reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package framework.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link PropertyAccessor}
+ */
+public class PropertyAccessorTest {
+
+    @Test
+    public void readSimpleProperty() throws Exception {
+        assertEquals("parent", PropertyAccessor.of(Bean.class, "name").get(new Bean("parent", null)));
+        assertEquals(true, PropertyAccessor.of(Bean.class, "active").get(new Bean("parent", null)));
+    }
+
+    @Test
+    public void accessorIsResolvedOncePerClassAndProperty() {
+        assertSame(PropertyAccessor.of(Bean.class, "name"), PropertyAccessor.of(Bean.class, "name"));
+    }
+
+    @Test
+    public void nestedPropertyFallsBackToPropertyUtils() throws Exception {
+        Bean bean = new Bean("parent", new Bean("child", null));
+        assertEquals("child", PropertyAccessor.of(Bean.class, "child.name").get(bean));
+    }
+
+    @Test
+    public void nullValueIsReturned() throws Exception {
+        assertNull(PropertyAccessor.of(Bean.class, "child").get(new Bean("parent", null)));
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void unknownPropertyFallsBackToPropertyUtils() throws Exception {
+        PropertyAccessor.of(Bean.class, "unknown").get(new Bean("parent", null));
+    }
+
+    @Test
+    public void runtimeExceptionOfTheGetterIsWrapped() throws Exception {
+        try {
+            PropertyAccessor.of(FailingBean.class, "value").get(new FailingBean());
+            fail("InvocationTargetException expected");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test(expected = InvocationTargetException.class)
+    public void checkedExceptionOfTheGetterIsWrapped() throws Exception {
+        PropertyAccessor.of(FailingBean.class, "checked").get(new FailingBean());
+    }
+
+    public static class Bean {
+        private String name;
+        private Bean child;
+
+        public Bean(String name, Bean child) {
+            this.name = name;
+            this.child = child;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Bean getChild() {
+            return child;
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+    }
+
+    public static class FailingBean {
+        public String getValue() {
+            throw new IllegalStateException();
+        }
+
+        public String getChecked() throws Exception {
+            throw new Exception();
+        }
+    }
+}